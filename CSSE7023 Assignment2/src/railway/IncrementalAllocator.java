@@ -0,0 +1,630 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable allocator that keeps track of the routes occupied and requested by
+ * a number of trains, and maintains the allocation of routes to those trains
+ * as they change.
+ * </p>
+ * 
+ * <p>
+ * The trains are numbered from zero in the order that they are added, and
+ * trains with lower numbers have higher priority. At any time, the allocation
+ * returned by getAllocations() is the same as the one that would be returned
+ * by Allocator.allocate(occupied, requested), where occupied and requested are
+ * the lists of the routes currently occupied and requested by each train.
+ * </p>
+ * 
+ * <p>
+ * Rather than recalculating the allocation from scratch after every change,
+ * the allocator records the sections and junctions affected by each change,
+ * and only re-allocates the trains whose requested routes pass through one of
+ * them (and, in turn, the trains affected by those re-allocations). Sections
+ * and junctions are recorded by their packed keys (see Location.pack), so all
+ * of the routes given to the allocator must be on the same track.
+ * </p>
+ */
+public class IncrementalAllocator {
+
+    // the routes occupied by each train
+    private List<List<Segment>> occupied;
+    // the routes requested by each train
+    private List<List<Segment>> requested;
+    // the routes allocated to each train
+    private List<List<Segment>> allocated;
+
+    // the owners of the locations on each section that are not at a
+    // junction, by section key
+    private LongHashMap<SectionOwners> sections;
+    // the owners of the locations at each junction, by packed location
+    private LongHashMap<Owners> junctions;
+
+    // the keys of the sections and junctions affected by changes since the
+    // last update
+    private LongHashSet changedSections;
+    private LongHashSet changedJunctions;
+    // the trains whose requested routes have changed since the last update
+    private BitSet changedTrains;
+
+    /*
+     * invariant:
+     * 
+     * occupied, requested, allocated != null && they have the same size &&
+     * none of them contain null &&
+     * 
+     * for each location that is occupied by a train, the owners of the
+     * location record that train as its occupant &&
+     * 
+     * if changedSections, changedJunctions and changedTrains are empty, then
+     * allocated equals Allocator.allocate(occupied, requested), and each of
+     * its locations is recorded as allocated to the train it belongs to
+     */
+
+    /**
+     * Creates a new allocator with no trains.
+     */
+    public IncrementalAllocator() {
+        occupied = new ArrayList<List<Segment>>();
+        requested = new ArrayList<List<Segment>>();
+        allocated = new ArrayList<List<Segment>>();
+        sections = new LongHashMap<>();
+        junctions = new LongHashMap<>();
+        changedSections = new LongHashSet();
+        changedJunctions = new LongHashSet();
+        changedTrains = new BitSet();
+    }
+
+    /**
+     * Adds a new train, with a lower priority than all of the existing trains,
+     * that occupies and requests the given routes.
+     * 
+     * @require occupiedRoute != null && requestedRoute != null
+     * 
+     *          && the routes are valid routes on the same track as the routes
+     *          of the other trains
+     * 
+     *          && occupiedRoute does not intersect with the routes occupied by
+     *          the other trains (by the time that the allocation is next
+     *          retrieved)
+     * 
+     * @ensure The train is added, and the allocation will be updated the next
+     *         time that it is retrieved.
+     * 
+     * @param occupiedRoute
+     *            the route occupied by the new train
+     * @param requestedRoute
+     *            the route requested by the new train
+     * @return the number of the new train.
+     */
+    public int addTrain(List<Segment> occupiedRoute,
+            List<Segment> requestedRoute) {
+        // the number of the new train
+        int train = occupied.size();
+        occupied.add(new ArrayList<Segment>());
+        requested.add(new ArrayList<Segment>());
+        allocated.add(new ArrayList<Segment>());
+        moveTrain(train, occupiedRoute);
+        requestRoute(train, requestedRoute);
+        return train;
+    }
+
+    /**
+     * Records that the given train has moved, and now occupies the given
+     * route.
+     * 
+     * @require 0 <= train < getTrainCount() && occupiedRoute != null
+     * 
+     *          && occupiedRoute is a valid route on the same track as the
+     *          routes of the other trains
+     * 
+     *          && occupiedRoute does not intersect with the routes occupied by
+     *          the other trains (by the time that the allocation is next
+     *          retrieved)
+     * 
+     * @ensure The occupied route of the train is updated, and the allocation
+     *         will be updated the next time that it is retrieved.
+     * 
+     * @param train
+     *            the number of the train that has moved
+     * @param occupiedRoute
+     *            the route that is now occupied by the train
+     */
+    public void moveTrain(int train, List<Segment> occupiedRoute) {
+        // the route previously occupied by the train
+        List<Segment> previous = occupied.get(train);
+        for (Segment segment : previous) {
+            setOccupant(segment, train, false);
+        }
+        markChanged(previous);
+
+        occupied.set(train, new ArrayList<Segment>(occupiedRoute));
+        for (Segment segment : occupiedRoute) {
+            setOccupant(segment, train, true);
+        }
+        markChanged(occupiedRoute);
+    }
+
+    /**
+     * Records that the given train has requested the given route.
+     * 
+     * @require 0 <= train < getTrainCount() && requestedRoute != null
+     * 
+     *          && requestedRoute is a valid route on the same track as the
+     *          routes of the other trains
+     * 
+     * @ensure The requested route of the train is updated, and the allocation
+     *         will be updated the next time that it is retrieved.
+     * 
+     * @param train
+     *            the number of the train making the request
+     * @param requestedRoute
+     *            the route requested by the train
+     */
+    public void requestRoute(int train, List<Segment> requestedRoute) {
+        requested.set(train, new ArrayList<Segment>(requestedRoute));
+        changedTrains.set(train);
+    }
+
+    /**
+     * Records that the given train has left the track: it no longer occupies
+     * or requests any locations. The train keeps its number (and so the
+     * numbers and priorities of the other trains do not change), and it will
+     * be allocated an empty route until it is given a new occupied and
+     * requested route.
+     * 
+     * @require 0 <= train < getTrainCount()
+     * 
+     * @ensure The train's occupied and requested routes are made empty, and
+     *         the allocation will be updated the next time that it is
+     *         retrieved.
+     * 
+     * @param train
+     *            the number of the train to release
+     */
+    public void releaseTrain(int train) {
+        moveTrain(train, new ArrayList<Segment>());
+        requestRoute(train, new ArrayList<Segment>());
+    }
+
+    /**
+     * Returns the number of trains that have been added to the allocator.
+     * 
+     * @return the number of trains.
+     */
+    public int getTrainCount() {
+        return occupied.size();
+    }
+
+    /**
+     * Returns the allocation of routes to trains, for the routes currently
+     * occupied and requested by the trains.
+     * 
+     * @ensure Returns an unmodifiable list that is equal to
+     *         Allocator.allocate(occupied, requested), where occupied and
+     *         requested are the lists of the routes currently occupied and
+     *         requested by each train (in order of their numbers).
+     * 
+     * @return the list of allocated routes.
+     */
+    public List<List<Segment>> getAllocations() {
+        update();
+        // the allocation to be returned
+        List<List<Segment>> result = new ArrayList<List<Segment>>();
+        for (List<Segment> route : allocated) {
+            result.add(Collections.unmodifiableList(route));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Re-allocates each train that may be affected by the changes since the
+     * last update, in order of priority.
+     * 
+     * @ensure allocated equals Allocator.allocate(occupied, requested), and
+     *         there are no changes waiting to be processed.
+     */
+    private void update() {
+        for (int train = 0; train < occupied.size(); train++) {
+            if (changedTrains.get(train) || isChanged(requested.get(train))) {
+                // the route previously allocated to the train
+                List<Segment> previous = allocated.get(train);
+                for (Segment segment : previous) {
+                    setAllocatee(segment, train, false);
+                }
+                // the route now allocated to the train
+                List<Segment> route = allocateTrain(train);
+                for (Segment segment : route) {
+                    setAllocatee(segment, train, true);
+                }
+                if (!route.equals(previous)) {
+                    // trains with lower priority may be affected
+                    markChanged(previous);
+                    markChanged(route);
+                }
+                allocated.set(train, route);
+            }
+        }
+        changedSections.clear();
+        changedJunctions.clear();
+        changedTrains.clear();
+    }
+
+    /**
+     * Returns the longest prefix of the route requested by the given train
+     * that does not intersect with any of the routes occupied by other trains,
+     * or allocated to trains of higher priority.
+     * 
+     * @require 0 <= train < getTrainCount() && the allocations of the trains
+     *          of higher priority are up to date
+     */
+    private List<Segment> allocateTrain(int train) {
+        // the allocated route for the train to be returned
+        List<Segment> result = new ArrayList<Segment>();
+        for (Segment segment : requested.get(train)) {
+            // the offset of the first invalid location on the segment
+            int invalidOffset = firstInvalidOffset(segment, train);
+            if (invalidOffset == -1) {
+                result.add(segment);
+            } else {
+                // the longest valid prefix of the segment ends at the location
+                // prior to the first invalid location. If it is empty or has
+                // length 0, add nothing.
+                int newEndOffset = invalidOffset - 1;
+                if (segment.getStartOffset() < newEndOffset) {
+                    result.add(new Segment(segment.getSection(), segment
+                            .getDepartingEndPoint(), segment.getStartOffset(),
+                            newEndOffset));
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset (with respect to the departing end-point of the
+     * segment) of the first location on the given segment that the given train
+     * cannot be allocated, or -1 if there is no such location.
+     * 
+     * @require segment != null
+     * @ensure Returns the least offset x such that segment.getStartOffset() <=
+     *         x <= segment.getEndOffset() and the location x meters from the
+     *         departing end-point of the segment is occupied by another train
+     *         or allocated to a train with a higher priority, or -1 if there
+     *         is no such offset.
+     */
+    private int firstInvalidOffset(Segment segment, int train) {
+        Section section = segment.getSection();
+        int length = section.getLength();
+        int start = segment.getStartOffset();
+        int end = segment.getEndOffset();
+
+        if (start == 0 && isInvalid(junctions.get(Location.junctionKey(segment
+                .getDepartingEndPoint().getJunction())), train)) {
+            return 0;
+        }
+
+        // the bounds of the locations on the segment that are not at a
+        // junction
+        int first = Math.max(start, 1);
+        int last = Math.min(end, length - 1);
+        // the owners of the locations on the section
+        SectionOwners owners = sections.get(Location.sectionKey(section));
+        if (first <= last && owners != null) {
+            int offset = owners.firstInvalidOffset(segment, first, last,
+                    train);
+            if (offset != -1) {
+                return offset;
+            }
+        }
+
+        if (end == length && isInvalid(junctions.get(Location.junctionKey(
+                segment.getApproachingEndPoint().getJunction())), train)) {
+            return length;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if a junction with the given owners cannot be allocated to
+     * the given train.
+     * 
+     * @require owners is null, or it holds the owners of the junction
+     */
+    private static boolean isInvalid(Owners owners, int train) {
+        return owners != null && isInvalid(owners.occupant, owners.allocatee,
+                train);
+    }
+
+    /**
+     * Returns true if a location occupied by, and allocated to, the given
+     * trains (or -1 for no train) cannot be allocated to the given train:
+     * that is, if it is occupied by another train, or allocated to a train
+     * with a higher priority.
+     */
+    private static boolean isInvalid(int occupant, int allocatee, int train) {
+        return (occupant != -1 && occupant != train)
+                || (allocatee != -1 && allocatee < train);
+    }
+
+    /**
+     * Returns the owner that a location owned by the given train (or -1 for
+     * no train) has after it is given to the given train, if set is true, or
+     * released by it, otherwise.
+     */
+    private static int owner(int current, int train, boolean set) {
+        if (set) {
+            return train;
+        }
+        return current == train ? -1 : current;
+    }
+
+    /**
+     * If occupies is true, records that each location on the given segment is
+     * occupied by the given train. Otherwise, records that each location on
+     * the segment that is occupied by the train is no longer occupied.
+     * 
+     * @require segment != null
+     */
+    private void setOccupant(Segment segment, int train, boolean occupies) {
+        Section section = segment.getSection();
+        if (segment.getStartOffset() == 0) {
+            Owners owners = junctionOwners(segment.getDepartingEndPoint()
+                    .getJunction());
+            owners.occupant = owner(owners.occupant, train, occupies);
+        }
+        if (segment.getEndOffset() == section.getLength()) {
+            Owners owners = junctionOwners(segment.getApproachingEndPoint()
+                    .getJunction());
+            owners.occupant = owner(owners.occupant, train, occupies);
+        }
+        // the owners of the locations on the section
+        SectionOwners owners = sectionOwners(segment, occupies);
+        if (owners != null) {
+            owners.set(owners.occupants, segment, train, occupies);
+        }
+    }
+
+    /**
+     * If allocated is true, records that each location on the given segment
+     * is allocated to the given train. Otherwise, records that each location
+     * on the segment that is allocated to the train is no longer allocated.
+     * 
+     * A location may still be recorded as allocated to a train of lower
+     * priority whose allocation is about to be updated: in that case it is
+     * given to the train of higher priority, and the other train does not
+     * release it when its own allocation is updated.
+     * 
+     * @require segment != null
+     */
+    private void setAllocatee(Segment segment, int train, boolean allocated) {
+        Section section = segment.getSection();
+        if (segment.getStartOffset() == 0) {
+            Owners owners = junctionOwners(segment.getDepartingEndPoint()
+                    .getJunction());
+            owners.allocatee = owner(owners.allocatee, train, allocated);
+        }
+        if (segment.getEndOffset() == section.getLength()) {
+            Owners owners = junctionOwners(segment.getApproachingEndPoint()
+                    .getJunction());
+            owners.allocatee = owner(owners.allocatee, train, allocated);
+        }
+        // the owners of the locations on the section
+        SectionOwners owners = sectionOwners(segment, allocated);
+        if (owners != null) {
+            owners.set(owners.allocatees, segment, train, allocated);
+        }
+    }
+
+    /**
+     * Returns the owners of the locations on the section of the given
+     * segment, creating them if they do not already exist and create is true.
+     * Returns null if they do not exist and create is false, or if the
+     * section has no locations that are not at a junction.
+     * 
+     * @require segment != null
+     */
+    private SectionOwners sectionOwners(Segment segment, boolean create) {
+        Section section = segment.getSection();
+        int length = section.getLength();
+        if (length < 2) {
+            return null;
+        }
+        // the key of the section, and the owners of the locations on it
+        long key = Location.sectionKey(section);
+        SectionOwners owners = sections.get(key);
+        if (owners == null && create) {
+            owners = new SectionOwners(Location.referenceEndPoint(section),
+                    length);
+            sections.put(key, owners);
+        }
+        return owners;
+    }
+
+    /**
+     * Returns the owners of the location at the given junction, creating them
+     * if they do not already exist.
+     * 
+     * @require junction != null
+     */
+    private Owners junctionOwners(Junction junction) {
+        // the packed location of the junction, and its owners
+        long key = Location.junctionKey(junction);
+        Owners owners = junctions.get(key);
+        if (owners == null) {
+            owners = new Owners();
+            junctions.put(key, owners);
+        }
+        return owners;
+    }
+
+    /**
+     * Records that the sections and junctions on the given route have been
+     * affected by a change.
+     * 
+     * @require route != null && !route.contains(null)
+     */
+    private void markChanged(List<Segment> route) {
+        for (Segment segment : route) {
+            Section section = segment.getSection();
+            changedSections.add(Location.sectionKey(section));
+            if (segment.getStartOffset() == 0) {
+                changedJunctions.add(Location.junctionKey(segment
+                        .getDepartingEndPoint().getJunction()));
+            }
+            if (segment.getEndOffset() == section.getLength()) {
+                changedJunctions.add(Location.junctionKey(segment
+                        .getApproachingEndPoint().getJunction()));
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given route passes through a section or junction
+     * that has been affected by a change since the last update.
+     * 
+     * @require route != null && !route.contains(null)
+     */
+    private boolean isChanged(List<Segment> route) {
+        for (Segment segment : route) {
+            Section section = segment.getSection();
+            if (changedSections.contains(Location.sectionKey(section))) {
+                return true;
+            }
+            if (segment.getStartOffset() == 0
+                    && changedJunctions.contains(Location.junctionKey(segment
+                            .getDepartingEndPoint().getJunction()))) {
+                return true;
+            }
+            if (segment.getEndOffset() == section.getLength()
+                    && changedJunctions.contains(Location.junctionKey(segment
+                            .getApproachingEndPoint().getJunction()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The trains that occupy, and have been allocated, the location at a
+     * junction. (A train number of -1 denotes no train.)
+     */
+    private static class Owners {
+
+        // the train occupying the location
+        private int occupant = -1;
+        // the train that the location has been allocated to
+        private int allocatee = -1;
+    }
+
+    /**
+     * The owners of the locations on a section that are not at a junction.
+     */
+    private static class SectionOwners {
+
+        // the end-point of the section that the offsets are measured from
+        private final JunctionBranch reference;
+        // occupants[x] and allocatees[x] are the trains that occupy, and have
+        // been allocated, the location x meters from reference (or -1)
+        private final int[] occupants;
+        private final int[] allocatees;
+        // bit x is set if the location x meters from reference is occupied
+        // by, or allocated to, a train
+        private final BitSet owned;
+
+        /*
+         * invariant:
+         * 
+         * occupants.length == allocatees.length == the length of the section
+         * && bit x of owned is set iff occupants[x] != -1 || allocatees[x] !=
+         * -1, for 0 < x < the length of the section
+         */
+
+        /**
+         * Creates the owners of the locations on a section of the given
+         * length, none of which are occupied or allocated, that measures
+         * offsets from the given end-point.
+         * 
+         * @require reference != null && length > 1
+         */
+        private SectionOwners(JunctionBranch reference, int length) {
+            this.reference = reference;
+            occupants = new int[length];
+            allocatees = new int[length];
+            Arrays.fill(occupants, -1);
+            Arrays.fill(allocatees, -1);
+            owned = new BitSet(length);
+        }
+
+        /**
+         * Returns the offset (with respect to the departing end-point of the
+         * given segment) of the first location from offset first to offset
+         * last that the given train cannot be allocated, or -1 if there is no
+         * such location.
+         * 
+         * @require segment is on the section && 0 < first <= last < the
+         *          length of the section
+         */
+        private int firstInvalidOffset(Segment segment, int first, int last,
+                int train) {
+            if (reference.equals(segment.getDepartingEndPoint())) {
+                for (int x = owned.nextSetBit(first); x != -1 && x <= last;
+                        x = owned.nextSetBit(x + 1)) {
+                    if (isInvalid(occupants[x], allocatees[x], train)) {
+                        return x;
+                    }
+                }
+            } else {
+                // the locations are measured from the other end of the
+                // section, so they are searched in the opposite direction
+                int length = occupants.length;
+                for (int x = owned.previousSetBit(length - first); x != -1
+                        && x >= length - last; x = owned.previousSetBit(x
+                                - 1)) {
+                    if (isInvalid(occupants[x], allocatees[x], train)) {
+                        return length - x;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Gives each location on the given segment that is not at a junction
+         * to the given train in the given array of owners (occupants or
+         * allocatees) if set is true, and otherwise releases each of those
+         * locations that the train owns.
+         * 
+         * @require trains == occupants || trains == allocatees && segment is
+         *          on the section
+         */
+        private void set(int[] trains, Segment segment, int train,
+                boolean set) {
+            int length = occupants.length;
+            // the bounds of the locations on the segment that are not at a
+            // junction, measured from reference
+            int first = Math.max(segment.getStartOffset(), 1);
+            int last = Math.min(segment.getEndOffset(), length - 1);
+            if (!reference.equals(segment.getDepartingEndPoint())) {
+                int other = length - first;
+                first = length - last;
+                last = other;
+            }
+            if (first > last) {
+                return;
+            }
+            for (int x = first; x <= last; x++) {
+                trains[x] = owner(trains[x], train, set);
+                if (!set && occupants[x] == -1 && allocatees[x] == -1) {
+                    owned.clear(x);
+                }
+            }
+            if (set) {
+                owned.set(first, last + 1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package railway;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ * A registry of all of the junctions that have been created, which interns
+ * junctions by their identifier.
+ * </p>
+ * 
+ * <p>
+ * The registry holds one canonical instance of Junction for each junction
+ * identifier, and numbers the identifiers densely, in the order in which they
+ * are first registered, from zero. Every Junction created for an identifier
+ * (whether it is the canonical instance or not) has the same index, so that
+ * junctions can be compared and hashed using their indices rather than their
+ * identifiers.
+ * </p>
+ * 
+ * <p>
+ * Junctions are only removed from the registry by reset, which tests and
+ * benchmarks that create many different junctions may use to reclaim their
+ * memory. The other methods of this class are thread-safe.
+ * </p>
+ */
+public final class JunctionRegistry {
+
+    // the initial capacity of the table of junctions indexed by their index
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // the canonical junction for each registered identifier
+    private static final ConcurrentMap<String, Junction> junctions =
+            new ConcurrentHashMap<>();
+    // the lock held while registering an identifier
+    private static final Object lock = new Object();
+    // the canonical junctions, indexed by their index
+    private static volatile Junction[] junctionsByIndex =
+            new Junction[INITIAL_CAPACITY];
+    // the number of registered junctions (guarded by lock)
+    private static int size;
+
+    /*
+     * invariant:
+     * 
+     * junctions maps each registered identifier to the canonical junction with
+     * that identifier &&
+     * 
+     * junctionsByIndex[i] is the canonical junction with index i, for 0 <= i <
+     * size, and the canonical junctions have the indices 0, ..., size - 1
+     */
+
+    /**
+     * This class only provides static methods.
+     */
+    private JunctionRegistry() {
+    }
+
+    /**
+     * Returns the canonical junction with the given identifier, registering
+     * the identifier if it has not been registered before.
+     * 
+     * @param junctionIdentifier
+     *            the identifier of the junction
+     * @return the canonical junction with the given identifier
+     * @throws NullPointerException
+     *             if junctionIdentifier is null
+     */
+    public static Junction intern(String junctionIdentifier) {
+        if (junctionIdentifier == null) {
+            throw new NullPointerException(
+                    "The parameter junctionIdentifier cannot be null.");
+        }
+        // the canonical junction, if it is already registered
+        Junction junction = junctions.get(junctionIdentifier);
+        if (junction == null) {
+            junction = junctions.computeIfAbsent(junctionIdentifier,
+                    JunctionRegistry::register);
+        }
+        return junction;
+    }
+
+    /**
+     * Returns the canonical junction with the given index.
+     * 
+     * @param index
+     *            the index of the junction
+     * @return the canonical junction with the given index
+     * @throws IndexOutOfBoundsException
+     *             if there is no junction with the given index
+     */
+    public static Junction get(int index) {
+        // the table of canonical junctions
+        Junction[] table = junctionsByIndex;
+        if (index < 0 || index >= table.length || table[index] == null) {
+            throw new IndexOutOfBoundsException("There is no junction with "
+                    + "index " + index + ".");
+        }
+        return table[index];
+    }
+
+    /**
+     * Returns the number of junction identifiers that have been registered.
+     * (The indices of the registered junctions are 0, ..., size() - 1.)
+     * 
+     * @return the number of registered junctions
+     */
+    public static int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * <p>
+     * Removes all of the junctions from the registry, so that the memory used
+     * by them can be reclaimed, and the next identifier registered has index
+     * 0.
+     * </p>
+     * 
+     * <p>
+     * This method is only intended for tests and benchmarks that create many
+     * tracks with different junctions. The junctions created before the reset
+     * (and the end-points, sections, locations, tracks and routes that use
+     * them) must not be used after it, since they may be equal to unrelated
+     * junctions registered later. It must not be called while any other
+     * thread is using the registry.
+     * </p>
+     */
+    public static void reset() {
+        synchronized (lock) {
+            junctions.clear();
+            junctionsByIndex = new Junction[INITIAL_CAPACITY];
+            size = 0;
+        }
+    }
+
+    /**
+     * Creates the canonical junction for the given identifier, with the next
+     * index, and adds it to the table of junctions by index.
+     * 
+     * @require junctionIdentifier != null, and it has not been registered.
+     */
+    private static Junction register(String junctionIdentifier) {
+        synchronized (lock) {
+            if (size == junctionsByIndex.length) {
+                junctionsByIndex = Arrays.copyOf(junctionsByIndex, 2 * size);
+            }
+            // the canonical junction for the identifier
+            Junction junction = new Junction(junctionIdentifier, size);
+            junctionsByIndex[size] = junction;
+            size++;
+            return junction;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable set of long values, such as packed locations (see
+ * Location.pack), stored without boxing them.
+ * </p>
+ * 
+ * <p>
+ * The values are stored in an open-addressing hash table with linear probing.
+ * The value -1 marks an empty slot of the table, and so it cannot be stored
+ * in the set. (No location is packed as -1, since -1 holds an invalid branch
+ * ordinal.)
+ * </p>
+ */
+class LongHashSet {
+
+    // the value that marks an empty slot of the table
+    static final long EMPTY = -1L;
+    // the initial number of slots in the table
+    private static final int INITIAL_CAPACITY = 16;
+
+    // the slots of the table, whose length is a power of two
+    private long[] keys;
+    // the number of values in the set
+    private int size;
+
+    /*
+     * invariant:
+     * 
+     * keys != null && keys.length is a power of two &&
+     * 
+     * size is the number of slots of keys that are not EMPTY && 2 * size <=
+     * keys.length &&
+     * 
+     * each value in the set is stored in the slot of the table given by
+     * slot(value), or in one of the slots following it, with no EMPTY slot in
+     * between
+     */
+
+    /**
+     * Creates a new empty set.
+     */
+    LongHashSet() {
+        keys = newTable(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of values in the set.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the set contains no values.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if the set contains the given value.
+     * 
+     * @require key != EMPTY
+     */
+    boolean contains(long key) {
+        return keys[find(keys, key)] == key;
+    }
+
+    /**
+     * Adds the given value to the set, and returns true if it was not already
+     * in the set.
+     * 
+     * @require key != EMPTY
+     */
+    boolean add(long key) {
+        // the slot holding the value, or the empty slot where it belongs
+        int slot = find(keys, key);
+        if (keys[slot] == key) {
+            return false;
+        }
+        keys[slot] = key;
+        size++;
+        if (2 * size > keys.length) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Removes the given value from the set, and returns true if it was in the
+     * set.
+     * 
+     * @require key != EMPTY
+     */
+    boolean remove(long key) {
+        // the slot holding the value, or the empty slot where it belongs
+        int slot = find(keys, key);
+        if (keys[slot] != key) {
+            return false;
+        }
+        // move any following values that belong at or before the removed slot
+        // back into the gap, so that no value is cut off from its slot
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            // the distance of the value in slot i from its own slot
+            int distance = (i - slot(keys[i], mask)) & mask;
+            if (distance >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes every value from the set.
+     */
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    /**
+     * Returns the slot of the given table that holds the given value, or the
+     * empty slot where it would be stored if it is not in the table.
+     * 
+     * @require keys has at least one EMPTY slot && key != EMPTY
+     */
+    static int find(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != key && keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot that the given value belongs in, in a table whose
+     * length is mask + 1.
+     * 
+     * @require mask + 1 is a power of two
+     */
+    static int slot(long key, int mask) {
+        // mix the bits of the key (using the finaliser of MurmurHash3), so
+        // that keys that differ only in their high bits are spread out
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * Returns a new table with the given number of slots, all of them empty.
+     * 
+     * @require capacity is a power of two
+     */
+    static long[] newTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /**
+     * Doubles the number of slots in the table.
+     */
+    private void resize() {
+        // the slots of the table before it is resized
+        long[] old = keys;
+        keys = newTable(2 * old.length);
+        for (long key : old) {
+            if (key != EMPTY) {
+                keys[find(keys, key)] = key;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable record of the locations on a railway track that are occupied.
+ * </p>
+ * 
+ * <p>
+ * Locations at a junction are recorded in a set of the packed locations (see
+ * Location.pack) of the occupied junctions. Each other location lies on
+ * exactly one section, and it is recorded as a bit in a bitmap for that
+ * section: bit x of the bitmap is set if the location x meters from the
+ * section's reference end-point is occupied. The bitmaps are looked up by the
+ * packed key of their section, so the routes in the map must all be on the
+ * same track.
+ * </p>
+ * 
+ * <p>
+ * The locations on a route are occupied and released as a whole using the
+ * add and remove methods. Locations occupied by more than one route are not
+ * counted, so a route should only be removed if none of its locations are
+ * also occupied by another route in the map.
+ * </p>
+ */
+class OccupancyMap {
+
+    // the occupied locations on each section that are not at a junction,
+    // by section key
+    private LongHashMap<SectionOccupancy> sections;
+    // the packed locations of the junctions that are occupied
+    private LongHashSet junctions;
+
+    /*
+     * invariant:
+     * 
+     * sections != null && junctions != null
+     */
+
+    /**
+     * Creates a new map in which no locations are occupied.
+     */
+    OccupancyMap() {
+        sections = new LongHashMap<>();
+        junctions = new LongHashSet();
+    }
+
+    /**
+     * Marks every location on the given route as occupied.
+     * 
+     * @require route != null && !route.contains(null) && the route is on the
+     *          same track as the other routes in the map
+     */
+    void add(List<Segment> route) {
+        for (Segment segment : route) {
+            update(segment, true);
+        }
+    }
+
+    /**
+     * Marks every location on the given route as not occupied.
+     * 
+     * @require route != null && !route.contains(null)
+     */
+    void remove(List<Segment> route) {
+        for (Segment segment : route) {
+            update(segment, false);
+        }
+    }
+
+    /**
+     * Returns the offset (with respect to the departing end-point of the
+     * segment) of the first occupied location on the given segment, or -1 if
+     * none of the locations on the segment are occupied.
+     * 
+     * @require segment != null
+     * @ensure Returns the least offset x such that segment.getStartOffset() <=
+     *         x <= segment.getEndOffset() and the location x meters from the
+     *         departing end-point of the segment is occupied, or -1 if there
+     *         is no such offset.
+     */
+    int firstOccupiedOffset(Segment segment) {
+        Section section = segment.getSection();
+        int length = section.getLength();
+        int start = segment.getStartOffset();
+        int end = segment.getEndOffset();
+
+        if (start == 0 && junctions.contains(Location.junctionKey(segment
+                .getDepartingEndPoint().getJunction()))) {
+            return 0;
+        }
+
+        // the bounds of the locations on the segment that are not at a
+        // junction
+        int first = Math.max(start, 1);
+        int last = Math.min(end, length - 1);
+        // the occupied locations on the section
+        SectionOccupancy occupancy = sections.get(Location.sectionKey(
+                section));
+        if (first <= last && occupancy != null) {
+            if (occupancy.reference.equals(segment.getDepartingEndPoint())) {
+                int offset = occupancy.bits.nextSetBit(first);
+                if (offset != -1 && offset <= last) {
+                    return offset;
+                }
+            } else {
+                // the bits are measured from the other end of the section, so
+                // they are searched in the opposite direction
+                int offset = occupancy.bits.previousSetBit(length - first);
+                if (offset != -1 && offset >= length - last) {
+                    return length - offset;
+                }
+            }
+        }
+
+        if (end == length && junctions.contains(Location.junctionKey(segment
+                .getApproachingEndPoint().getJunction()))) {
+            return length;
+        }
+        return -1;
+    }
+
+    /**
+     * Marks every location on the given segment as occupied if occupied is
+     * true, and as not occupied otherwise.
+     * 
+     * @require segment != null
+     */
+    private void update(Segment segment, boolean occupied) {
+        Section section = segment.getSection();
+        int length = section.getLength();
+        int start = segment.getStartOffset();
+        int end = segment.getEndOffset();
+
+        if (start == 0) {
+            update(segment.getDepartingEndPoint().getJunction(), occupied);
+        }
+        if (end == length) {
+            update(segment.getApproachingEndPoint().getJunction(), occupied);
+        }
+
+        // the bounds of the locations on the segment that are not at a
+        // junction
+        int first = Math.max(start, 1);
+        int last = Math.min(end, length - 1);
+        if (first > last) {
+            return;
+        }
+        // the key of the section, and the occupied locations on it
+        long key = Location.sectionKey(section);
+        SectionOccupancy occupancy = sections.get(key);
+        if (occupancy == null) {
+            if (!occupied) {
+                return;
+            }
+            occupancy = new SectionOccupancy(Location
+                    .referenceEndPoint(section));
+            sections.put(key, occupancy);
+        }
+        if (occupancy.reference.equals(segment.getDepartingEndPoint())) {
+            occupancy.bits.set(first, last + 1, occupied);
+        } else {
+            occupancy.bits.set(length - last, length - first + 1, occupied);
+        }
+    }
+
+    /**
+     * Marks the given junction as occupied if occupied is true, and as not
+     * occupied otherwise.
+     * 
+     * @require junction != null
+     */
+    private void update(Junction junction, boolean occupied) {
+        if (occupied) {
+            junctions.add(Location.junctionKey(junction));
+        } else {
+            junctions.remove(Location.junctionKey(junction));
+        }
+    }
+
+    /**
+     * The occupied locations on a section that are not at a junction.
+     */
+    private static class SectionOccupancy {
+
+        // the end-point of the section that the offsets are measured from
+        private final JunctionBranch reference;
+        // bit x is set if the location x meters from reference is occupied
+        private final BitSet bits;
+
+        /**
+         * Creates a record of the locations on a section, none of which are
+         * occupied, that measures offsets from the given end-point.
+         * 
+         * @require reference != null
+         */
+        private SectionOccupancy(JunctionBranch reference) {
+            this.reference = reference;
+            this.bits = new BitSet();
+        }
+    }
+
+}
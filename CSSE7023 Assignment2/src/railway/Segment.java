@@ -96,7 +96,7 @@ public class Segment {
         if (section == null || departingEndPoint == null) {
             throw new NullPointerException("Parameters cannot be null.");
         }
-        if (!section.getEndPoints().contains(departingEndPoint)) {
+        if (!section.hasEndPoint(departingEndPoint)) {
             throw new IllegalArgumentException(
                     "Parameter departingEndPoint must be "
                             + " and end-point of the given section.");
@@ -277,6 +277,9 @@ public class Segment {
      */
     @Override
     public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
         if (!(object instanceof Segment)) {
             return false;
         }
@@ -312,7 +315,7 @@ public class Segment {
      */
     public boolean checkInvariant() {
         return section != null
-                && section.getEndPoints().contains(departingEndPoint)
+                && section.hasEndPoint(departingEndPoint)
                 && 0 <= startOffset && startOffset < endOffset
                 && endOffset <= section.getLength();
     }
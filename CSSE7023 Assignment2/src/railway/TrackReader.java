@@ -203,13 +203,13 @@ public class TrackReader {
                     ": " + "Wrong format for the second branch type.");
         }
         // the junction of the first end-point
-        Junction junction1 = new Junction(lineItems.get(0));
+        Junction junction1 = JunctionRegistry.intern(lineItems.get(0));
         // the junction of the second end-point
-        Junction junction2 = new Junction(lineItems.get(2));
+        Junction junction2 = JunctionRegistry.intern(lineItems.get(2));
         // the first end-point of the section
-        JunctionBranch endPoint1 = new JunctionBranch(junction1, branch1);
+        JunctionBranch endPoint1 = JunctionBranch.of(junction1, branch1);
         // the second end-point of the section
-        JunctionBranch endPoint2 = new JunctionBranch(junction2, branch2);
+        JunctionBranch endPoint2 = JunctionBranch.of(junction2, branch2);
         // the returned section
         Section section = new Section(length, endPoint1, endPoint2);
         return section;
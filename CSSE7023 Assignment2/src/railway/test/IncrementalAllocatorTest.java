@@ -0,0 +1,117 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link IncrementalAllocator} class, that check that after each
+ * change its allocation is the same as that of {@link Allocator#allocate}.
+ */
+public class IncrementalAllocatorTest {
+
+    /**
+     * Basic test: a released train is allocated an empty route, and no longer
+     * blocks the other trains.
+     */
+    @Test(timeout = 5000)
+    public void releaseTest() throws Exception {
+        JunctionBranch endPoint1 = new JunctionBranch(new Junction("j0"),
+                Branch.NORMAL);
+        JunctionBranch endPoint2 = new JunctionBranch(new Junction("j1"),
+                Branch.FACING);
+        Section section = new Section(10, endPoint1, endPoint2);
+
+        IncrementalAllocator allocator = new IncrementalAllocator();
+        allocator.addTrain(route(new Segment(section, endPoint1, 4, 6)),
+                route(new Segment(section, endPoint1, 4, 8)));
+        allocator.addTrain(route(new Segment(section, endPoint1, 0, 2)),
+                route(new Segment(section, endPoint1, 0, 9)));
+        Assert.assertEquals(Arrays.asList(
+                route(new Segment(section, endPoint1, 4, 8)),
+                route(new Segment(section, endPoint1, 0, 3))),
+                allocator.getAllocations());
+
+        allocator.releaseTrain(0);
+        Assert.assertEquals(Arrays.asList(route(),
+                route(new Segment(section, endPoint1, 0, 9))),
+                allocator.getAllocations());
+    }
+
+    /**
+     * Applies random sequences of changes to an allocator on random tracks,
+     * and checks its allocation against Allocator.allocate after each one.
+     */
+    @Test(timeout = 20000)
+    public void randomChangesTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 300; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(20), 1 + random.nextInt(40));
+            List<Section> sections = TrackGenerator.sections(track);
+
+            IncrementalAllocator allocator = new IncrementalAllocator();
+            List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+            List<List<Segment>> requested = new ArrayList<List<Segment>>();
+            for (int change = 0; change < 40; change++) {
+                // the train to change, or a new train
+                int train = random.nextInt(occupied.size() + 1);
+                int kind = random.nextInt(10);
+                if (train == occupied.size() || kind < 4) {
+                    // move (or add) the train, if there is room for it
+                    List<Segment> route = RouteGenerator.randomRoute(random,
+                            track, sections, 3);
+                    if (!isFree(route, occupied, train)) {
+                        continue;
+                    }
+                    if (train == occupied.size()) {
+                        occupied.add(route);
+                        requested.add(RouteGenerator.randomRoute(random, track,
+                                sections, 6));
+                        allocator.addTrain(route, requested.get(train));
+                    } else {
+                        occupied.set(train, route);
+                        allocator.moveTrain(train, route);
+                    }
+                } else if (kind < 9) {
+                    requested.set(train, RouteGenerator.randomRoute(random,
+                            track, sections, 6));
+                    allocator.requestRoute(train, requested.get(train));
+                } else {
+                    occupied.set(train, new ArrayList<Segment>());
+                    requested.set(train, new ArrayList<Segment>());
+                    allocator.releaseTrain(train);
+                }
+                Assert.assertEquals(Allocator.allocate(occupied, requested),
+                        allocator.getAllocations());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given route does not intersect with any of the
+     * occupied routes, other than the one occupied by the given train.
+     */
+    private boolean isFree(List<Segment> route, List<List<Segment>> occupied,
+            int train) {
+        List<Location> locations = RouteGenerator.locations(route);
+        for (int i = 0; i < occupied.size(); i++) {
+            if (i != train
+                    && !Collections.disjoint(locations,
+                            RouteGenerator.locations(occupied.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a route made up of the given segments.
+     */
+    private List<Segment> route(Segment... segments) {
+        return Arrays.asList(segments);
+    }
+
+}
@@ -0,0 +1,118 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the packed representation of locations: {@link Location#pack()},
+ * {@link Location#pack(Section, JunctionBranch, int)} and
+ * {@link Location#unpack(long, Track)}.
+ */
+public class LocationPackingTest {
+
+    /**
+     * Basic test: the equivalent descriptions of a location on a section, and
+     * of a location at a junction, have the same packed value.
+     */
+    @Test(timeout = 5000)
+    public void equivalentDescriptionsTest() throws Exception {
+        JunctionBranch endPoint1 = new JunctionBranch(new Junction("j0"),
+                Branch.NORMAL);
+        JunctionBranch endPoint2 = new JunctionBranch(new Junction("j1"),
+                Branch.FACING);
+        JunctionBranch endPoint3 = new JunctionBranch(new Junction("j1"),
+                Branch.REVERSE);
+        Section section1 = new Section(10, endPoint1, endPoint2);
+        Section section2 = new Section(5, endPoint3, endPoint1);
+
+        Assert.assertEquals(new Location(section1, endPoint1, 3).pack(),
+                new Location(section1, endPoint2, 7).pack());
+        Assert.assertEquals(Location.pack(section1, endPoint1, 3), Location
+                .pack(new Section(10, endPoint2, endPoint1), endPoint2, 7));
+        Assert.assertNotEquals(Location.pack(section1, endPoint1, 3),
+                Location.pack(section1, endPoint1, 7));
+
+        // at a junction
+        Assert.assertEquals(Location.pack(section1, endPoint2, 0), Location
+                .pack(section2, endPoint3, 0));
+        Assert.assertEquals(Location.pack(section1, endPoint1, 10), Location
+                .pack(section2, endPoint3, 0));
+        Assert.assertTrue(Location.atAJunction(Location.pack(section2,
+                endPoint3, 5)));
+        Assert.assertFalse(Location.atAJunction(Location.pack(section2,
+                endPoint3, 4)));
+    }
+
+    /**
+     * Checks that a location cannot be packed with an invalid offset or
+     * end-point.
+     */
+    @Test(timeout = 5000)
+    public void invalidPackTest() throws Exception {
+        JunctionBranch endPoint1 = new JunctionBranch(new Junction("j0"),
+                Branch.NORMAL);
+        JunctionBranch endPoint2 = new JunctionBranch(new Junction("j1"),
+                Branch.FACING);
+        Section section = new Section(10, endPoint1, endPoint2);
+        try {
+            Location.pack(section, endPoint1, 11);
+            Assert.fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            Location.pack(section, new JunctionBranch(new Junction("j1"),
+                    Branch.NORMAL), 1);
+            Assert.fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            Location.unpack(Location.pack(section, endPoint1, 1),
+                    new Track());
+            Assert.fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Checks, for every pair of locations on random tracks, that the locations
+     * are equivalent if and only if their packed values are equal, and that
+     * unpacking a packed value gives back an equivalent location.
+     */
+    @Test(timeout = 20000)
+    public void randomTracksTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 300; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(8), 1 + random.nextInt(12));
+            // the locations on the track, described from either end-point
+            List<Location> locations = new ArrayList<Location>();
+            for (Section section : TrackGenerator.sections(track)) {
+                for (JunctionBranch endPoint : section.getEndPointList()) {
+                    for (int offset = 0; offset < section.getLength();
+                            offset++) {
+                        locations.add(new Location(section, endPoint,
+                                offset));
+                    }
+                }
+            }
+            for (Location location : locations) {
+                Location unpacked = Location.unpack(location.pack(), track);
+                Assert.assertEquals(location, unpacked);
+                Assert.assertEquals(location.pack(), unpacked.pack());
+                Assert.assertEquals(location.atAJunction(), Location
+                        .atAJunction(location.pack()));
+                for (Location other : locations) {
+                    Assert.assertEquals(location.equals(other),
+                            location.pack() == other.pack());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Randomised tests that check that the results of {@link Allocator#allocate}
+ * are the same as those of the {@link ReferenceAllocator}.
+ */
+public class RandomAllocatorTest {
+
+    /**
+     * Compares the allocations on many small random tracks, where the trains
+     * are likely to be competing for the same locations.
+     */
+    @Test(timeout = 20000)
+    public void smallTracksTest() throws Exception {
+        compareAllocations(new Random(7023), 2000, 6, 10, 5);
+    }
+
+    /**
+     * Compares the allocations on larger random tracks with more trains.
+     */
+    @Test(timeout = 20000)
+    public void largeTracksTest() throws Exception {
+        compareAllocations(new Random(2014), 100, 30, 60, 12);
+    }
+
+    /**
+     * Generates the given number of random tracks with at most the given
+     * number of junctions and sections, and for each of them compares the
+     * results of Allocator.allocate and ReferenceAllocator.allocate for a
+     * random set of at most maxTrains trains.
+     */
+    private void compareAllocations(Random random, int tracks,
+            int maxJunctions, int maxSections, int maxTrains) {
+        for (int i = 0; i < tracks; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(maxJunctions),
+                    1 + random.nextInt(maxSections));
+            List<Section> sections = TrackGenerator.sections(track);
+
+            // the occupied routes: these must not intersect
+            List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+            List<List<Segment>> requested = new ArrayList<List<Segment>>();
+            Set<Location> occupiedLocations = new HashSet<Location>();
+            int trains = 1 + random.nextInt(maxTrains);
+            for (int attempt = 0; attempt < 10 * trains
+                    && occupied.size() < trains; attempt++) {
+                List<Segment> route =
+                        RouteGenerator.randomRoute(random, track, sections, 3);
+                List<Location> locations = RouteGenerator.locations(route);
+                if (Collections.disjoint(locations, occupiedLocations)) {
+                    occupiedLocations.addAll(locations);
+                    occupied.add(route);
+                    requested.add(RouteGenerator.randomRoute(random, track,
+                            sections, 6));
+                }
+            }
+
+            Assert.assertEquals(
+                    ReferenceAllocator.allocate(occupied, requested),
+                    Allocator.allocate(occupied, requested));
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Track#checkRecentChanges()}, which checks the invariant of
+ * a track incrementally.
+ */
+public class TrackInvariantTest {
+
+    /**
+     * Basic test: the changes are checked after each section is added or
+     * removed, including changes that are rejected or have no effect.
+     */
+    @Test(timeout = 5000)
+    public void basicTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Section section1 = new Section(10, new JunctionBranch(j0,
+                Branch.NORMAL), new JunctionBranch(j1, Branch.FACING));
+        Section section2 = new Section(5, new JunctionBranch(j1,
+                Branch.REVERSE), new JunctionBranch(j0, Branch.FACING));
+        // a section that shares an end-point with section1
+        Section clash = new Section(3, new JunctionBranch(j0, Branch.NORMAL),
+                new JunctionBranch(j1, Branch.NORMAL));
+
+        Track track = new Track();
+        track.setRecordingChanges(true);
+        Assert.assertTrue(track.checkRecentChanges());
+        track.addSection(section1);
+        Assert.assertTrue(track.checkRecentChanges());
+        track.addSection(section2);
+        track.addSection(section1);
+        Assert.assertTrue(track.checkRecentChanges());
+        try {
+            track.addSection(clash);
+            Assert.fail("The section should not have been added.");
+        } catch (InvalidTrackException e) {
+            // expected
+        }
+        Assert.assertTrue(track.checkRecentChanges());
+        track.removeSection(section1);
+        track.removeSection(clash);
+        Assert.assertTrue(track.checkRecentChanges());
+        track.addSection(clash);
+        Assert.assertTrue(track.checkRecentChanges());
+        Assert.assertTrue(track.checkInvariant());
+        Assert.assertTrue(track.checkRecentChanges());
+    }
+
+    /**
+     * Checks that changes are only recorded once recording has been turned
+     * on, and that without them checkRecentChanges checks the whole track.
+     */
+    @Test(timeout = 5000)
+    public void recordingTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Track track = new Track();
+        Assert.assertTrue(track.checkRecentChanges());
+        for (int i = 0; i < 3; i++) {
+            track.addSection(new Section(1 + i, new JunctionBranch(j0, Branch
+                    .values()[i]), new JunctionBranch(j1, Branch.values()[i])));
+            Assert.assertTrue(track.checkRecentChanges());
+        }
+        track.setRecordingChanges(true);
+        for (Section section : TrackGenerator.sections(track)) {
+            track.removeSection(section);
+            Assert.assertTrue(track.checkInvariant());
+        }
+        // the full checks do not forget the changes
+        Assert.assertTrue(track.checkRecentChanges());
+        track.setRecordingChanges(false);
+        Assert.assertTrue(track.checkRecentChanges());
+    }
+
+    /**
+     * Makes many random changes to random tracks, checking them
+     * incrementally at random intervals (so that sometimes more sections
+     * have changed than there are on the track), and checking the whole
+     * track from time to time.
+     */
+    @Test(timeout = 20000)
+    public void randomChangesTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 200; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(20), 1 + random.nextInt(30));
+            List<Section> sections = TrackGenerator.sections(track);
+            track.setRecordingChanges(true);
+            for (int change = 0; change < 200; change++) {
+                if (random.nextBoolean() && !sections.isEmpty()) {
+                    track.removeSection(sections.remove(random
+                            .nextInt(sections.size())));
+                } else {
+                    // the end-points of a new section, which may clash with
+                    // the track
+                    JunctionBranch endPoint1 = TrackGenerator.randomEndPoint(
+                            random, 20);
+                    JunctionBranch endPoint2 = TrackGenerator.randomEndPoint(
+                            random, 20);
+                    if (endPoint1.equals(endPoint2)) {
+                        continue;
+                    }
+                    Section section = new Section(1 + random.nextInt(8),
+                            endPoint1, endPoint2);
+                    try {
+                        track.addSection(section);
+                        sections.add(section);
+                    } catch (InvalidTrackException e) {
+                        // the section clashes with the track
+                    }
+                }
+                if (random.nextInt(20) == 0) {
+                    Assert.assertTrue(track.checkRecentChanges());
+                }
+                if (random.nextInt(100) == 0) {
+                    Assert.assertTrue(track.checkInvariant());
+                }
+                if (random.nextInt(100) == 0) {
+                    // stop recording for a while, or start again
+                    track.setRecordingChanges(random.nextBoolean());
+                }
+            }
+            Assert.assertTrue(track.checkRecentChanges());
+            Assert.assertTrue(track.checkInvariant());
+        }
+    }
+
+}
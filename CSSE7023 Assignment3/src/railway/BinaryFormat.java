@@ -0,0 +1,342 @@
+package railway;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Constants and helper methods shared by the readers and writers of the binary
+ * track and route file formats.
+ * </p>
+ * 
+ * <p>
+ * A binary file starts with a four-byte magic number identifying the kind of
+ * file (track or route), followed by a one-byte format version. Next comes a
+ * junction table: the number of junctions, followed by the identifier of each
+ * junction as a length-prefixed UTF-8 string. As in the text formats, where
+ * the identifiers are whitespace-separated tokens, an identifier must not be
+ * empty or contain whitespace. The records of the file (the
+ * sections of a track, or the segments of a route) follow, each preceded by
+ * the number of records. A record refers to a junction by its (zero-based)
+ * index in the junction table.
+ * </p>
+ * 
+ * <p>
+ * Every count, length, offset and junction index is stored as an unsigned
+ * variable-length integer: seven bits per byte, least significant group
+ * first, with the high bit of each byte set if another byte follows. The
+ * branches of a record's end-points are packed, two bits each, into a single
+ * flags byte.
+ * </p>
+ * 
+ * <p>
+ * A track file records each section as its length, the junction indices of
+ * its two end-points, and a flags byte holding the ordinal of the first
+ * end-point's branch in bits 0-1 and the second end-point's branch in bits
+ * 2-3.
+ * </p>
+ * 
+ * <p>
+ * A route file records each segment as the length of its section, the
+ * junction indices of the two end-points of the section, a flags byte (laid
+ * out as for a track, with bit 4 set if the second end-point of the section,
+ * rather than the first, is the departing end-point of the segment), the
+ * start-offset of the segment, and the length of the segment.
+ * </p>
+ */
+final class BinaryFormat {
+
+    // magic number at the start of a binary track file ("RTRK")
+    static final int TRACK_MAGIC = 0x5254524B;
+    // magic number at the start of a binary route file ("RRTE")
+    static final int ROUTE_MAGIC = 0x52525445;
+    // the version of the format written by this class
+    static final int VERSION = 1;
+
+    // the number of bits used to store a branch in a flags byte
+    private static final int BRANCH_BITS = 2;
+    // mask selecting a branch stored in the low bits of a flags byte
+    private static final int BRANCH_MASK = (1 << BRANCH_BITS) - 1;
+    // the bits of a flags byte that hold the branches of both end-points
+    static final int BRANCH_FLAGS = (1 << (2 * BRANCH_BITS)) - 1;
+    // the flag set in a segment's flags byte if it departs from end-point 1
+    static final int DEPARTS_FROM_SECOND = 1 << (2 * BRANCH_BITS);
+
+    // the branches, indexed by their ordinal
+    private static final Branch[] BRANCHES = Branch.values();
+
+    /**
+     * This class only provides static methods.
+     */
+    private BinaryFormat() {
+    }
+
+    /**
+     * Writes the header of a binary file with the given magic number.
+     * 
+     * @require out != null
+     * @ensure The magic number and format version are written to out.
+     */
+    static void writeHeader(DataOutputStream out, int magic)
+            throws IOException {
+        out.writeInt(magic);
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * Writes the given non-negative integer as a variable-length integer.
+     * 
+     * @require out != null && value >= 0
+     * @ensure Between one and five bytes encoding value are written to out.
+     */
+    static void writeVarInt(DataOutputStream out, int value)
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes the junction table for the given junctions, in the order that
+     * they are given.
+     * 
+     * @require out != null && junctions != null && !junctions.contains(null)
+     * @ensure The number of junctions, followed by the identifier of each
+     *         junction, is written to out.
+     */
+    static void writeJunctionTable(DataOutputStream out,
+            Collection<Junction> junctions) throws IOException {
+        writeVarInt(out, junctions.size());
+        for (Junction junction : junctions) {
+            // the encoded identifier of the junction
+            byte[] identifier = junction.getJunctionId().getBytes(
+                    StandardCharsets.UTF_8);
+            writeVarInt(out, identifier.length);
+            out.write(identifier);
+        }
+    }
+
+    /**
+     * Returns a flags byte holding the branches of the given end-points.
+     * 
+     * @require endPoint1 != null && endPoint2 != null
+     */
+    static int packBranches(JunctionBranch endPoint1,
+            JunctionBranch endPoint2) {
+        return endPoint1.getBranch().ordinal()
+                | (endPoint2.getBranch().ordinal() << BRANCH_BITS);
+    }
+
+    /**
+     * Returns the branch stored for end-point 0 or 1 in the given flags byte.
+     * 
+     * @require index == 0 || index == 1
+     * @throws FormatException
+     *             if the flags byte does not hold a valid branch for the
+     *             end-point.
+     */
+    static Branch unpackBranch(int flags, int index) throws FormatException {
+        // the ordinal of the branch
+        int ordinal = (flags >> (index * BRANCH_BITS)) & BRANCH_MASK;
+        if (ordinal >= BRANCHES.length) {
+            throw new FormatException("invalid branch: " + ordinal);
+        }
+        return BRANCHES[ordinal];
+    }
+
+    /**
+     * Reads and checks the header of a binary file.
+     * 
+     * @require in != null && kind != null
+     * @ensure Consumes the header from in.
+     * @throws FormatException
+     *             if the file does not start with the given magic number, or
+     *             if it was written using an unsupported format version. The
+     *             message of the exception uses the given kind (e.g. "track")
+     *             to describe the expected file.
+     */
+    static void readHeader(ByteBuffer in, int magic, String kind)
+            throws FormatException {
+        if (in.remaining() < 4 || in.getInt() != magic) {
+            throw new FormatException("not a binary " + kind + " file");
+        }
+        // the format version of the file
+        int version = readByte(in);
+        if (version != VERSION) {
+            throw new FormatException("unsupported binary " + kind
+                    + " file version: " + version);
+        }
+    }
+
+    /**
+     * Reads an unsigned byte.
+     * 
+     * @require in != null
+     * @throws FormatException
+     *             if the end of the input has been reached.
+     */
+    static int readByte(ByteBuffer in) throws FormatException {
+        if (!in.hasRemaining()) {
+            throw new FormatException("unexpected end of file");
+        }
+        return in.get() & 0xFF;
+    }
+
+    /**
+     * Reads a non-negative variable-length integer.
+     * 
+     * @require in != null
+     * @throws FormatException
+     *             if the end of the input is reached before the end of the
+     *             integer, or the integer does not fit in a non-negative int.
+     */
+    static int readVarInt(ByteBuffer in) throws FormatException {
+        int value = 0; // the value read so far
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte(in); // the next byte of the integer
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                // the fifth byte may only hold the top three bits of an int
+                if (shift == 28 && b > 0x07) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new FormatException("invalid variable-length integer");
+    }
+
+    /**
+     * Reads a junction table.
+     * 
+     * @require in != null
+     * @ensure Returns the junctions in the table, indexed by their position
+     *         in the table.
+     * @throws FormatException
+     *             if the table is incomplete, or a junction identifier is
+     *             empty or contains whitespace.
+     */
+    static Junction[] readJunctionTable(ByteBuffer in)
+            throws FormatException {
+        // the number of junctions in the table
+        int count = readVarInt(in);
+        // each junction takes at least two bytes, so a larger count than this
+        // must be corrupt (and should not be used to size the array)
+        if (count > in.remaining() / 2) {
+            throw new FormatException("unexpected end of file");
+        }
+        Junction[] junctions = new Junction[count];
+        for (int i = 0; i < count; i++) {
+            // the length of the encoded junction identifier
+            int length = readVarInt(in);
+            if (length == 0) {
+                throw new FormatException("empty junction identifier");
+            }
+            if (length > in.remaining()) {
+                throw new FormatException("unexpected end of file");
+            }
+            byte[] identifier = new byte[length];
+            in.get(identifier);
+            // the decoded junction identifier
+            String junctionId = new String(identifier,
+                    StandardCharsets.UTF_8);
+            if (containsWhitespace(junctionId)) {
+                throw new FormatException(
+                        "junction identifier contains whitespace: "
+                                + junctionId);
+            }
+            junctions[i] = JunctionRegistry.intern(junctionId);
+        }
+        return junctions;
+    }
+
+    /**
+     * Returns true if the given string contains a whitespace character (as
+     * defined by Character.isWhitespace), which would split it into more
+     * than one token in a text file.
+     * 
+     * @require s != null
+     */
+    private static boolean containsWhitespace(String s) {
+        for (int i = 0; i < s.length();) {
+            // the code point at index i
+            int codePoint = s.codePointAt(i);
+            if (Character.isWhitespace(codePoint)) {
+                return true;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    /**
+     * Reads a junction index and returns the junction it refers to.
+     * 
+     * @require in != null && junctions != null
+     * @throws FormatException
+     *             if the index cannot be read or is not in the table.
+     */
+    static Junction readJunction(ByteBuffer in, Junction[] junctions)
+            throws FormatException {
+        // the index of the junction in the table
+        int index = readVarInt(in);
+        if (index >= junctions.length) {
+            throw new FormatException("invalid junction index: " + index);
+        }
+        return junctions[index];
+    }
+
+    /**
+     * Returns the junctions of the given sections, in order of first
+     * appearance, each mapped to its index in that order.
+     * 
+     * @require sections != null && !sections.contains(null)
+     */
+    static Map<Junction, Integer> indexJunctions(Iterable<Section> sections) {
+        // the junctions found so far, mapped to their index
+        Map<Junction, Integer> indices = new LinkedHashMap<>();
+        for (Section section : sections) {
+            for (JunctionBranch endPoint : section.getEndPointList()) {
+                if (!indices.containsKey(endPoint.getJunction())) {
+                    indices.put(endPoint.getJunction(), indices.size());
+                }
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns true if and only if the given file starts with the given magic
+     * number.
+     * 
+     * @require fileName != null
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    static boolean hasMagic(String fileName, int magic) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(
+                fileName))) {
+            return in.readInt() == magic;
+        } catch (EOFException e) {
+            // the file is too short to hold a magic number
+            return false;
+        }
+    }
+
+    /**
+     * Returns the contents of the given file.
+     * 
+     * @require fileName != null
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    static ByteBuffer readFile(String fileName) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName)));
+    }
+
+}
@@ -0,0 +1,925 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable class that plans the shortest routes between locations on a
+ * railway track, like a RoutePlanner, using a contraction hierarchy built
+ * from the track in advance so that each search only visits a small part of
+ * the track.
+ * </p>
+ * 
+ * <p>
+ * The hierarchy is built over the same graph as a RoutePlanner searches:
+ * the state for an end-point (j, b) is that of a train that has just arrived
+ * at junction j along branch b, and there is an edge from each state to the
+ * state reached by travelling the full length of a section on a branch of j
+ * that the train may leave along, so that every path in the graph obeys the
+ * rule that a train arriving along the FACING branch of a junction leaves it
+ * along another branch, and vice versa.
+ * </p>
+ * 
+ * <p>
+ * The states are removed from the graph (contracted) one at a time, in an
+ * order that prefers those whose removal adds the fewest new edges. When a
+ * state v is contracted, then for each pair of edges u to v and v to x, an
+ * edge from u to x (a shortcut) is added, unless a search finds a path from
+ * u to x that avoids v and is no longer than them (a witness). The rank of
+ * a state is its position in that order. A shortest path between any two
+ * states can then be found among the paths that first only follow edges
+ * (including shortcuts) to states of higher rank, and then only follow
+ * edges to states of lower rank, so the search runs forwards from the start
+ * along edges to higher states and backwards from the target along edges
+ * from higher states, and the two searches meet at the highest state of the
+ * path. The shortcuts of the path are then unpacked into the edges of the
+ * graph, and so into the segments of the route.
+ * </p>
+ * 
+ * <p>
+ * A hierarchy reuses its working arrays from one search to the next, and so
+ * it must not be used by more than one thread at a time.
+ * </p>
+ */
+public class ContractionHierarchy {
+
+    // the number of states that a witness search may settle before giving
+    // up, in which case a shortcut is added even if it is not needed
+    private static final int WITNESS_LIMIT = 64;
+
+    // the snapshot of the track that the hierarchy was built for
+    private final TrackSnapshot track;
+    // the number of states (which are the end-points of the track)
+    private final int stateCount;
+
+    // the edges of the hierarchy: edge e is from state edgeSources[e] to
+    // state edgeTargets[e], and it is either an edge of the graph (if
+    // edgeFirsts[e] is -1) or a shortcut for edge edgeFirsts[e] followed by
+    // edge edgeSeconds[e]
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final int[] edgeFirsts;
+    private final int[] edgeSeconds;
+    // the number of the edges that are shortcuts
+    private final int shortcutCount;
+
+    // the edges from state s to states of higher rank are upFirst[s] to
+    // upFirst[s + 1] - 1: edge i leads to state upStates[i], has the weight
+    // upWeights[i], and is edge upEdges[i] of the hierarchy
+    private final int[] upFirst;
+    private final int[] upStates;
+    private final long[] upWeights;
+    private final int[] upEdges;
+    // the edges to state s from states of higher rank are downFirst[s] to
+    // downFirst[s + 1] - 1: edge i comes from state downStates[i], has the
+    // weight downWeights[i], and is edge downEdges[i] of the hierarchy
+    private final int[] downFirst;
+    private final int[] downStates;
+    private final long[] downWeights;
+    private final int[] downEdges;
+
+    // the distance to (or from) each state found by the forward (or
+    // backward) search, which is only meaningful for states whose stamp is
+    // the current stamp
+    private final long[] forwardDistances;
+    private final long[] backwardDistances;
+    // the edge of the hierarchy along which each state was reached by the
+    // forward (or backward) search, or -1 if it was reached directly from
+    // the start (or target)
+    private final int[] forwardEdges;
+    private final int[] backwardEdges;
+    // the search in which the distances to each state were last set
+    private final int[] forwardStamps;
+    private final int[] backwardStamps;
+    // the number of the current search
+    private int stamp;
+    // the states whose distances may still be reduced, by distance
+    private final StateHeap forwardHeap;
+    private final StateHeap backwardHeap;
+    // for each state reached directly from a target location by the
+    // backward search, the end-point of the target section that is departed
+    // from to reach the target
+    private final int[] goalDepartures;
+
+    // the start of the current search: if it is at a junction, then
+    // startJunction is that junction and startSection is -1, and otherwise
+    // startSection is its section, and startOffsets[e] is its offset from
+    // end-point e of that section
+    private int startJunction;
+    private int startSection;
+    private final int[] startOffsets = new int[2];
+    // the target of the current search: either the junction targetJunction,
+    // or (if targetJunction is -1) the location that is targetOffsets[e]
+    // from end-point e of section targetSection
+    private int targetJunction;
+    private int targetSection;
+    private final int[] targetOffsets = new int[2];
+
+    /*
+     * invariant:
+     * 
+     * track != null && stateCount == 2 * track.getSectionCount() &&
+     * 
+     * upFirst.length == downFirst.length == stateCount + 1 && every up edge
+     * leads to a state of higher rank, and every down edge comes from a
+     * state of higher rank &&
+     * 
+     * the weight of each edge of the hierarchy is the total length of the
+     * sections of the edges of the graph that it unpacks to &&
+     * 
+     * forwardHeap and backwardHeap are empty between searches
+     */
+
+    /**
+     * Builds a hierarchy for the current layout of the given track. The
+     * hierarchy is not affected by later changes to the track.
+     * 
+     * @param track
+     *            the track to plan routes on
+     * @throws NullPointerException
+     *             if track is null
+     */
+    public ContractionHierarchy(Track track) {
+        this(track.snapshot());
+    }
+
+    /**
+     * Builds a hierarchy for the track that the given snapshot was taken of.
+     * 
+     * @param track
+     *            a snapshot of the track to plan routes on
+     * @throws NullPointerException
+     *             if track is null
+     */
+    public ContractionHierarchy(TrackSnapshot track) {
+        if (track == null) {
+            throw new NullPointerException("Parameter cannot be null");
+        }
+        this.track = track;
+        stateCount = 2 * track.getSectionCount();
+
+        Contraction contraction = new Contraction(track);
+        contraction.run();
+        edgeSources = Arrays.copyOf(contraction.sources,
+                contraction.edgeCount);
+        edgeTargets = Arrays.copyOf(contraction.targets,
+                contraction.edgeCount);
+        edgeFirsts = Arrays.copyOf(contraction.firsts, contraction.edgeCount);
+        edgeSeconds = Arrays.copyOf(contraction.seconds,
+                contraction.edgeCount);
+        // the number of the edges that are shortcuts
+        int shortcuts = 0;
+        for (int e = 0; e < edgeFirsts.length; e++) {
+            if (edgeFirsts[e] != -1) {
+                shortcuts++;
+            }
+        }
+        shortcutCount = shortcuts;
+
+        // group the up and down edges by their state (a counting sort)
+        upFirst = new int[stateCount + 1];
+        downFirst = new int[stateCount + 1];
+        for (int i = 0; i < contraction.upCount; i++) {
+            upFirst[edgeSources[contraction.upList[i]] + 1]++;
+        }
+        for (int i = 0; i < contraction.downCount; i++) {
+            downFirst[edgeTargets[contraction.downList[i]] + 1]++;
+        }
+        for (int s = 0; s < stateCount; s++) {
+            upFirst[s + 1] += upFirst[s];
+            downFirst[s + 1] += downFirst[s];
+        }
+        upStates = new int[contraction.upCount];
+        upWeights = new long[contraction.upCount];
+        upEdges = new int[contraction.upCount];
+        downStates = new int[contraction.downCount];
+        downWeights = new long[contraction.downCount];
+        downEdges = new int[contraction.downCount];
+        // the next free up and down edge of each state
+        int[] nextUp = Arrays.copyOf(upFirst, stateCount);
+        int[] nextDown = Arrays.copyOf(downFirst, stateCount);
+        for (int i = 0; i < contraction.upCount; i++) {
+            // the edge of the hierarchy, and its position among the up edges
+            int edge = contraction.upList[i];
+            int position = nextUp[edgeSources[edge]]++;
+            upStates[position] = edgeTargets[edge];
+            upWeights[position] = contraction.weights[edge];
+            upEdges[position] = edge;
+        }
+        for (int i = 0; i < contraction.downCount; i++) {
+            // the edge of the hierarchy, and its position among the down
+            // edges
+            int edge = contraction.downList[i];
+            int position = nextDown[edgeTargets[edge]]++;
+            downStates[position] = edgeSources[edge];
+            downWeights[position] = contraction.weights[edge];
+            downEdges[position] = edge;
+        }
+
+        forwardDistances = new long[stateCount];
+        backwardDistances = new long[stateCount];
+        forwardEdges = new int[stateCount];
+        backwardEdges = new int[stateCount];
+        forwardStamps = new int[stateCount];
+        backwardStamps = new int[stateCount];
+        forwardHeap = new StateHeap(stateCount);
+        backwardHeap = new StateHeap(stateCount);
+        goalDepartures = new int[stateCount];
+    }
+
+    /**
+     * Returns the snapshot of the track that this hierarchy plans routes on.
+     * 
+     * @return the snapshot that the hierarchy was built for
+     */
+    public TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    /**
+     * Returns the number of shortcuts that were added to the graph when the
+     * hierarchy was built.
+     * 
+     * @return the number of shortcuts in the hierarchy
+     */
+    public int getShortcutCount() {
+        return shortcutCount;
+    }
+
+    /**
+     * <p>
+     * Returns a shortest route from the given start location to the given
+     * target junction, or null if there is no such route.
+     * </p>
+     * 
+     * <p>
+     * The route starts with the start location and ends with a location at
+     * the target junction. If the start location is at the target junction,
+     * then the route has no segments.
+     * </p>
+     * 
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the junction at which the route ends
+     * @return a shortest route on the track from start to target, or null if
+     *         there is no route from start to target
+     * @throws NullPointerException
+     *             if either parameter is null
+     * @throws IllegalArgumentException
+     *             if the start location is not on the track
+     * @see RoutePlanner#plan(Location, Junction)
+     */
+    public Route plan(Location start, Junction target) {
+        if (start == null || target == null) {
+            throw new NullPointerException("Parameters cannot be null");
+        }
+        setStart(start);
+        targetJunction = track.indexOf(target);
+        targetSection = -1;
+        if (targetJunction == -1) {
+            return null;
+        }
+        if (startSection == -1 && startJunction == targetJunction) {
+            return new Route(new ArrayList<Segment>());
+        }
+        return search();
+    }
+
+    /**
+     * <p>
+     * Returns a shortest route from the given start location to the given
+     * target location, or null if there is no such route.
+     * </p>
+     * 
+     * <p>
+     * The route starts with the start location and ends with the target
+     * location. If the start location is equivalent to the target location,
+     * then the route has no segments.
+     * </p>
+     * 
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the location at which the route ends
+     * @return a shortest route on the track from start to target, or null if
+     *         there is no route from start to target
+     * @throws NullPointerException
+     *             if either parameter is null
+     * @throws IllegalArgumentException
+     *             if the start or target location is not on the track
+     * @see RoutePlanner#plan(Location, Location)
+     */
+    public Route plan(Location start, Location target) {
+        if (start == null || target == null) {
+            throw new NullPointerException("Parameters cannot be null");
+        }
+        // the end-point that the target location is measured from
+        int endPoint = endPointOf(target);
+        if (start.equals(target)) {
+            return new Route(new ArrayList<Segment>());
+        }
+        if (target.getOffset() == 0) {
+            return plan(start, target.getEndPoint().getJunction());
+        }
+        setStart(start);
+        targetJunction = -1;
+        targetSection = endPoint >> 1;
+        targetOffsets[endPoint & 1] = target.getOffset();
+        targetOffsets[~endPoint & 1] = track.getLength(targetSection)
+                - target.getOffset();
+        return search();
+    }
+
+    /**
+     * Records the given start location for the current search.
+     * 
+     * @throws IllegalArgumentException
+     *             if the location is not on the track
+     */
+    private void setStart(Location start) {
+        // the end-point that the start location is measured from
+        int endPoint = endPointOf(start);
+        if (start.getOffset() == 0) {
+            startJunction = track.getEndPointJunction(endPoint);
+            startSection = -1;
+        } else {
+            startSection = endPoint >> 1;
+            startOffsets[endPoint & 1] = start.getOffset();
+            startOffsets[~endPoint & 1] = track.getLength(startSection)
+                    - start.getOffset();
+        }
+    }
+
+    /**
+     * Returns the number of the end-point that the given location is measured
+     * from.
+     * 
+     * @throws IllegalArgumentException
+     *             if the location is not on the track
+     */
+    private int endPointOf(Location location) {
+        // the number of the section of the location
+        int section = track.indexOf(location.getSection());
+        if (section == -1) {
+            throw new IllegalArgumentException("The location " + location
+                    + " is not on the track.");
+        }
+        return 2 * section + (track.getSection(section).getEndPoint(0).equals(
+                location.getEndPoint()) ? 0 : 1);
+    }
+
+    /**
+     * Searches from the start of the current search to its target, and
+     * returns a shortest route between them, or null if there is none.
+     * 
+     * @require the start and target of the current search have been set, and
+     *          the start is not the target
+     */
+    private Route search() {
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(forwardStamps, 0);
+            Arrays.fill(backwardStamps, 0);
+            stamp = 0;
+        }
+        stamp++;
+
+        // the length of the shortest route found that stays on one section,
+        // the end-point that it departs from, and the offset it starts at
+        long direct = Long.MAX_VALUE;
+        int directDeparture = -1;
+        int directOffset = 0;
+
+        // enter the forward search from the start location
+        if (startSection == -1) {
+            // the end of the slots of the start junction
+            int end = track.getFirstSlot(startJunction + 1);
+            for (int slot = track.getFirstSlot(startJunction); slot < end;
+                    slot++) {
+                // the end-point that the junction is left along
+                int departure = track.getSlotEndPoint(slot);
+                relaxForward(departure ^ 1, -1, track
+                        .getLength(departure >> 1));
+                if (departure >> 1 == targetSection
+                        && targetOffsets[departure & 1] < direct) {
+                    direct = targetOffsets[departure & 1];
+                    directDeparture = departure;
+                    directOffset = 0;
+                }
+            }
+        } else {
+            for (int e = 0; e < 2; e++) {
+                relaxForward(2 * startSection + (e ^ 1), -1, track
+                        .getLength(startSection) - startOffsets[e]);
+            }
+            if (startSection == targetSection) {
+                // the end-point that the target lies away from the start in
+                // the direction of
+                int e = startOffsets[0] < targetOffsets[0] ? 0 : 1;
+                direct = targetOffsets[e] - startOffsets[e];
+                directDeparture = 2 * startSection + e;
+                directOffset = startOffsets[e];
+            }
+        }
+
+        // enter the backward search from the target
+        if (targetJunction != -1) {
+            // the end of the slots of the target junction
+            int end = track.getFirstSlot(targetJunction + 1);
+            for (int slot = track.getFirstSlot(targetJunction); slot < end;
+                    slot++) {
+                relaxBackward(track.getSlotEndPoint(slot), -1, 0);
+            }
+        } else {
+            for (int e = 0; e < 2; e++) {
+                // the end-point of the target section departed from
+                int departure = 2 * targetSection + e;
+                // the junction of the end-point, and the end of its slots
+                int junction = track.getEndPointJunction(departure);
+                int end = track.getFirstSlot(junction + 1);
+                for (int slot = track.getFirstSlot(junction); slot < end;
+                        slot++) {
+                    // the state that may depart along the end-point
+                    int state = track.getSlotEndPoint(slot);
+                    if ((track.getEndPointBranch(state) == Branch.FACING)
+                            != (track.getEndPointBranch(departure)
+                                    == Branch.FACING)
+                            && relaxBackward(state, -1, targetOffsets[e])) {
+                        goalDepartures[state] = departure;
+                    }
+                }
+            }
+        }
+
+        // the length of the shortest route found through the graph, and the
+        // state at which the searches met on it
+        long best = direct;
+        int meeting = -1;
+        while (!forwardHeap.isEmpty() || !backwardHeap.isEmpty()) {
+            if (!forwardHeap.isEmpty() && (backwardHeap.isEmpty()
+                    || forwardHeap.minPriority() <= backwardHeap
+                            .minPriority())) {
+                if (forwardHeap.minPriority() >= best) {
+                    forwardHeap.clear();
+                    continue;
+                }
+                // the state with the least distance from the start
+                int state = forwardHeap.poll();
+                if (backwardStamps[state] == stamp && forwardDistances[state]
+                        + backwardDistances[state] < best) {
+                    best = forwardDistances[state] + backwardDistances[state];
+                    meeting = state;
+                }
+                for (int i = upFirst[state]; i < upFirst[state + 1]; i++) {
+                    relaxForward(upStates[i], upEdges[i],
+                            forwardDistances[state] + upWeights[i]);
+                }
+            } else {
+                if (backwardHeap.minPriority() >= best) {
+                    backwardHeap.clear();
+                    continue;
+                }
+                // the state with the least distance to the target
+                int state = backwardHeap.poll();
+                if (forwardStamps[state] == stamp && forwardDistances[state]
+                        + backwardDistances[state] < best) {
+                    best = forwardDistances[state] + backwardDistances[state];
+                    meeting = state;
+                }
+                for (int i = downFirst[state]; i < downFirst[state + 1];
+                        i++) {
+                    relaxBackward(downStates[i], downEdges[i],
+                            backwardDistances[state] + downWeights[i]);
+                }
+            }
+        }
+
+        if (meeting != -1) {
+            return route(meeting);
+        } else if (directDeparture != -1) {
+            // the section of the route
+            Section section = track.getSection(directDeparture >> 1);
+            return new Route(Collections.singletonList(new Segment(section,
+                    section.getEndPoint(directDeparture & 1), directOffset,
+                    targetOffsets[directDeparture & 1])));
+        }
+        return null;
+    }
+
+    /**
+     * Sets the distance from the start to the given state to the given
+     * distance, and records that it was reached along the given edge of the
+     * hierarchy, if that distance is less than the least distance found so
+     * far.
+     */
+    private void relaxForward(int state, int edge, long distance) {
+        if (forwardStamps[state] != stamp
+                || distance < forwardDistances[state]) {
+            forwardStamps[state] = stamp;
+            forwardDistances[state] = distance;
+            forwardEdges[state] = edge;
+            forwardHeap.insertOrDecrease(state, distance);
+        }
+    }
+
+    /**
+     * Sets the distance from the given state to the target to the given
+     * distance, and records that it leads along the given edge of the
+     * hierarchy, if that distance is less than the least distance found so
+     * far. Returns true iff the distance was set.
+     */
+    private boolean relaxBackward(int state, int edge, long distance) {
+        if (backwardStamps[state] != stamp
+                || distance < backwardDistances[state]) {
+            backwardStamps[state] = stamp;
+            backwardDistances[state] = distance;
+            backwardEdges[state] = edge;
+            backwardHeap.insertOrDecrease(state, distance);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the route of the current search that passes through the given
+     * state, at which the forward and backward searches met.
+     */
+    private Route route(int meeting) {
+        // the edges of the hierarchy on the route from the start to the
+        // meeting state, from last to first
+        List<Integer> edges = new ArrayList<>();
+        // the state reached directly from the start
+        int first = meeting;
+        while (forwardEdges[first] != -1) {
+            edges.add(forwardEdges[first]);
+            first = edgeSources[forwardEdges[first]];
+        }
+        Collections.reverse(edges);
+        // the state that the target is reached directly from
+        int last = meeting;
+        while (backwardEdges[last] != -1) {
+            edges.add(backwardEdges[last]);
+            last = edgeTargets[backwardEdges[last]];
+        }
+
+        // the segments of the route
+        List<Segment> segments = new ArrayList<>();
+        Section section = track.getSection(first >> 1);
+        segments.add(new Segment(section, section.getEndPoint(~first & 1),
+                startSection == -1 ? 0 : startOffsets[~first & 1], section
+                        .getLength()));
+        // the edges of the hierarchy still to be unpacked, with the next one
+        // at the top
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int edge : edges) {
+            stack.push(edge);
+            while (!stack.isEmpty()) {
+                // the edge being unpacked
+                int next = stack.pop();
+                if (edgeFirsts[next] != -1) {
+                    stack.push(edgeSeconds[next]);
+                    stack.push(edgeFirsts[next]);
+                } else {
+                    // the state that the edge of the graph leads to
+                    int state = edgeTargets[next];
+                    section = track.getSection(state >> 1);
+                    segments.add(new Segment(section, section.getEndPoint(
+                            ~state & 1), 0, section.getLength()));
+                }
+            }
+        }
+        if (targetJunction == -1) {
+            // the end-point of the target section departed from
+            int departure = goalDepartures[last];
+            section = track.getSection(targetSection);
+            segments.add(new Segment(section, section.getEndPoint(departure
+                    & 1), 0, targetOffsets[departure & 1]));
+        }
+        return new Route(segments);
+    }
+
+    /**
+     * <p>
+     * The contraction of the graph of a snapshot, which finds the edges of
+     * the hierarchy.
+     * </p>
+     * 
+     * <p>
+     * The edges that have not been removed from the graph (the live edges)
+     * are kept in a list for each state that has not been contracted, of
+     * those that leave it and those that enter it.
+     * </p>
+     */
+    private static final class Contraction {
+
+        // the snapshot of the track whose graph is contracted
+        private final TrackSnapshot track;
+        // the number of states of the graph
+        private final int stateCount;
+
+        // the edges found so far: edge e is from sources[e] to targets[e],
+        // with the weight weights[e], and is an edge of the graph if
+        // firsts[e] is -1, or otherwise a shortcut for firsts[e] followed by
+        // seconds[e]
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private long[] weights = new long[16];
+        private int[] firsts = new int[16];
+        private int[] seconds = new int[16];
+        private int edgeCount;
+
+        // the live edges leaving and entering each state, which are the
+        // first outCounts[s] (and inCounts[s]) elements of the lists
+        private final int[][] outEdges;
+        private final int[] outCounts;
+        private final int[][] inEdges;
+        private final int[] inCounts;
+        // whether each state has been contracted
+        private final boolean[] contracted;
+        // the number of neighbours of each state that have been contracted
+        private final int[] contractedNeighbours;
+
+        // the edges of the hierarchy that lead up from the state they leave,
+        // and down to the state they enter, in the order they were found
+        private int[] upList = new int[16];
+        private int upCount;
+        private int[] downList = new int[16];
+        private int downCount;
+
+        // the working arrays of the witness searches
+        private final long[] witnessDistances;
+        private final int[] witnessStamps;
+        private int witnessStamp;
+        private final StateHeap witnessHeap;
+
+        /**
+         * Creates the graph of the given snapshot, ready to be contracted.
+         * 
+         * @require track != null
+         */
+        private Contraction(TrackSnapshot track) {
+            this.track = track;
+            stateCount = 2 * track.getSectionCount();
+            outEdges = new int[stateCount][];
+            outCounts = new int[stateCount];
+            inEdges = new int[stateCount][];
+            inCounts = new int[stateCount];
+            for (int s = 0; s < stateCount; s++) {
+                outEdges[s] = new int[2];
+                inEdges[s] = new int[2];
+            }
+            contracted = new boolean[stateCount];
+            contractedNeighbours = new int[stateCount];
+            witnessDistances = new long[stateCount];
+            witnessStamps = new int[stateCount];
+            witnessHeap = new StateHeap(stateCount);
+
+            for (int state = 0; state < stateCount; state++) {
+                // the junction and branch that the state arrives at, and the
+                // end of the slots of the junction
+                int junction = track.getEndPointJunction(state);
+                Branch branch = track.getEndPointBranch(state);
+                int end = track.getFirstSlot(junction + 1);
+                for (int slot = track.getFirstSlot(junction); slot < end;
+                        slot++) {
+                    // the end-point that the junction may be left along
+                    int departure = track.getSlotEndPoint(slot);
+                    if ((branch == Branch.FACING) != (track
+                            .getEndPointBranch(departure) == Branch.FACING)
+                            && (departure ^ 1) != state) {
+                        addEdge(state, departure ^ 1, track
+                                .getLength(departure >> 1), -1, -1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Contracts every state of the graph, in order of their priority
+         * (see priority), updating the priority of each state lazily when it
+         * is about to be contracted.
+         */
+        private void run() {
+            // the states that have not been contracted, by priority
+            StateHeap queue = new StateHeap(stateCount);
+            for (int state = 0; state < stateCount; state++) {
+                queue.insertOrDecrease(state, priority(state));
+            }
+            while (!queue.isEmpty()) {
+                // the state with the least (possibly out of date) priority
+                int state = queue.poll();
+                // the current priority of the state
+                long priority = priority(state);
+                if (!queue.isEmpty() && priority > queue.minPriority()) {
+                    queue.insertOrDecrease(state, priority);
+                } else {
+                    contract(state);
+                }
+            }
+        }
+
+        /**
+         * Returns the priority of the given state, which is the number of
+         * shortcuts that contracting it would add, less the number of live
+         * edges that it would remove, plus the number of its neighbours that
+         * have been contracted (so that the contracted states are spread
+         * over the graph).
+         */
+        private long priority(int state) {
+            return shortcuts(state, false) - outCounts[state]
+                    - inCounts[state] + contractedNeighbours[state];
+        }
+
+        /**
+         * Contracts the given state: adds the shortcuts that are needed to
+         * keep the distances between the other states, records its live
+         * edges as edges of the hierarchy, and removes them from the graph.
+         */
+        private void contract(int state) {
+            shortcuts(state, true);
+            contracted[state] = true;
+            for (int i = 0; i < outCounts[state]; i++) {
+                // the live edge from the state
+                int edge = outEdges[state][i];
+                if (upCount == upList.length) {
+                    upList = Arrays.copyOf(upList, 2 * upCount);
+                }
+                upList[upCount++] = edge;
+                contractedNeighbours[targets[edge]]++;
+                removeDead(targets[edge]);
+            }
+            for (int i = 0; i < inCounts[state]; i++) {
+                // the live edge to the state
+                int edge = inEdges[state][i];
+                if (downCount == downList.length) {
+                    downList = Arrays.copyOf(downList, 2 * downCount);
+                }
+                downList[downCount++] = edge;
+                contractedNeighbours[sources[edge]]++;
+                removeDead(sources[edge]);
+            }
+            outEdges[state] = null;
+            inEdges[state] = null;
+        }
+
+        /**
+         * Returns the number of shortcuts needed to contract the given state,
+         * and adds them to the graph if add is true.
+         */
+        private int shortcuts(int state, boolean add) {
+            // the number of shortcuts needed
+            int count = 0;
+            for (int i = 0; i < inCounts[state]; i++) {
+                // the live edge to the state, and the state it comes from
+                int in = inEdges[state][i];
+                int source = sources[in];
+                // the greatest length of a path through the state from there
+                long limit = -1;
+                for (int j = 0; j < outCounts[state]; j++) {
+                    // the live edge from the state
+                    int out = outEdges[state][j];
+                    if (targets[out] != source) {
+                        limit = Math.max(limit, weights[in] + weights[out]);
+                    }
+                }
+                if (limit == -1) {
+                    continue;
+                }
+                findWitnesses(source, state, limit);
+                for (int j = 0; j < outCounts[state]; j++) {
+                    // the live edge from the state, and the state it leads to
+                    int out = outEdges[state][j];
+                    int target = targets[out];
+                    if (target != source && (witnessStamps[target]
+                            != witnessStamp || witnessDistances[target]
+                                    > weights[in] + weights[out])) {
+                        count++;
+                        if (add) {
+                            addShortcut(source, target, weights[in]
+                                    + weights[out], in, out);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Searches from the given source state for paths that avoid the
+         * given state and are no longer than the given limit, settling at
+         * most WITNESS_LIMIT states. Afterwards, the length of a path from
+         * the source to each state reached is in witnessDistances.
+         */
+        private void findWitnesses(int source, int avoided, long limit) {
+            witnessStamp++;
+            witnessStamps[source] = witnessStamp;
+            witnessDistances[source] = 0;
+            witnessHeap.insertOrDecrease(source, 0);
+            // the number of states settled
+            int settled = 0;
+            while (!witnessHeap.isEmpty()) {
+                // the state with the least distance
+                int state = witnessHeap.poll();
+                if (witnessDistances[state] > limit
+                        || settled++ == WITNESS_LIMIT) {
+                    break;
+                }
+                for (int i = 0; i < outCounts[state]; i++) {
+                    // the live edge from the state, and the state it leads to
+                    int edge = outEdges[state][i];
+                    int target = targets[edge];
+                    // the length of the path to the target along the edge
+                    long distance = witnessDistances[state] + weights[edge];
+                    if (target != avoided && (witnessStamps[target]
+                            != witnessStamp || distance
+                                    < witnessDistances[target])) {
+                        witnessStamps[target] = witnessStamp;
+                        witnessDistances[target] = distance;
+                        witnessHeap.insertOrDecrease(target, distance);
+                    }
+                }
+            }
+            witnessHeap.clear();
+        }
+
+        /**
+         * Adds a shortcut from source to target with the given weight, made
+         * of the given edges, or, if there is already a live edge between
+         * them, replaces it with the shortcut if the shortcut is shorter.
+         */
+        private void addShortcut(int source, int target, long weight,
+                int first, int second) {
+            for (int i = 0; i < outCounts[source]; i++) {
+                // the live edge from the source
+                int edge = outEdges[source][i];
+                if (targets[edge] == target) {
+                    if (weight < weights[edge]) {
+                        weights[edge] = weight;
+                        firsts[edge] = first;
+                        seconds[edge] = second;
+                    }
+                    return;
+                }
+            }
+            addEdge(source, target, weight, first, second);
+        }
+
+        /**
+         * Adds a live edge from source to target with the given weight, which
+         * is either an edge of the graph (if first is -1) or a shortcut for
+         * the given edges.
+         */
+        private void addEdge(int source, int target, long weight, int first,
+                int second) {
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, 2 * edgeCount);
+                targets = Arrays.copyOf(targets, 2 * edgeCount);
+                weights = Arrays.copyOf(weights, 2 * edgeCount);
+                firsts = Arrays.copyOf(firsts, 2 * edgeCount);
+                seconds = Arrays.copyOf(seconds, 2 * edgeCount);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            weights[edgeCount] = weight;
+            firsts[edgeCount] = first;
+            seconds[edgeCount] = second;
+            if (outCounts[source] == outEdges[source].length) {
+                outEdges[source] = Arrays.copyOf(outEdges[source],
+                        2 * outCounts[source]);
+            }
+            outEdges[source][outCounts[source]++] = edgeCount;
+            if (inCounts[target] == inEdges[target].length) {
+                inEdges[target] = Arrays.copyOf(inEdges[target],
+                        2 * inCounts[target]);
+            }
+            inEdges[target][inCounts[target]++] = edgeCount;
+            edgeCount++;
+        }
+
+        /**
+         * Removes the edges to and from contracted states from the lists of
+         * live edges of the given state, if it has not been contracted.
+         */
+        private void removeDead(int state) {
+            if (contracted[state]) {
+                return;
+            }
+            // the number of live edges kept
+            int kept = 0;
+            for (int i = 0; i < outCounts[state]; i++) {
+                if (!contracted[targets[outEdges[state][i]]]) {
+                    outEdges[state][kept++] = outEdges[state][i];
+                }
+            }
+            outCounts[state] = kept;
+            kept = 0;
+            for (int i = 0; i < inCounts[state]; i++) {
+                if (!contracted[sources[inEdges[state][i]]]) {
+                    inEdges[state][kept++] = inEdges[state][i];
+                }
+            }
+            inCounts[state] = kept;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package railway;
+
+/**
+ * <p>
+ * A source of the travel distances between the junctions of a railway track.
+ * </p>
+ * 
+ * <p>
+ * The travel distance from one junction to another is the length of a
+ * shortest route that starts at the first junction (leaving it along any of
+ * its branches) and ends at the second (arriving along any of its branches).
+ * Since the reverse of a route is also a route, the distance from one
+ * junction to another is the same as the distance back. An oracle may only
+ * give an approximation of the distances (see isExact).
+ * </p>
+ * 
+ * <p>
+ * The junctions are identified either by themselves, or by their numbers in
+ * the snapshot of the track that the oracle was built from (which is much
+ * faster).
+ * </p>
+ */
+public interface DistanceOracle {
+
+    /**
+     * Returns the snapshot of the track that this oracle gives the distances
+     * between the junctions of.
+     * 
+     * @return the snapshot of the track
+     */
+    TrackSnapshot getSnapshot();
+
+    /**
+     * Returns true if this oracle gives the exact travel distance between
+     * every pair of junctions, and false if it only gives approximations.
+     * 
+     * @return true iff the distances given by this oracle are exact
+     */
+    boolean isExact();
+
+    /**
+     * Returns the travel distance between the junctions with the given
+     * numbers (in getSnapshot()), or -1 if no route between them is known.
+     * 
+     * @param from
+     *            the number of the junction that the route starts at
+     * @param to
+     *            the number of the junction that the route ends at
+     * @return the (exact or approximate) length of a shortest route from one
+     *         junction to the other, or -1 if there is no known route
+     * @throws IndexOutOfBoundsException
+     *             if either number is negative, or not less than
+     *             getSnapshot().getJunctionCount()
+     */
+    long distance(int from, int to);
+
+    /**
+     * Returns the travel distance between the given junctions, or -1 if no
+     * route between them is known.
+     * 
+     * @param from
+     *            the junction that the route starts at
+     * @param to
+     *            the junction that the route ends at
+     * @return the (exact or approximate) length of a shortest route from one
+     *         junction to the other, or -1 if there is no known route
+     * @throws NullPointerException
+     *             if either junction is null
+     * @throws IllegalArgumentException
+     *             if either junction is not on the track
+     */
+    long distance(Junction from, Junction to);
+
+}
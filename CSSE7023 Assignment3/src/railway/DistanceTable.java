@@ -0,0 +1,329 @@
+package railway;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable table of the exact travel distances between every pair of
+ * junctions of a railway track (see DistanceOracle).
+ * </p>
+ * 
+ * <p>
+ * The table is built by a search from each junction of the track, and holds
+ * one int for each pair of junctions, so it is only suitable for small
+ * tracks: a track of 10,000 junctions needs a table of 400MB. Larger tracks
+ * should use LandmarkDistances instead.
+ * </p>
+ * 
+ * <p>
+ * A table can be written to a binary file, and read back for the same
+ * track. The file starts with a four-byte magic number ("RDST") and a
+ * one-byte format version, followed by a junction table (as described by
+ * the BinaryFormat class), the number of sections of the track, and an
+ * eight-byte fingerprint of the layout of the track. The distances follow,
+ * as four-byte big-endian integers in row order (the distance from junction
+ * i to junction j being at position i * n + j, where n is the number of
+ * junctions and the junctions are numbered in the order of the junction
+ * table), with -1 for pairs of junctions that have no route between them.
+ * </p>
+ */
+public final class DistanceTable implements DistanceOracle {
+
+    /**
+     * The largest number of junctions of a track that a table can be built
+     * for.
+     */
+    public static final int MAX_JUNCTIONS = 16_384;
+
+    // magic number at the start of a distance table file ("RDST")
+    private static final int MAGIC = 0x52445354;
+
+    // the snapshot of the track that the table was built from
+    private final TrackSnapshot track;
+    // the number of junctions of the track
+    private final int junctionCount;
+    // the distance from junction i to junction j, at position i *
+    // junctionCount + j, or -1 if there is no route between them
+    private final int[] distances;
+
+    /*
+     * invariant:
+     * 
+     * track != null && junctionCount == track.getJunctionCount() &&
+     * distances.length == junctionCount * junctionCount &&
+     * 
+     * each element of distances is the length of a shortest route between
+     * the junctions, or -1 if there is no route between them
+     */
+
+    /**
+     * Builds the table of distances between the junctions of the current
+     * layout of the given track.
+     * 
+     * @param track
+     *            the track to build the table for
+     * @throws NullPointerException
+     *             if track is null
+     * @throws IllegalArgumentException
+     *             if the track has more than MAX_JUNCTIONS junctions, or the
+     *             total length of its sections does not fit in an int
+     */
+    public DistanceTable(Track track) {
+        this(track.snapshot());
+    }
+
+    /**
+     * Builds the table of distances between the junctions of the track that
+     * the given snapshot was taken of.
+     * 
+     * @param track
+     *            a snapshot of the track to build the table for
+     * @throws NullPointerException
+     *             if track is null
+     * @throws IllegalArgumentException
+     *             if the track has more than MAX_JUNCTIONS junctions, or the
+     *             total length of its sections does not fit in an int
+     */
+    public DistanceTable(TrackSnapshot track) {
+        this(track, new int[checkSize(track)]);
+        RoutePlanner planner = new RoutePlanner(track);
+        // the distances from the junction being searched from
+        long[] lengths = new long[junctionCount];
+        for (int from = 0; from < junctionCount; from++) {
+            planner.findLengths(from, null, lengths);
+            for (int to = 0; to < junctionCount; to++) {
+                distances[from * junctionCount + to] = (int) lengths[to];
+            }
+        }
+    }
+
+    /**
+     * Creates a table of the given distances between the junctions of the
+     * given snapshot.
+     * 
+     * @require track != null && distances.length ==
+     *          track.getJunctionCount() * track.getJunctionCount() && the
+     *          distances are those of the track
+     */
+    private DistanceTable(TrackSnapshot track, int[] distances) {
+        this.track = track;
+        this.junctionCount = track.getJunctionCount();
+        this.distances = distances;
+    }
+
+    /**
+     * Returns the number of distances in a table for the given snapshot.
+     * 
+     * @throws IllegalArgumentException
+     *             if the track is too large for a table
+     */
+    private static int checkSize(TrackSnapshot track) {
+        if (track.getJunctionCount() > MAX_JUNCTIONS) {
+            throw new IllegalArgumentException("A distance table cannot be "
+                    + "built for more than " + MAX_JUNCTIONS + " junctions.");
+        }
+        // the total length of the sections of the track
+        long total = 0;
+        for (int s = 0; s < track.getSectionCount(); s++) {
+            total += track.getLength(s);
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The track is too long for "
+                    + "its distances to be held in a table.");
+        }
+        return track.getJunctionCount() * track.getJunctionCount();
+    }
+
+    @Override
+    public TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    @Override
+    public long distance(int from, int to) {
+        if (to < 0 || to >= junctionCount) {
+            throw new IndexOutOfBoundsException("No junction numbered " + to);
+        }
+        return distances[from * junctionCount + to];
+    }
+
+    @Override
+    public long distance(Junction from, Junction to) {
+        return distance(junctionNumber(track, from), junctionNumber(track,
+                to));
+    }
+
+    /**
+     * Returns the number of the given junction in the given snapshot.
+     * 
+     * @require track != null
+     * @throws NullPointerException
+     *             if junction is null
+     * @throws IllegalArgumentException
+     *             if the junction is not on the track
+     */
+    static int junctionNumber(TrackSnapshot track, Junction junction) {
+        // the number of the junction
+        int number = track.indexOf(junction);
+        if (number == -1) {
+            throw new IllegalArgumentException("The junction " + junction
+                    + " is not on the track.");
+        }
+        return number;
+    }
+
+    /**
+     * Writes this table to a binary file named fileName, in the format read
+     * by the read method.
+     * 
+     * @param fileName
+     *            the file to write to
+     * @throws NullPointerException
+     *             if fileName is null
+     * @throws IOException
+     *             if there is an error writing to the file
+     */
+    public void write(String fileName) throws IOException {
+        // the junctions of the track, in order of their number
+        Junction[] junctions = new Junction[junctionCount];
+        for (int j = 0; j < junctionCount; j++) {
+            junctions[j] = track.getJunction(j);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            BinaryFormat.writeHeader(out, MAGIC);
+            BinaryFormat.writeJunctionTable(out, Arrays.asList(junctions));
+            BinaryFormat.writeVarInt(out, track.getSectionCount());
+            out.writeLong(fingerprint(track));
+            // the distances are written a row at a time, through a buffer
+            ByteBuffer row = ByteBuffer.allocate(4 * junctionCount);
+            for (int from = 0; from < junctionCount; from++) {
+                row.clear();
+                row.asIntBuffer().put(distances, from * junctionCount,
+                        junctionCount);
+                out.write(row.array());
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by the write method from the binary file named
+     * fileName, for the current layout of the given track.
+     * 
+     * @param fileName
+     *            the file to read from
+     * @param track
+     *            the track that the table was built for
+     * @return the table read from the file
+     * @throws NullPointerException
+     *             if either parameter is null
+     * @throws IOException
+     *             if there is an error reading the file
+     * @throws FormatException
+     *             if the file is not a distance table, or it was not built
+     *             for the current layout of the track
+     */
+    public static DistanceTable read(String fileName, Track track)
+            throws IOException, FormatException {
+        TrackSnapshot snapshot = track.snapshot();
+        ByteBuffer in = BinaryFormat.readFile(fileName);
+        BinaryFormat.readHeader(in, MAGIC, "distance table");
+        // the junctions of the table, in the order of the file
+        Junction[] junctions = BinaryFormat.readJunctionTable(in);
+        int junctionCount = junctions.length;
+        if (junctionCount != snapshot.getJunctionCount()
+                || BinaryFormat.readVarInt(in) != snapshot.getSectionCount()
+                || in.remaining() < 8
+                || in.getLong() != fingerprint(snapshot)) {
+            throw new FormatException("the distance table was not built for "
+                    + "this track");
+        }
+        // the number in the snapshot of each junction of the file
+        int[] numbers = new int[junctionCount];
+        for (int i = 0; i < junctionCount; i++) {
+            numbers[i] = snapshot.indexOf(junctions[i]);
+            if (numbers[i] == -1) {
+                throw new FormatException("the distance table was not built "
+                        + "for this track");
+            }
+        }
+        if (in.remaining() != 4L * junctionCount * junctionCount) {
+            throw new FormatException("the distance table has the wrong size");
+        }
+
+        int[] distances = new int[junctionCount * junctionCount];
+        // the distances from the junction being read
+        int[] row = new int[junctionCount];
+        IntBuffer values = in.asIntBuffer();
+        for (int i = 0; i < junctionCount; i++) {
+            values.get(row);
+            // the first distance of the junction's row in the table
+            int first = numbers[i] * junctionCount;
+            for (int j = 0; j < junctionCount; j++) {
+                if (row[j] < -1) {
+                    throw new FormatException("invalid distance: " + row[j]);
+                }
+                distances[first + numbers[j]] = row[j];
+            }
+        }
+        return new DistanceTable(snapshot, distances);
+    }
+
+    /**
+     * Returns a fingerprint of the layout of the track that the given
+     * snapshot was taken of, which does not depend on the order in which the
+     * junctions or sections are numbered, so that it is the same for the same
+     * layout in different runs of the program.
+     * 
+     * @require track != null
+     */
+    private static long fingerprint(TrackSnapshot track) {
+        long result = 0; // the sum of the fingerprints of the sections
+        for (Section section : track) {
+            // the fingerprints of the end-points of the section, in order
+            long endPoint1 = fingerprint(section.getEndPoint(0));
+            long endPoint2 = fingerprint(section.getEndPoint(1));
+            long low = Math.min(endPoint1, endPoint2);
+            long high = Math.max(endPoint1, endPoint2);
+            result += mix(mix(31 * mix(low) + high) + section.getLength());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a fingerprint of the given end-point, from the identifier of
+     * its junction and its branch.
+     * 
+     * @require endPoint != null
+     */
+    private static long fingerprint(JunctionBranch endPoint) {
+        // the hash of the identifier of the junction
+        long hash = 0;
+        for (byte b : endPoint.getJunction().getJunctionId().getBytes(
+                StandardCharsets.UTF_8)) {
+            hash = 31 * hash + b;
+        }
+        return mix(hash) * 3 + endPoint.getBranch().ordinal();
+    }
+
+    /**
+     * Mixes the bits of the given value (using the finaliser of MurmurHash3).
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+}
@@ -0,0 +1,88 @@
+package railway;
+
+import java.io.*;
+
+/**
+ * <p>
+ * A command-line tool that converts track and route files between the text
+ * format and the binary format.
+ * </p>
+ * 
+ * <p>
+ * Usage: java railway.FileConverter (track|route) inputFile outputFile
+ * </p>
+ * 
+ * <p>
+ * If the input file is a binary file, then it is converted to a text file,
+ * otherwise it is read as a text file and converted to a binary file.
+ * </p>
+ */
+public class FileConverter {
+
+    /**
+     * Converts the file given by the command-line arguments.
+     */
+    public static void main(String[] args) {
+        if (args.length != 3
+                || !(args[0].equals("track") || args[0].equals("route"))) {
+            System.err.println("Usage: java railway.FileConverter "
+                    + "(track|route) inputFile outputFile");
+            System.exit(2);
+        }
+        try {
+            if (args[0].equals("track")) {
+                convertTrack(args[1], args[2]);
+            } else {
+                convertRoute(args[1], args[2]);
+            }
+        } catch (IOException | FormatException e) {
+            System.err.println(args[1] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Converts the track file named inputFile to the other format, and writes
+     * the result to the file named outputFile.
+     * 
+     * @require inputFile != null && outputFile != null
+     * @ensure If inputFile is a binary track file, then outputFile is a text
+     *         file describing the same track, otherwise outputFile is a binary
+     *         file describing the track read from the text file inputFile.
+     * @throws IOException
+     *             if there is an error reading or writing a file
+     * @throws FormatException
+     *             if there is an error with the format of the input file
+     */
+    public static void convertTrack(String inputFile, String outputFile)
+            throws IOException, FormatException {
+        if (BinaryFormat.hasMagic(inputFile, BinaryFormat.TRACK_MAGIC)) {
+            TrackWriter.write(TrackReader.readBinary(inputFile), outputFile);
+        } else {
+            TrackWriter.writeBinary(TrackReader.read(inputFile), outputFile);
+        }
+    }
+
+    /**
+     * Converts the route file named inputFile to the other format, and writes
+     * the result to the file named outputFile.
+     * 
+     * @require inputFile != null && outputFile != null
+     * @ensure If inputFile is a binary route file, then outputFile is a text
+     *         file describing the same route, otherwise outputFile is a binary
+     *         file describing the route read from the text file inputFile.
+     * @throws IOException
+     *             if there is an error reading or writing a file
+     * @throws FormatException
+     *             if there is an error with the format of the input file
+     */
+    public static void convertRoute(String inputFile, String outputFile)
+            throws IOException, FormatException {
+        if (BinaryFormat.hasMagic(inputFile, BinaryFormat.ROUTE_MAGIC)) {
+            RouteWriter.write(RouteReader.readBinary(inputFile), outputFile);
+        } else {
+            RouteWriter.writeBinary(RouteReader.read(inputFile), outputFile);
+        }
+    }
+
+}
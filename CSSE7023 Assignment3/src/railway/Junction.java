@@ -11,30 +11,74 @@ package railway;
  * can have at most one branch of each type. (I.e. a junction may have not have
  * two branches of type Branch.FACING.)
  * </p>
+ * 
+ * <p>
+ * Each junction identifier is registered with the JunctionRegistry, which
+ * gives it a dense integer index. Junctions are compared and hashed using
+ * their index, rather than their identifier.
+ * </p>
  */
 public class Junction {
 
+    // the branches, indexed by their ordinal
+    private static final Branch[] BRANCHES = Branch.values();
+
     // the identifier of this junction
-    private String junctionIdentifier;
+    private final String junctionIdentifier;
+    // the index of the identifier in the JunctionRegistry
+    private final int index;
+    // the hash code of this junction, derived from its index
+    private final int hash;
+    // the end-points of the canonical junction, indexed by the ordinal of
+    // their branch (shared by all junctions with the same identifier)
+    private final JunctionBranch[] endPoints;
 
     /*
-     * invariant: junctionIdentifier != null
+     * invariant: junctionIdentifier != null && index >= 0 &&
+     * 
+     * JunctionRegistry.get(index) has identifier junctionIdentifier &&
+     * 
+     * hash == hash(index) &&
+     * 
+     * endPoints.length == the number of branches, and for each branch b,
+     * endPoints[b.ordinal()] is the end-point (JunctionRegistry.get(index), b)
      */
 
     /**
      * Creates a new junction with the given identifier.
      * 
+     * (The identifier is registered with the JunctionRegistry, if it has not
+     * been already. Use JunctionRegistry.intern to obtain the canonical
+     * instance for an identifier, rather than a new instance.)
+     * 
      * @param junctionIdentifier
      *            the identifier of the junction
      * @throws NullPointerException
      *             if junctionIdentifier is null
      */
     public Junction(String junctionIdentifier) throws NullPointerException {
-        if (junctionIdentifier == null) {
-            throw new NullPointerException(
-                    "The parameter junctionIdentifier cannot be null.");
-        }
+        // the canonical junction with the given identifier
+        Junction canonical = JunctionRegistry.intern(junctionIdentifier);
+        this.junctionIdentifier = canonical.junctionIdentifier;
+        this.index = canonical.index;
+        this.hash = canonical.hash;
+        this.endPoints = canonical.endPoints;
+    }
+
+    /**
+     * Creates the canonical junction with the given identifier and index.
+     * This constructor is only used by the JunctionRegistry.
+     * 
+     * @require junctionIdentifier != null && index >= 0
+     */
+    Junction(String junctionIdentifier, int index) {
         this.junctionIdentifier = junctionIdentifier;
+        this.index = index;
+        this.hash = hash(index);
+        this.endPoints = new JunctionBranch[BRANCHES.length];
+        for (Branch branch : BRANCHES) {
+            endPoints[branch.ordinal()] = new JunctionBranch(this, branch);
+        }
     }
 
     /**
@@ -46,6 +90,29 @@ public class Junction {
         return junctionIdentifier;
     }
 
+    /**
+     * Returns the index of the junction in the JunctionRegistry. The indices
+     * of the junctions are dense, starting from zero, and two junctions have
+     * the same index if and only if they have the same identifier.
+     * 
+     * @return the junction index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the canonical end-point for the given branch of this junction.
+     * 
+     * @require branch != null
+     * @ensure Returns an end-point equivalent to new JunctionBranch(this,
+     *         branch), which is the same instance for every call with an
+     *         equivalent junction and the same branch.
+     */
+    JunctionBranch getEndPoint(Branch branch) {
+        return endPoints[branch.ordinal()];
+    }
+
     @Override
     public String toString() {
         return junctionIdentifier;
@@ -53,7 +120,8 @@ public class Junction {
 
     /**
      * Returns true if and only if the given object is an instance of the class
-     * Junction, with an equivalent identifier string to this.
+     * Junction, with an equivalent identifier string to this. (Since equivalent
+     * identifiers have the same index, only the indices are compared.)
      */
     @Override
     public boolean equals(Object object) {
@@ -61,12 +129,12 @@ public class Junction {
             return false;
         }
         Junction other = (Junction) object; // the junction to compare
-        return (this.junctionIdentifier.equals(other.junctionIdentifier));
+        return this.index == other.index;
     }
 
     @Override
     public int hashCode() {
-        return junctionIdentifier.hashCode();
+        return hash;
     }
 
     /**
@@ -78,7 +146,49 @@ public class Junction {
      * @return true if this class is internally consistent, and false otherwise.
      */
     public boolean checkInvariant() {
-        return (junctionIdentifier != null);
+        return junctionIdentifier != null && index >= 0
+                && index < JunctionRegistry.size()
+                && JunctionRegistry.get(index).junctionIdentifier
+                        .equals(junctionIdentifier) && hash == hash(index)
+                && endPoints == JunctionRegistry.get(index).endPoints
+                && checkEndPoints();
+    }
+
+    /**
+     * Returns true if endPoints holds an end-point for each branch of the
+     * canonical junction, indexed by the ordinal of the branch.
+     */
+    private boolean checkEndPoints() {
+        if (endPoints.length != BRANCHES.length) {
+            return false;
+        }
+        for (Branch branch : BRANCHES) {
+            // the end-point stored for the branch
+            JunctionBranch endPoint = endPoints[branch.ordinal()];
+            if (endPoint.getJunction() != JunctionRegistry.get(index)
+                    || endPoint.getBranch() != branch) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash code for the junction with the given index.
+     * 
+     * The indices are scrambled (using the finalisation step of the MurmurHash3
+     * hash function), rather than used directly, since the hash codes of the
+     * end-points of a section are added together: with consecutive indices,
+     * many sections would otherwise share a hash code.
+     */
+    private static int hash(int index) {
+        int h = index; // the hash code under construction
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
     }
 
 }
@@ -9,8 +9,8 @@ package railway;
 public class JunctionBranch {
 
     // the junction and its branch
-    private Junction junction;
-    private Branch branch;
+    private final Junction junction;
+    private final Branch branch;
 
     /*
      * invariant: junction!= null && branch != null
@@ -37,6 +37,29 @@ public class JunctionBranch {
         this.branch = branch;
     }
 
+    /**
+     * Returns the canonical instance representing the given junction and its
+     * branch. Unlike the constructor, this method does not create a new
+     * object: the same instance is returned for every call with equivalent
+     * junctions and the same branch.
+     * 
+     * @param junction
+     *            the Junction of the pair
+     * @param branch
+     *            the Branch of the pair
+     * @return the canonical end-point for the given junction and branch
+     * @throws NullPointerException
+     *             if either parameter is null
+     */
+    public static JunctionBranch of(Junction junction, Branch branch)
+            throws NullPointerException {
+        if (junction == null || branch == null) {
+            throw new NullPointerException(
+                    "The method paramters cannot be null.");
+        }
+        return junction.getEndPoint(branch);
+    }
+
     /**
      * Returns the junction associated with this object.
      * 
@@ -74,12 +97,15 @@ public class JunctionBranch {
      */
     @Override
     public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
         if (!(object instanceof JunctionBranch)) {
             return false;
         }
         JunctionBranch other = (JunctionBranch) object; // the pair to compare
-        return (this.junction.equals(other.junction) && this.branch
-                .equals(other.branch));
+        return (this.junction.equals(other.junction)
+                && this.branch == other.branch);
     }
 
     @Override
@@ -88,7 +114,7 @@ public class JunctionBranch {
         final int prime = 31; // an odd base prime
         int result = 1; // the hash code under construction
         result = prime * result + junction.hashCode();
-        result = prime * result + branch.hashCode();
+        result = prime * result + branch.ordinal();
         return result;
     }
 
@@ -0,0 +1,255 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable source of approximate travel distances between the junctions
+ * of a railway track (see DistanceOracle), suitable for large tracks.
+ * </p>
+ * 
+ * <p>
+ * A small number of the junctions are chosen as landmarks, spread out over
+ * the track: the first is the junction numbered 0, and each later landmark
+ * is the junction that is furthest from the landmarks chosen so far (or one
+ * with no route to them at all). For each landmark l and each branch b of l,
+ * the oracle stores the distance from each junction of the track to l along
+ * a shortest route that arrives at l along b. The approximate distance
+ * between two junctions is then the length of the shortest route between
+ * them that passes through a landmark: a route that arrives at the landmark
+ * from the first junction along one branch, and leaves it towards the second
+ * junction along a branch that a train may leave along after arriving along
+ * the first.
+ * </p>
+ * 
+ * <p>
+ * So an approximate distance is never less than the exact distance, and it
+ * is exact if a shortest route between the junctions passes through a
+ * landmark (in particular, if either junction is a landmark). If no route
+ * between the junctions passes through a landmark, then no distance is
+ * known, even though there may be a route between them.
+ * </p>
+ * 
+ * <p>
+ * The oracle holds three ints for each junction of the track for each
+ * landmark, and it is built by three searches of the whole track for each
+ * landmark.
+ * </p>
+ */
+public final class LandmarkDistances implements DistanceOracle {
+
+    // the branches, indexed by their ordinal
+    private static final Branch[] BRANCHES = Branch.values();
+
+    // the snapshot of the track that the oracle was built from
+    private final TrackSnapshot track;
+    // the numbers of the landmark junctions
+    private final int[] landmarks;
+    // the position in landmarks of each junction, or -1 if it is not one
+    private final int[] landmarkIndices;
+    // the distances to the landmarks: the distance from junction j to
+    // landmark l, arriving along the branch with ordinal b, is at position
+    // (3 * l + b) * junctionCount + j, or -1 if there is no such route
+    private final int[] distances;
+
+    /*
+     * invariant:
+     * 
+     * track != null && landmarks.length >= 1 (unless the track has no
+     * junctions) && the elements of landmarks are distinct junction numbers
+     * && landmarkIndices.length == track.getJunctionCount() &&
+     * landmarkIndices[landmarks[l]] == l for each l, and every other element
+     * of landmarkIndices is -1 &&
+     * 
+     * distances.length == 3 * landmarks.length * track.getJunctionCount()
+     */
+
+    /**
+     * Builds an oracle for the current layout of the given track, with the
+     * given number of landmarks.
+     * 
+     * @param track
+     *            the track to build the oracle for
+     * @param landmarkCount
+     *            the number of landmarks to choose
+     * @throws NullPointerException
+     *             if track is null
+     * @throws IllegalArgumentException
+     *             if landmarkCount is less than one, or the total length of
+     *             the sections of the track does not fit in an int
+     */
+    public LandmarkDistances(Track track, int landmarkCount) {
+        this(track.snapshot(), landmarkCount);
+    }
+
+    /**
+     * Builds an oracle for the track that the given snapshot was taken of,
+     * with the given number of landmarks (or with every junction as a
+     * landmark, if the track has fewer junctions than that).
+     * 
+     * @param track
+     *            a snapshot of the track to build the oracle for
+     * @param landmarkCount
+     *            the number of landmarks to choose
+     * @throws NullPointerException
+     *             if track is null
+     * @throws IllegalArgumentException
+     *             if landmarkCount is less than one, or the total length of
+     *             the sections of the track does not fit in an int
+     */
+    public LandmarkDistances(TrackSnapshot track, int landmarkCount) {
+        if (landmarkCount < 1) {
+            throw new IllegalArgumentException("There must be at least one "
+                    + "landmark.");
+        }
+        // the total length of the sections of the track
+        long total = 0;
+        for (int s = 0; s < track.getSectionCount(); s++) {
+            total += track.getLength(s);
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The track is too long for "
+                    + "its distances to be held as ints.");
+        }
+        this.track = track;
+        int junctionCount = track.getJunctionCount();
+        landmarks = new int[Math.min(landmarkCount, junctionCount)];
+        landmarkIndices = new int[junctionCount];
+        Arrays.fill(landmarkIndices, -1);
+        distances = new int[3 * landmarks.length * junctionCount];
+
+        RoutePlanner planner = new RoutePlanner(track);
+        // the distances from the landmark being added
+        long[] lengths = new long[junctionCount];
+        // the least distance from each junction to the landmarks so far, or
+        // -1 if it has no route to any of them
+        long[] nearest = new long[junctionCount];
+        Arrays.fill(nearest, -1);
+        // the next landmark
+        int next = 0;
+        for (int l = 0; l < landmarks.length; l++) {
+            landmarks[l] = next;
+            landmarkIndices[next] = l;
+            for (Branch branch : BRANCHES) {
+                planner.findLengths(next, branch, lengths);
+                // the position of the distances for the branch
+                int first = (3 * l + branch.ordinal()) * junctionCount;
+                for (int j = 0; j < junctionCount; j++) {
+                    distances[first + j] = (int) lengths[j];
+                    if (lengths[j] != -1 && (nearest[j] == -1
+                            || lengths[j] < nearest[j])) {
+                        nearest[j] = lengths[j];
+                    }
+                }
+            }
+
+            // choose the junction furthest from the landmarks as the next
+            // landmark, preferring one with no route to any of them
+            long furthest = -1; // the distance to the next landmark
+            for (int j = 0; j < junctionCount; j++) {
+                if (landmarkIndices[j] == -1 && furthest != Long.MAX_VALUE
+                        && (nearest[j] == -1 || nearest[j] > furthest)) {
+                    next = j;
+                    furthest = nearest[j] == -1 ? Long.MAX_VALUE : nearest[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the numbers (in getSnapshot()) of the landmark junctions.
+     * 
+     * @return the numbers of the landmarks, in the order they were chosen
+     */
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    @Override
+    public TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    @Override
+    public long distance(int from, int to) {
+        // the number of junctions of the track
+        int junctionCount = landmarkIndices.length;
+        if (from < 0 || from >= junctionCount) {
+            throw new IndexOutOfBoundsException("No junction numbered "
+                    + from);
+        }
+        if (to < 0 || to >= junctionCount) {
+            throw new IndexOutOfBoundsException("No junction numbered " + to);
+        }
+        if (from == to) {
+            return 0;
+        }
+        if (landmarkIndices[from] != -1) {
+            return fromLandmark(landmarkIndices[from], to);
+        }
+        if (landmarkIndices[to] != -1) {
+            return fromLandmark(landmarkIndices[to], from);
+        }
+
+        long best = -1; // the shortest route found through a landmark
+        for (int l = 0; l < landmarks.length; l++) {
+            // the distances from the junctions to the landmark, arriving
+            // along each branch
+            int first = 3 * l * junctionCount;
+            for (int arrival = 0; arrival < BRANCHES.length; arrival++) {
+                // the distance from the first junction to the landmark
+                int approach = distances[first + arrival * junctionCount
+                        + from];
+                if (approach == -1) {
+                    continue;
+                }
+                for (int departure = 0; departure < BRANCHES.length;
+                        departure++) {
+                    if ((BRANCHES[arrival] == Branch.FACING)
+                            == (BRANCHES[departure] == Branch.FACING)) {
+                        continue;
+                    }
+                    // the distance from the landmark to the second junction
+                    int leave = distances[first + departure * junctionCount
+                            + to];
+                    if (leave != -1 && (best == -1
+                            || (long) approach + leave < best)) {
+                        best = (long) approach + leave;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public long distance(Junction from, Junction to) {
+        return distance(DistanceTable.junctionNumber(track, from),
+                DistanceTable.junctionNumber(track, to));
+    }
+
+    /**
+     * Returns the exact distance from the landmark at the given position to
+     * the given junction, or -1 if there is no route between them.
+     */
+    private long fromLandmark(int landmark, int junction) {
+        // the number of junctions of the track
+        int junctionCount = landmarkIndices.length;
+        long best = -1; // the shortest route found
+        for (int branch = 0; branch < BRANCHES.length; branch++) {
+            // the distance along a route leaving the landmark along branch
+            int distance = distances[(3 * landmark + branch) * junctionCount
+                    + junction];
+            if (distance != -1 && (best == -1 || distance < best)) {
+                best = distance;
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,471 @@
+package railway;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Splits the text read from a Reader into lines, and the current line into
+ * tokens, without the use of regular expressions.
+ * </p>
+ * 
+ * <p>
+ * The tokenizer behaves in the same way as reading the text a line at a time
+ * using a java.util.Scanner, and then reading each line using another Scanner
+ * with the default delimiter: a line ends at any of the line separators
+ * recognised by Scanner.nextLine() (i.e. "\r\n", "\n", "\r", "\u2028",
+ * "\u2029" or "\u0085"), and tokens are separated by characters for which
+ * Character.isWhitespace() is true. Integers that are written as an optional
+ * sign followed by at most nine ASCII digits are parsed directly; any other
+ * token is checked using a Scanner, so that the integers accepted are exactly
+ * those accepted by Scanner.nextInt().
+ * </p>
+ * 
+ * <p>
+ * The tokens are read straight from the buffer that the reader fills, without
+ * copying each line, and nextJunction and nextBranch look up a token without
+ * creating a String for it (other than the first time that a junction
+ * identifier is read), so reading a line of a track file creates no objects
+ * other than its section.
+ * </p>
+ */
+class LineTokenizer implements Closeable {
+
+    // the size of the buffer used to read from the reader
+    private static final int BUFFER_SIZE = 1 << 16;
+    // the initial capacity of the table of junctions read
+    private static final int JUNCTION_CAPACITY = 256;
+    // the names of the branches, indexed by their ordinal
+    private static final char[][] BRANCH_NAMES = branchNames();
+
+    // the reader that the text is read from
+    private Reader reader;
+    // the characters read from reader that have not yet been consumed:
+    // buffer[position], ..., buffer[limit - 1]
+    private char[] buffer;
+    private int position;
+    private int limit;
+    // true if the last line ended with a '\r' at the end of the characters
+    // read, so that a '\n' at the start of the next characters is part of its
+    // line separator
+    private boolean skipLineFeed;
+
+    // the characters of the current line: buffer[lineStart], ...,
+    // buffer[lineEnd - 1]
+    private int lineStart;
+    private int lineEnd;
+    // the index in buffer of the start of the last token consumed, and of the
+    // next character of the current line to consume
+    private int tokenStart;
+    private int linePosition;
+
+    // the junctions read, in an open-addressing hash table keyed by the hash
+    // codes of their identifiers (as given by String.hashCode)
+    private Junction[] junctions;
+    private int[] junctionHashes;
+    private int junctionCount;
+
+    /*
+     * invariant:
+     * 
+     * reader != null && buffer != null &&
+     * 
+     * 0 <= position <= limit <= buffer.length &&
+     * 
+     * 0 <= lineStart <= tokenStart <= linePosition <= lineEnd <= position &&
+     * 
+     * junctions != null && junctionHashes != null && junctions.length ==
+     * junctionHashes.length, which is a power of two && each junction in
+     * junctions is canonical, and is in the first free slot at or after (in
+     * cyclic order) slot junctionHashes[slot] & (junctions.length - 1), where
+     * junctionHashes[slot] is the hash code of its identifier &&
+     * 
+     * junctionCount is the number of junctions in junctions, and
+     * junctionCount <= junctions.length / 2
+     */
+
+    /**
+     * Creates a new tokenizer that reads from the given reader. There is no
+     * current line until nextLine() is called.
+     * 
+     * @require reader != null
+     */
+    LineTokenizer(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        this.junctions = new Junction[JUNCTION_CAPACITY];
+        this.junctionHashes = new int[JUNCTION_CAPACITY];
+    }
+
+    /**
+     * Reads the next line of the text, which becomes the current line.
+     * 
+     * @ensure Returns false if there are no more lines to read. Otherwise the
+     *         next line (without its line separator) becomes the current line,
+     *         and true is returned.
+     * @throws IOException
+     *             if there is an error reading from the reader
+     */
+    boolean nextLine() throws IOException {
+        if (skipLineFeed) {
+            skipLineFeed = false;
+            if ((position < limit || fill()) && buffer[position] == '\n') {
+                position++;
+            }
+        }
+        if (position == limit && !fill()) {
+            setLine(position, position);
+            return false; // at the end of the text
+        }
+        // the distance from position to the next character to examine
+        int length = 0;
+        while (position + length < limit || fill()) {
+            char c = buffer[position + length];
+            if (c == '\n' || c == '\u2028' || c == '\u2029'
+                    || c == '\u0085') {
+                setLine(position, position + length);
+                position += length + 1;
+                return true;
+            } else if (c == '\r') {
+                setLine(position, position + length);
+                position += length + 1;
+                // "\r\n" is a single line separator: the '\n' is skipped now
+                // if it has been read, or once the line has been consumed
+                if (position < limit) {
+                    if (buffer[position] == '\n') {
+                        position++;
+                    }
+                } else {
+                    skipLineFeed = true;
+                }
+                return true;
+            }
+            length++;
+        }
+        // the last line, which has no line separator
+        setLine(position, limit);
+        position = limit;
+        return true;
+    }
+
+    /**
+     * Returns true if there is another token on the current line.
+     * 
+     * @return true iff there is another token on the current line.
+     */
+    boolean hasNext() {
+        skipWhitespace();
+        return linePosition < lineEnd;
+    }
+
+    /**
+     * Consumes and returns the next token on the current line.
+     * 
+     * @return the next token on the current line.
+     * @throws NoSuchElementException
+     *             if there are no more tokens on the current line
+     */
+    String next() {
+        consumeToken();
+        return lastToken();
+    }
+
+    /**
+     * Returns the last token consumed from the current line.
+     * 
+     * @require a token has been consumed from the current line
+     */
+    String lastToken() {
+        return new String(buffer, tokenStart, linePosition - tokenStart);
+    }
+
+    /**
+     * Consumes the next token on the current line, and returns the branch
+     * that it is the name of, or null if it is not the name of a branch (i.e.
+     * if Branch.valueOf would reject it). The token is not copied into a
+     * String.
+     * 
+     * @return the branch named by the next token, or null
+     * @throws NoSuchElementException
+     *             if there are no more tokens on the current line
+     */
+    Branch nextBranch() {
+        consumeToken();
+        for (Branch branch : Branch.values()) {
+            if (tokenEquals(BRANCH_NAMES[branch.ordinal()])) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Consumes the next token on the current line, and returns the canonical
+     * junction whose identifier it is (see JunctionRegistry.intern). The
+     * junctions read are remembered by the tokenizer, and looked up by the
+     * hash code of the token, so a String is only created for an identifier
+     * the first time that the tokenizer reads it.
+     * 
+     * @return the canonical junction identified by the next token
+     * @throws NoSuchElementException
+     *             if there are no more tokens on the current line
+     */
+    Junction nextJunction() {
+        consumeToken();
+        int hash = 0; // the hash code of the token, as a String
+        for (int i = tokenStart; i < linePosition; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        // the mask that gives the slot of a hash code
+        int mask = junctions.length - 1;
+        int slot = hash & mask; // the slot being examined
+        for (; junctions[slot] != null; slot = (slot + 1) & mask) {
+            if (junctionHashes[slot] == hash
+                    && tokenEquals(junctions[slot].getJunctionId())) {
+                return junctions[slot];
+            }
+        }
+        Junction junction = JunctionRegistry.intern(lastToken());
+        junctions[slot] = junction;
+        junctionHashes[slot] = hash;
+        junctionCount++;
+        if (2 * junctionCount > junctions.length) {
+            growJunctions();
+        }
+        return junction;
+    }
+
+    /**
+     * Returns true if the next token on the current line is an integer, as
+     * defined by Scanner.hasNextInt().
+     * 
+     * @return true iff the next token on the current line is an integer.
+     */
+    boolean hasNextInt() {
+        if (!hasNext()) {
+            return false;
+        }
+        return isSimpleInteger(linePosition, tokenEnd())
+                || new Scanner(new String(buffer, linePosition, tokenEnd()
+                        - linePosition)).hasNextInt();
+    }
+
+    /**
+     * Consumes the next token on the current line, and returns the integer
+     * that it represents.
+     * 
+     * @return the integer represented by the next token.
+     * @throws NoSuchElementException
+     *             if there are no more tokens on the current line
+     * @throws InputMismatchException
+     *             if the next token is not an integer, as defined by
+     *             Scanner.hasNextInt()
+     */
+    int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // the bounds of the token
+        int start = linePosition;
+        int end = tokenEnd();
+        if (!isSimpleInteger(start, end)) {
+            // the scanner throws InputMismatchException if it is not an int
+            int result = new Scanner(new String(buffer, start, end - start))
+                    .nextInt();
+            tokenStart = start;
+            linePosition = end;
+            return result;
+        }
+        tokenStart = start;
+        linePosition = end;
+        // whether or not the integer is negative
+        boolean negative = buffer[start] == '-';
+        if (buffer[start] == '-' || buffer[start] == '+') {
+            start++;
+        }
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = 10 * result + (buffer[i] - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Closes the reader.
+     * 
+     * @throws IOException
+     *             if there is an error closing the reader
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Makes buffer[start], ..., buffer[end - 1] the current line, with no
+     * tokens consumed.
+     */
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+        tokenStart = start;
+        linePosition = start;
+    }
+
+    /**
+     * Consumes the next token on the current line, which is then the last
+     * token consumed.
+     * 
+     * @throws NoSuchElementException
+     *             if there are no more tokens on the current line
+     */
+    private void consumeToken() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        tokenStart = linePosition;
+        linePosition = tokenEnd();
+    }
+
+    /**
+     * Returns true if the last token consumed is made up of the given
+     * characters.
+     */
+    private boolean tokenEquals(char[] characters) {
+        if (linePosition - tokenStart != characters.length) {
+            return false;
+        }
+        for (int i = 0; i < characters.length; i++) {
+            if (buffer[tokenStart + i] != characters[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the last token consumed is equal to the given string.
+     */
+    private boolean tokenEquals(String string) {
+        if (linePosition - tokenStart != string.length()) {
+            return false;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            if (buffer[tokenStart + i] != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the capacity of the table of junctions read.
+     */
+    private void growJunctions() {
+        // the old table
+        Junction[] oldJunctions = junctions;
+        int[] oldHashes = junctionHashes;
+        junctions = new Junction[2 * oldJunctions.length];
+        junctionHashes = new int[junctions.length];
+        // the mask that gives the slot of a hash code
+        int mask = junctions.length - 1;
+        for (int i = 0; i < oldJunctions.length; i++) {
+            if (oldJunctions[i] != null) {
+                int slot = oldHashes[i] & mask; // the slot to move it to
+                while (junctions[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                junctions[slot] = oldJunctions[i];
+                junctionHashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * Returns true if buffer[start], ..., buffer[end - 1] is an optional sign
+     * followed by between one and nine ASCII digits (so that its value is
+     * within the range of an int).
+     */
+    private boolean isSimpleInteger(int start, int end) {
+        if (start < end && (buffer[start] == '-' || buffer[start] == '+')) {
+            start++;
+        }
+        if (start == end || end - start > 9) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < '0' || buffer[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index in buffer of the end of the token that starts at
+     * linePosition.
+     */
+    private int tokenEnd() {
+        int end = linePosition;
+        while (end < lineEnd && !Character.isWhitespace(buffer[end])) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Consumes the whitespace at linePosition, if there is any.
+     */
+    private void skipWhitespace() {
+        while (linePosition < lineEnd
+                && Character.isWhitespace(buffer[linePosition])) {
+            linePosition++;
+        }
+    }
+
+    /**
+     * Reads more characters into the buffer, after those that have not yet
+     * been consumed, which are first moved to the start of the buffer (so the
+     * current line is lost). The buffer is enlarged if the unconsumed
+     * characters fill more than half of it.
+     * 
+     * @ensure Returns true if more characters were read, and false if the
+     *         reader is at the end of the text.
+     * @throws IOException
+     *             if there is an error reading from the reader
+     */
+    private boolean fill() throws IOException {
+        // the number of characters that have not been consumed
+        int unconsumed = limit - position;
+        if (2 * unconsumed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        System.arraycopy(buffer, position, buffer, 0, unconsumed);
+        setLine(0, 0);
+        position = 0;
+        limit = unconsumed;
+        // the number of characters read
+        int read;
+        do {
+            read = reader.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read == -1) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * Returns the names of the branches, indexed by their ordinal.
+     */
+    private static char[][] branchNames() {
+        Branch[] branches = Branch.values(); // the branches
+        char[][] names = new char[branches.length][];
+        for (Branch branch : branches) {
+            names[branch.ordinal()] = branch.name().toCharArray();
+        }
+        return names;
+    }
+
+}
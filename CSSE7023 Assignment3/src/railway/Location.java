@@ -27,9 +27,32 @@ package railway;
  * the junction along any branch of the junction. For this reason, the
  * equivalence method of this class is more complex than usual.
  * </p>
+ * 
+ * <p>
+ * To avoid creating and comparing location objects in performance-critical
+ * code, a location can also be packed into a single long value (see the pack
+ * methods). The packed value of a location at a junction identifies the
+ * junction alone. The packed value of any other location identifies the
+ * reference end-point of its section (the end-point whose junction has the
+ * least index, and, for a section between two branches of the same junction,
+ * whose branch has the least ordinal), together with the offset of the
+ * location from that end-point. Since no two sections of a valid track share
+ * an end-point, two locations on the same valid track are equivalent if and
+ * only if their packed values are equal.
+ * </p>
  */
 public class Location {
 
+    // the number of bits of a packed location holding an offset
+    private static final int OFFSET_BITS = 31;
+    // the number of bits of a packed location holding a branch ordinal
+    private static final int BRANCH_BITS = 2;
+    // mask selecting the offset of a packed location
+    static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    // the branches, indexed by their ordinal
+    private static final Branch[] BRANCHES = Branch.values();
+
     // a section that the location lies on
     private Section section;
     // an end-point of section
@@ -73,7 +96,7 @@ public class Location {
                     "Parameter offset must be a non-negative value "
                             + "less than the section length.");
         }
-        if (!(section.getEndPoints().contains(endPoint))) {
+        if (!(section.hasEndPoint(endPoint))) {
             throw new IllegalArgumentException(
                     "The parameter endPoint must be an end-point of the "
                             + "given section.");
@@ -174,7 +197,7 @@ public class Location {
             // the junction this location lies on
             Junction junction = this.getEndPoint().getJunction();
             // check whether or not junction is at an end-point of section
-            for (JunctionBranch endPoint : section.getEndPoints()) {
+            for (JunctionBranch endPoint : section.getEndPointList()) {
                 if (junction.equals(endPoint.getJunction())) {
                     return true;
                 }
@@ -249,6 +272,9 @@ public class Location {
      */
     @Override
     public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
         if (!(object instanceof Location)) {
             return false;
         }
@@ -305,6 +331,225 @@ public class Location {
         }
     }
 
+    /**
+     * Returns the packed value of this location, as described in the class
+     * documentation.
+     * 
+     * @return the packed value of this location
+     */
+    public long pack() {
+        return pack(section, endPoint, offset);
+    }
+
+    /**
+     * <p>
+     * Returns the packed value of the location on the given section at a
+     * distance of offset meters from endPoint.getJunction() along
+     * endPoint.getBranch(), as described in the class documentation.
+     * </p>
+     * 
+     * <p>
+     * Unlike the constructor of this class, this method accepts an offset
+     * equal to the length of the section, which denotes the location at the
+     * junction of the other end-point of the section.
+     * </p>
+     * 
+     * @param section
+     *            a section that the location lies on
+     * @param endPoint
+     *            an end-point of the given section
+     * @param offset
+     *            the distance of the location from the given end-point, which
+     *            must be between zero and the length of the section
+     *            (inclusive)
+     * @return the packed value of the location
+     * @throws NullPointerException
+     *             if either parameter section or endPoint is null.
+     * @throws IllegalArgumentException
+     *             if offset is either a negative value or if it is greater
+     *             than the length of the given section, or if endPoint is not
+     *             equivalent to an end-point of the given section.
+     */
+    public static long pack(Section section, JunctionBranch endPoint,
+            int offset) {
+        if (section == null || endPoint == null) {
+            throw new NullPointerException("Parameters may not be null.");
+        }
+        // the length of the section
+        int length = section.getLength();
+        if (offset < 0 || offset > length) {
+            throw new IllegalArgumentException(
+                    "Parameter offset must be a non-negative value "
+                            + "no greater than the section length.");
+        }
+        // the end-point that the packed offset is measured from, and the
+        // other end-point of the section
+        JunctionBranch reference = section.getEndPoint(0);
+        JunctionBranch other = section.getEndPoint(1);
+        if (!precedes(reference, other)) {
+            reference = other;
+            other = section.getEndPoint(0);
+        }
+        if (endPoint.equals(other)) {
+            // measure the location from the reference end-point instead
+            offset = length - offset;
+        } else if (!endPoint.equals(reference)) {
+            throw new IllegalArgumentException(
+                    "The parameter endPoint must be an end-point of the "
+                            + "given section.");
+        }
+        if (offset == 0) {
+            return junctionKey(reference.getJunction());
+        } else if (offset == length) {
+            return junctionKey(other.getJunction());
+        } else {
+            return section.getKey() | offset;
+        }
+    }
+
+    /**
+     * Returns true if and only if the given packed value is that of a
+     * location at a junction.
+     * 
+     * @param packed
+     *            the packed value of a location
+     * @return whether or not the packed location is at a junction
+     */
+    public static boolean atAJunction(long packed) {
+        return (packed & OFFSET_MASK) == 0;
+    }
+
+    /**
+     * Returns a location on the given track with the given packed value.
+     * 
+     * @param packed
+     *            the packed value of a location on the given track
+     * @param track
+     *            the track that the location lies on
+     * @return a location on the track whose packed value is the given one. A
+     *         location at a junction is described with respect to an
+     *         end-point of one of the sections at that junction, and any other
+     *         location is described with respect to the reference end-point
+     *         of its section.
+     * @throws NullPointerException
+     *             if track is null.
+     * @throws IllegalArgumentException
+     *             if there is no location on the track with the given packed
+     *             value.
+     */
+    public static Location unpack(long packed, Track track) {
+        if (track == null) {
+            throw new NullPointerException("Parameters may not be null.");
+        }
+        // the index of the junction, ordinal of the branch and offset
+        int index = (int) (packed >>> (OFFSET_BITS + BRANCH_BITS));
+        int ordinal = (int) (packed >>> OFFSET_BITS)
+                & ((1 << BRANCH_BITS) - 1);
+        int offset = (int) (packed & OFFSET_MASK);
+        if (index < JunctionRegistry.size() && ordinal < BRANCHES.length) {
+            // the junction of the packed location
+            Junction junction = JunctionRegistry.get(index);
+            if (offset == 0 && ordinal == 0) {
+                for (Branch branch : BRANCHES) {
+                    // the section of the track on the branch, if any
+                    Section section = track.getTrackSection(junction, branch);
+                    if (section != null) {
+                        return new Location(section, JunctionBranch.of(
+                                junction, branch), 0);
+                    }
+                }
+            } else if (offset != 0) {
+                // the end-point that the offset is measured from
+                JunctionBranch endPoint = JunctionBranch.of(junction,
+                        BRANCHES[ordinal]);
+                // the section of the track on that end-point, if any
+                Section section = track.getTrackSection(junction, endPoint
+                        .getBranch());
+                if (section != null && offset < section.getLength()
+                        && endPoint.equals(referenceEndPoint(section))) {
+                    return new Location(section, endPoint, offset);
+                }
+            }
+        }
+        throw new IllegalArgumentException(
+                "There is no location on the track with the packed value "
+                        + packed + ".");
+    }
+
+    /**
+     * Returns the packed value of the location at the given junction.
+     * 
+     * @require junction != null
+     */
+    static long junctionKey(Junction junction) {
+        return (long) junction.getIndex() << (OFFSET_BITS + BRANCH_BITS);
+    }
+
+    /**
+     * Returns a value that identifies the given section among the sections of
+     * a valid track: the packed value of each location on the section that is
+     * not at a junction is the section's key plus the location's offset from
+     * the reference end-point of the section.
+     * 
+     * @require section != null
+     */
+    static long sectionKey(Section section) {
+        return section.getKey();
+    }
+
+    /**
+     * Returns the key (as described by sectionKey(Section)) of a section with
+     * the given end-points.
+     * 
+     * @require endPoint1 != null && endPoint2 != null
+     */
+    static long sectionKey(JunctionBranch endPoint1, JunctionBranch endPoint2) {
+        return endPointKey(precedes(endPoint1, endPoint2) ? endPoint1
+                : endPoint2);
+    }
+
+    /**
+     * Returns the reference end-point of the given section: the end-point
+     * whose junction has the least index, or, if both end-points are at the
+     * same junction, the one whose branch has the least ordinal.
+     * 
+     * @require section != null
+     */
+    static JunctionBranch referenceEndPoint(Section section) {
+        // the end-points of the section
+        JunctionBranch first = section.getEndPoint(0);
+        JunctionBranch second = section.getEndPoint(1);
+        return precedes(first, second) ? first : second;
+    }
+
+    /**
+     * Returns true if the first given end-point precedes the second in the
+     * order used to choose reference end-points: that is, if its junction has
+     * a lower index, or they are at the same junction and its branch has a
+     * lower ordinal.
+     * 
+     * @require first != null && second != null
+     */
+    private static boolean precedes(JunctionBranch first,
+            JunctionBranch second) {
+        // the indices of the junctions of the end-points
+        int firstIndex = first.getJunction().getIndex();
+        int secondIndex = second.getJunction().getIndex();
+        return firstIndex < secondIndex || (firstIndex == secondIndex && first
+                .getBranch().ordinal() < second.getBranch().ordinal());
+    }
+
+    /**
+     * Returns the packed value of the given end-point, with an offset of
+     * zero.
+     * 
+     * @require endPoint != null
+     */
+    private static long endPointKey(JunctionBranch endPoint) {
+        return junctionKey(endPoint.getJunction())
+                | ((long) endPoint.getBranch().ordinal() << OFFSET_BITS);
+    }
+
     /**
      * Determines whether this class is internally consistent (i.e. it satisfies
      * its class invariant).
@@ -315,7 +560,7 @@ public class Location {
      */
     public boolean checkInvariant() {
         return section != null && endPoint != null
-                && section.getEndPoints().contains(endPoint) && 0 <= offset
+                && section.hasEndPoint(endPoint) && 0 <= offset
                 && offset < section.getLength();
     }
 }
@@ -0,0 +1,180 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable map whose keys are long values, such as packed locations (see
+ * Location.pack), stored without boxing them.
+ * </p>
+ * 
+ * <p>
+ * The map is stored in an open-addressing hash table with linear probing, in
+ * the same way as a LongHashSet, with the value of each key stored in the
+ * same slot of a parallel array. The key -1 cannot be stored in the map, and
+ * null values are not permitted.
+ * </p>
+ * 
+ * @param <V>
+ *            the type of the values of the map
+ */
+class LongHashMap<V> {
+
+    // the initial number of slots in the table
+    private static final int INITIAL_CAPACITY = 16;
+
+    // the keys in the slots of the table, whose length is a power of two
+    private long[] keys;
+    // the values in the slots of the table
+    private Object[] values;
+    // the number of keys in the map
+    private int size;
+
+    /*
+     * invariant:
+     * 
+     * keys != null && values != null && keys.length == values.length &&
+     * keys.length is a power of two &&
+     * 
+     * for each slot i, keys[i] == LongHashSet.EMPTY if and only if values[i]
+     * == null &&
+     * 
+     * size is the number of slots of keys that are not EMPTY && 2 * size <=
+     * keys.length &&
+     * 
+     * each key in the map is stored in the slot of the table given by
+     * LongHashSet.slot(key), or in one of the slots following it, with no
+     * EMPTY slot in between
+     */
+
+    /**
+     * Creates a new empty map.
+     */
+    LongHashMap() {
+        keys = LongHashSet.newTable(INITIAL_CAPACITY);
+        values = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the map contains no keys.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value of the given key, or null if the key is not in the
+     * map.
+     * 
+     * @require key != LongHashSet.EMPTY
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        return (V) values[LongHashSet.find(keys, key)];
+    }
+
+    /**
+     * Returns true if the map contains the given key.
+     * 
+     * @require key != LongHashSet.EMPTY
+     */
+    boolean containsKey(long key) {
+        return keys[LongHashSet.find(keys, key)] == key;
+    }
+
+    /**
+     * Maps the given key to the given value, and returns the previous value of
+     * the key (or null if the key was not in the map).
+     * 
+     * @require key != LongHashSet.EMPTY && value != null
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        // the slot holding the key, or the empty slot where it belongs
+        int slot = LongHashSet.find(keys, key);
+        // the previous value of the key
+        V previous = (V) values[slot];
+        values[slot] = value;
+        if (previous == null) {
+            keys[slot] = key;
+            size++;
+            if (2 * size > keys.length) {
+                resize();
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the given key from the map, and returns its value (or null if
+     * the key was not in the map).
+     * 
+     * @require key != LongHashSet.EMPTY
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        // the slot holding the key, or the empty slot where it belongs
+        int slot = LongHashSet.find(keys, key);
+        // the value of the key
+        V previous = (V) values[slot];
+        if (previous == null) {
+            return null;
+        }
+        // move any following keys that belong at or before the removed slot
+        // back into the gap, so that no key is cut off from its slot
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (gap + 1) & mask; keys[i] != LongHashSet.EMPTY;
+                i = (i + 1) & mask) {
+            // the distance of the key in slot i from its own slot
+            int distance = (i - LongHashSet.slot(keys[i], mask)) & mask;
+            if (distance >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = LongHashSet.EMPTY;
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+
+    /**
+     * Removes every key from the map.
+     */
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, LongHashSet.EMPTY);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * Doubles the number of slots in the table.
+     */
+    private void resize() {
+        // the slots of the table before it is resized
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = LongHashSet.newTable(2 * oldKeys.length);
+        values = new Object[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != LongHashSet.EMPTY) {
+                // the slot of the key in the new table
+                int slot = LongHashSet.find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+package railway;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * <p>
+ * A Reader that reads the characters of a file (or of a range of its bytes)
+ * by memory-mapping it, rather than by copying it through a stream.
+ * </p>
+ * 
+ * <p>
+ * The file is decoded using the default charset (just as a FileReader does),
+ * with malformed and unmappable input replaced by the charset's replacement
+ * character. It is mapped a window at a time, so that files larger than 2GB
+ * can be read. When the default charset is one in which every ASCII byte on
+ * its own is always the corresponding ASCII character (e.g. UTF-8), runs of
+ * ASCII bytes are copied straight from the mapped file, and only the other
+ * bytes are passed through the charset's decoder.
+ * </p>
+ */
+class MappedFileReader extends Reader {
+
+    // the maximum number of bytes of the file mapped at a time
+    private static final long WINDOW_SIZE = 1L << 28;
+    // the charsets that can be decoded a byte at a time while the input is
+    // ASCII
+    private static final Set<String> ASCII_COMPATIBLE = new HashSet<>(
+            Arrays.asList("US-ASCII", "UTF-8", "ISO-8859-1"));
+
+    // the channel of the file being read
+    private FileChannel channel;
+    // the position in the file of the end of the bytes to be read
+    private long end;
+    // the mapped window of the file, and the position in the file at which it
+    // starts
+    private MappedByteBuffer window;
+    private long windowStart;
+    // the decoder for the default charset
+    private CharsetDecoder decoder;
+    // true if ASCII bytes may be copied without using the decoder
+    private boolean asciiCompatible;
+    // true once the decoder has been flushed at the end of the file
+    private boolean flushed;
+
+    /*
+     * invariant:
+     * 
+     * channel != null && window != null && decoder != null &&
+     * 
+     * 0 <= windowStart && windowStart + window.limit() <= end &&
+     * 
+     * the bytes of the file before windowStart + window.position() have been
+     * passed to the decoder, or copied as ASCII characters
+     */
+
+    /**
+     * Opens the file named fileName for reading.
+     * 
+     * @require fileName != null
+     * @throws FileNotFoundException
+     *             if the file does not exist or cannot be opened for reading
+     * @throws IOException
+     *             if there is an error mapping the file
+     */
+    MappedFileReader(String fileName) throws IOException {
+        this(fileName, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens the file named fileName for reading the bytes from position start
+     * (inclusive) to position end (exclusive) of the file, or to the end of
+     * the file if it is shorter than that.
+     * 
+     * @require fileName != null && 0 <= start <= end
+     * @throws FileNotFoundException
+     *             if the file does not exist or cannot be opened for reading
+     * @throws IOException
+     *             if there is an error mapping the file
+     */
+    MappedFileReader(String fileName, long start, long end)
+            throws IOException {
+        channel = new FileInputStream(fileName).getChannel();
+        try {
+            this.end = Math.min(end, channel.size());
+            window = map(Math.min(start, this.end));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        // the charset used by a FileReader
+        Charset charset = Charset.defaultCharset();
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        asciiCompatible = isAsciiCompatible(charset);
+    }
+
+    /**
+     * Returns true if, in the given charset, every ASCII byte that follows a
+     * complete character is always decoded as the corresponding ASCII
+     * character. (In such a charset, a '\n' byte always ends a line, and the
+     * text that follows it can be decoded separately from the text before
+     * it.)
+     * 
+     * @require charset != null
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        return ASCII_COMPATIBLE.contains(charset.name());
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        // the number of characters read into the buffer
+        int read = 0;
+        while (read == 0) {
+            if (!window.hasRemaining() && !remap()) {
+                return flush(buffer, offset, length);
+            }
+            if (asciiCompatible) {
+                read = copyAscii(buffer, offset, length);
+                if (read > 0) {
+                    break;
+                }
+            }
+            // decode as much of the window as fits in the buffer
+            CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+            CoderResult result = decoder.decode(window, out, false);
+            if (result.isError()) {
+                result.throwException(); // not possible, errors are replaced
+            }
+            read = out.position() - offset;
+            if (read == 0 && result.isUnderflow() && !remap()) {
+                // a partial character is left at the end of the file
+                return flush(buffer, offset, length);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Copies the run of ASCII bytes at the current position of the window
+     * into the given buffer, as characters, and returns the number of
+     * characters copied.
+     */
+    private int copyAscii(char[] buffer, int offset, int length) {
+        // the bounds of the bytes to be considered
+        int start = window.position();
+        int end = start + Math.min(length, window.remaining());
+        int i = start;
+        while (i < end) {
+            // the next byte, which is negative if it is not ASCII
+            byte b = window.get(i);
+            if (b < 0) {
+                break;
+            }
+            buffer[offset++] = (char) b;
+            i++;
+        }
+        window.position(i);
+        return i - start;
+    }
+
+    /**
+     * Decodes the rest of the file, once the whole file has been passed to
+     * the decoder, and returns the number of characters read (or -1 if there
+     * are none).
+     */
+    private int flush(char[] buffer, int offset, int length) {
+        CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+        if (!flushed && decoder.decode(window, out, true).isUnderflow()
+                && decoder.flush(out).isUnderflow()) {
+            flushed = true;
+        }
+        // the number of characters read into the buffer
+        int read = out.position() - offset;
+        return read == 0 ? -1 : read;
+    }
+
+    /**
+     * Maps the next window of the file, starting from the first byte that
+     * has not been consumed from the current window.
+     * 
+     * @ensure Returns false if every byte of the file is in the current
+     *         window. Otherwise the window is replaced by the window that
+     *         starts at the first unconsumed byte, and true is returned.
+     * @throws IOException
+     *             if there is an error mapping the file
+     */
+    private boolean remap() throws IOException {
+        // the position in the file of the first unconsumed byte
+        long start = windowStart + window.position();
+        if (windowStart + window.limit() == end) {
+            return false;
+        }
+        window = map(start);
+        return true;
+    }
+
+    /**
+     * Maps the window of the file that starts at the given position.
+     * 
+     * @require 0 <= start <= end
+     * @throws IOException
+     *             if there is an error mapping the file
+     */
+    private MappedByteBuffer map(long start) throws IOException {
+        windowStart = start;
+        return channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(WINDOW_SIZE, end - start));
+    }
+
+}
@@ -11,6 +11,13 @@ public class Route implements Iterable<Segment> {
 
     // the segments that make up the route
     private List<Segment> segments;
+    // the cumulative offsets of the segments: offsets[i] is the distance along
+    // the route to the start of segment i, and offsets[segments.size()] is the
+    // length of the route
+    private int[] offsets;
+    // an index of the locations on the route, used to check for intersection
+    // (built the first time that it is needed)
+    private volatile IntersectionIndex intersectionIndex;
 
     /*
      * invariant:
@@ -19,6 +26,10 @@ public class Route implements Iterable<Segment> {
      * 
      * !segments.contains(null) &&
      * 
+     * offsets != null && offsets.length == segments.size() + 1 &&
+     * offsets[0] == 0 && for each 0 <= i < segments.size(), offsets[i + 1] ==
+     * offsets[i] + segments.get(i).getLength() &&
+     * 
      * for each segment on the route that is not the last, the last location on
      * that segment equals the first location of the next segment on the route,
      * and that location is at a junction and the direction of travel through
@@ -51,12 +62,14 @@ public class Route implements Iterable<Segment> {
             // the adjacent segments at index i and i+1
             Segment previous = segments.get(i);
             Segment next = segments.get(i + 1);
-            // the last location of the previous segment
-            Location pivot = previous.getLastLocation();
+            // the packed last location of the previous segment
+            long pivot = Location.pack(previous.getSection(), previous
+                    .getDepartingEndPoint(), previous.getEndOffset());
 
             // check pivot connects the adjacent segments at a junction
-            if (!pivot.equals(next.getFirstLocation()) 
-                    || !pivot.atAJunction()) {
+            if (!Location.atAJunction(pivot)
+                    || pivot != Location.pack(next.getSection(), next
+                            .getDepartingEndPoint(), next.getStartOffset())) {
                 throw new InvalidRouteException("The segment (" + previous
                         + ") is not connected to the next segment (" + next
                         + ") at a junction.");
@@ -73,6 +86,32 @@ public class Route implements Iterable<Segment> {
             }
         }
         this.segments = new ArrayList<>(segments);
+        this.offsets = calculateOffsets(this.segments);
+    }
+
+    /**
+     * Creates a new route with the given segments and their cumulative
+     * offsets. Neither is checked or copied.
+     * 
+     * @require segments != null && offsets != null && the segments and
+     *          offsets satisfy the invariant of this class
+     */
+    private Route(List<Segment> segments, int[] offsets) {
+        this.segments = segments;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns a new route with the given segments, which are already known to
+     * make up a valid route, without checking them. Unlike the public
+     * constructor, the given list is used directly, and so it must not be
+     * modified after this call.
+     * 
+     * @require segments != null && !segments.contains(null) && the segments
+     *          make up a valid route
+     */
+    private static Route trusted(List<Segment> segments) {
+        return new Route(segments, calculateOffsets(segments));
     }
 
     /**
@@ -82,11 +121,7 @@ public class Route implements Iterable<Segment> {
      * @return the length of the route.
      */
     public int getLength() {
-        int result = 0;
-        for (Segment segment : segments) {
-            result += segment.getLength();
-        }
-        return result;
+        return offsets[segments.size()];
     }
 
     /**
@@ -112,6 +147,30 @@ public class Route implements Iterable<Segment> {
         return true;
     }
 
+    /**
+     * Returns true if and only if all the segments of this route are on the
+     * track that the given snapshot was taken of.
+     * 
+     * @param track
+     *            a snapshot of the track that the route will be checked with
+     *            respect to.
+     * @throws NullPointerException
+     *             if track is null
+     * @return true if all the segments of this route are on the given track,
+     *         and false otherwise.
+     */
+    public boolean onTrack(TrackSnapshot track) {
+        if (track == null) {
+            throw new NullPointerException("Parameter cannot be null");
+        }
+        for (Segment segment : segments) {
+            if (!track.contains(segment.getSection())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns the sub-route of this route that starts at startOffset meters
      * into this route and ends endOffset meters into this route.
@@ -131,14 +190,22 @@ public class Route implements Iterable<Segment> {
                 .getLength())) {
             throw new IllegalArgumentException("Subroute is out of bounds.");
         }
+        // the indices of the first and last segments that the sub-route lies
+        // on: the segments containing its first and last meter, respectively
+        int first = segmentIndex(startOffset);
+        int last = segmentIndex(endOffset - 1);
         // the sub-segments that will make up the sub-route
-        List<Segment> subsegments = new ArrayList<>();
-        // variable offset is the distance along the route to the start of the
-        // segment currently being examined
-        int offset = 0;
-        for (Segment segment : segments) {
-            if (startOffset - offset < segment.getLength()
-                    && 0 < endOffset - offset) {
+        ArrayList<Segment> subsegments = new ArrayList<>(last - first + 1);
+        for (int i = first; i <= last; i++) {
+            // the segment being examined, and the distance along the route to
+            // its start
+            Segment segment = segments.get(i);
+            int offset = offsets[i];
+            if (startOffset <= offset
+                    && offset + segment.getLength() <= endOffset) {
+                // the whole segment belongs on the sub-route
+                subsegments.add(segment);
+            } else {
                 // part of the segment belongs on the sub-route
                 int subsegmentStartOffset =
                         segment.getStartOffset()
@@ -150,9 +217,9 @@ public class Route implements Iterable<Segment> {
                         .getDepartingEndPoint(), subsegmentStartOffset,
                         subsegmentStartOffset + subsegmentLength));
             }
-            offset += segment.getLength();
         }
-        return new Route(subsegments);
+        // a sub-route of a valid route is valid: it does not need checking
+        return trusted(subsegments);
     }
 
     /**
@@ -169,8 +236,14 @@ public class Route implements Iterable<Segment> {
         if (other == null) {
             throw new NullPointerException("Parameter cannot be null.");
         }
-        Route longestDisjointPrefix = longestDisjointPrefix(this, other);
-        return (!this.equals(longestDisjointPrefix));
+        // the index of the locations on this route
+        IntersectionIndex index = getIntersectionIndex();
+        for (Segment segment : other) {
+            if (index.intersects(segment)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -215,130 +288,339 @@ public class Route implements Iterable<Segment> {
     }
 
     /**
-     * Returns the longest prefix of routeA that doesn't intersect with routeB.
+     * Returns the cumulative offsets of the given segments.
      * 
-     * @throws NullPointerException
-     *             if routeA == null or routeB == null
-     * @ensure returns the longest prefix of routeA that doesn't overlap with
-     *         any of the locations in routeB.
+     * @require segments != null && !segments.contains(null)
+     * @ensure Returns an array of length segments.size() + 1, whose element i
+     *         is the sum of the lengths of the first i segments.
      */
-    private static Route longestDisjointPrefix(Route routeA, Route routeB) {
-        if (routeA == null || routeB == null) {
-            throw new NullPointerException("Parameters cannot be null");
+    private static int[] calculateOffsets(List<Segment> segments) {
+        int[] result = new int[segments.size() + 1];
+        for (int i = 0; i < segments.size(); i++) {
+            result[i + 1] = result[i] + segments.get(i).getLength();
         }
+        return result;
+    }
 
-        // the segments of the longest disjoint prefix of routeA
-        List<Segment> segments = new ArrayList<Segment>();
-
-        for (Segment segmentA : routeA) {
-            // calculate the longest disjoint prefix of segmentA and routeB
-            Segment prefix = segmentA;
-            for (Segment segmentB : routeB) {
-                prefix = longestDisjointPrefix(prefix, segmentB);
-                if (prefix == null) {
-                    // only the empty prefix of segmentA doesn't intersect: the
-                    // result calculated so far is the longest disjoint prefix
-                    return new Route(segments);
-                }
-            }
-            segments.add(prefix);
-            if (!segmentA.equals(prefix)) {
-                // segmentA does intersect with routeB: the
-                // result calculated so far is the longest disjoint prefix
-                return new Route(segments);
+    /**
+     * Returns the index of the segment that contains the part of the route
+     * between offset and offset + 1 meters along the route.
+     * 
+     * @require 0 <= offset < this.getLength()
+     * @ensure Returns the index i such that offsets[i] <= offset <
+     *         offsets[i + 1].
+     */
+    private int segmentIndex(int offset) {
+        // binary search for the last segment that starts at or before offset
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
             }
         }
-        return new Route(segments);
+        return low;
     }
 
     /**
-     * Returns the longest prefix of segmentA that doesn't intersect with
-     * segmentB. The value null is returned if such a segment would be empty or
-     * have length 0.
+     * Returns the intersection index of this route, building it on first use.
      * 
-     * @throws NullPointerException
-     *             if segmentA == null or segmentB == null
-     * @return returns the longest prefix of segmentA that doesn't overlap with
-     *         any of the locations in segmentB. The value null is returned if
-     *         such a segment would be empty or have length 0.
+     * @ensure Returns an index of the locations on this route.
      */
-    private static Segment longestDisjointPrefix(Segment segmentA,
-            Segment segmentB) {
-
-        if (segmentA == null || segmentB == null) {
-            throw new NullPointerException("Parameters cannot be null");
+    private IntersectionIndex getIntersectionIndex() {
+        // read the field once, since it may be set concurrently by another
+        // thread (in which case both threads build equivalent indices)
+        IntersectionIndex index = intersectionIndex;
+        if (index == null) {
+            index = new IntersectionIndex(segments);
+            intersectionIndex = index;
         }
+        return index;
+    }
 
-        if (!segmentA.getSection().equals(segmentB.getSection())) {
-            // (i) They are not on the same section.
-            // Only the first or last locations might overlap in this case.
-
-            if (segmentB.contains(segmentA.getFirstLocation())) {
-                // the longest disjoint prefix is empty
-                return null;
-            } else if (segmentB.contains(segmentA.getLastLocation())) {
-                // the prefix has all but the last location of segmentA
-                if (segmentA.getLength() == 1) {
-                    return null; // the longest disjoint prefix has length 0
+    /**
+     * <p>
+     * An immutable index of the locations on a route, used to determine
+     * whether a segment intersects with the route without examining every
+     * segment on the route.
+     * </p>
+     * 
+     * <p>
+     * For each section that the route passes along, the index stores the
+     * intervals of offsets occupied by the route on that section. Each interval
+     * is measured with respect to the reference end-point of the section (see
+     * Location.pack), and the intervals are sorted and merged so that they can
+     * be binary searched. The sections are looked up by their packed key,
+     * which identifies a section among the sections of a valid track; sections
+     * from different tracks that share a key are kept in a separate map.
+     * </p>
+     * 
+     * <p>
+     * For each junction that is the first or last location of a segment on the
+     * route, the index also stores (by the packed location of the junction)
+     * the sections of the segments that start or end there.
+     * </p>
+     */
+    private static class IntersectionIndex {
+
+        // the intervals occupied by the route on each section, by section key
+        private final LongHashMap<SectionIntervals> sectionIntervals;
+        // the intervals occupied by the route on each section whose key is
+        // already used by a different section of the route
+        private final Map<Section, SectionIntervals> collisions;
+        // the sections of the segments of the route that start or end at each
+        // junction, by the packed location of the junction
+        private final LongHashMap<List<Section>> junctionSections;
+
+        /*
+         * invariant:
+         * 
+         * sectionIntervals != null && collisions != null &&
+         * junctionSections != null
+         */
+
+        /**
+         * Creates the index of the locations on the route made up of the given
+         * segments.
+         * 
+         * @require segments != null && !segments.contains(null)
+         */
+        private IntersectionIndex(List<Segment> segments) {
+            // the unmerged intervals of each section, as they are collected
+            Map<Section, List<int[]>> intervals = new LinkedHashMap<>();
+            junctionSections = new LongHashMap<>();
+
+            for (Segment segment : segments) {
+                Section section = segment.getSection();
+                if (!intervals.containsKey(section)) {
+                    intervals.put(section, new ArrayList<int[]>());
+                }
+                intervals.get(section).add(
+                        canonicalInterval(segment, Location
+                                .referenceEndPoint(section)));
+
+                if (segment.getStartOffset() == 0) {
+                    addJunctionSection(segment.getDepartingEndPoint()
+                            .getJunction(), section);
+                }
+                if (segment.getEndOffset() == section.getLength()) {
+                    addJunctionSection(segment.getApproachingEndPoint()
+                            .getJunction(), section);
+                }
+            }
+
+            sectionIntervals = new LongHashMap<>();
+            collisions = new HashMap<>();
+            for (Section section : intervals.keySet()) {
+                // the merged intervals of the section
+                SectionIntervals merged = new SectionIntervals(section,
+                        intervals.get(section));
+                // the key of the section
+                long key = Location.sectionKey(section);
+                if (!sectionIntervals.containsKey(key)) {
+                    sectionIntervals.put(key, merged);
                 } else {
-                    return new Segment(segmentA.getSection(), segmentA
-                            .getDepartingEndPoint(), segmentA.getStartOffset(),
-                            segmentA.getEndOffset() - 1);
+                    collisions.put(section, merged);
+                }
+            }
+        }
+
+        /**
+         * Returns true if and only if the given segment intersects with the
+         * route that this index was built from.
+         * 
+         * @require segment != null
+         * @ensure Returns true iff either (i) a segment of the route on a
+         *         section equivalent to segment.getSection() shares a location
+         *         with the given segment, or (ii) a segment of the route on a
+         *         different section starts or ends at a junction where the
+         *         given segment starts or ends.
+         */
+        private boolean intersects(Segment segment) {
+            Section section = segment.getSection();
+
+            // the intervals occupied by the route on the segment's section
+            SectionIntervals intervals = sectionIntervals.get(Location
+                    .sectionKey(section));
+            if (intervals != null && !intervals.section.equals(section)) {
+                intervals = collisions.get(section);
+            }
+            if (intervals != null) {
+                // the bounds of the segment with respect to the reference
+                // end-point of its section
+                int start = segment.getStartOffset();
+                int end = segment.getEndOffset();
+                if (!segment.getDepartingEndPoint().equals(
+                        intervals.reference)) {
+                    int length = section.getLength();
+                    start = length - segment.getEndOffset();
+                    end = length - segment.getStartOffset();
+                }
+                if (intervals.overlaps(start, end)) {
+                    return true;
                 }
-            } else {
-                // segmentA and segmentB do not intersect
-                return segmentA;
             }
-        } else {
-            // (ii) They are on the same section.
-            // We first invert segmentB's direction if necessary so that its
-            // interval on the section can be readily compared to segmentA's.
-            if (!segmentB.getDepartingEndPoint().equals(
-                    segmentA.getDepartingEndPoint())) {
-                segmentB = invertDirection(segmentB);
+
+            if (segment.getStartOffset() == 0
+                    && meetsOtherSection(segment.getDepartingEndPoint()
+                            .getJunction(), section)) {
+                return true;
             }
+            return segment.getEndOffset() == section.getLength()
+                    && meetsOtherSection(segment.getApproachingEndPoint()
+                            .getJunction(), section);
+        }
 
-            if (segmentA.getEndOffset() < segmentB.getStartOffset()
-                    || segmentB.getEndOffset() < segmentA.getStartOffset()) {
-                // the intervals do not overlap
-                return segmentA;
-            } else {
-                // the intervals do overlap
-                if (segmentB.getStartOffset() <= segmentA.getStartOffset()) {
-                    // the first location in segmentA is also in segmentB.
-                    return null; // the longest disjoint prefix is empty
-                } else {
-                    // the first location of segmentA is not in segmentB.
-                    if (segmentB.getStartOffset() - 1
-                            - segmentA.getStartOffset() < 1) {
-                        return null; // the longest disjoint prefix has length 0
-                    } else {
-                        return new Segment(segmentA.getSection(), segmentA
-                                .getDepartingEndPoint(), segmentA
-                                .getStartOffset(),
-                                segmentB.getStartOffset() - 1);
+        /**
+         * Returns true if a segment of the route on a section other than the
+         * given one starts or ends at the given junction.
+         * 
+         * @require junction != null && section != null
+         */
+        private boolean meetsOtherSection(Junction junction, Section section) {
+            // the sections of route segments that start or end at junction
+            List<Section> sections = junctionSections.get(Location
+                    .junctionKey(junction));
+            if (sections != null) {
+                for (Section other : sections) {
+                    if (!other.equals(section)) {
+                        return true;
                     }
                 }
             }
+            return false;
+        }
+
+        /**
+         * Records that a segment of the route on the given section starts or
+         * ends at the given junction.
+         * 
+         * @require junction != null && section != null
+         */
+        private void addJunctionSection(Junction junction, Section section) {
+            // the packed location of the junction
+            long key = Location.junctionKey(junction);
+            if (!junctionSections.containsKey(key)) {
+                junctionSections.put(key, new ArrayList<Section>(2));
+            }
+            if (!junctionSections.get(key).contains(section)) {
+                junctionSections.get(key).add(section);
+            }
+        }
+
+        /**
+         * Returns the interval of offsets occupied by the given segment,
+         * measured with respect to the given reference end-point of its
+         * section.
+         * 
+         * @require segment != null && reference is an end-point of
+         *          segment.getSection()
+         * @ensure Returns an array {start, end} of the offsets of the first and
+         *         last location of the segment with respect to reference,
+         *         where start < end.
+         */
+        private static int[] canonicalInterval(Segment segment,
+                JunctionBranch reference) {
+            if (segment.getDepartingEndPoint().equals(reference)) {
+                return new int[] { segment.getStartOffset(),
+                        segment.getEndOffset() };
+            } else {
+                int length = segment.getSection().getLength();
+                return new int[] { length - segment.getEndOffset(),
+                        length - segment.getStartOffset() };
+            }
         }
     }
 
     /**
-     * Returns a segment that occupies the same locations as the given segment,
-     * but whose direction of travel has been reversed.
-     * 
-     * @throws NullPointerException
-     *             if segment == null
-     * @return returns the inverted segment
+     * <p>
+     * An immutable, sorted set of disjoint closed intervals of offsets on a
+     * section, measured with respect to the reference end-point of the
+     * section.
+     * </p>
      */
-    private static Segment invertDirection(Segment segment) {
-        // the parameters of the inverted section
-        Section section = segment.getSection();
-        JunctionBranch endPoint =
-                section.otherEndPoint(segment.getDepartingEndPoint());
-        int startOffset = section.getLength() - segment.getEndOffset();
-        int endOffset = section.getLength() - segment.getStartOffset();
-        return new Segment(section, endPoint, startOffset, endOffset);
+    private static class SectionIntervals {
+
+        // the section that the intervals lie on
+        private final Section section;
+        // the end-point of the section that the offsets are measured from
+        private final JunctionBranch reference;
+        // the bounds of the intervals: interval i is [bounds[2 * i],
+        // bounds[2 * i + 1]]
+        private final int[] bounds;
+
+        /*
+         * invariant:
+         * 
+         * section != null && reference != null && bounds != null &&
+         * bounds.length is even &&
+         * 
+         * for each i, bounds[2 * i] <= bounds[2 * i + 1] &&
+         * 
+         * for each i > 0, bounds[2 * i - 1] < bounds[2 * i]
+         */
+
+        /**
+         * Creates the set of the union of the given intervals, which are
+         * measured with respect to the reference end-point of the given
+         * section.
+         * 
+         * @require section != null && intervals != null &&
+         *          !intervals.isEmpty() && each interval is an array {start,
+         *          end} with start <= end
+         */
+        private SectionIntervals(Section section, List<int[]> intervals) {
+            this.section = section;
+            this.reference = Location.referenceEndPoint(section);
+            Collections.sort(intervals, new Comparator<int[]>() {
+                @Override
+                public int compare(int[] a, int[] b) {
+                    return Integer.compare(a[0], b[0]);
+                }
+            });
+
+            // the merged bounds, and the number of them that are used
+            int[] merged = new int[2 * intervals.size()];
+            int size = 0;
+            for (int[] interval : intervals) {
+                if (size > 0 && interval[0] <= merged[size - 1]) {
+                    // the interval overlaps the last merged interval
+                    merged[size - 1] = Math.max(merged[size - 1], interval[1]);
+                } else {
+                    merged[size++] = interval[0];
+                    merged[size++] = interval[1];
+                }
+            }
+            bounds = Arrays.copyOf(merged, size);
+        }
+
+        /**
+         * Returns true if the closed interval [start, end] overlaps with one
+         * of the intervals in this set.
+         * 
+         * @require start <= end
+         */
+        private boolean overlaps(int start, int end) {
+            // binary search for the last interval that starts no later than
+            // the given interval ends: since the intervals are disjoint and
+            // sorted, it is the only one that can overlap
+            int low = 0;
+            int high = bounds.length / 2 - 1;
+            int candidate = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (bounds[2 * middle] <= end) {
+                    candidate = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return candidate >= 0 && start <= bounds[2 * candidate + 1];
+        }
     }
 
 }
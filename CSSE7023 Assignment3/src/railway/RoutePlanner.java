@@ -0,0 +1,680 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable class that plans the shortest routes between locations on a
+ * railway track.
+ * </p>
+ * 
+ * <p>
+ * A train that arrives at a junction along its FACING branch may only leave
+ * it along its NORMAL or REVERSE branch, and a train that arrives along its
+ * NORMAL or REVERSE branch may only leave it along its FACING branch. So the
+ * planner searches a graph whose states are the end-points of the sections
+ * of the track: the state for an end-point (j, b) is that of a train that has
+ * just arrived at junction j along branch b. A train in that state may travel
+ * the full length of the section on any branch of j that it may leave along,
+ * reaching the state for the other end-point of that section.
+ * </p>
+ * 
+ * <p>
+ * The search is Dijkstra's algorithm, using a binary heap stored in primitive
+ * arrays. A heuristic may be given to turn it into an A* search. The search
+ * may also be made to avoid the locations occupied by other routes (see
+ * TrackOccupancy), in which case it never passes along a stretch of a
+ * section that holds an occupied location.
+ * </p>
+ * 
+ * <p>
+ * A planner reuses its working arrays from one search to the next, and so it
+ * must not be used by more than one thread at a time. The snapshot that it
+ * searches may be shared by any number of planners.
+ * </p>
+ */
+public class RoutePlanner {
+
+    /**
+     * <p>
+     * An estimate of the distance from a junction to the target of a search.
+     * </p>
+     * 
+     * <p>
+     * For the planner to find the shortest route, the estimate must never
+     * exceed the distance along a shortest route from the junction (entered
+     * along any branch) to the target, and it must be consistent: for each
+     * section between junctions j1 and j2, estimate(j1) <= estimate(j2) +
+     * the length of the section.
+     * </p>
+     */
+    public interface Heuristic {
+
+        /**
+         * Returns an estimate of the distance from the junction with the given
+         * number (in the snapshot being searched) to the target of the
+         * search.
+         * 
+         * @param junction
+         *            the number of a junction in the snapshot
+         * @return a non-negative estimate of the distance to the target
+         */
+        long estimate(int junction);
+    }
+
+    /**
+     * The heuristic that estimates every distance to be zero, under which the
+     * search is Dijkstra's algorithm.
+     */
+    public static final Heuristic NO_HEURISTIC = new Heuristic() {
+        @Override
+        public long estimate(int junction) {
+            return 0;
+        }
+    };
+
+    // the snapshot of the track being searched
+    private final TrackSnapshot track;
+    // the state reached by arriving at the target location part-way along a
+    // section (states 0 to goal - 1 are the end-points of the track)
+    private final int goal;
+
+    // the distance to each state found by the current search, which is only
+    // meaningful for states whose stamp is the current stamp
+    private final long[] distances;
+    // the state from which each state was reached by the current search, or
+    // -1 for a state reached directly from the start location
+    private final int[] previous;
+    // the search in which the distance to each state was last set
+    private final int[] stamps;
+    // the number of the current search
+    private int stamp;
+    // the states whose distances may still be reduced, by priority
+    private final StateHeap heap;
+
+    // the start of the current search: if it is at a junction, then
+    // startJunction is that junction and startSection is -1, and otherwise
+    // startSection is its section, and startOffsets[e] is its offset from
+    // end-point e of that section
+    private int startJunction;
+    private int startSection;
+    private final int[] startOffsets = new int[2];
+    // the target of the current search: either the junction targetJunction,
+    // or (if targetJunction is -1) the location that is targetOffsets[e]
+    // from end-point e of section targetSection
+    private int targetJunction;
+    private int targetSection;
+    private final int[] targetOffsets = new int[2];
+    // the end-point departed from when the goal state was last reached
+    private int goalEndPoint;
+    // the occupied locations that the current search avoids, or null if it
+    // does not avoid any locations
+    private TrackOccupancy occupied;
+
+    /*
+     * invariant:
+     * 
+     * track != null && goal == 2 * track.getSectionCount() &&
+     * 
+     * distances.length == previous.length == stamps.length == goal + 1 &&
+     * 
+     * heap != null && heap is empty between searches
+     */
+
+    /**
+     * Creates a new planner for the current layout of the given track. The
+     * planner is not affected by later changes to the track.
+     * 
+     * @param track
+     *            the track to plan routes on
+     * @throws NullPointerException
+     *             if track is null
+     */
+    public RoutePlanner(Track track) {
+        this(track.snapshot());
+    }
+
+    /**
+     * Creates a new planner for the track that the given snapshot was taken
+     * of.
+     * 
+     * @param track
+     *            a snapshot of the track to plan routes on
+     * @throws NullPointerException
+     *             if track is null
+     */
+    public RoutePlanner(TrackSnapshot track) {
+        if (track == null) {
+            throw new NullPointerException("Parameter cannot be null");
+        }
+        this.track = track;
+        goal = 2 * track.getSectionCount();
+        distances = new long[goal + 1];
+        previous = new int[goal + 1];
+        stamps = new int[goal + 1];
+        heap = new StateHeap(goal + 1);
+    }
+
+    /**
+     * Returns the snapshot of the track that this planner plans routes on.
+     * 
+     * @return the snapshot searched by this planner
+     */
+    public TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    /**
+     * Returns a shortest route from the given start location to the given
+     * target junction, or null if there is no such route.
+     * 
+     * @see #plan(Location, Junction, Heuristic)
+     */
+    public Route plan(Location start, Junction target) {
+        return plan(start, target, NO_HEURISTIC);
+    }
+
+    /**
+     * <p>
+     * Returns a shortest route from the given start location to the given
+     * target junction, or null if there is no such route, using the given
+     * heuristic to guide the search.
+     * </p>
+     * 
+     * <p>
+     * The route starts with the start location and ends with a location at
+     * the target junction. If the start location is at the target junction,
+     * then the route has no segments.
+     * </p>
+     * 
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the junction at which the route ends
+     * @param heuristic
+     *            an estimate of the distance from each junction to the target
+     *            junction (see Heuristic)
+     * @return a shortest route on the track from start to target, or null if
+     *         there is no route from start to target
+     * @throws NullPointerException
+     *             if any of the parameters are null
+     * @throws IllegalArgumentException
+     *             if the start location is not on the track
+     */
+    public Route plan(Location start, Junction target, Heuristic heuristic) {
+        if (start == null || target == null || heuristic == null) {
+            throw new NullPointerException("Parameters cannot be null");
+        }
+        return plan(start, target, heuristic, null);
+    }
+
+    /**
+     * <p>
+     * Returns a shortest route from the given start location to the given
+     * target junction that does not pass through any of the given occupied
+     * locations, or null if there is no such route.
+     * </p>
+     * 
+     * <p>
+     * Since a route that passes through none of the occupied locations does
+     * not intersect with any of the routes that occupy them, this plans a
+     * route that does not conflict with the sub-routes allocated to other
+     * trains, in a single search.
+     * </p>
+     * 
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the junction at which the route ends
+     * @param occupied
+     *            the locations that the route must not pass through, which
+     *            must have been recorded against getSnapshot()
+     * @return a shortest route on the track from start to target that avoids
+     *         the occupied locations, or null if there is no such route
+     * @throws NullPointerException
+     *             if any of the parameters are null
+     * @throws IllegalArgumentException
+     *             if the start location is not on the track, or occupied was
+     *             not recorded against the snapshot of this planner
+     */
+    public Route planAvoiding(Location start, Junction target,
+            TrackOccupancy occupied) {
+        if (start == null || target == null || occupied == null) {
+            throw new NullPointerException("Parameters cannot be null");
+        }
+        checkOccupancy(occupied);
+        return plan(start, target, NO_HEURISTIC, occupied);
+    }
+
+    /**
+     * Returns a shortest route from the given start location to the given
+     * target junction that avoids the given occupied locations (or null if
+     * they are not to be avoided), or null if there is no such route.
+     * 
+     * @require start != null && target != null && heuristic != null
+     */
+    private Route plan(Location start, Junction target, Heuristic heuristic,
+            TrackOccupancy occupied) {
+        this.occupied = occupied;
+        setStart(start);
+        targetJunction = track.indexOf(target);
+        targetSection = -1;
+        if (targetJunction == -1
+                || (occupied != null && occupied.isOccupied(start))) {
+            return null;
+        }
+        if (startSection == -1 && startJunction == targetJunction) {
+            return new Route(new ArrayList<Segment>());
+        }
+        return search(heuristic);
+    }
+
+    /**
+     * Returns a shortest route from the given start location to the given
+     * target location, or null if there is no such route.
+     * 
+     * @see #plan(Location, Location, Heuristic)
+     */
+    public Route plan(Location start, Location target) {
+        return plan(start, target, NO_HEURISTIC);
+    }
+
+    /**
+     * <p>
+     * Returns a shortest route from the given start location to the given
+     * target location, or null if there is no such route, using the given
+     * heuristic to guide the search.
+     * </p>
+     * 
+     * <p>
+     * The route starts with the start location and ends with the target
+     * location. If the start location is equivalent to the target location,
+     * then the route has no segments.
+     * </p>
+     * 
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the location at which the route ends
+     * @param heuristic
+     *            an estimate of the distance from each junction to the target
+     *            location (see Heuristic)
+     * @return a shortest route on the track from start to target, or null if
+     *         there is no route from start to target
+     * @throws NullPointerException
+     *             if any of the parameters are null
+     * @throws IllegalArgumentException
+     *             if the start or target location is not on the track
+     */
+    public Route plan(Location start, Location target, Heuristic heuristic) {
+        if (start == null || target == null || heuristic == null) {
+            throw new NullPointerException("Parameters cannot be null");
+        }
+        return plan(start, target, heuristic, null);
+    }
+
+    /**
+     * Returns a shortest route from the given start location to the given
+     * target location that does not pass through any of the given occupied
+     * locations, or null if there is no such route.
+     * 
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the location at which the route ends
+     * @param occupied
+     *            the locations that the route must not pass through, which
+     *            must have been recorded against getSnapshot()
+     * @return a shortest route on the track from start to target that avoids
+     *         the occupied locations, or null if there is no such route
+     * @throws NullPointerException
+     *             if any of the parameters are null
+     * @throws IllegalArgumentException
+     *             if the start or target location is not on the track, or
+     *             occupied was not recorded against the snapshot of this
+     *             planner
+     * @see #planAvoiding(Location, Junction, TrackOccupancy)
+     */
+    public Route planAvoiding(Location start, Location target,
+            TrackOccupancy occupied) {
+        if (start == null || target == null || occupied == null) {
+            throw new NullPointerException("Parameters cannot be null");
+        }
+        checkOccupancy(occupied);
+        return plan(start, target, NO_HEURISTIC, occupied);
+    }
+
+    /**
+     * Returns a shortest route from the given start location to the given
+     * target location that avoids the given occupied locations (or null if
+     * they are not to be avoided), or null if there is no such route.
+     * 
+     * @require start != null && target != null && heuristic != null
+     */
+    private Route plan(Location start, Location target, Heuristic heuristic,
+            TrackOccupancy occupied) {
+        // the end-point that the target location is measured from
+        int endPoint = endPointOf(target);
+        if (start.equals(target)) {
+            return occupied != null && occupied.isOccupied(start) ? null
+                    : new Route(new ArrayList<Segment>());
+        }
+        if (target.getOffset() == 0) {
+            return plan(start, target.getEndPoint().getJunction(), heuristic,
+                    occupied);
+        }
+        this.occupied = occupied;
+        setStart(start);
+        if (occupied != null && occupied.isOccupied(start)) {
+            return null;
+        }
+        targetJunction = -1;
+        targetSection = endPoint >> 1;
+        targetOffsets[endPoint & 1] = target.getOffset();
+        targetOffsets[~endPoint & 1] = track.getLength(targetSection)
+                - target.getOffset();
+        return search(heuristic);
+    }
+
+    /**
+     * Checks that the given occupancy was recorded against the snapshot
+     * searched by this planner.
+     * 
+     * @throws IllegalArgumentException
+     *             if it was recorded against a different snapshot
+     */
+    private void checkOccupancy(TrackOccupancy occupied) {
+        if (occupied.getSnapshot() != track) {
+            throw new IllegalArgumentException("The occupied locations were "
+                    + "not recorded against the snapshot of this planner.");
+        }
+    }
+
+    /**
+     * Records the given start location for the current search.
+     * 
+     * @throws IllegalArgumentException
+     *             if the location is not on the track
+     */
+    private void setStart(Location start) {
+        // the end-point that the start location is measured from
+        int endPoint = endPointOf(start);
+        if (start.getOffset() == 0) {
+            startJunction = track.getEndPointJunction(endPoint);
+            startSection = -1;
+        } else {
+            startSection = endPoint >> 1;
+            startOffsets[endPoint & 1] = start.getOffset();
+            startOffsets[~endPoint & 1] = track.getLength(startSection)
+                    - start.getOffset();
+        }
+    }
+
+    /**
+     * Returns the number of the end-point that the given location is measured
+     * from.
+     * 
+     * @throws IllegalArgumentException
+     *             if the location is not on the track
+     */
+    private int endPointOf(Location location) {
+        // the number of the section of the location
+        int section = track.indexOf(location.getSection());
+        if (section == -1) {
+            throw new IllegalArgumentException("The location " + location
+                    + " is not on the track.");
+        }
+        return 2 * section + (track.getSection(section).getEndPoint(0).equals(
+                location.getEndPoint()) ? 0 : 1);
+    }
+
+    /**
+     * Searches from the start of the current search to its target, and
+     * returns a shortest route between them, or null if there is none.
+     * 
+     * @require the start and target of the current search have been set, and
+     *          the start is not the target
+     */
+    private Route search(Heuristic heuristic) {
+        nextStamp();
+
+        // enter the search from the start location
+        if (startSection == -1) {
+            leave(startJunction, null, -1, 0, heuristic);
+        } else {
+            for (int e = 0; e < 2; e++) {
+                // the end-point reached by leaving the start along end-point
+                // e of its section
+                int arrival = 2 * startSection + (e ^ 1);
+                if (isFree(2 * startSection + e, startOffsets[e], track
+                        .getLength(startSection))) {
+                    relax(arrival, -1, track.getLength(startSection)
+                            - startOffsets[e], heuristic);
+                }
+            }
+            if (startSection == targetSection) {
+                // the target may be reached directly along the section, in
+                // the direction that it lies in (but if the section joins
+                // two branches of the same junction, it may be shorter to
+                // turn around at that junction)
+                int direction = startOffsets[0] < targetOffsets[0] ? 0 : 1;
+                if (isFree(2 * startSection + direction,
+                        startOffsets[direction], targetOffsets[direction])) {
+                    relaxGoal(2 * startSection + direction, -1,
+                            targetOffsets[direction]
+                                    - startOffsets[direction]);
+                }
+            }
+        }
+
+        // the state that reaches the target, if there is one
+        int reached = settle(heuristic);
+        occupied = null;
+        return reached == -1 ? null : route(reached);
+    }
+
+    /**
+     * <p>
+     * Finds the length of a shortest route from the junction with the given
+     * number to every junction of the track, leaving the junction along the
+     * given branch (or along any branch, if the branch is null).
+     * </p>
+     * 
+     * <p>
+     * Since the reverse of a route is also a route, the length found for
+     * junction j is also the length of a shortest route from junction j that
+     * arrives at the given junction along the given branch.
+     * </p>
+     * 
+     * @require 0 <= junction < getSnapshot().getJunctionCount() &&
+     *          lengths.length == getSnapshot().getJunctionCount()
+     * @ensure lengths[j] is the length of a shortest route from the junction
+     *         to junction j, or -1 if there is no such route, and
+     *         lengths[junction] == 0 if branch == null
+     */
+    void findLengths(int junction, Branch branch, long[] lengths) {
+        nextStamp();
+        occupied = null;
+        startJunction = junction;
+        startSection = -1;
+        targetJunction = -1;
+        targetSection = -1;
+        if (branch == null) {
+            leave(junction, null, -1, 0, NO_HEURISTIC);
+        } else {
+            // the end-point that the junction is left along
+            int departure = track.getEndPoint(junction, branch);
+            if (departure != -1) {
+                relax(departure ^ 1, -1, track.getLength(departure >> 1),
+                        NO_HEURISTIC);
+            }
+        }
+        settle(NO_HEURISTIC);
+
+        Arrays.fill(lengths, -1);
+        if (branch == null) {
+            lengths[junction] = 0;
+        }
+        for (int state = 0; state < goal; state++) {
+            if (stamps[state] == stamp) {
+                // the junction arrived at in the state
+                int arrival = track.getEndPointJunction(state);
+                if (lengths[arrival] == -1
+                        || distances[state] < lengths[arrival]) {
+                    lengths[arrival] = distances[state];
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new search, so that the distances found by earlier searches
+     * are ignored.
+     */
+    private void nextStamp() {
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Repeatedly removes the state with the least priority from the heap and
+     * relaxes the states reached from it, until the target of the current
+     * search is removed or the heap is empty. Returns the state that reached
+     * the target, or -1 if it was not reached (in which case the distance to
+     * every state that can be reached has been found). The heap is empty
+     * afterwards.
+     */
+    private int settle(Heuristic heuristic) {
+        while (!heap.isEmpty()) {
+            // the state with the least priority
+            int state = heap.poll();
+            if (state == goal || (targetJunction != -1 && track
+                    .getEndPointJunction(state) == targetJunction)) {
+                heap.clear();
+                return state;
+            }
+            leave(track.getEndPointJunction(state), track
+                    .getEndPointBranch(state), state, distances[state],
+                    heuristic);
+        }
+        return -1;
+    }
+
+    /**
+     * Relaxes each of the states that can be reached by leaving the given
+     * junction, having arrived there in the given state along the given
+     * branch, after travelling the given distance.
+     * 
+     * @param junction
+     *            the number of the junction being left
+     * @param arrivalBranch
+     *            the branch that the junction was arrived at along, or null
+     *            if the junction is the start location
+     * @param state
+     *            the state of the train at the junction, or -1 if the
+     *            junction is the start location
+     * @param distance
+     *            the distance travelled to reach the junction
+     */
+    private void leave(int junction, Branch arrivalBranch, int state,
+            long distance, Heuristic heuristic) {
+        // the end of the slots of the junction
+        int end = track.getFirstSlot(junction + 1);
+        for (int slot = track.getFirstSlot(junction); slot < end; slot++) {
+            // the end-point that the junction is left along
+            int departure = track.getSlotEndPoint(slot);
+            if (arrivalBranch != null
+                    && (arrivalBranch == Branch.FACING) == (track
+                            .getEndPointBranch(departure) == Branch.FACING)) {
+                continue;
+            }
+            // the section that the junction is left along
+            int section = departure >> 1;
+            if (section == targetSection
+                    && isFree(departure, 0, targetOffsets[departure & 1])) {
+                relaxGoal(departure, state, distance
+                        + targetOffsets[departure & 1]);
+            }
+            if (isFree(departure, 0, track.getLength(section))) {
+                relax(departure ^ 1, state, distance
+                        + track.getLength(section), heuristic);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the current search may pass through the locations from
+     * startOffset to endOffset meters (inclusive) along the section of the
+     * given end-point, from that end-point.
+     */
+    private boolean isFree(int endPoint, int startOffset, int endOffset) {
+        return occupied == null
+                || occupied.isFree(endPoint, startOffset, endOffset);
+    }
+
+    /**
+     * Sets the distance to the given end-point state to the given distance,
+     * and records that it was reached from the given state, if that distance
+     * is less than the least distance found so far.
+     */
+    private void relax(int state, int from, long distance,
+            Heuristic heuristic) {
+        if (stamps[state] != stamp || distance < distances[state]) {
+            stamps[state] = stamp;
+            distances[state] = distance;
+            previous[state] = from;
+            heap.insertOrDecrease(state, distance + heuristic.estimate(track
+                    .getEndPointJunction(state)));
+        }
+    }
+
+    /**
+     * Sets the distance to the goal state to the given distance, and records
+     * that it was reached from the given state along the given end-point, if
+     * that distance is less than the least distance found so far.
+     */
+    private void relaxGoal(int departure, int from, long distance) {
+        if (stamps[goal] != stamp || distance < distances[goal]) {
+            stamps[goal] = stamp;
+            distances[goal] = distance;
+            previous[goal] = from;
+            goalEndPoint = departure;
+            heap.insertOrDecrease(goal, distance);
+        }
+    }
+
+    /**
+     * Returns the route of the current search that ends in the given state.
+     */
+    private Route route(int state) {
+        // the segments of the route, from last to first
+        List<Segment> segments = new ArrayList<>();
+        if (state == goal) {
+            // the offset that the target section was entered at
+            int startOffset = previous[goal] == -1 && startSection != -1
+                    ? startOffsets[goalEndPoint & 1] : 0;
+            segments.add(new Segment(track.getSection(targetSection), track
+                    .getSection(targetSection).getEndPoint(goalEndPoint & 1),
+                    startOffset, targetOffsets[goalEndPoint & 1]));
+            state = previous[goal];
+        }
+        while (state != -1) {
+            // the section travelled along to reach the state, and the
+            // end-point that it was entered along
+            Section section = track.getSection(state >> 1);
+            int departure = state ^ 1;
+            // the offset that the section was entered at
+            int startOffset = previous[state] == -1 && startSection != -1
+                    ? startOffsets[departure & 1] : 0;
+            segments.add(new Segment(section, section.getEndPoint(departure
+                    & 1), startOffset, section.getLength()));
+            state = previous[state];
+        }
+        Collections.reverse(segments);
+        return new Route(segments);
+    }
+
+}
@@ -1,10 +1,11 @@
 package railway;
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 /**
- * Provides a method to read a route from a text file.
+ * Provides methods to read a route from a text or binary file.
  */
 public class RouteReader {
 
@@ -76,15 +77,15 @@ public class RouteReader {
      */
     public static Route read(String fileName) throws IOException,
             FormatException {
-        // scanner for reading the file a line at a time
-        Scanner in = new Scanner(new FileReader(fileName));
+        // tokenizer for reading the file a line at a time
+        LineTokenizer in = new LineTokenizer(new FileReader(fileName));
         // segments on the route to be returned
         List<Segment> segments = new ArrayList<>();
         // the number of the line being read
         int lineNumber = 1;
         try {
-            while (in.hasNextLine()) {
-                segments.add(readSegment(lineNumber, in.nextLine()));
+            while (in.nextLine()) {
+                segments.add(readSegment(lineNumber, in));
                 lineNumber++;
             }
             return new Route(segments);
@@ -96,10 +97,126 @@ public class RouteReader {
     }
 
     /**
-     * Reads the segment from the given line.
+     * <p>
+     * Reads a binary file named fileName, written by the
+     * RouteWriter.writeBinary method, that describes a route and returns the
+     * route read from the file. (The format of the file is described by the
+     * BinaryFormat class.)
+     * </p>
+     * 
+     * <p>
+     * The route returned is the same as the one that the read method would
+     * return for a text file that lists the same segments in the same order,
+     * and the same checks are made: the route should be a valid route,
+     * comprised of valid segments.
+     * </p>
+     * 
+     * @param fileName
+     *            the file to read from
+     * @return the route read from the file.
+     * @throws NullPointerException
+     *             if fileName == null
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if the file is not a valid binary route file. The exception
+     *             has a message that describes the problem, including the
+     *             number of the segment (starting from one) where it was
+     *             detected, when the problem is with a single segment.
+     */
+    public static Route readBinary(String fileName) throws IOException,
+            FormatException {
+        // the contents of the file
+        ByteBuffer in = BinaryFormat.readFile(fileName);
+        // the junctions referred to by the segments in the file
+        Junction[] junctions;
+        int segmentCount; // the number of segments in the file
+        try {
+            BinaryFormat.readHeader(in, BinaryFormat.ROUTE_MAGIC, "route");
+            junctions = BinaryFormat.readJunctionTable(in);
+            segmentCount = BinaryFormat.readVarInt(in);
+        } catch (FormatException e) {
+            throw new FormatException("Error in header: " + e.getMessage());
+        }
+
+        // segments on the route to be returned
+        List<Segment> segments = new ArrayList<>();
+        for (int segmentNumber = 1; segmentNumber <= segmentCount;
+                segmentNumber++) {
+            try {
+                segments.add(readBinarySegment(in, junctions));
+            } catch (FormatException e) {
+                throw new FormatException(binaryErrorMessage(segmentNumber,
+                        e.getMessage()));
+            }
+        }
+        if (in.hasRemaining()) {
+            throw new FormatException(
+                    "Error at end of file: additional data after the last "
+                            + "segment");
+        }
+        try {
+            return new Route(segments);
+        } catch (InvalidRouteException e) {
+            throw new FormatException("Invalid Route: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the next segment from a binary route file.
      * 
-     * @require line != null
-     * @ensure Reads the segment from the line and returns it.
+     * @require in != null && junctions != null
+     * @ensure Consumes the next segment from in and returns it.
+     * @throws FormatException
+     *             if the segment is incomplete or invalid. The exception has a
+     *             message that describes the nature of the error.
+     */
+    private static Segment readBinarySegment(ByteBuffer in,
+            Junction[] junctions) throws FormatException {
+        // the parameters of the segment read from the file
+        int length = BinaryFormat.readVarInt(in);
+        if (length <= 0) {
+            throw new FormatException(
+                    "section length is less than or equal to zero");
+        }
+        Junction junction1 = BinaryFormat.readJunction(in, junctions);
+        Junction junction2 = BinaryFormat.readJunction(in, junctions);
+        int flags = BinaryFormat.readByte(in);
+        if ((flags & ~(BinaryFormat.BRANCH_FLAGS
+                | BinaryFormat.DEPARTS_FROM_SECOND)) != 0) {
+            throw new FormatException("invalid flags: " + flags);
+        }
+        JunctionBranch endPoint1 = JunctionBranch.of(junction1,
+                BinaryFormat.unpackBranch(flags, 0));
+        JunctionBranch endPoint2 = JunctionBranch.of(junction2,
+                BinaryFormat.unpackBranch(flags, 1));
+        int startOffset = BinaryFormat.readVarInt(in);
+        // the end-offset, which may overflow an int in a corrupt file
+        long endOffset = (long) startOffset + BinaryFormat.readVarInt(in);
+
+        if (endPoint1.equals(endPoint2)) {
+            throw new FormatException(
+                    "the end-points of a section must be distinct");
+        }
+
+        if (!(startOffset < endOffset && endOffset <= length)) {
+            throw new FormatException("the segment start and end offsets are"
+                    + " not within bounds.");
+        }
+
+        // the departing end-point of the segment
+        JunctionBranch departing = (flags & BinaryFormat.DEPARTS_FROM_SECOND)
+                == 0 ? endPoint1 : endPoint2;
+        return new Segment(new Section(length, endPoint1, endPoint2),
+                departing, startOffset, (int) endOffset);
+    }
+
+    /**
+     * Reads the segment from the current line of the given tokenizer.
+     * 
+     * @require lineScanner != null, and it is positioned on a line of the
+     *          file.
+     * @ensure Reads the segment from the rest of the line and returns it.
      * @throws FormaException
      *             if the line is not of the form (e.g.
      *             "9 j1 FACING j2 NORMAL 2 5") as described by the
@@ -107,48 +224,42 @@ public class RouteReader {
      *             identifies the lineNumber given, and describes the nature of
      *             the error.
      */
-    private static Segment readSegment(int lineNumber, String line)
-            throws FormatException {
-        // a scanner for the line
-        Scanner lineScanner = new Scanner(line);
+    private static Segment readSegment(int lineNumber,
+            LineTokenizer lineScanner) throws FormatException {
+        // the parameters of the section read from the line
+        int length = readSectionLength(lineNumber, lineScanner);
+        JunctionBranch[] endPoints = new JunctionBranch[2];
+        endPoints[0] = readEndPoint(lineNumber, lineScanner);
+        endPoints[1] = readEndPoint(lineNumber, lineScanner);
+        // the start and end offset of the segment read
+        int startOffset = readOffset(lineNumber, lineScanner);
+        int endOffset = readOffset(lineNumber, lineScanner);
 
-        try {
-            // the parameters of the section read from the line
-            int length = readSectionLength(lineNumber, lineScanner);
-            JunctionBranch[] endPoints = new JunctionBranch[2];
-            endPoints[0] = readEndPoint(lineNumber, lineScanner);
-            endPoints[1] = readEndPoint(lineNumber, lineScanner);
-            // the start and end offset of the segment read
-            int startOffset = readOffset(lineNumber, lineScanner);
-            int endOffset = readOffset(lineNumber, lineScanner);
-
-            if (lineScanner.hasNext()) {
-                throw new FormatException(errorMessage(lineNumber,
-                        "additional information at end of line"));
-            }
-
-            if (endPoints[0].equals(endPoints[1])) {
-                throw new FormatException(errorMessage(lineNumber,
-                        "the end-points of a section must be distinct"));
-            }
+        if (lineScanner.hasNext()) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "additional information at end of line"));
+        }
 
-            if (!(0 <= startOffset && startOffset < endOffset && endOffset <= length)) {
-                throw new FormatException(errorMessage(lineNumber,
-                        "the segment start and end offsets are"
-                                + " not within bounds."));
-            }
+        if (endPoints[0].equals(endPoints[1])) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "the end-points of a section must be distinct"));
+        }
 
-            return new Segment(new Section(length, endPoints[0], endPoints[1]),
-                    endPoints[0], startOffset, endOffset);
-        } finally {
-            lineScanner.close();
+        if (!(0 <= startOffset && startOffset < endOffset && endOffset <= length)) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "the segment start and end offsets are"
+                            + " not within bounds."));
         }
+
+        return new Segment(new Section(length, endPoints[0], endPoints[1]),
+                endPoints[0], startOffset, endOffset);
     }
 
     /**
      * Reads the section length from the scanner.
      * 
-     * @require Parameter lineScanner is not null and it is open for reading.
+     * @require Parameter lineScanner is not null, and it is positioned on a
+     *          line of the file.
      * @ensure Consumes the next token on the lineScanner, and returns the
      *         positive integer that it represents.
      * @throws FormatException
@@ -157,8 +268,8 @@ public class RouteReader {
      *             identifies the lineNumber given, and describes the nature of
      *             the error.
      */
-    private static int readSectionLength(int lineNumber, Scanner lineScanner)
-            throws FormatException {
+    private static int readSectionLength(int lineNumber,
+            LineTokenizer lineScanner) throws FormatException {
         if (!lineScanner.hasNextInt()) {
             throw new FormatException(errorMessage(lineNumber,
                     "invalid or missing section length"));
@@ -175,7 +286,8 @@ public class RouteReader {
     /**
      * Reads the next end-point from the scanner.
      * 
-     * @require Parameter lineScanner is not null and is open for reading.
+     * @require Parameter lineScanner is not null, and it is positioned on a
+     *          line of the file.
      * @ensure Consumes the next two tokens on the lineScanner, that represent a
      *         junction and its branch, respectively, and returns the end-point
      *         defined by the pair.
@@ -186,21 +298,17 @@ public class RouteReader {
      *             lineNumber given, and describes the nature of the error.
      */
     private static JunctionBranch readEndPoint(int lineNumber,
-            Scanner lineScanner) throws FormatException {
+            LineTokenizer lineScanner) throws FormatException {
         try {
             // the junction read from lineScanner
-            Junction junction = new Junction(lineScanner.next());
-            // the string representation of the branch read from lineScanner
-            String branchString = lineScanner.next();
-            // the corresponding enumerated type of the branch string
-            Branch branch;
-            try {
-                branch = Branch.valueOf(branchString);
-            } catch (IllegalArgumentException e) {
+            Junction junction = lineScanner.nextJunction();
+            // the branch read from lineScanner, or null if it is invalid
+            Branch branch = lineScanner.nextBranch();
+            if (branch == null) {
                 throw new FormatException(errorMessage(lineNumber,
-                        "invalid branch: " + branchString));
+                        "invalid branch: " + lineScanner.lastToken()));
             }
-            return new JunctionBranch(junction, branch);
+            return JunctionBranch.of(junction, branch);
         } catch (NoSuchElementException e) {
             // thrown if there are not two tokens on the scanner to consume
             throw new FormatException(errorMessage(lineNumber,
@@ -211,7 +319,8 @@ public class RouteReader {
     /**
      * Reads the offset from the scanner.
      * 
-     * @require Parameter lineScanner is not null and it is open for reading.
+     * @require Parameter lineScanner is not null, and it is positioned on a
+     *          line of the file.
      * @ensure Consumes the next token on the lineScanner, and returns the
      *         non-negative integer that it represents.
      * @throws FormatException
@@ -220,7 +329,7 @@ public class RouteReader {
      *             that identifies the lineNumber given, and describes the
      *             nature of the error.
      */
-    private static int readOffset(int lineNumber, Scanner lineScanner)
+    private static int readOffset(int lineNumber, LineTokenizer lineScanner)
             throws FormatException {
         if (!lineScanner.hasNextInt()) {
             throw new FormatException(errorMessage(lineNumber,
@@ -246,4 +355,17 @@ public class RouteReader {
     private static String errorMessage(int lineNumber, String message) {
         return "Error on line " + lineNumber + ": " + message;
     }
+
+    /**
+     * Returns an error message for a FormatException that contains the given
+     * segmentNumber of a binary route file and message.
+     * 
+     * @require message != null
+     * @ensure Returns an error message for segment segmentNumber of the file
+     *         that contains the given message.
+     */
+    private static String binaryErrorMessage(int segmentNumber,
+            String message) {
+        return "Error in segment " + segmentNumber + ": " + message;
+    }
 }
@@ -0,0 +1,98 @@
+package railway;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Provides methods to write a route to a text or binary file.
+ */
+public class RouteWriter {
+
+    /**
+     * Writes the segments of the given route to a text file named fileName, in
+     * the format read by the RouteReader.read method, with one line for each
+     * segment, in the order that they appear on the route.
+     * 
+     * @param route
+     *            the route to write
+     * @param fileName
+     *            the file to write to
+     * @throws NullPointerException
+     *             if route or fileName is null
+     * @throws IOException
+     *             if there is an error writing to the file
+     */
+    public static void write(Route route, String fileName) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(
+                new FileWriter(fileName)))) {
+            for (Segment segment : route) {
+                // the end-points of the segment, departing end-point first
+                JunctionBranch departing = segment.getDepartingEndPoint();
+                JunctionBranch approaching = segment.getApproachingEndPoint();
+                out.println(segment.getSection().getLength() + " "
+                        + departing.getJunction() + " "
+                        + departing.getBranch() + " "
+                        + approaching.getJunction() + " "
+                        + approaching.getBranch() + " "
+                        + segment.getStartOffset() + " "
+                        + segment.getEndOffset());
+            }
+            if (out.checkError()) {
+                throw new IOException("error writing to " + fileName);
+            }
+        }
+    }
+
+    /**
+     * Writes the segments of the given route to a binary file named fileName,
+     * in the format read by the RouteReader.readBinary method. (The format is
+     * described by the BinaryFormat class.)
+     * 
+     * @param route
+     *            the route to write
+     * @param fileName
+     *            the file to write to
+     * @throws NullPointerException
+     *             if route or fileName is null
+     * @throws IOException
+     *             if there is an error writing to the file
+     */
+    public static void writeBinary(Route route, String fileName)
+            throws IOException {
+        // the sections of the segments on the route, in order
+        List<Section> sections = new ArrayList<>();
+        for (Segment segment : route) {
+            sections.add(segment.getSection());
+        }
+        // the junctions of the route, mapped to their index in the table
+        Map<Junction, Integer> junctions = BinaryFormat
+                .indexJunctions(sections);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            BinaryFormat.writeHeader(out, BinaryFormat.ROUTE_MAGIC);
+            BinaryFormat.writeJunctionTable(out, junctions.keySet());
+            BinaryFormat.writeVarInt(out, sections.size());
+            for (Segment segment : route) {
+                Section section = segment.getSection();
+                // the end-points of the section of the segment
+                JunctionBranch endPoint1 = section.getEndPoint(0);
+                JunctionBranch endPoint2 = section.getEndPoint(1);
+                // the packed branches, and which end-point is departing
+                int flags = BinaryFormat.packBranches(endPoint1, endPoint2);
+                if (!segment.getDepartingEndPoint().equals(endPoint1)) {
+                    flags |= BinaryFormat.DEPARTS_FROM_SECOND;
+                }
+                BinaryFormat.writeVarInt(out, section.getLength());
+                BinaryFormat.writeVarInt(out,
+                        junctions.get(endPoint1.getJunction()));
+                BinaryFormat.writeVarInt(out,
+                        junctions.get(endPoint2.getJunction()));
+                out.writeByte(flags);
+                BinaryFormat.writeVarInt(out, segment.getStartOffset());
+                BinaryFormat.writeVarInt(out, segment.getLength());
+            }
+        }
+    }
+
+}
@@ -35,12 +35,15 @@ public class Section {
 
     // the length of the section
     private int length;
-    // the end-points of the section
+    // the end-points of the section (an unmodifiable list)
     private List<JunctionBranch> endPoints;
+    // the key of the section used by packed locations (see Location.pack)
+    private final long key;
 
     /*
      * invariant: length > 0 && endPoints != null && !endPoints.contains(null)
      * && endPoints.size() == 2 && !endPoints.get(0).equals(endPoints.get(1))
+     * && key == Location.sectionKey(endPoints.get(0), endPoints.get(1))
      */
 
     /**
@@ -75,10 +78,10 @@ public class Section {
             throw new IllegalArgumentException("End-points must be distinct.");
         }
 
-        endPoints = new ArrayList<>();
-        endPoints.add(endPoint1);
-        endPoints.add(endPoint2);
+        endPoints = Collections.unmodifiableList(Arrays.asList(endPoint1,
+                endPoint2));
         this.length = length;
+        this.key = Location.sectionKey(endPoint1, endPoint2);
     }
 
     /**
@@ -99,6 +102,63 @@ public class Section {
         return new HashSet<>(endPoints);
     }
 
+    /**
+     * <p>
+     * Returns an unmodifiable list view of the two end-points of the section.
+     * </p>
+     * 
+     * <p>
+     * Unlike getEndPoints(), this method does not create a new collection, so
+     * it should be preferred by callers that only need to iterate over the
+     * end-points.
+     * </p>
+     * 
+     * @return an unmodifiable list containing the two end-points of the
+     *         section, in the order that they were given to the constructor.
+     */
+    public List<JunctionBranch> getEndPointList() {
+        return endPoints;
+    }
+
+    /**
+     * Returns the end-point of the section with the given index: index 0
+     * corresponds to the first end-point given to the constructor, and index 1
+     * to the second.
+     * 
+     * @param index
+     *            the index of the end-point to return
+     * @throws IndexOutOfBoundsException
+     *             if index is not 0 or 1
+     * @return the end-point of the section with the given index
+     */
+    public JunctionBranch getEndPoint(int index) {
+        return endPoints.get(index);
+    }
+
+    /**
+     * Returns the key of this section used by packed locations: the packed
+     * value of each location on the section that is not at a junction is the
+     * key plus the location's offset from the reference end-point of the
+     * section (see Location.pack).
+     */
+    long getKey() {
+        return key;
+    }
+
+    /**
+     * Returns true if the given end-point is equivalent to one of the
+     * end-points of the section (according to the equals method of the
+     * JunctionBranch class), and false otherwise.
+     * 
+     * @param endPoint
+     *            the end-point to check
+     * @return true iff endPoint is an end-point of this section
+     */
+    public boolean hasEndPoint(JunctionBranch endPoint) {
+        return endPoints.get(0).equals(endPoint)
+                || endPoints.get(1).equals(endPoint);
+    }
+
     /**
      * If the given end-point is equivalent to an end-point of the section, then
      * it returns the end-point at the opposite end of the section. Otherwise
@@ -112,7 +172,7 @@ public class Section {
      * @return the end-point at the opposite end of the section to endPoint
      */
     public JunctionBranch otherEndPoint(JunctionBranch endPoint) {
-        if (!endPoints.contains(endPoint)) {
+        if (!hasEndPoint(endPoint)) {
             throw new IllegalArgumentException("The given parameter "
                     + endPoint + " is not an end-point of this section.");
         }
@@ -159,6 +219,9 @@ public class Section {
      */
     @Override
     public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
         if (!(object instanceof Section)) {
             return false;
         }
@@ -193,7 +256,9 @@ public class Section {
     public boolean checkInvariant() {
         return length > 0 && endPoints != null && !endPoints.contains(null)
                 && endPoints.size() == 2
-                && !endPoints.get(0).equals(endPoints.get(1));
+                && !endPoints.get(0).equals(endPoints.get(1))
+                && key == Location.sectionKey(endPoints.get(0), endPoints
+                        .get(1));
     }
 
 }
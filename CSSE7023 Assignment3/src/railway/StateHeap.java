@@ -0,0 +1,168 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable binary min-heap of states, numbered from zero, each with a
+ * priority. It is stored in primitive arrays (so it does not box the states
+ * or priorities), and it records the position of each state in the heap, so
+ * that the priority of a state in the heap can be decreased in place.
+ * </p>
+ */
+final class StateHeap {
+
+    // the priority of the state at each position of the heap
+    private long[] priorities;
+    // the state at each position of the heap
+    private int[] states;
+    // the position of each state in the heap, or -1 if it is not in the heap
+    private int[] positions;
+    // the number of states in the heap
+    private int size;
+
+    /*
+     * invariant:
+     * 
+     * priorities.length == states.length == positions.length &&
+     * 
+     * 0 <= size <= states.length &&
+     * 
+     * for each 0 <= i < size, positions[states[i]] == i, and every other
+     * element of positions is -1 &&
+     * 
+     * for each 0 < i < size, priorities[(i - 1) / 2] <= priorities[i]
+     */
+
+    /**
+     * Creates an empty heap of the states from 0 to stateCount - 1.
+     * 
+     * @require stateCount >= 0
+     */
+    StateHeap(int stateCount) {
+        priorities = new long[stateCount];
+        states = new int[stateCount];
+        positions = new int[stateCount];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Returns true if there are no states in the heap.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the least priority of the states in the heap.
+     * 
+     * @require !isEmpty()
+     */
+    long minPriority() {
+        return priorities[0];
+    }
+
+    /**
+     * Removes every state from the heap.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[states[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds the given state to the heap with the given priority, or, if it is
+     * already in the heap with a greater priority, decreases its priority to
+     * the given one.
+     * 
+     * @require 0 <= state < the number of states of the heap
+     */
+    void insertOrDecrease(int state, long priority) {
+        // the position of the state in the heap
+        int position = positions[state];
+        if (position == -1) {
+            position = size++;
+        } else if (priority >= priorities[position]) {
+            return;
+        }
+        siftUp(position, state, priority);
+    }
+
+    /**
+     * Removes the state with the least priority from the heap, and returns
+     * it.
+     * 
+     * @require !isEmpty()
+     */
+    int poll() {
+        // the state to be returned
+        int result = states[0];
+        positions[result] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, states[size], priorities[size]);
+        }
+        return result;
+    }
+
+    /**
+     * Places the given state with the given priority at the given position
+     * (which is either free, or currently holds the same state with a
+     * greater priority), and moves it up towards the root of the heap until
+     * its parent has a priority no greater than it.
+     */
+    private void siftUp(int position, int state, long priority) {
+        while (position > 0) {
+            // the position of the parent of the position
+            int parent = (position - 1) >>> 1;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            move(parent, position);
+            position = parent;
+        }
+        place(position, state, priority);
+    }
+
+    /**
+     * Places the given state with the given priority at the given free
+     * position, and moves it down away from the root of the heap until its
+     * children have priorities no less than it.
+     */
+    private void siftDown(int position, int state, long priority) {
+        // the first position with no children
+        int half = size >>> 1;
+        while (position < half) {
+            // the position of the child with the lesser priority
+            int child = 2 * position + 1;
+            if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                child++;
+            }
+            if (priority <= priorities[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+        }
+        place(position, state, priority);
+    }
+
+    /**
+     * Moves the state at position from to position to.
+     */
+    private void move(int from, int to) {
+        place(to, states[from], priorities[from]);
+    }
+
+    /**
+     * Places the given state with the given priority at the given position.
+     */
+    private void place(int position, int state, long priority) {
+        states[position] = state;
+        priorities[position] = priority;
+        positions[state] = position;
+    }
+
+}
@@ -25,10 +25,28 @@ public class Track implements Iterable<Section> {
     private final static String LINE_SEPARATOR = System
             .getProperty("line.separator");
 
+    // the number of changes that are always recorded for checkRecentChanges,
+    // however few sections the track has
+    private final static int MIN_CHANGES = 16;
+
     // the sections of the track
     private Set<Section> sections;
-    // the end-points of the sections in the track
-    private Set<JunctionBranch> endPoints;
+    // the end-points of the sections in the track, each mapped to the section
+    // of the track that it belongs to
+    private Map<JunctionBranch, Section> endPoints;
+    // a snapshot of the current layout of the track, or null if one has not
+    // been taken since the track was last modified
+    private TrackSnapshot snapshot;
+    // whether the sections added and removed are recorded for
+    // checkRecentChanges
+    private boolean recordingChanges;
+    // the sections added to or removed from the track since the changes were
+    // last checked, or null if they are not being recorded or there have been
+    // too many of them to be worth checking one at a time
+    private List<Section> changedSections;
+    // the largest number of changes that are recorded before they are next
+    // checked
+    private int maxChanges;
 
     /*
      * invariant:
@@ -39,7 +57,16 @@ public class Track implements Iterable<Section> {
      * section in sections &&
      * 
      * for each endPoint in endPoints, there is only one section in sections
-     * that has that end-point
+     * that has that end-point, and endPoints maps endPoint to that section &&
+     * 
+     * if snapshot != null, then it is a snapshot of the sections in sections
+     * &&
+     * 
+     * if !recordingChanges, then changedSections == null &&
+     * 
+     * if changedSections != null, then it contains each section that has
+     * been added or removed since the changes were last checked (or
+     * recordingChanges was set), and changedSections.size() <= maxChanges
      */
 
     /**
@@ -47,7 +74,7 @@ public class Track implements Iterable<Section> {
      */
     public Track() {
         sections = new HashSet<>();
-        endPoints = new HashSet<>();
+        endPoints = new HashMap<>();
     }
 
     /**
@@ -102,8 +129,8 @@ public class Track implements Iterable<Section> {
 
         // for each end-point (j,b) of the section, check that the junction j
         // isn't already connected to a section on branch b.
-        for (JunctionBranch endPoint : section.getEndPoints()) {
-            if (endPoints.contains(endPoint)) {
+        for (JunctionBranch endPoint : section.getEndPointList()) {
+            if (endPoints.containsKey(endPoint)) {
                 throw new InvalidTrackException("The junction "
                         + endPoint.getJunction()
                         + " is already connected to a section along branch "
@@ -113,9 +140,11 @@ public class Track implements Iterable<Section> {
 
         // add the section to the track
         sections.add(section);
-        for (JunctionBranch endPoint : section.getEndPoints()) {
-            endPoints.add(endPoint);
+        for (JunctionBranch endPoint : section.getEndPointList()) {
+            endPoints.put(endPoint, section);
         }
+        snapshot = null;
+        recordChange(section);
     }
 
     /**
@@ -129,9 +158,49 @@ public class Track implements Iterable<Section> {
     public void removeSection(Section section) {
         if (section != null && sections.contains(section)) {
             sections.remove(section);
-            for (JunctionBranch endPoint : section.getEndPoints()) {
+            for (JunctionBranch endPoint : section.getEndPointList()) {
                 endPoints.remove(endPoint);
             }
+            snapshot = null;
+            recordChange(section);
+        }
+    }
+
+    /**
+     * Records that the given section has been added to or removed from the
+     * track, for checkRecentChanges, if changes are being recorded, unless so
+     * many sections have changed that it is no slower to check the whole
+     * track.
+     * 
+     * @require section != null
+     */
+    private void recordChange(Section section) {
+        if (changedSections != null) {
+            if (changedSections.size() >= maxChanges) {
+                changedSections = null;
+            } else {
+                changedSections.add(section);
+            }
+        }
+    }
+
+    /**
+     * Starts recording the sections added to or removed from the track from
+     * now on, for checkRecentChanges, if recording is true, and otherwise
+     * stops recording them and forgets those recorded. Changes are not
+     * recorded by default.
+     * 
+     * This method is only intended for testing purposes.
+     * 
+     * @param recording
+     *            whether to record the changes to the track
+     */
+    public void setRecordingChanges(boolean recording) {
+        recordingChanges = recording;
+        if (recording) {
+            clearChanges();
+        } else {
+            changedSections = null;
         }
     }
 
@@ -156,7 +225,7 @@ public class Track implements Iterable<Section> {
     public Set<Junction> getJunctions() {
         Set<Junction> junctions = new HashSet<>(); // junctions to return
         for (Section section : sections) {
-            for (JunctionBranch endPoint : section.getEndPoints()) {
+            for (JunctionBranch endPoint : section.getEndPointList()) {
                 junctions.add(endPoint.getJunction());
             }
         }
@@ -178,13 +247,30 @@ public class Track implements Iterable<Section> {
      */
     public Section getTrackSection(Junction junction, Branch branch) {
         // the end-point made up of the junction and branch
-        JunctionBranch endPoint = new JunctionBranch(junction, branch);
-        for (Section section : sections) {
-            if (section.getEndPoints().contains(endPoint)) {
-                return section;
-            }
+        JunctionBranch endPoint = JunctionBranch.of(junction, branch);
+        return endPoints.get(endPoint);
+    }
+
+    /**
+     * <p>
+     * Returns an immutable snapshot of the current layout of the track. The
+     * snapshot is not affected by later changes to the track, and may be read
+     * by many threads at once without locking.
+     * </p>
+     * 
+     * <p>
+     * The snapshot is built the first time that this method is called after
+     * the track is modified, and the same snapshot is returned until the
+     * track is next modified.
+     * </p>
+     * 
+     * @return a snapshot of the sections that are currently on the track
+     */
+    public TrackSnapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new TrackSnapshot(sections);
         }
-        return null;
+        return snapshot;
     }
 
     /**
@@ -237,14 +323,96 @@ public class Track implements Iterable<Section> {
 
         // check that endPoints is the same as expectedEndPoints, and that each
         // end-point belongs to only one section.
-        if (!expectedEndPoints.equals(endPoints)
+        if (!expectedEndPoints.equals(endPoints.keySet())
                 || endPoints.size() != 2 * sections.size()) {
             return false;
         }
 
+        // check that each end-point is mapped to the section it belongs to
+        for (Map.Entry<JunctionBranch, Section> entry : endPoints.entrySet()) {
+            if (!sections.contains(entry.getValue())
+                    || !entry.getValue().hasEndPoint(entry.getKey())) {
+                return false;
+            }
+        }
+
         return true; // otherwise OK
     }
 
+    /**
+     * <p>
+     * Determines whether the parts of the class invariant that can have been
+     * affected by the sections added to or removed from the track since this
+     * method last returned true (or changes started to be recorded, by
+     * setRecordingChanges) are satisfied.
+     * </p>
+     * 
+     * <p>
+     * If the invariant was satisfied at that time, then this determines
+     * whether it is still satisfied, in time proportional to the number of
+     * sections that have been added or removed since then, so it can be
+     * called after every change to the track. If changes are not being
+     * recorded, or more sections have changed than there were on the track,
+     * then the whole track is checked by checkInvariant instead. The full
+     * check should still be run from time to time, since this method assumes
+     * the earlier check was right.
+     * </p>
+     * 
+     * This method is only intended for testing purposes.
+     * 
+     * @return true if the changes to this class since they were last checked
+     *         have kept it internally consistent, and false otherwise
+     */
+    public boolean checkRecentChanges() {
+        // whether the recent changes kept the track consistent
+        boolean consistent = changedSections == null ? checkInvariant()
+                : checkChanges(changedSections);
+        if (consistent && recordingChanges) {
+            clearChanges();
+        }
+        return consistent;
+    }
+
+    /**
+     * Returns true if the end-points of the given sections, each of which
+     * has been added to or removed from the track, satisfy the class
+     * invariant, and each end-point of the track belongs to only one section.
+     * 
+     * @require changed != null && !changed.contains(null)
+     */
+    private boolean checkChanges(List<Section> changed) {
+        // each end-point belongs to only one section
+        if (endPoints.size() != 2 * sections.size()) {
+            return false;
+        }
+        for (Section section : changed) {
+            // whether the section is on the track now
+            boolean onTrack = sections.contains(section);
+            for (JunctionBranch endPoint : section.getEndPointList()) {
+                // the section that the end-point is mapped to, if any
+                Section mapped = endPoints.get(endPoint);
+                if (onTrack ? !section.equals(mapped) : mapped != null
+                        && (!sections.contains(mapped)
+                                || !mapped.hasEndPoint(endPoint))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts a new, empty record of the changes to the track, which may hold
+     * as many changes as there are sections on the track now, plus
+     * MIN_CHANGES.
+     * 
+     * @require recordingChanges
+     */
+    private void clearChanges() {
+        changedSections = new ArrayList<>();
+        maxChanges = sections.size() + MIN_CHANGES;
+    }
+
     /**
      * Calculates and returns the set of all of the end-points of the sections
      * in the given set.
@@ -257,7 +425,7 @@ public class Track implements Iterable<Section> {
         // the end-points of sections under construction
         Set<JunctionBranch> endPoints = new HashSet<>();
         for (Section section : sections) {
-            for (JunctionBranch endPoint : section.getEndPoints()) {
+            for (JunctionBranch endPoint : section.getEndPointList()) {
                 endPoints.add(endPoint);
             }
         }
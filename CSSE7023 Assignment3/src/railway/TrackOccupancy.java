@@ -0,0 +1,374 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable record of the locations on a track that are occupied by a
+ * collection of routes (for example, the sub-routes allocated to trains),
+ * indexed by the numbers of a snapshot of the track so that a stretch of a
+ * section can be checked for occupied locations without creating any
+ * objects.
+ * </p>
+ * 
+ * <p>
+ * A route occupies every location that lies on it, so a route that is
+ * checked against an occupancy in this way intersects with one of the
+ * occupying routes (see Route.intersects) if and only if one of its
+ * locations is occupied. A location at a junction is occupied if any of the
+ * routes starts, ends or passes through the junction, along any of its
+ * branches.
+ * </p>
+ */
+public final class TrackOccupancy {
+
+    // the snapshot of the track whose locations are recorded
+    private final TrackSnapshot track;
+    // whether each junction of the track is occupied
+    private final boolean[] occupiedJunctions;
+    // the occupied intervals of section s are intervals firstIntervals[s] to
+    // firstIntervals[s + 1] - 1
+    private final int[] firstIntervals;
+    // the bounds of each interval, measured from end-point 0 of its section
+    private final int[] starts;
+    private final int[] ends;
+
+    /*
+     * invariant:
+     * 
+     * track != null && occupiedJunctions.length == track.getJunctionCount()
+     * && firstIntervals.length == track.getSectionCount() + 1 &&
+     * firstIntervals[0] == 0 && firstIntervals is non-decreasing &&
+     * starts.length == ends.length >= firstIntervals[track.getSectionCount()]
+     * &&
+     * 
+     * for each interval i, 0 <= starts[i] <= ends[i] <= the length of its
+     * section, and each later interval i + 1 of the same section has
+     * starts[i + 1] > ends[i]
+     */
+
+    /**
+     * Creates a record of the locations on the given snapshot of a track that
+     * are occupied by the given routes. Only the locations that are on the
+     * track are recorded.
+     * 
+     * @param track
+     *            a snapshot of the track that the routes are on
+     * @param routes
+     *            the routes that occupy the track
+     * @throws NullPointerException
+     *             if either parameter is null, or routes contains null
+     */
+    public TrackOccupancy(TrackSnapshot track,
+            Collection<? extends Route> routes) {
+        if (track == null || routes == null) {
+            throw new NullPointerException("Parameters cannot be null.");
+        }
+        this.track = track;
+        occupiedJunctions = new boolean[track.getJunctionCount()];
+
+        // the section, first offset and last offset of each segment on the
+        // track (measured from end-point 0 of its section), in order
+        int[] sections = new int[16];
+        int[] segmentStarts = new int[16];
+        int[] segmentEnds = new int[16];
+        int segmentCount = 0;
+        for (Route route : routes) {
+            for (Segment segment : route) {
+                Section section = segment.getSection();
+                if (segment.getStartOffset() == 0) {
+                    occupy(segment.getDepartingEndPoint().getJunction());
+                }
+                if (segment.getEndOffset() == section.getLength()) {
+                    occupy(segment.getApproachingEndPoint().getJunction());
+                }
+                // the number of the section on the track
+                int s = track.indexOf(section);
+                if (s == -1) {
+                    continue;
+                }
+                if (segmentCount == sections.length) {
+                    sections = Arrays.copyOf(sections, 2 * segmentCount);
+                    segmentStarts = Arrays.copyOf(segmentStarts,
+                            2 * segmentCount);
+                    segmentEnds = Arrays.copyOf(segmentEnds, 2 * segmentCount);
+                }
+                sections[segmentCount] = s;
+                if (segment.getDepartingEndPoint().equals(
+                        track.getSection(s).getEndPoint(0))) {
+                    segmentStarts[segmentCount] = segment.getStartOffset();
+                    segmentEnds[segmentCount] = segment.getEndOffset();
+                } else {
+                    segmentStarts[segmentCount] = section.getLength()
+                            - segment.getEndOffset();
+                    segmentEnds[segmentCount] = section.getLength()
+                            - segment.getStartOffset();
+                }
+                segmentCount++;
+            }
+        }
+
+        // group the intervals by section (a counting sort), then sort and
+        // merge the intervals of each section
+        int sectionCount = track.getSectionCount();
+        firstIntervals = new int[sectionCount + 1];
+        for (int i = 0; i < segmentCount; i++) {
+            firstIntervals[sections[i] + 1]++;
+        }
+        for (int s = 0; s < sectionCount; s++) {
+            firstIntervals[s + 1] += firstIntervals[s];
+        }
+        // the intervals, grouped by section, each packed into a long as its
+        // start followed by its end (so that they sort by their start)
+        long[] intervals = new long[segmentCount];
+        // the next free interval of each section
+        int[] next = Arrays.copyOf(firstIntervals, sectionCount);
+        for (int i = 0; i < segmentCount; i++) {
+            intervals[next[sections[i]]++] = (long) segmentStarts[i] << 32
+                    | segmentEnds[i];
+        }
+        starts = new int[segmentCount];
+        ends = new int[segmentCount];
+        // the number of merged intervals
+        int merged = 0;
+        for (int s = 0; s < sectionCount; s++) {
+            // the first merged interval of the section
+            int first = merged;
+            Arrays.sort(intervals, firstIntervals[s], firstIntervals[s + 1]);
+            for (int i = firstIntervals[s]; i < firstIntervals[s + 1]; i++) {
+                // the bounds of the interval
+                int start = (int) (intervals[i] >>> 32);
+                int end = (int) intervals[i];
+                if (merged > first && start <= ends[merged - 1]) {
+                    ends[merged - 1] = Math.max(ends[merged - 1], end);
+                } else {
+                    starts[merged] = start;
+                    ends[merged++] = end;
+                }
+            }
+            firstIntervals[s] = first;
+        }
+        firstIntervals[sectionCount] = merged;
+    }
+
+    /**
+     * Records that the given junction is occupied, if it is on the track.
+     * 
+     * @require junction != null
+     */
+    private void occupy(Junction junction) {
+        // the number of the junction on the track
+        int j = track.indexOf(junction);
+        if (j != -1) {
+            occupiedJunctions[j] = true;
+        }
+    }
+
+    /**
+     * Returns the snapshot of the track that this occupancy records the
+     * locations of.
+     * 
+     * @return the snapshot of the track
+     */
+    public TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    /**
+     * Returns true if the junction with the given number is occupied.
+     * 
+     * @param junction
+     *            the number of a junction of the snapshot
+     * @return true iff one of the routes starts, ends or passes through the
+     *         junction
+     * @throws IndexOutOfBoundsException
+     *             if junction is negative, or not less than
+     *             getSnapshot().getJunctionCount()
+     */
+    public boolean isJunctionOccupied(int junction) {
+        return occupiedJunctions[junction];
+    }
+
+    /**
+     * Returns true if the given location is occupied.
+     * 
+     * @param location
+     *            the location to check
+     * @return true iff one of the routes passes through the location
+     * @throws NullPointerException
+     *             if location is null
+     * @throws IllegalArgumentException
+     *             if the location is not on the track
+     */
+    public boolean isOccupied(Location location) {
+        // the number of the section of the location
+        int section = track.indexOf(location.getSection());
+        if (section == -1) {
+            throw new IllegalArgumentException("The location " + location
+                    + " is not on the track.");
+        }
+        // the end-point that the location is measured from
+        int endPoint = 2 * section + (track.getSection(section).getEndPoint(0)
+                .equals(location.getEndPoint()) ? 0 : 1);
+        return firstOccupied(endPoint, location.getOffset(), location
+                .getOffset()) != -1;
+    }
+
+    /**
+     * Returns true if none of the locations on the section of the given
+     * end-point, from startOffset to endOffset meters from that end-point
+     * (inclusive), are occupied.
+     * 
+     * @see #firstOccupied(int, int, int)
+     */
+    public boolean isFree(int endPoint, int startOffset, int endOffset) {
+        return firstOccupied(endPoint, startOffset, endOffset) == -1;
+    }
+
+    /**
+     * Returns the offset of the first occupied location on the section of the
+     * given end-point, from startOffset to endOffset meters from that
+     * end-point (inclusive), or -1 if none of them are occupied. The
+     * locations at either end of the section (at the junctions of its
+     * end-points) are occupied if those junctions are occupied.
+     * 
+     * @param endPoint
+     *            the number of an end-point of the snapshot
+     * @param startOffset
+     *            the offset from the end-point of the first location to check
+     * @param endOffset
+     *            the offset from the end-point of the last location to check
+     * @return the least offset from the end-point, between startOffset and
+     *         endOffset (inclusive), of an occupied location, or -1 if there
+     *         is none
+     * @throws IndexOutOfBoundsException
+     *             if endPoint is negative, or not less than 2 *
+     *             getSnapshot().getSectionCount()
+     * @require 0 <= startOffset <= endOffset <= the length of the section
+     */
+    public int firstOccupied(int endPoint, int startOffset, int endOffset) {
+        if (startOffset == 0
+                && occupiedJunctions[track.getEndPointJunction(endPoint)]) {
+            return 0;
+        }
+        // the section of the end-point, and its length
+        int section = endPoint >> 1;
+        int length = track.getLength(section);
+        // the first and last interval of the section
+        int low = firstIntervals[section];
+        int high = firstIntervals[section + 1] - 1;
+        if (low <= high) {
+            if ((endPoint & 1) == 0) {
+                // the first interval that ends at or after startOffset
+                int i = firstEndingFrom(low, high, startOffset);
+                if (i <= high && starts[i] <= endOffset) {
+                    return Math.max(starts[i], startOffset);
+                }
+            } else {
+                // in terms of end-point 0, the last interval that starts at
+                // or before length - startOffset
+                int i = firstStartingAfter(low, high, length - startOffset)
+                        - 1;
+                if (i >= low && ends[i] >= length - endOffset) {
+                    return length - Math.min(ends[i], length - startOffset);
+                }
+            }
+        }
+        if (endOffset == length && occupiedJunctions[track
+                .getEndPointJunction(endPoint ^ 1)]) {
+            return length;
+        }
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Returns the longest prefix of the given route that does not pass
+     * through any occupied location, or null if the first location of the
+     * route is occupied.
+     * </p>
+     * 
+     * <p>
+     * If the route passes through no occupied locations, then it is returned
+     * itself. If only its first location is free, then a route with no
+     * segments is returned.
+     * </p>
+     * 
+     * @param route
+     *            a route on the track
+     * @return the longest prefix of the route whose locations are all free,
+     *         or null if there is none
+     * @throws NullPointerException
+     *             if route is null
+     * @throws IllegalArgumentException
+     *             if the route is not on the track
+     */
+    public Route freePrefix(Route route) {
+        // the distance along the route to the start of the current segment
+        int offset = 0;
+        for (Segment segment : route) {
+            // the number of the section of the segment on the track
+            int section = track.indexOf(segment.getSection());
+            if (section == -1) {
+                throw new IllegalArgumentException("The route is not on the "
+                        + "track.");
+            }
+            // the end-point that the segment departs from
+            int endPoint = 2 * section + (track.getSection(section)
+                    .getEndPoint(0).equals(segment.getDepartingEndPoint()) ? 0
+                    : 1);
+            // the offset from the end-point of the first occupied location
+            int first = firstOccupied(endPoint, segment.getStartOffset(),
+                    segment.getEndOffset());
+            if (first != -1) {
+                // the distance along the route to the occupied location
+                int occupiedOffset = offset + first - segment.getStartOffset();
+                if (occupiedOffset == 0) {
+                    return null;
+                } else if (occupiedOffset == 1) {
+                    return new Route(new ArrayList<Segment>());
+                }
+                return route.getSubroute(0, occupiedOffset - 1);
+            }
+            offset += segment.getLength();
+        }
+        return route;
+    }
+
+    /**
+     * Returns the index of the first of the intervals from low to high
+     * (inclusive) whose start is greater than the given offset, or high + 1
+     * if there is none.
+     */
+    private int firstStartingAfter(int low, int high, int offset) {
+        high++;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first of the intervals from low to high
+     * (inclusive) whose end is at least the given offset, or high + 1 if
+     * there is none.
+     */
+    private int firstEndingFrom(int low, int high, int offset) {
+        high++;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
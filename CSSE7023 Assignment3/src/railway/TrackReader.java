@@ -1,13 +1,24 @@
 package railway;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * Provides a method to read a track from a text file.
+ * Provides methods to read a track from a text or binary file.
  */
 public class TrackReader {
 
+    // the smallest chunk of a file that is parsed as a separate task by the
+    // readParallel method
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // the number of chunks per worker thread that a file is split into by the
+    // readParallel method, so that the work is balanced between the workers
+    private static final int CHUNKS_PER_WORKER = 4;
+
     /**
      * <p>
      * Reads a text file named fileName that describes the sections on a track,
@@ -83,15 +94,275 @@ public class TrackReader {
      */
     public static Track read(String fileName) throws IOException,
             FormatException {
-        // scanner for reading the file a line at a time
-        Scanner in = new Scanner(new FileReader(fileName));
+        return read(new LineTokenizer(new FileReader(fileName)));
+    }
+
+    /**
+     * <p>
+     * Reads a text file named fileName that describes the sections on a track,
+     * in the same format as the read method, and returns a track containing
+     * each of the sections in the file.
+     * </p>
+     * 
+     * <p>
+     * Rather than streaming the file through a FileReader, this method
+     * memory-maps the file (a window at a time, so that it can be used on
+     * files that are larger than 2GB), and tokenizes the lines of the file
+     * directly from the mapped memory. It is intended for very large files.
+     * </p>
+     * 
+     * <p>
+     * The result is the same as that of the read method: the same track is
+     * returned for a valid file, and the same FormatException, with the same
+     * message and line number, is thrown for an invalid one.
+     * </p>
+     * 
+     * @param fileName
+     *            the file to read from
+     * @return a track containing the sections from the file
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if there is an error with the input format, as described by
+     *             the read method.
+     */
+    public static Track readMapped(String fileName) throws IOException,
+            FormatException {
+        return read(new LineTokenizer(new MappedFileReader(fileName)));
+    }
+
+    /**
+     * <p>
+     * Reads a text file named fileName that describes the sections on a track,
+     * in the same format as the read method, and returns a track containing
+     * each of the sections in the file. The file is parsed in parallel, in the
+     * common ForkJoinPool.
+     * </p>
+     * 
+     * <p>
+     * The result is the same as that of the read method: the same track is
+     * returned for a valid file, and the same FormatException, with the same
+     * message and line number, is thrown for an invalid one.
+     * </p>
+     * 
+     * @param fileName
+     *            the file to read from
+     * @return a track containing the sections from the file
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if there is an error with the input format, as described by
+     *             the read method.
+     */
+    public static Track readParallel(String fileName) throws IOException,
+            FormatException {
+        return readParallel(fileName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <p>
+     * Reads a text file named fileName that describes the sections on a track,
+     * in the same format as the read method, and returns a track containing
+     * each of the sections in the file. The file is parsed in parallel, in the
+     * given pool.
+     * </p>
+     * 
+     * <p>
+     * The file is split into chunks that each consist of whole lines, and the
+     * lines of each chunk are parsed into sections by a separate task. The
+     * sections are then added to the track in a single pass, in the order of
+     * the lines of the file, which checks for duplicate sections and sections
+     * with a common end-point. Any error is reported at the first line at
+     * which the read method would have reported it.
+     * </p>
+     * 
+     * <p>
+     * The chunks are split at line-feed bytes, so the file can only be split
+     * if the default charset is one in which such a byte always ends a line
+     * (e.g. UTF-8). For other charsets, the file is read by a single task.
+     * </p>
+     * 
+     * <p>
+     * The result is the same as that of the read method: the same track is
+     * returned for a valid file, and the same FormatException, with the same
+     * message and line number, is thrown for an invalid one.
+     * </p>
+     * 
+     * @param fileName
+     *            the file to read from
+     * @param pool
+     *            the pool that the file is parsed in
+     * @return a track containing the sections from the file
+     * @throws NullPointerException
+     *             if pool is null
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if there is an error with the input format, as described by
+     *             the read method.
+     */
+    public static Track readParallel(String fileName, ForkJoinPool pool)
+            throws IOException, FormatException {
+        if (pool == null) {
+            throw new NullPointerException("Parameter pool cannot be null.");
+        }
+        // the chunks of the file, in order
+        List<Chunk> chunks = split(fileName, pool.getParallelism());
+        pool.invoke(new ParseTask(fileName, chunks, 0, chunks.size()));
+
+        Track track = new Track(); // the track to be returned
+        int lineNumber = 1; // the number of the line being merged
+        for (Chunk chunk : chunks) {
+            // the number of the first line of the chunk
+            int firstLine = lineNumber;
+            for (Section section : chunk.sections) {
+                // add section to the track unless it is a duplicate, or adding
+                // it would cause the track to become invalid
+                if (track.contains(section)) {
+                    throw new FormatException(errorMessage(lineNumber,
+                            "duplicate section detected: " + section));
+                }
+                try {
+                    track.addSection(section);
+                } catch (InvalidTrackException e) {
+                    throw new FormatException(errorMessage(lineNumber,
+                            "cannot add section " + section + " to the track: "
+                                    + e.getMessage()));
+                }
+                lineNumber++;
+            }
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+            if (chunk.failed) {
+                // parse the chunk again, with the correct line numbers, to
+                // throw the exception for the line that could not be parsed
+                parse(fileName, chunk, firstLine, new ArrayList<Section>());
+            }
+        }
+        return track;
+    }
+
+    /**
+     * Splits the file named fileName into chunks of whole lines, for parsing
+     * by the given number of workers.
+     * 
+     * @require fileName != null && workers > 0
+     * @ensure Returns a list of consecutive, non-overlapping chunks that cover
+     *         the whole file, each of which (except the last) ends with a
+     *         line-feed byte. If the default charset is not one in which a
+     *         line-feed byte always ends a line, the list contains a single
+     *         chunk.
+     * @throws IOException
+     *             if there is an error reading from the file
+     */
+    private static List<Chunk> split(String fileName, int workers)
+            throws IOException {
+        // the chunks to be returned
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = new FileInputStream(fileName).getChannel()) {
+            long size = channel.size(); // the size of the file in bytes
+            // the number of chunks to aim for
+            long count = Math.min(size / MIN_CHUNK_SIZE, (long) workers
+                    * CHUNKS_PER_WORKER);
+            if (!MappedFileReader.isAsciiCompatible(Charset.defaultCharset())) {
+                count = 1;
+            }
+            long start = 0; // the start of the next chunk
+            for (long i = 1; i < count && start < size; i++) {
+                // the first line boundary after the nominal end of the chunk
+                long end = nextLineStart(channel, Math.max(start, i * size
+                        / count), size);
+                chunks.add(new Chunk(start, end));
+                start = end;
+            }
+            chunks.add(new Chunk(start, Long.MAX_VALUE));
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the position just after the first line-feed byte at or after
+     * the given position of the file, or the size of the file if there is no
+     * such byte.
+     * 
+     * @require channel != null && 0 <= position <= size
+     * @throws IOException
+     *             if there is an error reading from the file
+     */
+    private static long nextLineStart(FileChannel channel, long position,
+            long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        while (position < size) {
+            buffer.clear();
+            // the number of bytes read into the buffer
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines of the given chunk of the file named fileName into
+     * sections, numbering the lines from firstLine.
+     * 
+     * @require fileName != null && chunk != null && firstLine >= 1 &&
+     *          sections != null
+     * @ensure Adds the sections of the lines of the chunk to the given list
+     *         of sections, in order, until a line cannot be parsed.
+     * @throws IOException
+     *             if there is an error reading from the file
+     * @throws FormatException
+     *             if a line of the chunk cannot be parsed. The exception has a
+     *             message that identifies the line number of that line
+     *             (counting from firstLine), as described by the read method.
+     */
+    private static void parse(String fileName, Chunk chunk, int firstLine,
+            List<Section> sections) throws IOException, FormatException {
+        // tokenizer for reading the chunk a line at a time
+        LineTokenizer in = new LineTokenizer(new MappedFileReader(fileName,
+                chunk.start, chunk.end));
+        int lineNumber = firstLine; // the number of the line being read
+        try {
+            while (in.nextLine()) {
+                sections.add(readSection(lineNumber, in));
+                lineNumber++;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the sections of a track from the text read by the given
+     * tokenizer, and closes the tokenizer.
+     * 
+     * @require in != null, and no lines have been read from it.
+     * @ensure Returns a track containing the sections read from in, as
+     *         described by the read method.
+     * @throws IOException
+     *             if there is an error reading from the tokenizer
+     * @throws FormatException
+     *             if there is an error with the input format, as described by
+     *             the read method.
+     */
+    private static Track read(LineTokenizer in) throws IOException,
+            FormatException {
         Track track = new Track(); // the track to be returned
         int lineNumber = 1; // the number of the line being read
 
         try {
-            while (in.hasNextLine()) {
+            while (in.nextLine()) {
                 // the section read from the line
-                Section section = readSection(lineNumber, in.nextLine());
+                Section section = readSection(lineNumber, in);
 
                 // add section to the track unless it is a duplicate, or adding
                 // it would cause the track to become invalid
@@ -115,47 +386,154 @@ public class TrackReader {
     }
 
     /**
-     * Reads the section from the given line.
+     * <p>
+     * Reads a binary file named fileName, written by the
+     * TrackWriter.writeBinary method, that describes the sections on a track,
+     * and returns a track containing each of the sections in the file. (The
+     * format of the file is described by the BinaryFormat class.)
+     * </p>
+     * 
+     * <p>
+     * The track returned is the same as the one that the read method would
+     * return for a text file that lists the same sections in the same order,
+     * and the same checks are made on the sections: the file is rejected if it
+     * contains a duplicate section, or two sections with a common end-point.
+     * </p>
      * 
-     * @require line != null
-     * @ensure Reads the section from the line and returns it.
+     * <p>
+     * If a FormatException is thrown, it will have a meaningful message that
+     * describes the problem with the file, including the number of the section
+     * (starting from one) where the problem was detected, or the fact that the
+     * problem was with the header of the file.
+     * </p>
+     * 
+     * @param fileName
+     *            the file to read from
+     * @return a track containing the sections from the file
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if the file is not a valid binary track file.
+     */
+    public static Track readBinary(String fileName) throws IOException,
+            FormatException {
+        // the contents of the file
+        ByteBuffer in = BinaryFormat.readFile(fileName);
+        Track track = new Track(); // the track to be returned
+        // the junctions referred to by the sections in the file
+        Junction[] junctions;
+        int sectionCount; // the number of sections in the file
+        try {
+            BinaryFormat.readHeader(in, BinaryFormat.TRACK_MAGIC, "track");
+            junctions = BinaryFormat.readJunctionTable(in);
+            sectionCount = BinaryFormat.readVarInt(in);
+        } catch (FormatException e) {
+            throw new FormatException("Error in header: " + e.getMessage());
+        }
+
+        for (int sectionNumber = 1; sectionNumber <= sectionCount;
+                sectionNumber++) {
+            Section section; // the section read from the file
+            try {
+                section = readBinarySection(in, junctions);
+            } catch (FormatException e) {
+                throw new FormatException(binaryErrorMessage(sectionNumber,
+                        e.getMessage()));
+            }
+
+            // add section to the track unless it is a duplicate, or adding
+            // it would cause the track to become invalid
+            if (track.contains(section)) {
+                throw new FormatException(binaryErrorMessage(sectionNumber,
+                        "duplicate section detected: " + section));
+            }
+            try {
+                track.addSection(section);
+            } catch (InvalidTrackException e) {
+                throw new FormatException(binaryErrorMessage(sectionNumber,
+                        "cannot add section " + section + " to the track: "
+                                + e.getMessage()));
+            }
+        }
+        if (in.hasRemaining()) {
+            throw new FormatException(
+                    "Error at end of file: additional data after the last "
+                            + "section");
+        }
+        return track;
+    }
+
+    /**
+     * Reads the next section from a binary track file.
+     * 
+     * @require in != null && junctions != null
+     * @ensure Consumes the next section from in and returns it.
+     * @throws FormatException
+     *             if the section is incomplete or invalid. The exception has a
+     *             message that describes the nature of the error.
+     */
+    private static Section readBinarySection(ByteBuffer in,
+            Junction[] junctions) throws FormatException {
+        // the parameters of the section read from the file
+        int length = BinaryFormat.readVarInt(in);
+        if (length <= 0) {
+            throw new FormatException("length is less than or equal to zero");
+        }
+        Junction junction1 = BinaryFormat.readJunction(in, junctions);
+        Junction junction2 = BinaryFormat.readJunction(in, junctions);
+        int flags = BinaryFormat.readByte(in);
+        if ((flags & ~BinaryFormat.BRANCH_FLAGS) != 0) {
+            throw new FormatException("invalid flags: " + flags);
+        }
+        JunctionBranch endPoint1 = JunctionBranch.of(junction1,
+                BinaryFormat.unpackBranch(flags, 0));
+        JunctionBranch endPoint2 = JunctionBranch.of(junction2,
+                BinaryFormat.unpackBranch(flags, 1));
+
+        if (endPoint1.equals(endPoint2)) {
+            throw new FormatException(
+                    "the end-points of a section must be distinct");
+        }
+        return new Section(length, endPoint1, endPoint2);
+    }
+
+    /**
+     * Reads the section from the current line of the given tokenizer.
+     * 
+     * @require lineScanner != null, and it is positioned on a line of the
+     *          file.
+     * @ensure Reads the section from the rest of the line and returns it.
      * @throws FormaException
      *             if the line is not of the form (e.g. "9 j1 FACING j2 NORMAL")
      *             as described by the TrackReader.read method. The exception
      *             has a message that identifies the lineNumber given, and
      *             describes the nature of the error.
      */
-    private static Section readSection(int lineNumber, String line)
-            throws FormatException {
-        // a scanner for the line
-        Scanner lineScanner = new Scanner(line);
-
-        try {
-            // the parameters of the section read from the line
-            int length = readSectionLength(lineNumber, lineScanner);
-            JunctionBranch[] endPoints = new JunctionBranch[2];
-            endPoints[0] = readEndPoint(lineNumber, lineScanner);
-            endPoints[1] = readEndPoint(lineNumber, lineScanner);
+    private static Section readSection(int lineNumber,
+            LineTokenizer lineScanner) throws FormatException {
+        // the parameters of the section read from the line
+        int length = readSectionLength(lineNumber, lineScanner);
+        JunctionBranch[] endPoints = new JunctionBranch[2];
+        endPoints[0] = readEndPoint(lineNumber, lineScanner);
+        endPoints[1] = readEndPoint(lineNumber, lineScanner);
 
-            if (lineScanner.hasNext()) {
-                throw new FormatException(errorMessage(lineNumber,
-                        "additional information at end of line"));
-            }
+        if (lineScanner.hasNext()) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "additional information at end of line"));
+        }
 
-            if (endPoints[0].equals(endPoints[1])) {
-                throw new FormatException(errorMessage(lineNumber,
-                        "the end-points of a section must be distinct"));
-            }
-            return new Section(length, endPoints[0], endPoints[1]);
-        } finally {
-            lineScanner.close();
+        if (endPoints[0].equals(endPoints[1])) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "the end-points of a section must be distinct"));
         }
+        return new Section(length, endPoints[0], endPoints[1]);
     }
 
     /**
      * Reads the section length from the scanner.
      * 
-     * @require Parameter lineScanner is not null and it is open for reading.
+     * @require Parameter lineScanner is not null, and it is positioned on a
+     *          line of the file.
      * @ensure Consumes the next token on the lineScanner, and returns the
      *         positive integer that it represents.
      * @throws FormatException
@@ -164,8 +542,8 @@ public class TrackReader {
      *             identifies the lineNumber given, and describes the nature of
      *             the error.
      */
-    private static int readSectionLength(int lineNumber, Scanner lineScanner)
-            throws FormatException {
+    private static int readSectionLength(int lineNumber,
+            LineTokenizer lineScanner) throws FormatException {
         if (!lineScanner.hasNextInt()) {
             throw new FormatException(errorMessage(lineNumber,
                     "invalid or missing section length"));
@@ -182,7 +560,8 @@ public class TrackReader {
     /**
      * Reads the next end-point from the scanner.
      * 
-     * @require Parameter lineScanner is not null and is open for reading.
+     * @require Parameter lineScanner is not null, and it is positioned on a
+     *          line of the file.
      * @ensure Consumes the next two tokens on the lineScanner, that represent a
      *         junction and its branch, respectively, and returns the end-point
      *         defined by the pair.
@@ -193,21 +572,17 @@ public class TrackReader {
      *             lineNumber given, and describes the nature of the error.
      */
     private static JunctionBranch readEndPoint(int lineNumber,
-            Scanner lineScanner) throws FormatException {
+            LineTokenizer lineScanner) throws FormatException {
         try {
             // the junction read from lineScanner
-            Junction junction = new Junction(lineScanner.next());
-            // the string representation of the branch read from lineScanner
-            String branchString = lineScanner.next();
-            // the corresponding enumerated type of the branch string
-            Branch branch;
-            try {
-                branch = Branch.valueOf(branchString);
-            } catch (IllegalArgumentException e) {
+            Junction junction = lineScanner.nextJunction();
+            // the branch read from lineScanner, or null if it is invalid
+            Branch branch = lineScanner.nextBranch();
+            if (branch == null) {
                 throw new FormatException(errorMessage(lineNumber,
-                        "invalid branch: " + branchString));
+                        "invalid branch: " + lineScanner.lastToken()));
             }
-            return new JunctionBranch(junction, branch);
+            return JunctionBranch.of(junction, branch);
         } catch (NoSuchElementException e) {
             // thrown if there are not two tokens on the scanner to consume
             throw new FormatException(errorMessage(lineNumber,
@@ -227,4 +602,98 @@ public class TrackReader {
         return "Error on line " + lineNumber + ": " + message;
     }
 
+    /**
+     * Returns an error message for a FormatException that contains the given
+     * sectionNumber of a binary track file and message.
+     * 
+     * @require message != null
+     * @ensure Returns an error message for section sectionNumber of the file
+     *         that contains the given message.
+     */
+    private static String binaryErrorMessage(int sectionNumber,
+            String message) {
+        return "Error in section " + sectionNumber + ": " + message;
+    }
+
+    /**
+     * A chunk of a file, made up of whole lines, together with the result of
+     * parsing it.
+     */
+    private static class Chunk {
+
+        // the position in the file of the start (inclusive) and end
+        // (exclusive) of the chunk
+        private final long start;
+        private final long end;
+        // the sections parsed from the lines of the chunk, in order
+        private final List<Section> sections = new ArrayList<>();
+        // true if a line of the chunk could not be parsed, in which case the
+        // sections are those of the lines before it
+        private boolean failed;
+        // the error reading from the file while parsing the chunk, if any
+        private IOException error;
+
+        /**
+         * Creates a new chunk that has not yet been parsed.
+         * 
+         * @require 0 <= start <= end
+         */
+        private Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * A task that parses a range of the chunks of a file, by parsing each
+     * chunk in a separate sub-task.
+     */
+    @SuppressWarnings("serial")
+    private static class ParseTask extends RecursiveAction {
+
+        // the file that the chunks are in
+        private final String fileName;
+        // the chunks of the file, of which chunks[from] ... chunks[to - 1]
+        // are to be parsed by this task
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a new task that parses chunks[from] ... chunks[to - 1].
+         * 
+         * @require fileName != null && chunks != null &&
+         *          0 <= from < to <= chunks.size()
+         */
+        private ParseTask(String fileName, List<Chunk> chunks, int from,
+                int to) {
+            this.fileName = fileName;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                // the index at which to split the chunks between the subtasks
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(fileName, chunks, from, middle),
+                        new ParseTask(fileName, chunks, middle, to));
+                return;
+            }
+            Chunk chunk = chunks.get(from);
+            try {
+                // the line numbers are relative to the chunk, since the
+                // number of lines before it is not yet known; they are only
+                // used if the chunk is parsed again
+                parse(fileName, chunk, 1, chunk.sections);
+            } catch (FormatException e) {
+                chunk.failed = true;
+            } catch (IOException e) {
+                chunk.error = e;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,544 @@
+package railway;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable, array-backed view of the layout of a railway track at the
+ * time that it was created (see Track.snapshot()). Since it cannot change, a
+ * snapshot may be read by any number of threads without locking, while the
+ * track that it was taken from continues to be modified.
+ * </p>
+ * 
+ * <p>
+ * The junctions of the track are numbered from 0 to getJunctionCount() - 1 in
+ * order of their index in the JunctionRegistry, and its sections are
+ * numbered from 0 to getSectionCount() - 1. Each section has two end-points,
+ * numbered 2 * s and 2 * s + 1 for section s (in the order of
+ * Section.getEndPoint), so the section of end-point e is e / 2, and the
+ * other end-point of that section is e ^ 1.
+ * </p>
+ * 
+ * <p>
+ * The end-points are also grouped by junction in compressed-sparse-row form:
+ * the end-points at junction j are held in slots getFirstSlot(j) to
+ * getFirstSlot(j + 1) - 1 (inclusive), ordered by the ordinal of their
+ * branch. Since a junction has at most one end-point on each branch, each
+ * junction has between one and three slots.
+ * </p>
+ */
+public final class TrackSnapshot implements Iterable<Section> {
+
+    // the branches, indexed by their ordinal
+    private static final Branch[] BRANCHES = Branch.values();
+
+    // the largest span of registry indices for which junction numbers are
+    // looked up in a table, as a multiple of the number of end-points
+    private static final int MAX_TABLE_SPAN = 4;
+
+    // the junctions of the track, and the index of each in the registry (in
+    // ascending order)
+    private final Junction[] junctions;
+    private final int[] junctionIndices;
+    // if the registry indices of the junctions are dense enough, the number
+    // of the junction with each registry index from tableStart onwards (or -1
+    // if it is not on the track), and otherwise null
+    private final int[] junctionNumbers;
+    private final int tableStart;
+    // the sections of the track, and their lengths
+    private final Section[] sections;
+    private final int[] lengths;
+    // the junction number and branch ordinal of each end-point
+    private final int[] endPointJunctions;
+    private final byte[] endPointBranches;
+    // the first slot of each junction, followed by the total number of slots
+    private final int[] firstSlots;
+    // the end-point in each slot
+    private final int[] slotEndPoints;
+
+    /*
+     * invariant:
+     * 
+     * all of the arrays are non-null && junctions.length ==
+     * junctionIndices.length && firstSlots.length == junctions.length + 1 &&
+     * 
+     * lengths.length == sections.length && endPointJunctions.length ==
+     * endPointBranches.length == slotEndPoints.length == 2 * sections.length
+     * &&
+     * 
+     * junctionIndices is strictly increasing, and junctionIndices[j] ==
+     * junctions[j].getIndex() &&
+     * 
+     * if junctionNumbers != null, then for each 0 <= i <
+     * junctionNumbers.length, junctionNumbers[i] is the j such that
+     * junctionIndices[j] == tableStart + i, or -1 if there is no such j, and
+     * each junctionIndices[j] - tableStart is such an i &&
+     * 
+     * for each section s, lengths[s] == sections[s].getLength(), and for e in
+     * {0, 1}, end-point 2 * s + e is (junctions[endPointJunctions[2 * s +
+     * e]], BRANCHES[endPointBranches[2 * s + e]]), which equals
+     * sections[s].getEndPoint(e) &&
+     * 
+     * firstSlots[0] == 0 && firstSlots[junctions.length] == 2 *
+     * sections.length && slotEndPoints holds each end-point exactly once, with
+     * the end-points of junction j held in slots firstSlots[j] to firstSlots[j
+     * + 1] - 1 in ascending order of branch ordinal
+     */
+
+    /**
+     * Creates a snapshot of the track made up of the given sections.
+     * 
+     * @require sections != null && !sections.contains(null) && no two of the
+     *          sections share an end-point
+     */
+    TrackSnapshot(Collection<Section> sections) {
+        // order the sections by their key (which is unique among the sections
+        // of a valid track), so that a snapshot of a track does not depend on
+        // the order in which its sections were added. The offset bits of a
+        // section key are zero, so they can hold the position of the section
+        // in the collection, and the keys are sorted as primitives (which is
+        // much faster than sorting the sections themselves).
+        Section[] unordered = sections.toArray(new Section[sections.size()]);
+        int sectionCount = unordered.length;
+        long[] keys = new long[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            keys[i] = unordered[i].getKey() | i;
+        }
+        Arrays.sort(keys);
+        this.sections = new Section[sectionCount];
+        for (int s = 0; s < sectionCount; s++) {
+            // the position of the section in the collection
+            int position = (int) (keys[s] & Location.OFFSET_MASK);
+            this.sections[s] = unordered[position];
+        }
+
+        // the registry index of the junction of each end-point, and the range
+        // of registry indices that they span
+        int[] indices = new int[2 * sectionCount];
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        for (int s = 0; s < sectionCount; s++) {
+            for (int e = 0; e < 2; e++) {
+                // the registry index of the junction of the end-point
+                int index = this.sections[s].getEndPoint(e).getJunction()
+                        .getIndex();
+                indices[2 * s + e] = index;
+                min = Math.min(min, index);
+                max = Math.max(max, index);
+            }
+        }
+        tableStart = sectionCount == 0 ? 0 : min;
+        long span = sectionCount == 0 ? 0 : (long) max - min + 1;
+
+        int junctionCount = 0; // the number of distinct junctions
+        if (span <= (long) MAX_TABLE_SPAN * indices.length) {
+            // mark the registry index of each junction in the table, then
+            // number the marked indices in ascending order
+            junctionNumbers = new int[(int) span];
+            Arrays.fill(junctionNumbers, -1);
+            for (int index : indices) {
+                junctionNumbers[index - tableStart] = 0;
+            }
+            for (int i = 0; i < junctionNumbers.length; i++) {
+                if (junctionNumbers[i] == 0) {
+                    junctionNumbers[i] = junctionCount++;
+                }
+            }
+            junctionIndices = new int[junctionCount];
+            for (int i = 0; i < junctionNumbers.length; i++) {
+                if (junctionNumbers[i] != -1) {
+                    junctionIndices[junctionNumbers[i]] = tableStart + i;
+                }
+            }
+        } else {
+            // the indices are too sparse for a table, so sort them instead
+            junctionNumbers = null;
+            int[] sorted = indices.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[junctionCount++] = sorted[i];
+                }
+            }
+            junctionIndices = Arrays.copyOf(sorted, junctionCount);
+        }
+        junctions = new Junction[junctionCount];
+        for (int j = 0; j < junctionCount; j++) {
+            junctions[j] = JunctionRegistry.get(junctionIndices[j]);
+        }
+
+        lengths = new int[sectionCount];
+        endPointJunctions = new int[2 * sectionCount];
+        endPointBranches = new byte[2 * sectionCount];
+        firstSlots = new int[junctionCount + 1];
+        for (int s = 0; s < sectionCount; s++) {
+            lengths[s] = this.sections[s].getLength();
+            for (int e = 0; e < 2; e++) {
+                // the number of the junction of the end-point
+                int junction = junctionNumber(indices[2 * s + e]);
+                endPointJunctions[2 * s + e] = junction;
+                endPointBranches[2 * s + e] = (byte) this.sections[s]
+                        .getEndPoint(e).getBranch().ordinal();
+                firstSlots[junction + 1]++;
+            }
+        }
+        for (int j = 0; j < junctionCount; j++) {
+            firstSlots[j + 1] += firstSlots[j];
+        }
+
+        // place the end-points into the slots of their junctions, a branch at
+        // a time, so that the slots of each junction are ordered by branch
+        slotEndPoints = new int[2 * sectionCount];
+        // the next free slot of each junction
+        int[] nextSlots = Arrays.copyOf(firstSlots, junctionCount);
+        for (int ordinal = 0; ordinal < BRANCHES.length; ordinal++) {
+            for (int endPoint = 0; endPoint < 2 * sectionCount; endPoint++) {
+                if (endPointBranches[endPoint] == ordinal) {
+                    slotEndPoints[nextSlots[endPointJunctions[endPoint]]++] =
+                            endPoint;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of junctions on the track.
+     * 
+     * @return the number of junctions that are connected to at least one
+     *         section of the track.
+     */
+    public int getJunctionCount() {
+        return junctions.length;
+    }
+
+    /**
+     * Returns the junction with the given number.
+     * 
+     * @param junction
+     *            the number of the junction
+     * @return the junction with the given number
+     * @throws IndexOutOfBoundsException
+     *             if junction is negative, or not less than
+     *             getJunctionCount()
+     */
+    public Junction getJunction(int junction) {
+        return junctions[junction];
+    }
+
+    /**
+     * Returns the number of the given junction on the track, or -1 if the
+     * junction is not on the track.
+     * 
+     * @param junction
+     *            the junction to look up
+     * @return the number of the junction, or -1 if it is not connected to a
+     *         section of the track
+     * @throws NullPointerException
+     *             if junction is null
+     */
+    public int indexOf(Junction junction) {
+        return junctionNumber(junction.getIndex());
+    }
+
+    /**
+     * Returns the number of the junction with the given registry index, or -1
+     * if there is no such junction on the track.
+     */
+    private int junctionNumber(int index) {
+        if (junctionNumbers != null) {
+            // the position of the junction in the table
+            int position = index - tableStart;
+            return position >= 0 && position < junctionNumbers.length
+                    ? junctionNumbers[position] : -1;
+        }
+        // the junctions are ordered by registry index, so can be searched
+        int result = Arrays.binarySearch(junctionIndices, index);
+        return result >= 0 ? result : -1;
+    }
+
+    /**
+     * Returns the number of sections on the track.
+     * 
+     * @return the number of sections on the track
+     */
+    public int getSectionCount() {
+        return sections.length;
+    }
+
+    /**
+     * Returns the section with the given number.
+     * 
+     * @param section
+     *            the number of the section
+     * @return the section with the given number
+     * @throws IndexOutOfBoundsException
+     *             if section is negative, or not less than getSectionCount()
+     */
+    public Section getSection(int section) {
+        return sections[section];
+    }
+
+    /**
+     * Returns the length of the section with the given number.
+     * 
+     * @param section
+     *            the number of the section
+     * @return the length of the section with the given number
+     * @throws IndexOutOfBoundsException
+     *             if section is negative, or not less than getSectionCount()
+     */
+    public int getLength(int section) {
+        return lengths[section];
+    }
+
+    /**
+     * Returns the number of the section of the track that is equivalent to
+     * the given section, or -1 if there is no such section.
+     * 
+     * @param section
+     *            the section to look up
+     * @return the number of the section equivalent to the given one, or -1 if
+     *         the track does not contain an equivalent section
+     * @throws NullPointerException
+     *             if section is null
+     */
+    public int indexOf(Section section) {
+        // the first end-point of the section
+        JunctionBranch first = section.getEndPoint(0);
+        int endPoint = getEndPoint(first.getJunction(), first.getBranch());
+        if (endPoint != -1 && sections[endPoint >> 1].equals(section)) {
+            return endPoint >> 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the track contains the given section.
+     * 
+     * @param section
+     *            the section whose presence in the track is to be checked
+     * @return true iff the track contains a section that is equivalent to the
+     *         given one
+     * @throws NullPointerException
+     *             if section is null
+     */
+    public boolean contains(Section section) {
+        return indexOf(section) != -1;
+    }
+
+    /**
+     * If the track contains a section that is connected to the given junction
+     * on the given branch, then it returns that section, otherwise it returns
+     * null.
+     * 
+     * @param junction
+     *            the junction for which the section will be returned
+     * @param branch
+     *            the branch of the junction for which the section will be
+     *            returned
+     * @return the section of track that is connected to the junction on the
+     *         given branch, if there is one, otherwise null
+     * @throws NullPointerException
+     *             if junction or branch is null
+     */
+    public Section getTrackSection(Junction junction, Branch branch) {
+        // the end-point of the section connected to the junction and branch
+        int endPoint = getEndPoint(junction, branch);
+        return endPoint == -1 ? null : sections[endPoint >> 1];
+    }
+
+    /**
+     * Returns the number of the end-point made up of the given junction and
+     * branch, or -1 if the track has no such end-point.
+     * 
+     * @param junction
+     *            the junction of the end-point
+     * @param branch
+     *            the branch of the end-point
+     * @return the number of the end-point, or -1 if no section of the track
+     *         is connected to the junction on the given branch
+     * @throws NullPointerException
+     *             if junction or branch is null
+     */
+    public int getEndPoint(Junction junction, Branch branch) {
+        // the number of the junction
+        int number = indexOf(junction);
+        return number == -1 ? -1 : getEndPoint(number, branch);
+    }
+
+    /**
+     * Returns the number of the end-point made up of the junction with the
+     * given number and the given branch, or -1 if the track has no such
+     * end-point.
+     * 
+     * @param junction
+     *            the number of the junction of the end-point
+     * @param branch
+     *            the branch of the end-point
+     * @return the number of the end-point, or -1 if no section of the track
+     *         is connected to the junction on the given branch
+     * @throws IndexOutOfBoundsException
+     *             if junction is negative, or not less than
+     *             getJunctionCount()
+     * @throws NullPointerException
+     *             if branch is null
+     */
+    public int getEndPoint(int junction, Branch branch) {
+        // the ordinal of the branch
+        int ordinal = branch.ordinal();
+        for (int slot = firstSlots[junction]; slot < firstSlots[junction + 1];
+                slot++) {
+            // the end-point in the slot
+            int endPoint = slotEndPoints[slot];
+            if (endPointBranches[endPoint] == ordinal) {
+                return endPoint;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of the junction of the given end-point.
+     * 
+     * @param endPoint
+     *            the number of the end-point
+     * @return the number of the junction of the end-point
+     * @throws IndexOutOfBoundsException
+     *             if endPoint is negative, or not less than 2 *
+     *             getSectionCount()
+     */
+    public int getEndPointJunction(int endPoint) {
+        return endPointJunctions[endPoint];
+    }
+
+    /**
+     * Returns the branch of the given end-point.
+     * 
+     * @param endPoint
+     *            the number of the end-point
+     * @return the branch of the end-point
+     * @throws IndexOutOfBoundsException
+     *             if endPoint is negative, or not less than 2 *
+     *             getSectionCount()
+     */
+    public Branch getEndPointBranch(int endPoint) {
+        return BRANCHES[endPointBranches[endPoint]];
+    }
+
+    /**
+     * Returns the first slot of the junction with the given number. The
+     * end-points at junction j are held in slots getFirstSlot(j) to
+     * getFirstSlot(j + 1) - 1.
+     * 
+     * @param junction
+     *            the number of a junction, or getJunctionCount()
+     * @return the first slot of the junction, or the total number of slots if
+     *         junction == getJunctionCount()
+     * @throws IndexOutOfBoundsException
+     *             if junction is negative, or greater than getJunctionCount()
+     */
+    public int getFirstSlot(int junction) {
+        return firstSlots[junction];
+    }
+
+    /**
+     * Returns the end-point held in the given slot.
+     * 
+     * @param slot
+     *            a slot of a junction
+     * @return the number of the end-point held in the slot
+     * @throws IndexOutOfBoundsException
+     *             if slot is negative, or not less than 2 *
+     *             getSectionCount()
+     */
+    public int getSlotEndPoint(int slot) {
+        return slotEndPoints[slot];
+    }
+
+    /**
+     * Returns an iterator over the sections of the track, in order of their
+     * number. The iterator does not support removal.
+     */
+    @Override
+    public Iterator<Section> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(sections))
+                .iterator();
+    }
+
+    /**
+     * Determines whether this class is internally consistent (i.e. it satisfies
+     * its class invariant).
+     * 
+     * This method is only intended for testing purposes.
+     * 
+     * @return true if this class is internally consistent, and false otherwise.
+     */
+    public boolean checkInvariant() {
+        if (junctions.length != junctionIndices.length
+                || firstSlots.length != junctions.length + 1
+                || lengths.length != sections.length
+                || endPointJunctions.length != 2 * sections.length
+                || endPointBranches.length != 2 * sections.length
+                || slotEndPoints.length != 2 * sections.length) {
+            return false;
+        }
+        for (int j = 0; j < junctions.length; j++) {
+            if (junctionIndices[j] != junctions[j].getIndex() || (j > 0
+                    && junctionIndices[j - 1] >= junctionIndices[j])) {
+                return false;
+            }
+        }
+        if (junctionNumbers != null) {
+            // the number of junctions found in the table
+            int count = 0;
+            for (int i = 0; i < junctionNumbers.length; i++) {
+                int j = junctionNumbers[i]; // the junction number in slot i
+                if (j != -1 && (j < 0 || j >= junctions.length
+                        || junctionIndices[j] != tableStart + i)) {
+                    return false;
+                }
+                count += j == -1 ? 0 : 1;
+            }
+            if (count != junctions.length) {
+                return false;
+            }
+        }
+        for (int s = 0; s < sections.length; s++) {
+            if (lengths[s] != sections[s].getLength()) {
+                return false;
+            }
+            for (int e = 0; e < 2; e++) {
+                // the end-point recorded for the section
+                JunctionBranch endPoint = JunctionBranch.of(
+                        junctions[endPointJunctions[2 * s + e]],
+                        BRANCHES[endPointBranches[2 * s + e]]);
+                if (!endPoint.equals(sections[s].getEndPoint(e))) {
+                    return false;
+                }
+            }
+        }
+        if (firstSlots[0] != 0
+                || firstSlots[junctions.length] != 2 * sections.length) {
+            return false;
+        }
+        // the end-points found in the slots
+        BitSet found = new BitSet();
+        for (int j = 0; j < junctions.length; j++) {
+            for (int slot = firstSlots[j]; slot < firstSlots[j + 1]; slot++) {
+                // the end-point in the slot
+                int endPoint = slotEndPoints[slot];
+                // the end-point in the previous slot of the junction, if any
+                int previous = slot > firstSlots[j] ? slotEndPoints[slot - 1]
+                        : -1;
+                if (found.get(endPoint) || endPointJunctions[endPoint] != j
+                        || (previous != -1 && endPointBranches[previous]
+                                >= endPointBranches[endPoint])) {
+                    return false;
+                }
+                found.set(endPoint);
+            }
+        }
+        return found.cardinality() == 2 * sections.length;
+    }
+
+}
@@ -0,0 +1,88 @@
+package railway;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Provides methods to write a track to a text or binary file.
+ */
+public class TrackWriter {
+
+    /**
+     * Writes the sections of the given track to a text file named fileName, in
+     * the format read by the TrackReader.read method, with one line for each
+     * section.
+     * 
+     * @param track
+     *            the track to write
+     * @param fileName
+     *            the file to write to
+     * @throws NullPointerException
+     *             if track or fileName is null
+     * @throws IOException
+     *             if there is an error writing to the file
+     */
+    public static void write(Track track, String fileName) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(
+                new FileWriter(fileName)))) {
+            for (Section section : track) {
+                // the end-points of the section
+                JunctionBranch endPoint1 = section.getEndPoint(0);
+                JunctionBranch endPoint2 = section.getEndPoint(1);
+                out.println(section.getLength() + " "
+                        + endPoint1.getJunction() + " "
+                        + endPoint1.getBranch() + " "
+                        + endPoint2.getJunction() + " "
+                        + endPoint2.getBranch());
+            }
+            if (out.checkError()) {
+                throw new IOException("error writing to " + fileName);
+            }
+        }
+    }
+
+    /**
+     * Writes the sections of the given track to a binary file named fileName,
+     * in the format read by the TrackReader.readBinary method. (The format is
+     * described by the BinaryFormat class.)
+     * 
+     * @param track
+     *            the track to write
+     * @param fileName
+     *            the file to write to
+     * @throws NullPointerException
+     *             if track or fileName is null
+     * @throws IOException
+     *             if there is an error writing to the file
+     */
+    public static void writeBinary(Track track, String fileName)
+            throws IOException {
+        // the sections of the track, in the order that they are written
+        List<Section> sections = new ArrayList<>();
+        for (Section section : track) {
+            sections.add(section);
+        }
+        // the junctions of the track, mapped to their index in the table
+        Map<Junction, Integer> junctions = BinaryFormat
+                .indexJunctions(sections);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            BinaryFormat.writeHeader(out, BinaryFormat.TRACK_MAGIC);
+            BinaryFormat.writeJunctionTable(out, junctions.keySet());
+            BinaryFormat.writeVarInt(out, sections.size());
+            for (Section section : sections) {
+                // the end-points of the section
+                JunctionBranch endPoint1 = section.getEndPoint(0);
+                JunctionBranch endPoint2 = section.getEndPoint(1);
+                BinaryFormat.writeVarInt(out, section.getLength());
+                BinaryFormat.writeVarInt(out,
+                        junctions.get(endPoint1.getJunction()));
+                BinaryFormat.writeVarInt(out,
+                        junctions.get(endPoint2.getJunction()));
+                out.writeByte(BinaryFormat.packBranches(endPoint1, endPoint2));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package railway.gui;
+
+import java.util.*;
+
+import railway.*;
+import railway.gui.RailwayModel.Train;
+
+/**
+ * <p>
+ * The state shared by the discrete-event simulations of the trains of a
+ * RailwayModel (TrainSimulator and PartitionedSimulator): the state of each
+ * train, the locations allocated to the trains, and the settings that apply
+ * to every train.
+ * </p>
+ *
+ * <p>
+ * The allocations of the model's trains must not intersect when the
+ * simulation is created, and the trains must not be changed while it runs.
+ * The simulation only changes the offsets of the trains in the model when
+ * updateModel is called.
+ * </p>
+ */
+abstract class AbstractSimulator {
+
+    // the model whose trains are simulated
+    final RailwayModel model;
+    // the snapshot of the track of the model
+    final TrackSnapshot snapshot;
+    // the state of each train of the model, in the order of the model
+    final SimulatedTrain[] trains;
+    // the locations allocated to the trains
+    final TrackReservations reservations;
+
+    // the number of meters ahead of its head that a train requests
+    int lookahead;
+    // the number of microseconds that a waiting train waits before it
+    // requests an allocation again
+    long retryDelay;
+
+    /*
+     * invariant:
+     *
+     * model != null && snapshot != null && reservations != null &&
+     *
+     * trains.length == the number of trains of the model when the simulation
+     * was created && each trains[i].index == i &&
+     *
+     * lookahead > 0 && retryDelay > 0 &&
+     *
+     * the locations reserved in reservations are exactly those from offset
+     * trains[i].start to trains[i].end of the route of each train, other
+     * than those that a PartitionedSimulator has asked a region to free
+     */
+
+    /**
+     * Creates the state of a simulation of the trains currently in the given
+     * model, each of which travels at the given speed, with the head of each
+     * train at the start of its allocated sub-route, and reserves their
+     * allocations.
+     *
+     * @throws NullPointerException
+     *             if model is null, or it has no track
+     * @throws IllegalArgumentException
+     *             if speed is not positive, or the route of a train is not on
+     *             the track of the model
+     */
+    AbstractSimulator(RailwayModel model, double speed) {
+        if (model == null || model.getTrack() == null) {
+            throw new NullPointerException("The model and its track cannot "
+                    + "be null.");
+        }
+        checkSpeed(speed);
+        this.model = model;
+        lookahead = 100;
+        retryDelay = 1_000_000;
+        snapshot = model.getTrack().snapshot();
+        reservations = new TrackReservations(snapshot);
+        List<Train> modelTrains = model.getTrains();
+        trains = new SimulatedTrain[modelTrains.size()];
+        for (int i = 0; i < trains.length; i++) {
+            SimulatedTrain train = new SimulatedTrain(i, modelTrains.get(i),
+                    snapshot, speed);
+            trains[i] = train;
+            train.setReserved(reservations, train.start, train.end, true);
+        }
+    }
+
+    /**
+     * Returns the model whose trains are simulated.
+     *
+     * @return the model of the simulation
+     */
+    public RailwayModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the number of meters ahead of its head that a train requests
+     * when it reaches the end of its allocation. The default is 100.
+     *
+     * @return the length of the allocations requested by the trains
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Sets the number of meters ahead of its head that a train requests when
+     * it reaches the end of its allocation.
+     *
+     * @param lookahead
+     *            the length of the allocations requested by the trains
+     * @throws IllegalArgumentException
+     *             if lookahead is not positive
+     */
+    public void setLookahead(int lookahead) {
+        if (lookahead <= 0) {
+            throw new IllegalArgumentException("The lookahead must be "
+                    + "positive.");
+        }
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Returns the number of microseconds that a train that could not be
+     * allocated any further locations waits before it asks again. The
+     * default is one second.
+     *
+     * @return the delay before a waiting train asks again
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Sets the number of microseconds that a train that could not be
+     * allocated any further locations waits before it asks again.
+     *
+     * @param retryDelay
+     *            the delay before a waiting train asks again
+     * @throws IllegalArgumentException
+     *             if retryDelay is not positive
+     */
+    public void setRetryDelay(long retryDelay) {
+        if (retryDelay <= 0) {
+            throw new IllegalArgumentException("The retry delay must be "
+                    + "positive.");
+        }
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Returns the speed of the train at the given position in the list of
+     * trains of the model.
+     *
+     * @require 0 <= index < the number of trains simulated
+     * @return the speed of the train, in meters per second
+     */
+    public double getSpeed(int index) {
+        return trains[index].speed;
+    }
+
+    /**
+     * Sets the speed of the train at the given position in the list of
+     * trains of the model. The new speed applies from the train's next
+     * event.
+     *
+     * @require 0 <= index < the number of trains simulated
+     * @param speed
+     *            the new speed of the train, in meters per second
+     * @throws IllegalArgumentException
+     *             if speed is not positive
+     */
+    public void setSpeed(int index, double speed) {
+        checkSpeed(speed);
+        trains[index].speed = speed;
+    }
+
+    /**
+     * Sets the offsets of each train of the model to those of its current
+     * allocation in the simulation. Since the trains of a RailwayModel are
+     * modified on the Swing event thread, this must only be called from that
+     * thread if the model is shown in a view.
+     */
+    public void updateModel() {
+        for (SimulatedTrain train : trains) {
+            if (train.train.getStartOffset() != train.start) {
+                train.train.setStartOffset(train.start);
+            }
+            if (train.train.getEndOffset() != train.end) {
+                train.train.setEndOffset(train.end);
+            }
+        }
+    }
+
+    /**
+     * Checks that the given speed of a train is positive.
+     *
+     * @throws IllegalArgumentException
+     *             if speed is not positive
+     */
+    static void checkSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("The speed of a train must be "
+                    + "positive.");
+        }
+    }
+
+}
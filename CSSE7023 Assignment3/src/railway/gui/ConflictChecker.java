@@ -0,0 +1,215 @@
+package railway.gui;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import railway.*;
+import railway.gui.RailwayModel.Train;
+
+/**
+ * <p>
+ * A service that checks whether a sub-route intersects with the sub-routes
+ * allocated to a list of trains, by splitting the list across the workers of
+ * a ForkJoinPool.
+ * </p>
+ * 
+ * <p>
+ * As soon as one worker finds a conflicting train, the remaining workers stop
+ * checking. Since the trains of a RailwayModel are modified on the Swing event
+ * thread, the checker works on a snapshot of the trains' allocations, taken
+ * using the snapshot method.
+ * </p>
+ */
+public class ConflictChecker {
+
+    // the number of allocations below which a task checks them directly,
+    // rather than splitting them between two sub-tasks
+    private static final int THRESHOLD = 64;
+
+    // the pool that the checks are run in
+    private ForkJoinPool pool;
+
+    /*
+     * invariant:
+     * 
+     * pool != null
+     */
+
+    /**
+     * Creates a new checker that runs its checks in the common ForkJoinPool.
+     */
+    public ConflictChecker() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new checker that runs its checks in the given pool.
+     * 
+     * @param pool
+     *            the pool that the checks are run in
+     * @throws NullPointerException
+     *             if pool is null
+     */
+    public ConflictChecker(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new NullPointerException("Parameter pool cannot be null.");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a snapshot of the allocations of the given trains, excluding the
+     * train with the given identifier.
+     * 
+     * This method only copies the routes and offsets of the trains, so it is
+     * cheap enough to be called on the Swing event thread.
+     * 
+     * @require trains != null && !trains.contains(null)
+     * @param trains
+     *            the trains whose allocations are to be copied
+     * @param identifier
+     *            the identifier of the train to exclude from the snapshot
+     * @return the allocations of the trains, other than the one with the
+     *         given identifier
+     */
+    public static List<Allocation> snapshot(List<Train> trains,
+            int identifier) {
+        // the allocations to be returned
+        List<Allocation> result = new ArrayList<Allocation>(trains.size());
+        for (Train train : trains) {
+            if (train.getIdentifier() != identifier) {
+                result.add(new Allocation(train.getIdentifier(), train
+                        .getRoute(), train.getStartOffset(), train
+                        .getEndOffset()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the identifier of a train whose allocation intersects with the
+     * given sub-route, or -1 if there is no such train. If several allocations
+     * intersect with the sub-route, any one of their identifiers may be
+     * returned.
+     * 
+     * This method blocks until the check has completed, so it should not be
+     * called on the Swing event thread.
+     * 
+     * @require subRoute != null && allocations != null &&
+     *          !allocations.contains(null)
+     * @param subRoute
+     *            the sub-route to check for conflicts
+     * @param allocations
+     *            the allocations of the trains to check against
+     * @return the identifier of a train whose allocation intersects with the
+     *         sub-route, or -1 if there is none
+     */
+    public int findConflict(Route subRoute, List<Allocation> allocations) {
+        // the identifier of the conflicting train found, or -1
+        AtomicInteger conflict = new AtomicInteger(-1);
+        pool.invoke(new CheckTask(subRoute, allocations, 0, allocations
+                .size(), conflict));
+        return conflict.get();
+    }
+
+    /**
+     * An immutable copy of the allocation of a train.
+     */
+    public static class Allocation {
+
+        // the identifier of the train
+        private final int identifier;
+        // the route of the train, and the offsets of its allocation
+        private final Route route;
+        private final int startOffset;
+        private final int endOffset;
+
+        /**
+         * Creates a copy of the allocation of the train with the given
+         * identifier.
+         * 
+         * @require route != null && 0 <= startOffset < endOffset <=
+         *          route.getLength()
+         */
+        private Allocation(int identifier, Route route, int startOffset,
+                int endOffset) {
+            this.identifier = identifier;
+            this.route = route;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        /**
+         * Returns the identifier of the train.
+         * 
+         * @return the identifier of the train.
+         */
+        public int getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * Returns the sub-route allocated to the train.
+         * 
+         * @return the sub-route allocated to the train.
+         */
+        public Route getAllocation() {
+            return route.getSubroute(startOffset, endOffset);
+        }
+    }
+
+    /**
+     * A task that checks the allocations with indices in a given range, and
+     * records the identifier of the first conflicting train that it finds.
+     */
+    @SuppressWarnings("serial")
+    private static class CheckTask extends RecursiveAction {
+
+        // the sub-route to check for conflicts
+        private final Route subRoute;
+        // the allocations to check, and the range of indices to check
+        private final List<Allocation> allocations;
+        private final int from;
+        private final int to;
+        // the identifier of the conflicting train found by any task, or -1
+        private final AtomicInteger conflict;
+
+        /**
+         * Creates a task that checks allocations.get(from), ...,
+         * allocations.get(to - 1).
+         * 
+         * @require 0 <= from <= to <= allocations.size()
+         */
+        private CheckTask(Route subRoute, List<Allocation> allocations,
+                int from, int to, AtomicInteger conflict) {
+            this.subRoute = subRoute;
+            this.allocations = allocations;
+            this.from = from;
+            this.to = to;
+            this.conflict = conflict;
+        }
+
+        @Override
+        protected void compute() {
+            if (conflict.get() != -1) {
+                return; // another task has already found a conflict
+            }
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to && conflict.get() == -1; i++) {
+                    // the allocation being checked
+                    Allocation allocation = allocations.get(i);
+                    if (subRoute.intersects(allocation.getAllocation())) {
+                        conflict.compareAndSet(-1, allocation.getIdentifier());
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CheckTask(subRoute, allocations, from, middle,
+                        conflict), new CheckTask(subRoute, allocations,
+                        middle, to, conflict));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package railway.gui;
+
+import java.util.*;
+
+import railway.*;
+import railway.gui.ConflictChecker.Allocation;
+
+/**
+ * <p>
+ * Plans routes for a train that do not intersect with the sub-routes
+ * allocated to the other trains, so that a route does not have to be found
+ * by trial and error with the ConflictChecker.
+ * </p>
+ * 
+ * <p>
+ * The allocations of the other trains are recorded as the locations that
+ * they occupy (see TrackOccupancy), and a RoutePlanner searches for the
+ * shortest route that passes through none of them. If there is no such
+ * route, then the planner returns the longest prefix of the shortest route
+ * (ignoring the allocations) that passes through none of them, which is how
+ * far the train can be allocated towards its target for now.
+ * </p>
+ * 
+ * <p>
+ * Like a RoutePlanner, a planner must not be used by more than one thread at
+ * a time. Since the trains of a RailwayModel are modified on the Swing event
+ * thread, the planner works on a snapshot of their allocations, taken using
+ * ConflictChecker.snapshot, and a TrackOccupancy recorded from a snapshot
+ * may be reused for any number of plans.
+ * </p>
+ */
+public class ConflictFreePlanner {
+
+    // the planner used to search the track
+    private RoutePlanner planner;
+
+    /*
+     * invariant:
+     * 
+     * planner != null
+     */
+
+    /**
+     * Creates a new planner for the current layout of the given track.
+     * 
+     * @param track
+     *            the track to plan routes on
+     * @throws NullPointerException
+     *             if track is null
+     */
+    public ConflictFreePlanner(Track track) {
+        this.planner = new RoutePlanner(track);
+    }
+
+    /**
+     * Returns a record of the locations occupied by the given allocations,
+     * which can be passed to the plan methods.
+     * 
+     * @require allocations != null && !allocations.contains(null)
+     * @param allocations
+     *            the allocations of the other trains
+     * @return the locations on the track that are occupied by the
+     *         allocations
+     */
+    public TrackOccupancy occupancy(List<Allocation> allocations) {
+        // the sub-routes allocated to the trains
+        List<Route> routes = new ArrayList<Route>(allocations.size());
+        for (Allocation allocation : allocations) {
+            routes.add(allocation.getAllocation());
+        }
+        return new TrackOccupancy(planner.getSnapshot(), routes);
+    }
+
+    /**
+     * Plans a route from the given start location to the given target
+     * location that avoids the given occupied locations, or the longest prefix
+     * of the shortest route between them that does.
+     * 
+     * @require start and target are on the track && occupied was returned
+     *          by the occupancy method of this planner
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the location at which the route should end
+     * @param occupied
+     *            the locations occupied by the other trains
+     * @return the planned route, or null if there is no route from start to
+     *         target, or if the start location is occupied
+     */
+    public PlannedRoute plan(Location start, Location target,
+            TrackOccupancy occupied) {
+        if (occupied.isOccupied(start)) {
+            return null;
+        }
+        // the shortest route that avoids the occupied locations
+        Route route = planner.planAvoiding(start, target, occupied);
+        if (route != null) {
+            return new PlannedRoute(route, true);
+        }
+        return prefix(planner.plan(start, target), occupied);
+    }
+
+    /**
+     * Plans a route from the given start location to the given target
+     * junction that avoids the given occupied locations, or the longest
+     * prefix of the shortest route between them that does.
+     * 
+     * @require start is on the track && target != null && occupied was
+     *          returned by the occupancy method of this planner
+     * @param start
+     *            the location at which the route starts
+     * @param target
+     *            the junction at which the route should end
+     * @param occupied
+     *            the locations occupied by the other trains
+     * @return the planned route, or null if there is no route from start to
+     *         target, or if the start location is occupied
+     */
+    public PlannedRoute plan(Location start, Junction target,
+            TrackOccupancy occupied) {
+        if (occupied.isOccupied(start)) {
+            return null;
+        }
+        // the shortest route that avoids the occupied locations
+        Route route = planner.planAvoiding(start, target, occupied);
+        if (route != null) {
+            return new PlannedRoute(route, true);
+        }
+        return prefix(planner.plan(start, target), occupied);
+    }
+
+    /**
+     * Returns the longest prefix of the given route that avoids the given
+     * occupied locations, as a route that does not reach its target, or null
+     * if the route is null.
+     * 
+     * @require the first location of the route is not occupied
+     */
+    private PlannedRoute prefix(Route route, TrackOccupancy occupied) {
+        if (route == null) {
+            return null;
+        }
+        return new PlannedRoute(occupied.freePrefix(route), false);
+    }
+
+    /**
+     * An immutable route planned by a ConflictFreePlanner, which either
+     * reaches its target, or is the longest part of the way there that does
+     * not conflict with the other trains.
+     */
+    public static class PlannedRoute {
+
+        // the route that was planned
+        private final Route route;
+        // whether the route reaches the target
+        private final boolean complete;
+
+        /**
+         * Creates a planned route.
+         * 
+         * @require route != null
+         */
+        private PlannedRoute(Route route, boolean complete) {
+            this.route = route;
+            this.complete = complete;
+        }
+
+        /**
+         * Returns the route that was planned.
+         * 
+         * @return the planned route, which does not intersect with the
+         *         allocations of the other trains.
+         */
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * Returns true if the route reaches its target, and false if it is
+         * only the longest conflict-free prefix of a route to the target.
+         * 
+         * @return true iff the planned route ends at the target.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package railway.gui;
+
+/**
+ * <p>
+ * A mutable queue of the pending events of the trains of a simulation, with
+ * at most one event for each train, in order of their times.
+ * </p>
+ *
+ * <p>
+ * The queue is a binary min-heap stored in primitive arrays, so it does not
+ * box the trains or times. Events with the same time are taken in order of
+ * the positions of their trains, so the order in which a simulation
+ * processes its events does not depend on the order they were added in.
+ * </p>
+ */
+final class EventQueue {
+
+    // the time of the event at each position of the heap
+    private final long[] times;
+    // the position in the list of trains of the train of the event at each
+    // position of the heap
+    private final int[] trains;
+    // the number of events in the queue
+    private int size;
+
+    /*
+     * invariant:
+     *
+     * times.length == trains.length && 0 <= size <= trains.length &&
+     *
+     * trains[0], ..., trains[size - 1] are distinct &&
+     *
+     * for each 0 < i < size, the event at position (i - 1) / 2 is before the
+     * event at position i
+     */
+
+    /**
+     * Creates an empty queue for the events of the trains from 0 to
+     * trainCount - 1.
+     *
+     * @require trainCount >= 0
+     */
+    EventQueue(int trainCount) {
+        times = new long[trainCount];
+        trains = new int[trainCount];
+    }
+
+    /**
+     * Returns true if there are no events in the queue.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the time of the next event in the queue.
+     *
+     * @require !isEmpty()
+     */
+    long nextTime() {
+        return times[0];
+    }
+
+    /**
+     * Adds an event at the given time for the given train.
+     *
+     * @require 0 <= train < the number of trains of the queue && the queue
+     *          has no event for the train
+     */
+    void add(int train, long time) {
+        // the position of the new event, moved up towards the root
+        int position = size++;
+        while (position > 0) {
+            // the position of the parent of the position
+            int parent = (position - 1) >>> 1;
+            if (!before(time, train, times[parent], trains[parent])) {
+                break;
+            }
+            times[position] = times[parent];
+            trains[position] = trains[parent];
+            position = parent;
+        }
+        times[position] = time;
+        trains[position] = train;
+    }
+
+    /**
+     * Removes the next event from the queue, and returns the position of its
+     * train.
+     *
+     * @require !isEmpty()
+     */
+    int poll() {
+        // the train to be returned
+        int result = trains[0];
+        size--;
+        // the last event, moved down away from the root
+        long time = times[size];
+        int train = trains[size];
+        int position = 0;
+        // the first position with no children
+        int half = size >>> 1;
+        while (position < half) {
+            // the position of the child with the earlier event
+            int child = 2 * position + 1;
+            if (child + 1 < size && before(times[child + 1],
+                    trains[child + 1], times[child], trains[child])) {
+                child++;
+            }
+            if (!before(times[child], trains[child], time, train)) {
+                break;
+            }
+            times[position] = times[child];
+            trains[position] = trains[child];
+            position = child;
+        }
+        if (size > 0) {
+            times[position] = time;
+            trains[position] = train;
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the event at time1 for train1 comes before the event
+     * at time2 for train2.
+     */
+    private static boolean before(long time1, int train1, long time2,
+            int train2) {
+        return time1 < time2 || (time1 == time2 && train1 < train2);
+    }
+
+}
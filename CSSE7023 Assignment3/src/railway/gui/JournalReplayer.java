@@ -0,0 +1,455 @@
+package railway.gui;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Rebuilds RailwayModels from a journal written by a ModelJournal.
+ * </p>
+ *
+ * <p>
+ * The journal is decoded once, when the replayer is created: its junctions,
+ * sections and routes are built, each train identifier is resolved to the
+ * position of the train in the list of trains of the model, and the events
+ * are kept in primitive arrays. Each call to replay then only has to add
+ * the trains and set their offsets, so a journal can be replayed many times
+ * (e.g. in a regression test) at millions of events per second.
+ * </p>
+ *
+ * <p>
+ * The verify method also replays the journal, but checks each allocation
+ * request against the trains as they were when it was made, and reports the
+ * first request whose recorded result is not what the request gives when it
+ * is made again.
+ * </p>
+ */
+public class JournalReplayer {
+
+    // the branches, indexed by their ordinal
+    private static final Branch[] BRANCHES = Branch.values();
+    // the number of events that the arrays can hold before they first grow
+    private static final int INITIAL_CAPACITY = 64;
+
+    // the number of events of the journal
+    private final int eventCount;
+    // the kind of each event
+    private byte[] kinds;
+    // the position in the list of trains of the train of each event (or -1
+    // for an allocation requested for a new train)
+    private int[] positions;
+    // the identifier of the train added, or the start offset requested or
+    // set, by each event
+    private int[] firsts;
+    // the start offset of the train added, or the end offset requested or
+    // set, by each event
+    private int[] seconds;
+    // the end offset of the train added, or the position of the conflicting
+    // train (or the result, if there was no conflicting train) of the
+    // allocation requested, by each event
+    private int[] thirds;
+    // the route of each event that adds a train or requests an allocation,
+    // and null for the others
+    private Route[] routes;
+
+    /*
+     * invariant:
+     *
+     * eventCount >= 0 && kinds, positions, firsts, seconds, thirds and routes
+     * all have at least eventCount elements &&
+     *
+     * each kinds[i] is ModelJournal.ADD_TRAIN, SET_START, SET_END or
+     * ALLOCATION &&
+     *
+     * positions[i] is less than the number of ADD_TRAIN events before event
+     * i && routes[i] != null for each ADD_TRAIN or ALLOCATION event i
+     */
+
+    /**
+     * Decodes the given journal, from its current position to its limit.
+     *
+     * @param in
+     *            the contents of the journal
+     * @throws NullPointerException
+     *             if in is null
+     * @throws FormatException
+     *             if the contents are not a valid journal. The exception has
+     *             a message that describes the problem, including the number
+     *             of the record (starting from one) where it was detected.
+     */
+    public JournalReplayer(ByteBuffer in) throws FormatException {
+        if (in.remaining() < 5 || in.getInt() != ModelJournal.MAGIC) {
+            throw new FormatException("Error in header: not a journal");
+        }
+        if ((in.get() & 0xFF) != ModelJournal.VERSION) {
+            throw new FormatException("Error in header: unsupported journal "
+                    + "version");
+        }
+        kinds = new byte[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        firsts = new int[INITIAL_CAPACITY];
+        seconds = new int[INITIAL_CAPACITY];
+        thirds = new int[INITIAL_CAPACITY];
+        routes = new Route[INITIAL_CAPACITY];
+
+        // the junctions and sections defined so far
+        List<Junction> junctions = new ArrayList<>();
+        List<Section> sections = new ArrayList<>();
+        // the position of each train added so far, by identifier
+        Map<Integer, Integer> trains = new HashMap<>();
+        int events = 0; // the number of events decoded
+        for (int record = 1; in.hasRemaining(); record++) {
+            try {
+                int kind = in.get();
+                if (events == kinds.length) {
+                    grow();
+                }
+                switch (kind) {
+                case ModelJournal.JUNCTION:
+                    junctions.add(readJunction(in));
+                    break;
+                case ModelJournal.SECTION:
+                    sections.add(readSection(in, junctions));
+                    break;
+                case ModelJournal.ADD_TRAIN:
+                    positions[events] = trains.size();
+                    firsts[events] = readCount(in);
+                    seconds[events] = readVarInt(in);
+                    thirds[events] = readVarInt(in);
+                    routes[events] = readRoute(in, sections);
+                    trains.put(firsts[events], trains.size());
+                    kinds[events++] = (byte) kind;
+                    break;
+                case ModelJournal.SET_START:
+                case ModelJournal.SET_END:
+                    positions[events] = readTrain(in, trains);
+                    firsts[events] = readVarInt(in);
+                    kinds[events++] = (byte) kind;
+                    break;
+                case ModelJournal.ALLOCATION:
+                    // one more than the identifier of the train
+                    int identifier = readCount(in);
+                    positions[events] = identifier == 0 ? -1 : train(
+                            identifier - 1, trains);
+                    firsts[events] = readVarInt(in);
+                    seconds[events] = readVarInt(in);
+                    int result = readCount(in) + ModelJournal.INVALID_OFFSETS;
+                    thirds[events] = result < 0 ? result : train(result,
+                            trains);
+                    routes[events] = identifier == 0 ? readRoute(in,
+                            sections) : null;
+                    kinds[events++] = (byte) kind;
+                    break;
+                default:
+                    throw new FormatException("unknown record kind: " + kind);
+                }
+            } catch (FormatException e) {
+                throw new FormatException("Error in record " + record + ": "
+                        + e.getMessage());
+            } catch (IllegalArgumentException | InvalidRouteException e) {
+                // the section or route of the record is not valid
+                throw new FormatException("Error in record " + record + ": "
+                        + e.getMessage());
+            }
+        }
+        eventCount = events;
+    }
+
+    /**
+     * Doubles the number of events that the arrays can hold.
+     */
+    private void grow() {
+        int capacity = 2 * kinds.length;
+        kinds = Arrays.copyOf(kinds, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        firsts = Arrays.copyOf(firsts, capacity);
+        seconds = Arrays.copyOf(seconds, capacity);
+        thirds = Arrays.copyOf(thirds, capacity);
+        routes = Arrays.copyOf(routes, capacity);
+    }
+
+    /**
+     * Decodes the journal in the file with the given name.
+     *
+     * @param fileName
+     *            the name of the file of the journal
+     * @return a replayer of the journal
+     * @throws NullPointerException
+     *             if fileName is null
+     * @throws IOException
+     *             if there is an error reading the file
+     * @throws FormatException
+     *             if the file is not a valid journal
+     */
+    public static JournalReplayer read(String fileName) throws IOException,
+            FormatException {
+        return new JournalReplayer(ByteBuffer.wrap(Files.readAllBytes(Paths
+                .get(fileName))));
+    }
+
+    /**
+     * Returns the number of events of the journal: trains added, offsets
+     * set, and allocations requested.
+     *
+     * @return the number of events of the journal
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns a new model of the given track, with the trains added to it and
+     * the offsets of its trains set by the events of the journal, in order.
+     *
+     * @param track
+     *            the track of the model
+     * @return the model rebuilt from the journal
+     */
+    public RailwayModel replay(Track track) {
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        replay(model, 0, eventCount);
+        return model;
+    }
+
+    /**
+     * Replays the journal on a new model of the given track, checking the
+     * result of each allocation request against the trains of the model at
+     * the time of the request, and returns the number of the first event
+     * (starting from zero) that is a request whose result differs from the
+     * one recorded.
+     *
+     * A request for which a conflicting train was recorded is checked to
+     * intersect with the allocation of that train, and a request that was
+     * granted is checked not to intersect with the allocation of any other
+     * train, using the given checker.
+     *
+     * @param track
+     *            the track of the model
+     * @param checker
+     *            the checker used to check granted requests for conflicts
+     * @return the number of the first event whose result differs, or -1 if
+     *         the result of every request is the same
+     * @throws NullPointerException
+     *             if checker is null
+     */
+    public int verify(Track track, ConflictChecker checker) {
+        if (checker == null) {
+            throw new NullPointerException("Parameter cannot be null.");
+        }
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        for (int i = 0; i < eventCount; i++) {
+            if (kinds[i] == ModelJournal.ALLOCATION && !check(model, i,
+                    checker)) {
+                return i;
+            }
+            replay(model, i, i + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Applies the events of the journal from start to end - 1 to the given
+     * model, which holds the trains added by the events before start.
+     */
+    private void replay(RailwayModel model, int start, int end) {
+        for (int i = start; i < end; i++) {
+            switch (kinds[i]) {
+            case ModelJournal.ADD_TRAIN:
+                model.addTrain(firsts[i], routes[i], seconds[i], thirds[i]);
+                break;
+            case ModelJournal.SET_START:
+                model.getTrain(positions[i]).setStartOffset(firsts[i]);
+                break;
+            case ModelJournal.SET_END:
+                model.getTrain(positions[i]).setEndOffset(firsts[i]);
+                break;
+            default:
+                // an allocation request does not change the model
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns true if making the allocation request of the given event again
+     * against the trains of the given model gives the result that was
+     * recorded.
+     */
+    private boolean check(RailwayModel model, int event,
+            ConflictChecker checker) {
+        // the train of the request, or null for a new train
+        RailwayModel.Train train = positions[event] == -1 ? null : model
+                .getTrain(positions[event]);
+        Route route = train == null ? routes[event] : train.getRoute();
+        int startOffset = firsts[event];
+        int endOffset = seconds[event];
+        // the result that the request gives now
+        int result;
+        if (!route.onTrack(model.getTrack())) {
+            result = ModelJournal.NOT_ON_TRACK;
+        } else if (!(0 <= startOffset && startOffset < endOffset
+                && endOffset <= route.getLength())) {
+            result = ModelJournal.INVALID_OFFSETS;
+        } else {
+            Route subRoute = route.getSubroute(startOffset, endOffset);
+            if (thirds[event] >= 0) {
+                // the train that was recorded to conflict with the request
+                RailwayModel.Train other = model.getTrain(thirds[event]);
+                return other != train && subRoute.intersects(other
+                        .getAllocation());
+            }
+            result = checker.findConflict(subRoute, ConflictChecker.snapshot(
+                    model.getTrains(), train == null ? -1 : train
+                            .getIdentifier())) == -1 ? ModelJournal.GRANTED
+                                    : 0;
+        }
+        return result == thirds[event];
+    }
+
+    /**
+     * Reads the record of a junction.
+     */
+    private static Junction readJunction(ByteBuffer in)
+            throws FormatException {
+        // the length of the encoded junction identifier
+        int length = readCount(in);
+        if (length == 0) {
+            throw new FormatException("empty junction identifier");
+        }
+        if (length > in.remaining()) {
+            throw new FormatException("unexpected end of file");
+        }
+        byte[] identifier = new byte[length];
+        in.get(identifier);
+        return JunctionRegistry.intern(new String(identifier,
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the record of a section, whose junctions are in the given list.
+     */
+    private static Section readSection(ByteBuffer in, List<Junction> junctions)
+            throws FormatException {
+        int length = readCount(in);
+        Junction junction1 = junctions.get(readIndex(in, junctions.size(),
+                "junction"));
+        Junction junction2 = junctions.get(readIndex(in, junctions.size(),
+                "junction"));
+        int flags = readByte(in);
+        if ((flags & ~0xF) != 0 || (flags & 0x3) >= BRANCHES.length
+                || (flags >> 2) >= BRANCHES.length) {
+            throw new FormatException("invalid branches: " + flags);
+        }
+        return new Section(length, JunctionBranch.of(junction1,
+                BRANCHES[flags & 0x3]), JunctionBranch.of(junction2,
+                        BRANCHES[flags >> 2]));
+    }
+
+    /**
+     * Reads a route, whose sections are in the given list.
+     */
+    private static Route readRoute(ByteBuffer in, List<Section> sections)
+            throws FormatException {
+        int count = readCount(in);
+        // each segment takes at least three bytes
+        if (count > in.remaining() / 3) {
+            throw new FormatException("unexpected end of file");
+        }
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // the section of the segment, and whether it departs from the
+            // second end-point of the section
+            int code = readIndex(in, 2 * sections.size(), "section");
+            Section section = sections.get(code >> 1);
+            int startOffset = readCount(in);
+            int length = readCount(in);
+            segments.add(new Segment(section, section.getEndPoint(code & 1),
+                    startOffset, startOffset + length));
+        }
+        return new Route(segments);
+    }
+
+    /**
+     * Reads the identifier of a train that has been added, and returns its
+     * position.
+     */
+    private static int readTrain(ByteBuffer in, Map<Integer, Integer> trains)
+            throws FormatException {
+        return train(readCount(in), trains);
+    }
+
+    /**
+     * Returns the position of the train with the given identifier.
+     *
+     * @throws FormatException
+     *             if no train has been added with the identifier
+     */
+    private static int train(int identifier, Map<Integer, Integer> trains)
+            throws FormatException {
+        Integer position = trains.get(identifier);
+        if (position == null) {
+            throw new FormatException("unknown train: " + identifier);
+        }
+        return position;
+    }
+
+    /**
+     * Reads an index that must be less than the given bound.
+     */
+    private static int readIndex(ByteBuffer in, int bound, String kind)
+            throws FormatException {
+        int index = readCount(in);
+        if (index >= bound) {
+            throw new FormatException("invalid " + kind + " index: " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Reads a variable-length integer that must not be negative.
+     */
+    private static int readCount(ByteBuffer in) throws FormatException {
+        int value = readVarInt(in);
+        if (value < 0) {
+            throw new FormatException("invalid variable-length integer");
+        }
+        return value;
+    }
+
+    /**
+     * Reads a variable-length integer holding the 32 bits of an int.
+     */
+    private static int readVarInt(ByteBuffer in) throws FormatException {
+        int value = 0; // the value read so far
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte(in); // the next byte of the integer
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                // the fifth byte may only hold the top four bits of an int
+                if (shift == 28 && b > 0x0F) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new FormatException("invalid variable-length integer");
+    }
+
+    /**
+     * Reads an unsigned byte.
+     */
+    private static int readByte(ByteBuffer in) throws FormatException {
+        if (!in.hasRemaining()) {
+            throw new FormatException("unexpected end of file");
+        }
+        return in.get() & 0xFF;
+    }
+
+}
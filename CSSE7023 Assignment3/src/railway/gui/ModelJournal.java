@@ -0,0 +1,429 @@
+package railway.gui;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * An append-only binary journal of the changes made to the trains of a
+ * RailwayModel, and of the allocations requested for them and their
+ * results, from which the model can be rebuilt by a JournalReplayer.
+ * </p>
+ *
+ * <p>
+ * A journal starts with the four-byte magic number "RJNL" and a one-byte
+ * format version, followed by its records. Each record is a one-byte kind
+ * followed by its fields, each of which is an unsigned variable-length
+ * integer (seven bits per byte, least significant group first, with the high
+ * bit of each byte set if another byte follows), unless stated otherwise.
+ * The offsets requested for an allocation may be negative, so they are
+ * stored as the unsigned value of their 32 bits. The kinds of record are:
+ * </p>
+ *
+ * <ul>
+ * <li>JUNCTION: the identifier of a junction, as its length followed by its
+ * UTF-8 bytes. The junctions are numbered from 0 in the order of their
+ * records.</li>
+ * <li>SECTION: the length of a section, the numbers of the junctions of its
+ * two end-points, and a flags byte holding the ordinal of the branch of the
+ * first end-point in bits 0-1 and of the second in bits 2-3. The sections
+ * are numbered from 0 in the order of their records.</li>
+ * <li>ADD_TRAIN: the identifier of a train added to the model, its start
+ * and end offsets, and its route.</li>
+ * <li>SET_START and SET_END: the identifier of a train, and its new start
+ * or end offset.</li>
+ * <li>ALLOCATION: one more than the identifier of the train that an
+ * allocation was requested for (or 0 for a new train), the start and end
+ * offsets requested, three more than the result of the request (see
+ * recordAllocation) and, for a new train, its route.</li>
+ * </ul>
+ *
+ * <p>
+ * A route is recorded as the number of its segments, followed by each
+ * segment as twice the number of its section (plus one if it departs from
+ * the second end-point of the section), its start offset and its length.
+ * The JUNCTION and SECTION records of the junctions and sections used by a
+ * record are written just before it, the first time that they are used.
+ * </p>
+ *
+ * <p>
+ * The records are buffered, so they are only guaranteed to be in the
+ * underlying stream once the journal has been flushed or closed. Like a
+ * PrintWriter, the methods that record changes do not throw an IOException:
+ * the first error is kept, and can be found with checkError. The methods of
+ * a journal are synchronized, so that each record is written whole even if
+ * the journal is closed by another thread (e.g. a shutdown hook) while the
+ * trains of a model are being changed. Records made after the journal has
+ * been closed are ignored.
+ * </p>
+ */
+public class ModelJournal implements Closeable {
+
+    /** The result of an allocation request that was granted. */
+    public static final int GRANTED = -1;
+    /** The result of a request whose route was not on the track. */
+    public static final int NOT_ON_TRACK = -2;
+    /** The result of a request whose offsets were not valid for the route. */
+    public static final int INVALID_OFFSETS = -3;
+
+    // magic number at the start of a journal ("RJNL")
+    static final int MAGIC = 0x524A4E4C;
+    // the version of the format written by this class
+    static final int VERSION = 1;
+
+    // the kinds of the records
+    static final int JUNCTION = 1;
+    static final int SECTION = 2;
+    static final int ADD_TRAIN = 3;
+    static final int SET_START = 4;
+    static final int SET_END = 5;
+    static final int ALLOCATION = 6;
+
+    // the stream that the records are written to
+    private final DataOutputStream out;
+    // the junctions and sections recorded so far, mapped to their numbers
+    private final Map<Junction, Integer> junctions;
+    private final Map<Section, Integer> sections;
+    // the number of records of trains and allocations written
+    private long eventCount;
+    // the first error that occurred writing the journal, or null
+    private IOException error;
+    // whether the journal has been closed
+    private boolean closed;
+
+    /*
+     * invariant:
+     *
+     * out != null && junctions != null && sections != null &&
+     *
+     * the values of junctions are 0 to junctions.size() - 1, and those of
+     * sections are 0 to sections.size() - 1 && the junctions of each section
+     * in sections are in junctions &&
+     *
+     * eventCount >= 0
+     */
+
+    /**
+     * Creates a journal that writes its records to the given stream, and
+     * writes the header of the journal.
+     *
+     * @param out
+     *            the stream to write the journal to
+     * @throws NullPointerException
+     *             if out is null
+     * @throws IOException
+     *             if there is an error writing the header
+     */
+    public ModelJournal(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("Parameter cannot be null.");
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        junctions = new HashMap<>();
+        sections = new HashMap<>();
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    /**
+     * Creates a new journal in the file with the given name, replacing it if
+     * it already exists.
+     *
+     * @param fileName
+     *            the name of the file to write the journal to
+     * @return a journal that writes to the file
+     * @throws NullPointerException
+     *             if fileName is null
+     * @throws IOException
+     *             if the file cannot be created, or there is an error writing
+     *             the header
+     */
+    public static ModelJournal create(String fileName) throws IOException {
+        // the stream that writes the file
+        FileOutputStream file = new FileOutputStream(fileName);
+        try {
+            return new ModelJournal(file);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records that a train with the given identifier, route and offsets was
+     * added to the model.
+     *
+     * @require route != null
+     * @param identifier
+     *            the identifier of the train
+     * @param route
+     *            the route of the train
+     * @param startOffset
+     *            the start offset of the sub-route allocated to the train
+     * @param endOffset
+     *            the end offset of the sub-route allocated to the train
+     */
+    public synchronized void recordAddTrain(int identifier, Route route,
+            int startOffset, int endOffset) {
+        if (closed) {
+            return;
+        }
+        try {
+            defineSections(route);
+            out.writeByte(ADD_TRAIN);
+            writeVarInt(identifier);
+            writeVarInt(startOffset);
+            writeVarInt(endOffset);
+            writeRoute(route);
+            eventCount++;
+        } catch (IOException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Records that the start offset of the train with the given identifier
+     * was set to the given offset.
+     *
+     * @param identifier
+     *            the identifier of the train
+     * @param startOffset
+     *            the new start offset of the train
+     */
+    public synchronized void recordSetStartOffset(int identifier,
+            int startOffset) {
+        recordOffset(SET_START, identifier, startOffset);
+    }
+
+    /**
+     * Records that the end offset of the train with the given identifier was
+     * set to the given offset.
+     *
+     * @param identifier
+     *            the identifier of the train
+     * @param endOffset
+     *            the new end offset of the train
+     */
+    public synchronized void recordSetEndOffset(int identifier,
+            int endOffset) {
+        recordOffset(SET_END, identifier, endOffset);
+    }
+
+    /**
+     * Records that the sub-route from the given start offset to the given end
+     * offset of the given route was requested for the train with the given
+     * identifier (or for a new train, if the identifier is -1), and the
+     * result of the request. The result is GRANTED, NOT_ON_TRACK,
+     * INVALID_OFFSETS, or the identifier of a train whose allocation
+     * intersects with the sub-route.
+     *
+     * @require route != null && identifier >= -1 && result >=
+     *          INVALID_OFFSETS
+     * @param identifier
+     *            the identifier of the train, or -1 for a new train
+     * @param route
+     *            the route of the train
+     * @param startOffset
+     *            the start offset requested
+     * @param endOffset
+     *            the end offset requested
+     * @param result
+     *            the result of the request
+     */
+    public synchronized void recordAllocation(int identifier, Route route,
+            int startOffset, int endOffset, int result) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (identifier == -1) {
+                defineSections(route);
+            }
+            out.writeByte(ALLOCATION);
+            writeVarInt(identifier + 1);
+            writeVarInt(startOffset);
+            writeVarInt(endOffset);
+            writeVarInt(result - INVALID_OFFSETS);
+            if (identifier == -1) {
+                writeRoute(route);
+            }
+            eventCount++;
+        } catch (IOException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Returns the number of changes to trains and allocation requests that
+     * have been recorded.
+     *
+     * @return the number of events recorded
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Writes any buffered records to the underlying stream, and flushes it.
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Flushes the journal, and returns true if an error has occurred writing
+     * it.
+     *
+     * @return true if any record could not be written
+     */
+    public synchronized boolean checkError() {
+        flush();
+        return error != null;
+    }
+
+    /**
+     * Returns the first error that occurred writing the journal, or null if
+     * there has been none.
+     *
+     * @return the first error writing the journal, or null
+     */
+    public synchronized IOException getError() {
+        return error;
+    }
+
+    /**
+     * Flushes and closes the journal and its underlying stream, unless it has
+     * already been closed.
+     *
+     * @throws IOException
+     *             if an error occurred writing the journal, now or earlier
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                setError(e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes a record of the given kind, with the given train identifier and
+     * offset.
+     */
+    private void recordOffset(int kind, int identifier, int offset) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeByte(kind);
+            writeVarInt(identifier);
+            writeVarInt(offset);
+            eventCount++;
+        } catch (IOException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Writes the records of the junctions and sections of the given route
+     * that have not yet been recorded.
+     */
+    private void defineSections(Route route) throws IOException {
+        for (Segment segment : route) {
+            Section section = segment.getSection();
+            if (sections.containsKey(section)) {
+                continue;
+            }
+            // the end-points of the section
+            JunctionBranch endPoint1 = section.getEndPoint(0);
+            JunctionBranch endPoint2 = section.getEndPoint(1);
+            int junction1 = defineJunction(endPoint1.getJunction());
+            int junction2 = defineJunction(endPoint2.getJunction());
+            out.writeByte(SECTION);
+            writeVarInt(section.getLength());
+            writeVarInt(junction1);
+            writeVarInt(junction2);
+            out.writeByte(endPoint1.getBranch().ordinal() | (endPoint2
+                    .getBranch().ordinal() << 2));
+            sections.put(section, sections.size());
+        }
+    }
+
+    /**
+     * Returns the number of the given junction, writing its record if it has
+     * not yet been recorded.
+     */
+    private int defineJunction(Junction junction) throws IOException {
+        Integer number = junctions.get(junction);
+        if (number == null) {
+            // the encoded identifier of the junction
+            byte[] identifier = junction.getJunctionId().getBytes(
+                    StandardCharsets.UTF_8);
+            out.writeByte(JUNCTION);
+            writeVarInt(identifier.length);
+            out.write(identifier);
+            number = junctions.size();
+            junctions.put(junction, number);
+        }
+        return number;
+    }
+
+    /**
+     * Writes the segments of the given route, whose sections have all been
+     * recorded.
+     */
+    private void writeRoute(Route route) throws IOException {
+        int count = 0; // the number of segments of the route
+        for (@SuppressWarnings("unused") Segment segment : route) {
+            count++;
+        }
+        writeVarInt(count);
+        for (Segment segment : route) {
+            Section section = segment.getSection();
+            // whether the segment departs from the second end-point
+            int second = segment.getDepartingEndPoint().equals(section
+                    .getEndPoint(0)) ? 0 : 1;
+            writeVarInt(2 * sections.get(section) + second);
+            writeVarInt(segment.getStartOffset());
+            writeVarInt(segment.getLength());
+        }
+    }
+
+    /**
+     * Writes the given non-negative integer as a variable-length integer.
+     */
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Records the given error, unless an error has already been recorded.
+     */
+    private void setError(IOException e) {
+        if (error == null) {
+            error = e;
+        }
+    }
+
+}
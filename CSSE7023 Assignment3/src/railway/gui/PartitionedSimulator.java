@@ -0,0 +1,431 @@
+package railway.gui;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * A discrete-event simulation of the trains of a RailwayModel, like a
+ * TrainSimulator, that divides the track into regions (see TrackPartition)
+ * and simulates the trains of each region on the workers of a ForkJoinPool.
+ * </p>
+ *
+ * <p>
+ * Each region owns the locations on its part of the track, and is the only
+ * one that reserves them, frees them or checks whether they are reserved.
+ * Each train belongs to the region that owns the location of its head, and
+ * only requests locations that are owned by that region. When a train has
+ * reached the end of its allocation and the next location on its route is
+ * owned by another region, it is handed off to that region. When a train
+ * frees locations that are owned by another region, it asks that region to
+ * free them.
+ * </p>
+ *
+ * <p>
+ * Simulated time is divided into windows of getWindow() microseconds, and
+ * the regions simulate each window in parallel, processing the events of
+ * their own trains in order of time. The hand-offs and requests to free
+ * locations made in a window are sent through lock-free queues, and are
+ * only received at the start of the next window. Each region sorts what it
+ * receives (by time, then train, then location) before acting on it, so a
+ * simulation always gives the same result for the same trains, number of
+ * regions and window, no matter how many threads it is run on or how they
+ * are scheduled. A train that is handed off in a window continues from the
+ * start of the next one, so shorter windows delay trains less at the cost of
+ * more synchronisation.
+ * </p>
+ *
+ * <p>
+ * The allocations of the model's trains must not intersect when the
+ * simulation is created, and the trains must not be changed while it runs.
+ * The simulation only changes the offsets of the trains in the model when
+ * updateModel is called. The methods of a simulation must not be called by
+ * more than one thread at a time.
+ * </p>
+ */
+public class PartitionedSimulator extends AbstractSimulator {
+
+    // the regions of the track
+    private final TrackPartition partition;
+    private final Region[] regions;
+    // the pool that the regions are simulated in
+    private final ForkJoinPool pool;
+    // the length of each window, in microseconds
+    private final long window;
+
+    // the number of the next window to be simulated
+    private long windowNumber;
+
+    /*
+     * invariant:
+     *
+     * partition != null && pool != null && window > 0 && windowNumber >= 0 &&
+     *
+     * regions.length == partition.getRegionCount() && each regions[r].number
+     * == r &&
+     *
+     * between calls, each train with trains[i].head < its route length is
+     * either in the events of exactly one region, or in exactly one message
+     * handing it off to a region, and no other train is in either
+     */
+
+    /**
+     * Creates a simulation of the trains currently in the given model, each
+     * of which travels at the given speed, which divides the track into the
+     * given number of regions and simulates them in the common ForkJoinPool.
+     *
+     * @param model
+     *            the model whose trains are simulated
+     * @param speed
+     *            the speed of each train, in meters per second
+     * @param regionCount
+     *            the number of regions to divide the track into
+     * @param window
+     *            the length of each window of simulated time, in
+     *            microseconds
+     * @throws NullPointerException
+     *             if model is null, or it has no track
+     * @throws IllegalArgumentException
+     *             if speed, regionCount or window is not positive, or the
+     *             route of a train is not on the track of the model
+     */
+    public PartitionedSimulator(RailwayModel model, double speed,
+            int regionCount, long window) {
+        this(model, speed, regionCount, window, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a simulation of the trains currently in the given model, each
+     * of which travels at the given speed, which divides the track into the
+     * given number of regions and simulates them in the given pool. The
+     * simulation starts at time 0, with the head of each train at the start
+     * of its allocated sub-route.
+     *
+     * @param model
+     *            the model whose trains are simulated
+     * @param speed
+     *            the speed of each train, in meters per second
+     * @param regionCount
+     *            the number of regions to divide the track into
+     * @param window
+     *            the length of each window of simulated time, in
+     *            microseconds
+     * @param pool
+     *            the pool that the regions are simulated in
+     * @throws NullPointerException
+     *             if model or pool is null, or the model has no track
+     * @throws IllegalArgumentException
+     *             if speed, regionCount or window is not positive, or the
+     *             route of a train is not on the track of the model
+     */
+    public PartitionedSimulator(RailwayModel model, double speed,
+            int regionCount, long window, ForkJoinPool pool) {
+        super(model, speed);
+        if (pool == null) {
+            throw new NullPointerException("Parameter pool cannot be null.");
+        }
+        if (regionCount <= 0 || window <= 0) {
+            throw new IllegalArgumentException("The number of regions and "
+                    + "the window must be positive.");
+        }
+        this.pool = pool;
+        this.window = window;
+        partition = new TrackPartition(snapshot, regionCount);
+        regions = new Region[regionCount];
+        for (int r = 0; r < regionCount; r++) {
+            regions[r] = new Region(r);
+        }
+        for (SimulatedTrain train : trains) {
+            regions[train.ownerAt(partition, train.head)].events
+                    .add(train.index, 0);
+        }
+    }
+
+    /**
+     * Returns the number of regions that the track is divided into.
+     *
+     * @return the number of regions
+     */
+    public int getRegionCount() {
+        return regions.length;
+    }
+
+    /**
+     * Returns the length of each window of simulated time, in microseconds.
+     *
+     * @return the length of each window
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the current simulated time, in microseconds, which is the end
+     * of the last window simulated.
+     *
+     * @return the simulated time
+     */
+    public long getTime() {
+        return windowNumber * window;
+    }
+
+    /**
+     * Returns the number of events that have been processed.
+     *
+     * @return the number of events processed
+     */
+    public long getEventCount() {
+        long result = 0;
+        for (Region region : regions) {
+            result += region.eventCount;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the total distance travelled by the trains, in meters.
+     *
+     * @return the distance travelled by the trains
+     */
+    public long getDistance() {
+        long result = 0;
+        for (Region region : regions) {
+            result += region.distance;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of trains that have reached the end of their
+     * routes.
+     *
+     * @return the number of trains that have arrived
+     */
+    public int getArrivedCount() {
+        int result = 0;
+        for (Region region : regions) {
+            result += region.arrivedCount;
+        }
+        return result;
+    }
+
+    /**
+     * Simulates every window that starts no later than the given time, so
+     * that every event with a time no later than the given time is
+     * processed, and the simulated time becomes the end of the window
+     * containing the given time (or is left unchanged, if it is already
+     * later).
+     *
+     * @param endTime
+     *            the simulated time to run until, in microseconds
+     * @return the number of events processed
+     */
+    public long runUntil(long endTime) {
+        long before = getEventCount();
+        while (windowNumber * window <= endTime) {
+            pool.invoke(new WindowTask(0, regions.length));
+            windowNumber++;
+        }
+        return getEventCount() - before;
+    }
+
+    /**
+     * A hand-off of a train to a region, or a request to a region to free
+     * locations allocated to a train.
+     */
+    private static final class Message implements Comparable<Message> {
+
+        // the position of the train in the list of trains of the model
+        private final int train;
+        // the time that the message was sent
+        private final long time;
+        // the route offsets of the first and last locations to free, or -1
+        // and -1 if the train is handed off
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a message about the given train, sent at the given time.
+         *
+         * @require from == to == -1 || 0 <= from <= to
+         */
+        private Message(int train, long time, int from, int to) {
+            this.train = train;
+            this.time = time;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int compareTo(Message other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            if (train != other.train) {
+                return Integer.compare(train, other.train);
+            }
+            return Integer.compare(from, other.from);
+        }
+    }
+
+    /**
+     * The trains and events of a region of the track.
+     */
+    private final class Region {
+
+        // the number of the region
+        private final int number;
+        // the trains of the region with a pending event, by the time of the
+        // event
+        private final EventQueue events;
+        // the messages sent to the region in even and odd windows, which are
+        // received at the start of the next window
+        private final List<Queue<Message>> inboxes;
+
+        // the number of events processed, the distance travelled and the
+        // number of trains that arrived in the region
+        private long eventCount;
+        private long distance;
+        private int arrivedCount;
+
+        /**
+         * Creates an empty region with the given number.
+         */
+        private Region(int number) {
+            this.number = number;
+            events = new EventQueue(trains.length);
+            inboxes = new ArrayList<>(2);
+            inboxes.add(new ConcurrentLinkedQueue<Message>());
+            inboxes.add(new ConcurrentLinkedQueue<Message>());
+        }
+
+        /**
+         * Receives the messages sent in the previous window, and processes
+         * the events of the region in the current window.
+         */
+        private void simulate() {
+            long start = windowNumber * window;
+            long end = start + window;
+            // the messages sent in the previous window, in order
+            List<Message> received = new ArrayList<>(inboxes.get(
+                    (int) (windowNumber & 1)));
+            inboxes.get((int) (windowNumber & 1)).clear();
+            Collections.sort(received);
+            for (Message message : received) {
+                if (message.from == -1) {
+                    events.add(message.train, start);
+                } else {
+                    trains[message.train].setReserved(reservations,
+                            message.from, message.to, false);
+                }
+            }
+            while (!events.isEmpty() && events.nextTime() < end) {
+                long time = events.nextTime();
+                process(events.poll(), time);
+                eventCount++;
+            }
+        }
+
+        /**
+         * Moves the given train of the region to the position of its pending
+         * event, which is at the given time, and schedules its next event.
+         */
+        private void process(int index, long time) {
+            SimulatedTrain train = trains[index];
+            distance += train.advance();
+            // free the locations passed, other than the one behind the head
+            int last = train.lastPassed();
+            if (last >= train.start) {
+                free(train, last, time);
+                train.start = last + 1;
+            }
+            if (train.head == train.routeLength) {
+                arrivedCount++;
+                return;
+            }
+            // request the locations of the region up to the lookahead
+            int to = train.requestEnd(lookahead);
+            if (to > train.end) {
+                to = train.lastOwned(partition, number, train.end + 1, to);
+            }
+            train.extend(reservations, to);
+            if (train.end != train.head) {
+                events.add(index, time + train.travelTime());
+                return;
+            }
+            // the region that owns the next location on the route
+            int owner = train.ownerAt(partition, train.end + 1);
+            if (owner == number) {
+                events.add(index, time + retryDelay);
+            } else {
+                send(owner, new Message(index, time, -1, -1));
+            }
+        }
+
+        /**
+         * Frees the locations allocated to the given train from its start to
+         * the given route offset (inclusive), asking the regions that own
+         * them to free those that are not owned by this one.
+         */
+        private void free(SimulatedTrain train, int last, long time) {
+            int from = train.start;
+            while (from <= last) {
+                // the region that owns the next run of locations, and the
+                // last location of the run
+                int owner = train.ownerAt(partition, from);
+                int to = train.lastOwned(partition, owner, from, last);
+                if (owner == number) {
+                    train.setReserved(reservations, from, to, false);
+                } else {
+                    send(owner, new Message(train.index, time, from, to));
+                }
+                from = to + 1;
+            }
+        }
+
+        /**
+         * Sends the given message to the given region, to be received at the
+         * start of the next window.
+         */
+        private void send(int region, Message message) {
+            regions[region].inboxes.get((int) ((windowNumber + 1) & 1)).add(
+                    message);
+        }
+    }
+
+    /**
+     * A task that simulates the current window of the regions with numbers
+     * in a given range.
+     */
+    @SuppressWarnings("serial")
+    private final class WindowTask extends RecursiveAction {
+
+        // the range of numbers of the regions to simulate
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a task that simulates regions from to to - 1.
+         *
+         * @require 0 <= from < to <= regions.length
+         */
+        private WindowTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                regions[from].simulate();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new WindowTask(from, middle), new WindowTask(middle,
+                        to));
+            }
+        }
+    }
+
+}
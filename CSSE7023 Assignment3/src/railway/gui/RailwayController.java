@@ -2,9 +2,14 @@ package railway.gui;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
@@ -20,6 +25,10 @@ public class RailwayController {
     private RailwayModel model;
     // the view that is being controlled
     private RailwayView view;
+    // the service used to check for conflicts between train allocations
+    private ConflictChecker conflictChecker;
+    // the journal that changes to the model are recorded in, or null
+    private ModelJournal journal;
 
     /*
      * invariant:
@@ -28,6 +37,8 @@ public class RailwayController {
      *
      * && view != null
      *
+     * && conflictChecker != null
+     *
      */
 
     /**
@@ -36,10 +47,12 @@ public class RailwayController {
     public RailwayController(RailwayModel model, RailwayView view) {
         this.model = model;
         this.view = view;
+        this.conflictChecker = new ConflictChecker();
 
         this.model.setTrack(loadTrack());
         this.view.addMessage("Successfully loaded track:");
         view.addDetailMessage(this.model.getTrack().toString());
+        openJournal();
         
         view.addAddTrainListener(new AddTrainActionListener());
         view.addTrainListListener(new TrainListListener());
@@ -75,6 +88,107 @@ public class RailwayController {
         return track;
     }
 
+    /**
+     * Starts recording the changes to the model, and the allocations
+     * requested, in the journal file named by the railway.journal system
+     * property, if it is set. If the journal cannot be created, an error
+     * message is displayed, and the changes are not recorded. The journal is
+     * closed when the window is closed, or when the program exits in any
+     * other way.
+     */
+    private void openJournal() {
+        // the name of the journal file, or null
+        String fileName = System.getProperty("railway.journal");
+        if (fileName == null) {
+            return;
+        }
+        try {
+            journal = ModelJournal.create(fileName);
+            model.setJournal(journal);
+            view.addMessage("Recording changes in journal " + fileName + ".");
+        } catch (IOException e) {
+            view.addError("Cannot create journal: " + e.getMessage());
+            return;
+        }
+        view.addWindowListener(new JournalWindowListener());
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                new JournalShutdownHook()));
+    }
+
+    /**
+     * Stops recording changes to the model, and closes the journal, if it is
+     * open. This may be called from any thread: the journal is detached from
+     * the model first, and since the methods of a journal are synchronized, a
+     * change being recorded on the event thread is written whole before the
+     * journal is closed (and any later one is ignored). An error writing the
+     * journal is reported on the standard error stream, since the window may
+     * already have been closed.
+     */
+    private synchronized void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        // the journal to close
+        ModelJournal closing = journal;
+        journal = null;
+        model.setJournal(null);
+        try {
+            closing.close();
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the result of an allocation request in the journal, if there
+     * is one, and flushes it.
+     */
+    private synchronized void recordAllocation(int identifier, Route route,
+            int startOffset, int endOffset, int result) {
+        if (journal != null) {
+            journal.recordAllocation(identifier, route, startOffset,
+                    endOffset, result);
+            journal.flush();
+        }
+    }
+
+    /**
+     * Flushes the journal, if there is one, so that the changes made to the
+     * model since it was last flushed are in its file.
+     */
+    private synchronized void flushJournal() {
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    /**
+     * The window listener that closes the journal when the window is closed.
+     */
+    private class JournalWindowListener extends WindowAdapter {
+        /**
+         * Closes the journal before the program exits.
+         * @param e
+         *            The event to trigger the action.
+         */
+        public void windowClosing(WindowEvent e) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * The shutdown hook that closes the journal if the program exits without
+     * its window being closed.
+     */
+    private class JournalShutdownHook implements Runnable {
+        /**
+         * Closes the journal, if it is still open.
+         */
+        public void run() {
+            closeJournal();
+        }
+    }
+
     /**
      * The action listener class for the add train button.
      */
@@ -96,9 +210,9 @@ public class RailwayController {
                 return;
             }
             // the start offset specified in the start offset input field
-            int startOffset;
+            final int startOffset;
             // the end offset specified in the end offset input field
-            int endOffset;
+            final int endOffset;
             try {
                 startOffset = Integer.parseInt(view.getStartOffsetAdd());
                 endOffset = Integer.parseInt(view.getEndOffsetAdd());
@@ -107,15 +221,28 @@ public class RailwayController {
                 return;
             }
             // the route object created from the given route file
-            Route route = createRoute(routeFile);
+            final Route route = createRoute(routeFile);
             if (route == null) {
                 return;
             }
+            // the new train has no identifier yet, so it is checked against
+            // all of the existing trains
+            checkRoute(route, startOffset, endOffset, -1, new Runnable() {
+                public void run() {
+                    addTrain(route, startOffset, endOffset);
+                }
+            });
+        }
+
+        /**
+         * Adds a new train with the given route and allocation to the model,
+         * and displays its details.
+         * 
+         * @require the allocation of the train has been checked by checkRoute
+         */
+        private void addTrain(Route route, int startOffset, int endOffset) {
             // the unique identifier assigned to the new train
             int identifier = model.getTrains().size();
-            if (!checkRoute(route, startOffset, endOffset, identifier)) {
-                return;
-            }
             model.addTrain(identifier, route, startOffset, endOffset);
             view.addTrainListItem("Train " + Integer.toString(identifier));
             view.clearAddTrainInput();
@@ -223,9 +350,9 @@ public class RailwayController {
                 return;
             }
             // the start offset specified in the start offset input field
-            int startOffset;
+            final int startOffset;
             // the end offset specified in the end offset input field
-            int endOffset;
+            final int endOffset;
             try {
                 startOffset = Integer.parseInt(view.getStartOffsetUpdate());
                 endOffset = Integer.parseInt(view.getEndOffsetUpdate());
@@ -236,11 +363,11 @@ public class RailwayController {
             // the index of the currently selected item in the list
             int index = view.getSelectedIndex();
             // the currently selected train
-            Train train = model.getTrain(index);
+            final Train train = model.getTrain(index);
             // the whole route of the currently selected train
             Route route = train.getRoute();
             // the unique identifier of the currently selected train
-            int identifier = train.getIdentifier();
+            final int identifier = train.getIdentifier();
 
             if (startOffset == train.getStartOffset()
                     && endOffset == train.getEndOffset()) {
@@ -248,14 +375,17 @@ public class RailwayController {
                         + "as the original. The train remains unchanged.");
                 return;
             }
-            if (!checkRoute(route, startOffset, endOffset, identifier)) {
-                return;
-            }
-            train.setStartOffset(startOffset);
-            train.setEndOffset(endOffset);
-            view.addMessage("The allocation of Train "
-                    + Integer.toString(identifier) + " is updated to: ");
-            view.addDetailMessage(train.toString());
+            checkRoute(route, startOffset, endOffset, identifier,
+                    new Runnable() {
+                        public void run() {
+                            train.setStartOffset(startOffset);
+                            train.setEndOffset(endOffset);
+                            view.addMessage("The allocation of Train "
+                                    + Integer.toString(identifier)
+                                    + " is updated to: ");
+                            view.addDetailMessage(train.toString());
+                        }
+                    });
         }
     }
 
@@ -275,7 +405,8 @@ public class RailwayController {
     }
 
     /**
-     * Checks if the allocation of the given parameters is currently valid.
+     * Checks if the allocation of the given parameters is currently valid, and
+     * if it is, runs onValid on the Swing event thread.
      * Following conditions are checked:
      * - The given route is on the track of the system model.
      * - The start and end offset satisfies:
@@ -283,6 +414,12 @@ public class RailwayController {
      * - The sub-route created from the route and offsets does not intersect
      * with any of the sub-routes currently allocated to other trains.
      * 
+     * The first two conditions are checked immediately. The last one is
+     * checked in the background by the conflict checker, so that the event
+     * thread is not blocked while there are many trains. If any condition
+     * does not hold, an error message is displayed instead of running
+     * onValid.
+     * 
      * @param route
      *            The route that the train is following.
      * @param startOffset
@@ -291,32 +428,111 @@ public class RailwayController {
      *            The end offset of the train's allocation.
      * @param identifier
      *            The unique identifier of the train.
-     * @return Returns true if the allocation is valid, otherwise returns false.
+     * @param onValid
+     *            The action to run if the allocation is valid.
      */
-    private boolean checkRoute(Route route, int startOffset, int endOffset,
-            int identifier) {
+    private void checkRoute(Route route, int startOffset, int endOffset,
+            int identifier, Runnable onValid) {
         if (!route.onTrack(model.getTrack())) {
+            recordAllocation(identifier, route, startOffset, endOffset,
+                    ModelJournal.NOT_ON_TRACK);
             view.addError("The route in file is not on the system's track.");
-            return false;
+            return;
         }
         if (!((0 <= startOffset) && (startOffset < endOffset)
                 && (endOffset <= route.getLength()))) {
+            recordAllocation(identifier, route, startOffset, endOffset,
+                    ModelJournal.INVALID_OFFSETS);
             view.addError(
                     "Invalid Start Offset and/or End Offset for the route.");
-            return false;
+            return;
+        }
+        new ConflictCheckWorker(route, startOffset, endOffset, identifier,
+                onValid).execute();
+    }
+
+    /**
+     * A worker that checks, in the background, whether a sub-route intersects
+     * with the sub-routes currently allocated to the other trains, and
+     * reports the result on the Swing event thread.
+     */
+    private class ConflictCheckWorker extends SwingWorker<Integer, Void> {
+
+        // the route and offsets of the sub-route to check, and the
+        // sub-route
+        private Route route;
+        private int startOffset;
+        private int endOffset;
+        private Route subRoute;
+        // the unique identifier of the train that the sub-route is for
+        private int identifier;
+        // the action to run if there is no conflict
+        private Runnable onValid;
+        // the allocations of the other trains when the worker was created
+        private List<ConflictChecker.Allocation> allocations;
+        // the modification count of the model when the worker was created
+        private int modificationCount;
+
+        /**
+         * Creates a worker that checks the sub-route of the given route
+         * between the given offsets against a snapshot of the allocations of
+         * the trains other than the one with the given identifier. This must
+         * be called on the Swing event thread.
+         * 
+         * @require 0 <= startOffset < endOffset <= route.getLength()
+         */
+        public ConflictCheckWorker(Route route, int startOffset,
+                int endOffset, int identifier, Runnable onValid) {
+            this.route = route;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.subRoute = route.getSubroute(startOffset, endOffset);
+            this.identifier = identifier;
+            this.onValid = onValid;
+            this.allocations = ConflictChecker.snapshot(model.getTrains(),
+                    identifier);
+            this.modificationCount = model.getModificationCount();
+        }
+
+        /**
+         * Returns the identifier of a train whose allocation intersects with
+         * the sub-route, or -1 if there is none.
+         */
+        @Override
+        protected Integer doInBackground() {
+            return conflictChecker.findConflict(subRoute, allocations);
         }
-        // The sub-route created from the given route and offsets
-        Route subRoute = route.getSubroute(startOffset, endOffset);
-        for (int i = 0; i < model.getTrains().size(); i++) {
-            // the train at index i
-            Train train = model.getTrain(i);
-            if (train.getIdentifier() != identifier
-                    && subRoute.intersects(train.getAllocation())) {
-                view.addError("The sub-route intersects with some sub-routes "
-                        + "currently allocated to other trains.");
-                return false;
+
+        /**
+         * Reports the result of the check on the Swing event thread. If the
+         * trains were modified while the check was running, the check is
+         * repeated against their new allocations.
+         */
+        @Override
+        protected void done() {
+            // the identifier of the conflicting train, or -1
+            int conflict;
+            try {
+                conflict = get();
+            } catch (InterruptedException | ExecutionException e) {
+                view.addError("Cannot check the sub-route for conflicts: "
+                        + e.getMessage());
+                return;
+            }
+            if (model.getModificationCount() != modificationCount) {
+                new ConflictCheckWorker(route, startOffset, endOffset,
+                        identifier, onValid).execute();
+            } else if (conflict != -1) {
+                recordAllocation(identifier, route, startOffset, endOffset,
+                        conflict);
+                view.addError("The sub-route intersects with the sub-route "
+                        + "currently allocated to Train " + conflict + ".");
+            } else {
+                recordAllocation(identifier, route, startOffset, endOffset,
+                        ModelJournal.GRANTED);
+                onValid.run();
+                flushJournal();
             }
         }
-        return true;
     }
 }
@@ -13,6 +13,11 @@ public class RailwayModel {
     private Track track;
     // A list containing all trains added to the program model.
     private ArrayList<Train> trains;
+    // The number of times that a train has been added or updated.
+    private int modificationCount;
+    // The journal that changes to the trains are recorded in, or null. It
+    // may be detached by another thread (e.g. a shutdown hook).
+    private volatile ModelJournal journal;
 
     /*
      * invariant:
@@ -55,6 +60,28 @@ public class RailwayModel {
         return this.track;
     }
 
+    /**
+     * Sets the journal that trains added to the model, and changes to the
+     * offsets of its trains, are recorded in from now on.
+     * 
+     * @param journal
+     *            the journal to record changes in, or null to stop recording
+     *            them.
+     */
+    public void setJournal(ModelJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Returns the journal that changes to the trains are recorded in.
+     * 
+     * @return the journal of the model, or null if changes are not being
+     *         recorded.
+     */
+    public ModelJournal getJournal() {
+        return journal;
+    }
+
     /**
      * Returns the whole list of Trains that have been added to the program
      * model.
@@ -102,6 +129,12 @@ public class RailwayModel {
         // the new train to be added
         Train train = new Train(identifier, route, startOffset, endOffset);
         this.getTrains().add(train);
+        modificationCount++;
+        // the journal to record the train in, or null
+        ModelJournal current = journal;
+        if (current != null) {
+            current.recordAddTrain(identifier, route, startOffset, endOffset);
+        }
     }
 
     /**
@@ -115,6 +148,17 @@ public class RailwayModel {
         return trains.get(trains.size() - 1);
     }
 
+    /**
+     * Returns the number of times that a train has been added to the model,
+     * or had its allocation changed. This can be used to detect whether the
+     * trains have changed since a snapshot of their allocations was taken.
+     * 
+     * @return the number of modifications made to the trains in the model.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * The class to represent a train.
      */
@@ -216,6 +260,12 @@ public class RailwayModel {
          */
         public void setStartOffset(int startOffset) {
             this.startOffset = startOffset;
+            modificationCount++;
+            // the journal to record the change in, or null
+            ModelJournal current = journal;
+            if (current != null) {
+                current.recordSetStartOffset(identifier, startOffset);
+            }
         }
 
         /**
@@ -226,6 +276,12 @@ public class RailwayModel {
          */
         public void setEndOffset(int endOffset) {
             this.endOffset = endOffset;
+            modificationCount++;
+            // the journal to record the change in, or null
+            ModelJournal current = journal;
+            if (current != null) {
+                current.recordSetEndOffset(identifier, endOffset);
+            }
         }
 
         /**
@@ -0,0 +1,284 @@
+package railway.gui;
+
+import java.util.*;
+
+import railway.*;
+import railway.gui.RailwayModel.Train;
+
+/**
+ * <p>
+ * The state of a train of a RailwayModel in a simulation: the position of
+ * its head along its route, and the sub-route allocated to it.
+ * </p>
+ *
+ * <p>
+ * Positions along the route are offsets from its start in meters. The
+ * location at each offset is found from the segments of the route, which
+ * are numbered from 0 in the order they appear on it: offset x lies on the
+ * first segment k with x <= ends[k], at bases[k] + signs[k] * x meters from
+ * end-point 0 of section sections[k] of the snapshot of the track.
+ * </p>
+ */
+final class SimulatedTrain {
+
+    // the number of microseconds in a second
+    private static final double MICROSECONDS = 1e6;
+
+    // the position of the train in the list of trains of the model
+    final int index;
+    // the train of the model
+    final Train train;
+    // the length of the route of the train
+    final int routeLength;
+
+    // the section of the snapshot that each segment is on
+    private final int[] sections;
+    // the offset from end-point 0 of the section of each segment of the
+    // location at route offset 0, if the section were to extend that far
+    private final int[] bases;
+    // 1 if each segment travels away from end-point 0 of its section, and -1
+    // if it travels towards it
+    private final int[] signs;
+    // the route offset of the end of each segment
+    private final int[] ends;
+
+    // the speed of the train, in meters per second
+    double speed;
+    // the position of the head of the train at its last event, and the
+    // position that it will reach at its next one
+    int head;
+    int next;
+    // the first and last offsets of the sub-route allocated to the train
+    int start;
+    int end;
+
+    /*
+     * invariant:
+     *
+     * train != null && sections.length == bases.length == signs.length ==
+     * ends.length == the number of segments of the route &&
+     *
+     * ends is non-decreasing, and routeLength == the last element of ends (or
+     * 0 if there are none) && speed > 0 &&
+     *
+     * 0 <= start <= head <= next <= end <= routeLength
+     */
+
+    /**
+     * Creates the state of the given train of a model, at the given position
+     * in the list of trains of the model, whose track has the given snapshot.
+     * The head of the train is at the start of its allocated sub-route.
+     *
+     * @throws IllegalArgumentException
+     *             if the route of the train is not on the track
+     * @require train != null && track != null
+     */
+    SimulatedTrain(int index, Train train, TrackSnapshot track,
+            double speed) {
+        this.index = index;
+        this.train = train;
+        this.speed = speed;
+        // the segments of the route
+        List<Segment> segments = new ArrayList<>();
+        for (Segment segment : train.getRoute()) {
+            segments.add(segment);
+        }
+        sections = new int[segments.size()];
+        bases = new int[segments.size()];
+        signs = new int[segments.size()];
+        ends = new int[segments.size()];
+        int offset = 0; // the route offset of the start of the segment
+        for (int k = 0; k < segments.size(); k++) {
+            Segment segment = segments.get(k);
+            sections[k] = track.indexOf(segment.getSection());
+            if (sections[k] == -1) {
+                throw new IllegalArgumentException("The route of train "
+                        + train.getIdentifier() + " is not on the track.");
+            }
+            if (segment.getDepartingEndPoint().equals(track.getSection(
+                    sections[k]).getEndPoint(0))) {
+                bases[k] = segment.getStartOffset() - offset;
+                signs[k] = 1;
+            } else {
+                bases[k] = segment.getSection().getLength()
+                        - segment.getStartOffset() + offset;
+                signs[k] = -1;
+            }
+            offset += segment.getLength();
+            ends[k] = offset;
+        }
+        routeLength = offset;
+        start = train.getStartOffset();
+        end = train.getEndOffset();
+        head = start;
+        next = start;
+    }
+
+    /**
+     * Moves the head of the train to the position of its pending event, and
+     * returns the number of meters that it moved.
+     */
+    int advance() {
+        int moved = next - head;
+        head = next;
+        return moved;
+    }
+
+    /**
+     * Returns the last route offset of the locations behind the head of the
+     * train that it no longer needs, which are those from start to the
+     * location before the one directly behind its head, or start - 1 if
+     * there are none.
+     */
+    int lastPassed() {
+        return Math.max(start, head - 1) - 1;
+    }
+
+    /**
+     * Returns the last route offset that the train requests when it reaches
+     * the end of its allocation, which is the given number of meters ahead
+     * of its head, or the end of its route if that is nearer.
+     *
+     * @require lookahead > 0
+     */
+    int requestEnd(int lookahead) {
+        return (int) Math.min(routeLength, (long) head + lookahead);
+    }
+
+    /**
+     * Extends the allocation of the train by the longest run of the
+     * locations after its end, up to route offset to (inclusive), that are
+     * not reserved in the given record, and reserves them.
+     *
+     * @require reservations is of the snapshot that the train was created
+     *          with && to <= routeLength
+     */
+    void extend(TrackReservations reservations, int to) {
+        if (to > end) {
+            // the first location requested that is allocated to another train
+            int reserved = firstReserved(reservations, end + 1, to);
+            if (reserved != -1) {
+                to = reserved - 1;
+            }
+            if (to > end) {
+                setReserved(reservations, end + 1, to, true);
+                end = to;
+            }
+        }
+    }
+
+    /**
+     * Sets the position of the next event of the train to the end of its
+     * allocation, and returns the number of microseconds (at least one) that
+     * it takes to get there.
+     *
+     * @require end > head
+     */
+    long travelTime() {
+        next = end;
+        return Math.max(1, Math.round((next - head) * MICROSECONDS / speed));
+    }
+
+    /**
+     * Returns the offset of the first location from route offset from to
+     * route offset to (inclusive) that is reserved in the given record, or
+     * -1 if none of them are.
+     *
+     * @require reservations is of the snapshot that the train was created
+     *          with && 0 <= from && to <= routeLength
+     */
+    int firstReserved(TrackReservations reservations, int from, int to) {
+        for (int k = segmentAt(from); from <= to; k++) {
+            // the last offset to check on the segment
+            int last = Math.min(to, ends[k]);
+            for (int x = from; x <= last; x++) {
+                if (reservations.isReserved(sections[k], bases[k] + signs[k]
+                        * x)) {
+                    return x;
+                }
+            }
+            from = Math.max(from, last + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Reserves the locations from route offset from to route offset to
+     * (inclusive) in the given record if reserved is true, and otherwise
+     * frees them.
+     *
+     * @require reservations is of the snapshot that the train was created
+     *          with && 0 <= from && to <= routeLength
+     */
+    void setReserved(TrackReservations reservations, int from, int to,
+            boolean reserved) {
+        for (int k = segmentAt(from); from <= to; k++) {
+            // the last offset to mark on the segment
+            int last = Math.min(to, ends[k]);
+            for (int x = from; x <= last; x++) {
+                reservations.setReserved(sections[k], bases[k] + signs[k] * x,
+                        reserved);
+            }
+            from = Math.max(from, last + 1);
+        }
+    }
+
+    /**
+     * Returns the region of the given partition that owns the location at
+     * the given route offset.
+     *
+     * @require partition is of the snapshot that the train was created with
+     *          && 0 <= offset <= routeLength
+     */
+    int ownerAt(TrackPartition partition, int offset) {
+        int k = segmentAt(offset);
+        return partition.getOwner(sections[k], bases[k] + signs[k] * offset);
+    }
+
+    /**
+     * Returns the last offset x from route offset from to route offset to
+     * (inclusive) such that every location from offset from to offset x is
+     * owned by the given region of the given partition, or from - 1 if the
+     * location at offset from is not.
+     *
+     * @require partition is of the snapshot that the train was created with
+     *          && 0 <= from && to <= routeLength
+     */
+    int lastOwned(TrackPartition partition, int region, int from, int to) {
+        for (int k = segmentAt(from); from <= to; k++) {
+            // the last offset to check on the segment
+            int last = Math.min(to, ends[k]);
+            for (int x = from; x <= last; x++) {
+                if (partition.getOwner(sections[k], bases[k] + signs[k]
+                        * x) != region) {
+                    return x - 1;
+                }
+            }
+            from = Math.max(from, last + 1);
+        }
+        return to;
+    }
+
+    /**
+     * Returns the number of the first segment that the given route offset
+     * lies on.
+     *
+     * @require 0 <= offset <= routeLength
+     */
+    private int segmentAt(int offset) {
+        // the segments that the first one lies between (inclusive)
+        int low = 0;
+        int high = ends.length - 1;
+        while (low < high) {
+            // the segment in the middle
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
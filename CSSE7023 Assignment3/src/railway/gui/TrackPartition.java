@@ -0,0 +1,153 @@
+package railway.gui;
+
+import railway.*;
+
+/**
+ * <p>
+ * A division of the locations on a track into regions, numbered from 0,
+ * indexed by the numbers of a snapshot of the track.
+ * </p>
+ *
+ * <p>
+ * The track is cut at junctions: each section belongs to exactly one region,
+ * which owns the locations on it that are not at a junction, and each
+ * junction is owned by the region of the section at its first slot (see
+ * TrackSnapshot). The sections are ordered by a breadth-first search of the
+ * track from junction 0, and split into runs of (nearly) equal length of
+ * that order, so each region is a connected part of the track wherever the
+ * track is connected.
+ * </p>
+ */
+final class TrackPartition {
+
+    // the snapshot of the track that is divided
+    private final TrackSnapshot track;
+    // the number of regions
+    private final int regionCount;
+    // the region of each section
+    private final int[] sectionRegions;
+    // the region that owns each junction
+    private final int[] junctionRegions;
+
+    /*
+     * invariant:
+     *
+     * track != null && regionCount > 0 &&
+     *
+     * sectionRegions.length == track.getSectionCount() &&
+     * junctionRegions.length == track.getJunctionCount() &&
+     *
+     * each element of sectionRegions and junctionRegions is in [0,
+     * regionCount) && each junctionRegions[j] is the region of the section
+     * of the end-point in slot track.getFirstSlot(j)
+     */
+
+    /**
+     * Divides the given snapshot of a track into the given number of regions.
+     *
+     * @require track != null && regionCount > 0
+     */
+    TrackPartition(TrackSnapshot track, int regionCount) {
+        this.track = track;
+        this.regionCount = regionCount;
+        int sectionCount = track.getSectionCount();
+        sectionRegions = new int[sectionCount];
+        junctionRegions = new int[track.getJunctionCount()];
+
+        // the sections in breadth-first order, and how many have been found
+        int[] order = new int[sectionCount];
+        int found = 0;
+        // whether each section has been added to the order
+        boolean[] ordered = new boolean[sectionCount];
+        // whether each junction has been found by the search
+        boolean[] visited = new boolean[track.getJunctionCount()];
+        // the junctions found by the search, in the order they are visited
+        int[] queue = new int[track.getJunctionCount()];
+        for (int root = 0; root < visited.length; root++) {
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            int head = 0; // the position of the next junction to visit
+            int tail = 0; // the number of junctions in the queue
+            queue[tail++] = root;
+            while (head < tail) {
+                int junction = queue[head++];
+                for (int slot = track.getFirstSlot(junction); slot < track
+                        .getFirstSlot(junction + 1); slot++) {
+                    int endPoint = track.getSlotEndPoint(slot);
+                    int section = endPoint >> 1;
+                    if (!ordered[section]) {
+                        ordered[section] = true;
+                        order[found++] = section;
+                    }
+                    // the junction at the other end of the section
+                    int other = track.getEndPointJunction(endPoint ^ 1);
+                    if (!visited[other]) {
+                        visited[other] = true;
+                        queue[tail++] = other;
+                    }
+                }
+            }
+        }
+
+        // the total length of the sections, and the length so far in order
+        long total = 0;
+        for (int section = 0; section < sectionCount; section++) {
+            total += track.getLength(section);
+        }
+        long sum = 0;
+        for (int i = 0; i < sectionCount; i++) {
+            int section = order[i];
+            sectionRegions[section] = (int) Math.min(regionCount - 1, sum
+                    * regionCount / Math.max(1, total));
+            sum += track.getLength(section);
+        }
+        for (int junction = 0; junction < junctionRegions.length; junction++) {
+            junctionRegions[junction] = sectionRegions[track.getSlotEndPoint(
+                    track.getFirstSlot(junction)) >> 1];
+        }
+    }
+
+    /**
+     * Returns the snapshot of the track that is divided.
+     */
+    TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    /**
+     * Returns the number of regions.
+     */
+    int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * Returns the region of the given section.
+     *
+     * @require 0 <= section < getSnapshot().getSectionCount()
+     */
+    int getRegion(int section) {
+        return sectionRegions[section];
+    }
+
+    /**
+     * Returns the region that owns the location offset meters from end-point
+     * 0 of the given section.
+     *
+     * @require 0 <= section < getSnapshot().getSectionCount() && 0 <= offset
+     *          <= getSnapshot().getLength(section)
+     */
+    int getOwner(int section, int offset) {
+        if (offset == 0) {
+            return junctionRegions[track.getEndPointJunction(2 * section)];
+        }
+        if (offset == track.getLength(section)) {
+            return junctionRegions[track.getEndPointJunction(2 * section
+                    + 1)];
+        }
+        return sectionRegions[section];
+    }
+
+}
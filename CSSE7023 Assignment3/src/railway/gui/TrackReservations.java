@@ -0,0 +1,113 @@
+package railway.gui;
+
+import railway.*;
+
+/**
+ * <p>
+ * A mutable record of the locations on a track that are reserved by the
+ * trains of a simulation, indexed by the numbers of a snapshot of the track.
+ * </p>
+ *
+ * <p>
+ * A location is identified by the number of its section and its offset from
+ * end-point 0 of the section (see TrackSnapshot), so the locations at offset
+ * 0 and at the length of the section are the locations at the junctions of
+ * its end-points, which are shared with the other sections at those
+ * junctions. Each junction is recorded as a flag, and the other locations
+ * on each section as the bits of a bitmap for the section (which is only
+ * created once a location on the section is first reserved).
+ * </p>
+ *
+ * <p>
+ * A location is either reserved or not: reservations are not counted, so
+ * the locations reserved by different trains must not overlap.
+ * </p>
+ */
+final class TrackReservations {
+
+    // the snapshot of the track that the locations are on
+    private final TrackSnapshot track;
+    // whether each junction is reserved
+    private final boolean[] junctions;
+    // the bitmap of the locations on each section that are not at a
+    // junction (bit x is set if the location x meters from end-point 0 is
+    // reserved), or null if none of them has been reserved
+    private final long[][] sections;
+
+    /*
+     * invariant:
+     *
+     * track != null && junctions.length == track.getJunctionCount() &&
+     * sections.length == track.getSectionCount() && each non-null
+     * sections[s] has more than track.getLength(s) bits
+     */
+
+    /**
+     * Creates a record of the given snapshot of a track, on which no
+     * locations are reserved.
+     *
+     * @require track != null
+     */
+    TrackReservations(TrackSnapshot track) {
+        this.track = track;
+        junctions = new boolean[track.getJunctionCount()];
+        sections = new long[track.getSectionCount()][];
+    }
+
+    /**
+     * Returns the snapshot of the track that the locations are on.
+     */
+    TrackSnapshot getSnapshot() {
+        return track;
+    }
+
+    /**
+     * Returns true if the location offset meters from end-point 0 of the
+     * given section is reserved.
+     *
+     * @require 0 <= section < getSnapshot().getSectionCount() && 0 <= offset
+     *          <= getSnapshot().getLength(section)
+     */
+    boolean isReserved(int section, int offset) {
+        if (offset == 0) {
+            return junctions[track.getEndPointJunction(2 * section)];
+        }
+        if (offset == track.getLength(section)) {
+            return junctions[track.getEndPointJunction(2 * section + 1)];
+        }
+        // the bitmap of the section
+        long[] bits = sections[section];
+        return bits != null && (bits[offset >> 6] & (1L << offset)) != 0;
+    }
+
+    /**
+     * Reserves the location offset meters from end-point 0 of the given
+     * section if reserved is true, and otherwise frees it.
+     *
+     * @require 0 <= section < getSnapshot().getSectionCount() && 0 <= offset
+     *          <= getSnapshot().getLength(section)
+     */
+    void setReserved(int section, int offset, boolean reserved) {
+        if (offset == 0) {
+            junctions[track.getEndPointJunction(2 * section)] = reserved;
+        } else if (offset == track.getLength(section)) {
+            junctions[track.getEndPointJunction(2 * section + 1)] = reserved;
+        } else {
+            // the bitmap of the section
+            long[] bits = sections[section];
+            if (bits == null) {
+                if (!reserved) {
+                    return;
+                }
+                bits = new long[(track.getLength(section) >> 6) + 1];
+                sections[section] = bits;
+            }
+            if (reserved) {
+                bits[offset >> 6] |= 1L << offset;
+            } else {
+                bits[offset >> 6] &= ~(1L << offset);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package railway.gui;
+
+import railway.*;
+
+/**
+ * <p>
+ * A discrete-event simulation of the trains of a RailwayModel, which moves
+ * each train along its route at its own speed, requesting new allocations
+ * ahead of it and releasing the locations that it has passed.
+ * </p>
+ *
+ * <p>
+ * Each train has exactly one pending event, which is the time at which its
+ * head reaches the end of its allocated sub-route (or, if it is waiting for
+ * an allocation, the time at which it asks again). The pending events are
+ * kept in an EventQueue, ordered by their time, so the simulation jumps from
+ * one event to the next rather than advancing in fixed steps, and runs as
+ * fast as the events can be processed. Simulated time is measured in
+ * microseconds from the start of the simulation.
+ * </p>
+ *
+ * <p>
+ * When a train reaches the end of its allocation, it frees every allocated
+ * location behind its head other than the one directly behind it (so that
+ * its allocation is never empty), and requests the locations up to
+ * getLookahead() meters ahead of its head. It is allocated the longest
+ * prefix of those that are not allocated to any other train, and moves to
+ * the end of its new allocation. A train that reaches the end of its route
+ * stays there, holding the last meter of it.
+ * </p>
+ *
+ * <p>
+ * The allocations of the model's trains must not intersect when the
+ * simulation is created, and the trains must not be changed while it runs.
+ * The simulation only changes the offsets of the trains in the model when
+ * updateModel is called. A simulation must not be used by more than one
+ * thread at a time.
+ * </p>
+ */
+public class TrainSimulator extends AbstractSimulator {
+
+    // the trains with a pending event, by the time of the event
+    private final EventQueue events;
+
+    // the current simulated time
+    private long time;
+    // the number of events processed
+    private long eventCount;
+    // the total distance travelled by the trains, in meters
+    private long distance;
+    // the number of trains that have reached the end of their routes
+    private int arrivedCount;
+
+    /*
+     * invariant:
+     *
+     * events != null && time >= 0 && eventCount >= 0 && distance >= 0 && 0
+     * <= arrivedCount <= trains.length &&
+     *
+     * each train with trains[i].head < its route length is in events, and
+     * no other train is
+     */
+
+    /**
+     * Creates a simulation of the trains currently in the given model, each
+     * of which travels at the given speed. The simulation starts at time 0,
+     * with the head of each train at the start of its allocated sub-route.
+     *
+     * @param model
+     *            the model whose trains are simulated
+     * @param speed
+     *            the speed of each train, in meters per second
+     * @throws NullPointerException
+     *             if model is null, or it has no track
+     * @throws IllegalArgumentException
+     *             if speed is not positive, or the route of a train is not on
+     *             the track of the model
+     */
+    public TrainSimulator(RailwayModel model, double speed) {
+        super(model, speed);
+        events = new EventQueue(trains.length);
+        for (int i = 0; i < trains.length; i++) {
+            events.add(i, 0);
+        }
+    }
+
+    /**
+     * Returns the current simulated time, in microseconds.
+     *
+     * @return the time of the last event processed
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of events that have been processed.
+     *
+     * @return the number of events processed
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the total distance travelled by the trains, in meters.
+     *
+     * @return the distance travelled by the trains
+     */
+    public long getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the number of trains that have reached the end of their
+     * routes.
+     *
+     * @return the number of trains that have arrived
+     */
+    public int getArrivedCount() {
+        return arrivedCount;
+    }
+
+    /**
+     * Returns true if every train has reached the end of its route, so there
+     * are no more events.
+     *
+     * @return true if there are no more events to process
+     */
+    public boolean isFinished() {
+        return events.isEmpty();
+    }
+
+    /**
+     * Processes, in order of time, every event with a time no later than the
+     * given time, and then advances the simulated time to the given time (or
+     * leaves it unchanged, if it is already later).
+     *
+     * @param endTime
+     *            the simulated time to run until, in microseconds
+     * @return the number of events processed
+     */
+    public long runUntil(long endTime) {
+        long processed = 0; // the number of events processed
+        while (!events.isEmpty() && events.nextTime() <= endTime) {
+            time = events.nextTime();
+            process(events.poll());
+            processed++;
+        }
+        time = Math.max(time, endTime);
+        eventCount += processed;
+        return processed;
+    }
+
+    /**
+     * Moves the given train to the position of its pending event, which is
+     * at the current time, and schedules its next event.
+     */
+    private void process(int index) {
+        SimulatedTrain train = trains[index];
+        distance += train.advance();
+        // free the locations passed, other than the one behind the head
+        int last = train.lastPassed();
+        if (last >= train.start) {
+            train.setReserved(reservations, train.start, last, false);
+            train.start = last + 1;
+        }
+        if (train.head == train.routeLength) {
+            arrivedCount++;
+            return;
+        }
+        // request the locations up to the lookahead
+        train.extend(reservations, train.requestEnd(lookahead));
+        if (train.end == train.head) {
+            events.add(index, time + retryDelay);
+        } else {
+            events.add(index, time + train.travelTime());
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.io.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that tracks and routes are unchanged when they are converted from the
+ * text format to the binary format and back, and that junction identifiers
+ * that could not be written in the text format are rejected by the binary
+ * readers.
+ */
+public class BinaryFormatTest {
+
+    /**
+     * Converts random tracks, and a large grid, from text to binary to text.
+     */
+    @Test(timeout = 30000)
+    public void trackRoundTripTest() throws Exception {
+        Random random = new Random(7023);
+        File text = File.createTempFile("track", ".txt");
+        File binary = File.createTempFile("track", ".bin");
+        try {
+            List<Track> tracks = new ArrayList<Track>();
+            for (int i = 0; i < 200; i++) {
+                tracks.add(TrackGenerator.randomTrack(random,
+                        1 + random.nextInt(20), random.nextInt(30)));
+            }
+            tracks.add(new TrackGenerator(TrackGenerator.Topology.GRID, 2500,
+                    7023).track());
+            for (Track track : tracks) {
+                TrackWriter.write(track, text.getPath());
+                Track read = TrackReader.read(text.getPath());
+                assertSameSections(track, read);
+
+                TrackWriter.writeBinary(read, binary.getPath());
+                read = TrackReader.readBinary(binary.getPath());
+                assertSameSections(track, read);
+
+                TrackWriter.write(read, text.getPath());
+                assertSameSections(track, TrackReader.read(text.getPath()));
+            }
+        } finally {
+            text.delete();
+            binary.delete();
+        }
+    }
+
+    /**
+     * Converts random routes, including ones that travel along the same
+     * section more than once, from text to binary to text.
+     */
+    @Test(timeout = 30000)
+    public void routeRoundTripTest() throws Exception {
+        Random random = new Random(7023);
+        File text = File.createTempFile("route", ".txt");
+        File binary = File.createTempFile("route", ".bin");
+        try {
+            for (int i = 0; i < 500; i++) {
+                Track track = TrackGenerator.randomTrack(random,
+                        2 + random.nextInt(10), 1 + random.nextInt(20));
+                Route route = new Route(RouteGenerator.randomRoute(random,
+                        track, TrackGenerator.sections(track), 20));
+
+                RouteWriter.write(route, text.getPath());
+                Route read = RouteReader.read(text.getPath());
+                Assert.assertEquals(route, read);
+
+                RouteWriter.writeBinary(read, binary.getPath());
+                read = RouteReader.readBinary(binary.getPath());
+                Assert.assertEquals(route, read);
+
+                RouteWriter.write(read, text.getPath());
+                Assert.assertEquals(route, RouteReader.read(text.getPath()));
+            }
+        } finally {
+            text.delete();
+            binary.delete();
+        }
+    }
+
+    /**
+     * Checks that the binary readers reject junction identifiers containing
+     * whitespace, and accept identifiers with other non-ASCII characters.
+     */
+    @Test
+    public void whitespaceIdentifierTest() throws Exception {
+        File binary = File.createTempFile("railway", ".bin");
+        try {
+            for (String identifier : new String[] { "a b", "a\tb", " a",
+                    "a\u2028", "a\u3000b" }) {
+                Section section = new Section(5, new JunctionBranch(
+                        new Junction(identifier), Branch.FACING),
+                        new JunctionBranch(new Junction("b"), Branch.FACING));
+                Track track = new Track();
+                track.addSection(section);
+                TrackWriter.writeBinary(track, binary.getPath());
+                try {
+                    TrackReader.readBinary(binary.getPath());
+                    Assert.fail("identifier accepted: " + identifier);
+                } catch (FormatException e) {
+                    // expected
+                }
+
+                List<Segment> segments = new ArrayList<Segment>();
+                segments.add(new Segment(section, section.getEndPoint(0), 0,
+                        5));
+                RouteWriter.writeBinary(new Route(segments),
+                        binary.getPath());
+                try {
+                    RouteReader.readBinary(binary.getPath());
+                    Assert.fail("identifier accepted: " + identifier);
+                } catch (FormatException e) {
+                    // expected
+                }
+            }
+
+            Section section = new Section(5, new JunctionBranch(new Junction(
+                    "\u0135\u00A01"), Branch.NORMAL), new JunctionBranch(
+                    new Junction("b"), Branch.REVERSE));
+            Track track = new Track();
+            track.addSection(section);
+            TrackWriter.writeBinary(track, binary.getPath());
+            assertSameSections(track, TrackReader.readBinary(binary
+                    .getPath()));
+        } finally {
+            binary.delete();
+        }
+    }
+
+    /**
+     * Checks that the two tracks have the same sections.
+     */
+    private static void assertSameSections(Track expected, Track actual) {
+        Assert.assertEquals(new HashSet<Section>(TrackGenerator.sections(
+                expected)), new HashSet<Section>(TrackGenerator.sections(
+                actual)));
+    }
+
+}
@@ -0,0 +1,173 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ConflictChecker} class, which check the trains that
+ * it finds to conflict with a sub-route against a sequential loop over the
+ * allocations of the trains.
+ */
+public class ConflictCheckerTest {
+
+    /**
+     * Checks random sub-routes against models with numbers of trains on
+     * either side of the number that a task checks without splitting, in
+     * pools with one and with several workers.
+     */
+    @Test(timeout = 30000)
+    public void randomTrainsTest() throws Exception {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID, 400,
+                7023).track();
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(500, 1, 20, occupied,
+                requested);
+        List<Route> routes = new ArrayList<Route>();
+        for (List<Segment> route : requested) {
+            routes.add(new Route(route));
+        }
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            Random random = new Random(7023);
+            for (int trainCount : new int[] { 0, 1, 63, 64, 65, 128, 129,
+                    500 }) {
+                RailwayModel model = model(random, routes, trainCount);
+                for (ConflictChecker checker : new ConflictChecker[] {
+                        new ConflictChecker(), new ConflictChecker(single),
+                        new ConflictChecker(parallel) }) {
+                    checkRandomRequests(random, model, routes, checker);
+                }
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the allocation of a train does not conflict with itself
+     * when the train is excluded from the snapshot, but does when it is not,
+     * and that nothing conflicts with a model with no trains.
+     */
+    @Test(timeout = 5000)
+    public void exclusionTest() throws Exception {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID, 100,
+                7023).track();
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(1, 1, 10, occupied,
+                requested);
+        Route route = new Route(requested.get(0));
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        ConflictChecker checker = new ConflictChecker();
+        Assert.assertEquals(-1, checker.findConflict(route, ConflictChecker
+                .snapshot(model.getTrains(), -1)));
+
+        // 200 copies of the train, so that the checker splits its tasks
+        for (int i = 0; i < 200; i++) {
+            model.addTrain(i, route, 0, route.getLength());
+        }
+        for (int i = 0; i < 200; i += 13) {
+            List<ConflictChecker.Allocation> allocations = ConflictChecker
+                    .snapshot(model.getTrains(), i);
+            Assert.assertEquals(199, allocations.size());
+            for (ConflictChecker.Allocation allocation : allocations) {
+                Assert.assertTrue(allocation.getIdentifier() != i);
+            }
+            int conflict = checker.findConflict(route, allocations);
+            Assert.assertTrue(conflict != -1 && conflict != i);
+        }
+
+        // a single train does not conflict with its own allocation
+        model = new RailwayModel();
+        model.setTrack(track);
+        model.addTrain(7, route, 0, route.getLength());
+        Assert.assertEquals(-1, checker.findConflict(route, ConflictChecker
+                .snapshot(model.getTrains(), 7)));
+        Assert.assertEquals(7, checker.findConflict(route, ConflictChecker
+                .snapshot(model.getTrains(), -1)));
+    }
+
+    /**
+     * Makes random requests for the trains of the model and for new trains,
+     * and checks that the checker finds a conflicting train exactly when the
+     * sequential loop does, and that the train it reports is one of those
+     * that conflict.
+     */
+    private void checkRandomRequests(Random random, RailwayModel model,
+            List<Route> routes, ConflictChecker checker) {
+        int trainCount = model.getTrains().size();
+        // the number of requests with and without a conflicting train
+        int conflicting = 0;
+        int free = 0;
+        for (int request = 0; request < 200; request++) {
+            // the identifier of the train of the request, or -1
+            int identifier = trainCount > 0 && random.nextBoolean() ? model
+                    .getTrain(random.nextInt(trainCount)).getIdentifier() : -1;
+            Route route = routes.get(random.nextInt(routes.size()));
+            int startOffset = random.nextInt(route.getLength());
+            int endOffset = Math.min(route.getLength(), startOffset + 1
+                    + random.nextInt(random.nextBoolean() ? 10 : 200));
+            Route subRoute = route.getSubroute(startOffset, endOffset);
+            List<ConflictChecker.Allocation> allocations = ConflictChecker
+                    .snapshot(model.getTrains(), identifier);
+
+            Set<Integer> expected = conflicts(subRoute, allocations);
+            int actual = checker.findConflict(subRoute, allocations);
+            if (expected.isEmpty()) {
+                Assert.assertEquals(-1, actual);
+                free++;
+            } else {
+                Assert.assertTrue(expected.contains(actual));
+                conflicting++;
+            }
+        }
+        if (trainCount >= 63) {
+            Assert.assertTrue(conflicting > 0 && free > 0);
+        }
+    }
+
+    /**
+     * Returns the identifiers of the trains whose allocations intersect with
+     * the sub-route, found by checking each allocation in turn.
+     */
+    private Set<Integer> conflicts(Route subRoute,
+            List<ConflictChecker.Allocation> allocations) {
+        Set<Integer> result = new HashSet<Integer>();
+        for (ConflictChecker.Allocation allocation : allocations) {
+            if (subRoute.intersects(allocation.getAllocation())) {
+                result.add(allocation.getIdentifier());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a model with the given number of trains, each following one of
+     * the given routes with a random allocation. The allocations may
+     * intersect, since the checker only reads them.
+     */
+    private RailwayModel model(Random random, List<Route> routes,
+            int trainCount) {
+        RailwayModel model = new RailwayModel();
+        for (int i = 0; i < trainCount; i++) {
+            Route route = routes.get(i % routes.size());
+            int startOffset = random.nextInt(route.getLength());
+            int endOffset = Math.min(route.getLength(), startOffset + 1
+                    + random.nextInt(100));
+            // identifiers that are not the positions of the trains
+            model.addTrain(3 * i + 1, route, startOffset, endOffset);
+        }
+        return model;
+    }
+
+}
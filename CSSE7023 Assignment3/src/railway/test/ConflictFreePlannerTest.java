@@ -0,0 +1,215 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+import railway.gui.ConflictFreePlanner.PlannedRoute;
+import railway.oracle.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ConflictFreePlanner} class, which check its routes
+ * against the brute-force search of {@link RouteOracle}, with the segments
+ * allocated to the other trains as the occupied segments, and check that
+ * the routes avoid those trains.
+ */
+public class ConflictFreePlannerTest {
+
+    /**
+     * Basic test: a route that goes around the train in the way, a start
+     * location that is occupied, and a route that can only get part of the
+     * way to its target.
+     */
+    @Test(timeout = 5000)
+    public void basicTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Junction j2 = new Junction("j2");
+        Junction j3 = new Junction("j3");
+        // two ways from j1 to j2: a short one and a long one
+        Section section1 = new Section(10, new JunctionBranch(j0,
+                Branch.FACING), new JunctionBranch(j1, Branch.FACING));
+        Section shortWay = new Section(5, new JunctionBranch(j1,
+                Branch.NORMAL), new JunctionBranch(j2, Branch.NORMAL));
+        Section longWay = new Section(30, new JunctionBranch(j1,
+                Branch.REVERSE), new JunctionBranch(j2, Branch.REVERSE));
+        Section section2 = new Section(10, new JunctionBranch(j2,
+                Branch.FACING), new JunctionBranch(j3, Branch.FACING));
+        Track track = new Track();
+        track.addSection(section1);
+        track.addSection(shortWay);
+        track.addSection(longWay);
+        track.addSection(section2);
+        ConflictFreePlanner planner = new ConflictFreePlanner(track);
+        Location start = new Location(section1, section1.getEndPoint(0), 0);
+
+        // with no other trains, the short way is taken
+        PlannedRoute planned = planner.plan(start, j3, planner.occupancy(
+                new ArrayList<ConflictChecker.Allocation>()));
+        Assert.assertTrue(planned.isComplete());
+        Assert.assertEquals(25, planned.getRoute().getLength());
+
+        // a train part-way along the short way forces the long way
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.addTrain(0, route(new Segment(shortWay, shortWay.getEndPoint(0),
+                1, 4)), 0, 3);
+        TrackOccupancy occupied = planner.occupancy(ConflictChecker.snapshot(
+                model.getTrains(), -1));
+        planned = planner.plan(start, j3, occupied);
+        Assert.assertTrue(planned.isComplete());
+        Assert.assertEquals(50, planned.getRoute().getLength());
+
+        // a train on section1 occupies the start location
+        model.addTrain(1, route(new Segment(section1, section1.getEndPoint(0),
+                0, 2)), 0, 2);
+        occupied = planner.occupancy(ConflictChecker.snapshot(model
+                .getTrains(), -1));
+        Assert.assertNull(planner.plan(start, j3, occupied));
+        Assert.assertNull(planner.plan(start, new Location(section2, section2
+                .getEndPoint(0), 4), occupied));
+
+        // a train at j2 blocks both ways, so only the stretch up to the
+        // last location before the train on the short way is returned
+        model = new RailwayModel();
+        model.setTrack(track);
+        model.addTrain(0, route(new Segment(section2, section2.getEndPoint(0),
+                0, 3)), 0, 3);
+        model.addTrain(1, route(new Segment(shortWay, shortWay.getEndPoint(0),
+                1, 4)), 0, 2);
+        occupied = planner.occupancy(ConflictChecker.snapshot(model
+                .getTrains(), -1));
+        planned = planner.plan(start, j3, occupied);
+        Assert.assertFalse(planned.isComplete());
+        Assert.assertEquals(10, planned.getRoute().getLength());
+        // between the two trains, only the start location itself is free
+        planned = planner.plan(new Location(shortWay, shortWay.getEndPoint(0),
+                4), j3, occupied);
+        Assert.assertFalse(planned.isComplete());
+        Assert.assertEquals(0, planned.getRoute().getLength());
+    }
+
+    /**
+     * Compares the planned routes on many small random tracks, with random
+     * trains allocated to them.
+     */
+    @Test(timeout = 60000)
+    public void randomTracksTest() throws Exception {
+        Random random = new Random(7023);
+        // the number of plans that were complete and incomplete
+        int complete = 0;
+        int incomplete = 0;
+        for (int i = 0; i < 500; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(8), 1 + random.nextInt(14));
+            List<Section> sections = TrackGenerator.sections(track);
+            RailwayModel model = new RailwayModel();
+            model.setTrack(track);
+            addRandomTrains(random, model, sections, random.nextInt(4));
+            List<ConflictChecker.Allocation> allocations = ConflictChecker
+                    .snapshot(model.getTrains(), -1);
+            // the segments allocated to the trains
+            List<Segment> occupiedSegments = new ArrayList<Segment>();
+            for (ConflictChecker.Allocation allocation : allocations) {
+                for (Segment segment : allocation.getAllocation()) {
+                    occupiedSegments.add(segment);
+                }
+            }
+
+            ConflictFreePlanner planner = new ConflictFreePlanner(track);
+            RoutePlanner unconstrained = new RoutePlanner(track);
+            TrackOccupancy occupied = planner.occupancy(allocations);
+            for (int query = 0; query < 20; query++) {
+                Location start = RouteOracle.randomLocation(random, sections);
+                Location target = RouteOracle.randomLocation(random,
+                        sections);
+                PlannedRoute planned;
+                Route shortest;
+                long expected;
+                if (random.nextBoolean()) {
+                    planned = planner.plan(start, target, occupied);
+                    shortest = unconstrained.plan(start, target);
+                    expected = RouteOracle.shortestLength(sections,
+                            occupiedSegments, start, target);
+                } else {
+                    Junction junction = target.getEndPoint().getJunction();
+                    planned = planner.plan(start, junction, occupied);
+                    shortest = unconstrained.plan(start, junction);
+                    expected = RouteOracle.shortestLength(sections,
+                            occupiedSegments, start, junction);
+                    target = null;
+                }
+
+                if (RouteOracle.isOccupied(occupiedSegments, start)
+                        || shortest == null) {
+                    Assert.assertNull(planned);
+                    continue;
+                }
+                Assert.assertNotNull(planned);
+                Route route = planned.getRoute();
+                for (ConflictChecker.Allocation allocation : allocations) {
+                    Assert.assertFalse(route.intersects(allocation
+                            .getAllocation()));
+                }
+                if (expected != -1) {
+                    // a route that avoids the other trains is shortest
+                    complete++;
+                    Assert.assertTrue(planned.isComplete());
+                    RouteOracle.checkRoute(track, start, target, expected,
+                            route);
+                } else {
+                    // the longest free prefix of the shortest route
+                    incomplete++;
+                    Assert.assertFalse(planned.isComplete());
+                    int free = RouteOracle.freePrefixLength(occupiedSegments,
+                            shortest);
+                    RouteOracle.checkRoute(track, start, null, free, route);
+                    if (free > 0) {
+                        Assert.assertEquals(shortest.getSubroute(0, free),
+                                route);
+                    }
+                }
+            }
+        }
+        // check that both kinds of plan were tested
+        Assert.assertTrue(complete > 1000);
+        Assert.assertTrue(incomplete > 100);
+    }
+
+    /**
+     * Adds up to the given number of trains to the model, each allocated a
+     * random sub-route of a random route that does not intersect with the
+     * allocations of the trains already added.
+     */
+    private void addRandomTrains(Random random, RailwayModel model,
+            List<Section> sections, int trains) {
+        for (int identifier = 0; identifier < trains; identifier++) {
+            Route route = new Route(RouteGenerator.randomRoute(random, model
+                    .getTrack(), sections, 4));
+            if (route.getLength() == 0) {
+                continue;
+            }
+            int startOffset = random.nextInt(route.getLength());
+            int endOffset = startOffset + 1 + random.nextInt(route.getLength()
+                    - startOffset);
+            Route allocation = route.getSubroute(startOffset, endOffset);
+            boolean conflict = false;
+            for (RailwayModel.Train train : model.getTrains()) {
+                conflict |= allocation.intersects(train.getAllocation());
+            }
+            if (!conflict) {
+                model.addTrain(identifier, route, startOffset, endOffset);
+            }
+        }
+    }
+
+    /**
+     * Returns a route with the given segment.
+     */
+    private Route route(Segment segment) {
+        return new Route(Collections.singletonList(segment));
+    }
+
+}
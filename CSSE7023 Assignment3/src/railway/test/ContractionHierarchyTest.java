@@ -0,0 +1,129 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.oracle.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ContractionHierarchy} class, which check that its
+ * routes are as short as those planned by Dijkstra's algorithm (a
+ * {@link RoutePlanner} without a heuristic).
+ */
+public class ContractionHierarchyTest {
+
+    /**
+     * Basic test: a route that must turn around by travelling around a loop,
+     * since a train cannot pass from the NORMAL to the REVERSE branch of a
+     * junction.
+     */
+    @Test(timeout = 5000)
+    public void basicTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Junction j2 = new Junction("j2");
+        Junction j3 = new Junction("j3");
+        Section section1 = new Section(10, new JunctionBranch(j0,
+                Branch.FACING), new JunctionBranch(j1, Branch.NORMAL));
+        Section section2 = new Section(20, new JunctionBranch(j1,
+                Branch.REVERSE), new JunctionBranch(j2, Branch.FACING));
+        Section section3 = new Section(5, new JunctionBranch(j1,
+                Branch.FACING), new JunctionBranch(j3, Branch.FACING));
+        Section loop = new Section(7, new JunctionBranch(j3, Branch.NORMAL),
+                new JunctionBranch(j3, Branch.REVERSE));
+        Track track = new Track();
+        track.addSection(section1);
+        track.addSection(section2);
+        track.addSection(section3);
+        track.addSection(loop);
+
+        ContractionHierarchy hierarchy = new ContractionHierarchy(track);
+        // from j0 to j2 the train must go around the loop at j3
+        Route route = hierarchy.plan(new Location(section1, section1
+                .getEndPoint(0), 0), j2);
+        Assert.assertEquals(10 + 5 + 7 + 5 + 20, route.getLength());
+        Assert.assertTrue(route.onTrack(track));
+
+        // part-way along the sections at either end
+        route = hierarchy.plan(new Location(section1, section1.getEndPoint(0),
+                4), new Location(section2, section2.getEndPoint(1), 3));
+        Assert.assertEquals(6 + 5 + 7 + 5 + 17, route.getLength());
+
+        // a route along a single section
+        route = hierarchy.plan(new Location(section2, section2.getEndPoint(0),
+                4), new Location(section2, section2.getEndPoint(1), 3));
+        Assert.assertEquals(13, route.getLength());
+
+        // a route with no segments
+        Assert.assertEquals(0, hierarchy.plan(new Location(section3, section3
+                .getEndPoint(1), 0), j3).getLength());
+
+        // no route to a junction that is not on the track
+        Assert.assertNull(hierarchy.plan(new Location(section1, section1
+                .getEndPoint(0), 0), new Junction("j4")));
+    }
+
+    /**
+     * Compares the routes on many small random tracks.
+     */
+    @Test(timeout = 20000)
+    public void smallTracksTest() throws Exception {
+        compareRoutes(new Random(7023), 500, 8, 12, 30);
+    }
+
+    /**
+     * Compares the routes on larger random tracks.
+     */
+    @Test(timeout = 20000)
+    public void largeTracksTest() throws Exception {
+        compareRoutes(new Random(2014), 40, 200, 400, 100);
+    }
+
+    /**
+     * Generates the given number of random tracks with at most the given
+     * number of junctions and sections, and on each of them compares the
+     * routes planned by a ContractionHierarchy and a RoutePlanner between
+     * the given number of random pairs of locations and junctions.
+     */
+    private void compareRoutes(Random random, int tracks, int maxJunctions,
+            int maxSections, int queries) {
+        for (int i = 0; i < tracks; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(maxJunctions),
+                    1 + random.nextInt(maxSections));
+            List<Section> sections = TrackGenerator.sections(track);
+            ContractionHierarchy hierarchy = new ContractionHierarchy(track);
+            RoutePlanner planner = new RoutePlanner(hierarchy.getSnapshot());
+            for (int query = 0; query < queries; query++) {
+                Location start = RouteOracle.randomLocation(random, sections);
+                if (random.nextBoolean()) {
+                    Location target = RouteOracle.randomLocation(random,
+                            sections);
+                    RouteOracle.checkRoute(track, start, target, length(
+                            planner.plan(start, target)), hierarchy.plan(
+                            start, target));
+                } else {
+                    Junction target = RouteOracle.randomLocation(random,
+                            sections).getEndPoint().getJunction();
+                    Route actual = hierarchy.plan(start, target);
+                    RouteOracle.checkRoute(track, start, null, length(planner
+                            .plan(start, target)), actual);
+                    if (actual != null && actual.getLength() > 0) {
+                        Assert.assertEquals(target, RouteOracle.lastLocation(
+                                actual).getEndPoint().getJunction());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the route, or -1 if it is null.
+     */
+    private long length(Route route) {
+        return route == null ? -1 : route.getLength();
+    }
+
+}
@@ -0,0 +1,266 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.oracle.*;
+import java.io.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DistanceTable} class, which check its distances
+ * against the lengths of the routes planned by a {@link RoutePlanner}, and
+ * that a table written to a file is only read back for the same layout of
+ * track.
+ */
+public class DistanceTableTest {
+
+    /**
+     * Compares the distances between every pair of junctions of many small
+     * random tracks.
+     */
+    @Test(timeout = 20000)
+    public void randomTracksTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 300; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(10), 1 + random.nextInt(15));
+            DistanceTable table = new DistanceTable(track);
+            TrackSnapshot snapshot = table.getSnapshot();
+            RoutePlanner planner = new RoutePlanner(snapshot);
+            Assert.assertTrue(table.isExact());
+            for (int from = 0; from < snapshot.getJunctionCount(); from++) {
+                for (int to = 0; to < snapshot.getJunctionCount(); to++) {
+                    long expected = RouteOracle.exactDistance(planner, from,
+                            to);
+                    Assert.assertEquals(expected, table.distance(from, to));
+                    Assert.assertEquals(expected, table.distance(snapshot
+                            .getJunction(from), snapshot.getJunction(to)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes tables to a file and reads them back for the same layouts,
+     * built after resetting the JunctionRegistry and registering the
+     * junctions in a different order, so that they are numbered differently
+     * in the snapshot that the table is read for.
+     */
+    @Test(timeout = 20000)
+    public void roundTripTest() throws Exception {
+        Random random = new Random(7023);
+        File file = File.createTempFile("distances", ".bin");
+        try {
+            for (int i = 0; i < 50; i++) {
+                Track track = i == 0 ? new TrackGenerator(
+                        TrackGenerator.Topology.GRID, 400, 7023).track()
+                        : TrackGenerator.randomTrack(random,
+                                2 + random.nextInt(20),
+                                1 + random.nextInt(30));
+                DistanceTable table = new DistanceTable(track);
+                table.write(file.getPath());
+                List<String[]> layout = layout(track);
+                // the distances between the junctions, by their identifiers
+                Map<List<String>, Long> expected = distances(table);
+                // the identifiers of the junctions, in snapshot order
+                List<String> identifiers = identifiers(table.getSnapshot());
+
+                JunctionRegistry.reset();
+                List<String> reordered = new ArrayList<String>(identifiers);
+                Collections.reverse(reordered);
+                for (String identifier : reordered) {
+                    JunctionRegistry.intern(identifier);
+                }
+                DistanceTable read = DistanceTable.read(file.getPath(),
+                        build(layout));
+                if (identifiers.size() > 1) {
+                    Assert.assertFalse(identifiers.equals(identifiers(read
+                            .getSnapshot())));
+                }
+                Assert.assertEquals(expected, distances(read));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks that a table is rejected when it is read for a track with a
+     * different layout, or the file is not a complete distance table, and
+     * that it is accepted for the same layout with its sections added in a
+     * different order.
+     */
+    @Test(timeout = 5000)
+    public void fingerprintTest() throws Exception {
+        Random random = new Random(7023);
+        File file = File.createTempFile("distances", ".bin");
+        try {
+            Track track = TrackGenerator.randomTrack(random, 12, 20);
+            new DistanceTable(track).write(file.getPath());
+            List<String[]> layout = layout(track);
+
+            List<String[]> reordered = new ArrayList<String[]>(layout);
+            Collections.reverse(reordered);
+            DistanceTable.read(file.getPath(), build(reordered));
+
+            // a section with a different length
+            List<String[]> changed = copy(layout);
+            changed.get(0)[0] = Integer.toString(Integer.parseInt(changed
+                    .get(0)[0]) + 1);
+            assertRejected(file, build(changed));
+
+            // a section joined to a different branch of a junction
+            changed = copy(layout);
+            moveToUnusedBranch(changed);
+            assertRejected(file, build(changed));
+
+            // a junction with a different identifier
+            changed = copy(layout);
+            for (String[] section : changed) {
+                for (int i = 1; i <= 3; i += 2) {
+                    if (section[i].equals(layout.get(0)[1])) {
+                        section[i] = "renamed";
+                    }
+                }
+            }
+            assertRejected(file, build(changed));
+
+            // a track with a section removed
+            changed = copy(layout);
+            changed.remove(changed.size() - 1);
+            assertRejected(file, build(changed));
+
+            // a file that is not a distance table, and a truncated table
+            TrackWriter.writeBinary(track, file.getPath());
+            assertRejected(file, track);
+            new DistanceTable(track).write(file.getPath());
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            try {
+                truncated.setLength(truncated.length() - 1);
+            } finally {
+                truncated.close();
+            }
+            assertRejected(file, track);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks that reading the table in the file for the track throws a
+     * FormatException.
+     */
+    private void assertRejected(File file, Track track) throws IOException {
+        try {
+            DistanceTable.read(file.getPath(), track);
+            Assert.fail("The table should have been rejected.");
+        } catch (FormatException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Returns the distances in the table between each pair of junctions, by
+     * their identifiers.
+     */
+    private Map<List<String>, Long> distances(DistanceTable table) {
+        Map<List<String>, Long> result = new HashMap<List<String>, Long>();
+        List<String> identifiers = identifiers(table.getSnapshot());
+        for (int from = 0; from < identifiers.size(); from++) {
+            for (int to = 0; to < identifiers.size(); to++) {
+                result.put(Arrays.asList(identifiers.get(from), identifiers
+                        .get(to)), table.distance(from, to));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the identifiers of the junctions of the snapshot, in the order
+     * of their numbers.
+     */
+    private List<String> identifiers(TrackSnapshot snapshot) {
+        List<String> result = new ArrayList<String>();
+        for (int j = 0; j < snapshot.getJunctionCount(); j++) {
+            result.add(snapshot.getJunction(j).getJunctionId());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the layout of the track, as the length, junction identifiers
+     * and branch names of each section, so that it can be rebuilt after the
+     * JunctionRegistry has been reset.
+     */
+    private List<String[]> layout(Track track) {
+        List<String[]> result = new ArrayList<String[]>();
+        for (Section section : track) {
+            JunctionBranch endPoint1 = section.getEndPoint(0);
+            JunctionBranch endPoint2 = section.getEndPoint(1);
+            result.add(new String[] { Integer.toString(section.getLength()),
+                    endPoint1.getJunction().getJunctionId(),
+                    endPoint1.getBranch().name(),
+                    endPoint2.getJunction().getJunctionId(),
+                    endPoint2.getBranch().name() });
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the layout.
+     */
+    private List<String[]> copy(List<String[]> layout) {
+        List<String[]> result = new ArrayList<String[]>();
+        for (String[] section : layout) {
+            result.add(section.clone());
+        }
+        return result;
+    }
+
+    /**
+     * Moves an end-point of a section of the layout to a branch of its
+     * junction that no section is joined to.
+     * 
+     * @require some junction of the layout has a branch that no section is
+     *          joined to
+     */
+    private void moveToUnusedBranch(List<String[]> layout) {
+        // the branches of each junction that sections are joined to
+        Map<String, Set<String>> used = new HashMap<String, Set<String>>();
+        for (String[] section : layout) {
+            for (int i = 1; i <= 3; i += 2) {
+                if (!used.containsKey(section[i])) {
+                    used.put(section[i], new HashSet<String>());
+                }
+                used.get(section[i]).add(section[i + 1]);
+            }
+        }
+        for (String[] section : layout) {
+            for (Branch branch : Branch.values()) {
+                if (!used.get(section[1]).contains(branch.name())) {
+                    section[2] = branch.name();
+                    return;
+                }
+            }
+        }
+        Assert.fail("Every branch of every junction is used.");
+    }
+
+    /**
+     * Builds a track with the given layout.
+     */
+    private Track build(List<String[]> layout) throws Exception {
+        Track track = new Track();
+        for (String[] section : layout) {
+            track.addSection(new Section(Integer.parseInt(section[0]),
+                    new JunctionBranch(new Junction(section[1]), Branch
+                            .valueOf(section[2])), new JunctionBranch(
+                            new Junction(section[3]), Branch.valueOf(
+                                    section[4]))));
+        }
+        return track;
+    }
+
+}
@@ -0,0 +1,342 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ModelJournal} and {@link JournalReplayer} classes,
+ * which record a random sequence of allocation requests and changes to the
+ * trains of a model, and check that the journal replays to the same model,
+ * that verify finds a result that was recorded wrongly, and that journals
+ * that are truncated or invalid are rejected.
+ */
+public class JournalReplayerTest {
+
+    // the kind of the record that sets the start offset of a train
+    private static final int SET_START = 4;
+
+    /**
+     * Records a journal, and checks that replaying it gives a model with the
+     * same trains, routes and offsets, and that verify finds the result of
+     * every request to be the same.
+     */
+    @Test(timeout = 20000)
+    public void roundTripTest() throws Exception {
+        Track track = track();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelJournal journal = new ModelJournal(bytes);
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.setJournal(journal);
+        Assert.assertEquals(-1, record(model, journal, false));
+        journal.close();
+
+        JournalReplayer replayer = new JournalReplayer(ByteBuffer.wrap(bytes
+                .toByteArray()));
+        // enough events that the replayer's arrays must grow
+        Assert.assertTrue(replayer.getEventCount() > 1000);
+        Assert.assertEquals(journal.getEventCount(), replayer
+                .getEventCount());
+        compareModels(model, replayer.replay(track));
+        // a journal can be replayed more than once
+        compareModels(model, replayer.replay(track));
+        Assert.assertEquals(-1, replayer.verify(track,
+                new ConflictChecker()));
+
+        // and read back from a file
+        File file = File.createTempFile("journal", ".bin");
+        try {
+            journal = ModelJournal.create(file.getPath());
+            model = new RailwayModel();
+            model.setTrack(track);
+            model.setJournal(journal);
+            record(model, journal, false);
+            journal.close();
+            compareModels(model, JournalReplayer.read(file.getPath())
+                    .replay(track));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Records the same journal with the result of one request that conflicted
+     * with another train changed to GRANTED, and checks that verify reports
+     * that request.
+     */
+    @Test(timeout = 20000)
+    public void tamperedResultTest() throws Exception {
+        Track track = track();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelJournal journal = new ModelJournal(bytes);
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.setJournal(journal);
+        long tampered = record(model, journal, true);
+        journal.close();
+        Assert.assertTrue(tampered >= 0);
+
+        JournalReplayer replayer = new JournalReplayer(ByteBuffer.wrap(bytes
+                .toByteArray()));
+        Assert.assertEquals(tampered, replayer.verify(track,
+                new ConflictChecker()));
+        // the tampered result does not change the model that is replayed
+        compareModels(model, replayer.replay(track));
+    }
+
+    /**
+     * Checks that a journal cut short at every possible length is either
+     * rejected with the number of the record that was cut, or (if it was
+     * cut between records) decoded to fewer events.
+     */
+    @Test(timeout = 20000)
+    public void truncatedTest() throws Exception {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID, 25,
+                7023).track();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelJournal journal = new ModelJournal(bytes);
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.setJournal(journal);
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(5, 1, 5, occupied, requested);
+        for (int i = 0; i < requested.size(); i++) {
+            Route route = new Route(requested.get(i));
+            journal.recordAllocation(-1, route, 0, route.getLength(),
+                    ModelJournal.GRANTED);
+            model.addTrain(i, route, 0, occupied.get(i).get(0).getLength());
+            model.getTrain(i).setEndOffset(route.getLength());
+        }
+        journal.close();
+        byte[] contents = bytes.toByteArray();
+
+        for (int length = 0; length < contents.length; length++) {
+            try {
+                JournalReplayer replayer = new JournalReplayer(ByteBuffer
+                        .wrap(Arrays.copyOf(contents, length)));
+                Assert.assertTrue(replayer.getEventCount() < journal
+                        .getEventCount());
+            } catch (FormatException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(
+                        length < 5 ? "Error in header" : "Error in record"));
+            }
+        }
+    }
+
+    /**
+     * Checks that journals with an invalid header, an unknown kind of record,
+     * a change to a train that has not been added, or an invalid
+     * variable-length integer are rejected, with the number of the record
+     * where the error was detected.
+     */
+    @Test(timeout = 5000)
+    public void invalidTest() throws Exception {
+        byte[] header = header();
+        assertRejected(new byte[0], "Error in header: not a journal");
+        assertRejected(new byte[] { 1, 2, 3, 4, 5 },
+                "Error in header: not a journal");
+        byte[] version = header.clone();
+        version[4]++;
+        assertRejected(version, "Error in header: unsupported journal "
+                + "version");
+
+        assertRejected(append(header, 99),
+                "Error in record 1: unknown record kind: 99");
+        assertRejected(append(header, SET_START, 7, 0),
+                "Error in record 1: unknown train: 7");
+        // a variable-length integer with more than five bytes
+        assertRejected(append(header, SET_START, 0x80, 0x80, 0x80, 0x80,
+                0x80, 0x01, 0),
+                "Error in record 1: invalid variable-length integer");
+        // a valid record, and then a junction whose identifier is cut short
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelJournal journal = new ModelJournal(bytes);
+        journal.recordAllocation(-1, new Route(new ArrayList<Segment>()), 0,
+                1, ModelJournal.INVALID_OFFSETS);
+        journal.close();
+        Assert.assertEquals(1, new JournalReplayer(ByteBuffer.wrap(bytes
+                .toByteArray())).getEventCount());
+        assertRejected(append(bytes.toByteArray(), 1, 5, 'j', '1'),
+                "Error in record 2: unexpected end of file");
+    }
+
+    /**
+     * Closes a journal from another thread while the offsets of a train are
+     * being changed, and checks that the journal still decodes (so that no
+     * record was cut short) and that the changes made after it was closed
+     * were ignored.
+     */
+    @Test(timeout = 20000)
+    public void concurrentCloseTest() throws Exception {
+        Track track = track();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ModelJournal journal = new ModelJournal(bytes);
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.setJournal(journal);
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(1, 1, 20, occupied, requested);
+        model.addTrain(0, new Route(requested.get(0)), 0, 1);
+        RailwayModel.Train train = model.getTrain(0);
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                    journal.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        closer.start();
+        // large offsets, so that each record takes several bytes
+        for (int i = 0; closer.isAlive() || i < 100000; i++) {
+            train.setEndOffset(1 << 20 | i);
+        }
+        closer.join();
+        long recorded = journal.getEventCount();
+        train.setStartOffset(1);
+        Assert.assertEquals(recorded, journal.getEventCount());
+        Assert.assertEquals(recorded, new JournalReplayer(ByteBuffer.wrap(
+                bytes.toByteArray())).getEventCount());
+    }
+
+    /**
+     * Makes random allocation requests for the trains of the model and for
+     * new trains, records their results in the journal, and changes the
+     * trains of the model (which are recorded in the journal too) for the
+     * requests that are granted. If tamper is true, the first request that
+     * conflicts with another train is recorded as granted, and the number of
+     * its event is returned; otherwise -1 is returned.
+     */
+    private long record(RailwayModel model, ModelJournal journal,
+            boolean tamper) {
+        Random random = new Random(7023);
+        Track track = model.getTrack();
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(60, 1, 20, occupied,
+                requested);
+        // the trains are added with the first section of their routes
+        for (int i = 0; i < 30; i++) {
+            model.addTrain(i, new Route(requested.get(i)), 0, occupied.get(i)
+                    .get(0).getLength());
+        }
+        ConflictChecker checker = new ConflictChecker();
+        int added = 30; // the number of routes used
+        long tampered = -1;
+        for (int request = 0; request < 1000; request++) {
+            // the train of the request, or null for a new train
+            RailwayModel.Train train = added < requested.size()
+                    && random.nextInt(10) == 0 ? null : model.getTrain(random
+                            .nextInt(model.getTrains().size()));
+            Route route = train == null ? new Route(requested.get(added))
+                    : train.getRoute();
+            int startOffset = random.nextInt(route.getLength());
+            int endOffset = startOffset + 1 + random.nextInt(60);
+            // the result of the request
+            int result;
+            if (endOffset > route.getLength()) {
+                result = ModelJournal.INVALID_OFFSETS;
+            } else {
+                result = checker.findConflict(route.getSubroute(startOffset,
+                        endOffset), ConflictChecker.snapshot(model
+                                .getTrains(), train == null ? -1 : train
+                                        .getIdentifier()));
+            }
+            if (tamper && tampered == -1 && result >= 0) {
+                tampered = journal.getEventCount();
+                journal.recordAllocation(train == null ? -1 : train
+                        .getIdentifier(), route, startOffset, endOffset,
+                        ModelJournal.GRANTED);
+                continue;
+            }
+            journal.recordAllocation(train == null ? -1 : train
+                    .getIdentifier(), route, startOffset, endOffset, result);
+            if (result != ModelJournal.GRANTED) {
+                continue;
+            }
+            if (train == null) {
+                model.addTrain(added++, route, startOffset, endOffset);
+            } else if (startOffset < train.getEndOffset()) {
+                train.setStartOffset(startOffset);
+                train.setEndOffset(endOffset);
+            } else {
+                train.setEndOffset(endOffset);
+                train.setStartOffset(startOffset);
+            }
+        }
+        return tampered;
+    }
+
+    /**
+     * Checks that the actual model has the same trains as the expected
+     * model, with the same identifiers, routes and offsets, in the same
+     * order.
+     */
+    private void compareModels(RailwayModel expected, RailwayModel actual) {
+        Assert.assertEquals(expected.getTrains().size(), actual.getTrains()
+                .size());
+        for (int i = 0; i < expected.getTrains().size(); i++) {
+            RailwayModel.Train train = expected.getTrain(i);
+            RailwayModel.Train other = actual.getTrain(i);
+            Assert.assertEquals(train.getIdentifier(), other.getIdentifier());
+            Assert.assertEquals(train.getRoute(), other.getRoute());
+            Assert.assertEquals(train.getStartOffset(), other
+                    .getStartOffset());
+            Assert.assertEquals(train.getEndOffset(), other.getEndOffset());
+        }
+    }
+
+    /**
+     * Checks that decoding the given journal throws a FormatException with
+     * the given message.
+     */
+    private void assertRejected(byte[] contents, String message) {
+        try {
+            new JournalReplayer(ByteBuffer.wrap(contents));
+            Assert.fail("The journal should have been rejected.");
+        } catch (FormatException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the header of a journal with no records.
+     */
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ModelJournal(bytes).close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the given contents followed by the given bytes.
+     */
+    private byte[] append(byte[] contents, int... extra) {
+        byte[] result = Arrays.copyOf(contents, contents.length
+                + extra.length);
+        for (int i = 0; i < extra.length; i++) {
+            result[contents.length + i] = (byte) extra[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the track that the journals are recorded for.
+     */
+    private Track track() {
+        return new TrackGenerator(TrackGenerator.Topology.GRID, 400, 7023)
+                .track();
+    }
+
+}
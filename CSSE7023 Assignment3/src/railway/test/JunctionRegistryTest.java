@@ -0,0 +1,49 @@
+package railway.test;
+
+import railway.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link JunctionRegistry} class.
+ */
+public class JunctionRegistryTest {
+
+    /**
+     * Checks that interning gives one canonical junction for each identifier,
+     * numbered in the order they were registered, and that a reset empties
+     * the registry and numbers the identifiers registered after it from 0.
+     */
+    @Test(timeout = 5000)
+    public void resetTest() throws Exception {
+        JunctionRegistry.intern("before");
+        JunctionRegistry.reset();
+        Assert.assertEquals(0, JunctionRegistry.size());
+        try {
+            JunctionRegistry.get(0);
+            Assert.fail("The registry should be empty.");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+
+        // enough junctions to grow the table of junctions by index
+        for (int i = 0; i < 3000; i++) {
+            Junction junction = JunctionRegistry.intern("j" + i);
+            Assert.assertSame(junction, JunctionRegistry.intern("j" + i));
+            Assert.assertSame(junction, JunctionRegistry.get(i));
+            Assert.assertEquals(junction, new Junction("j" + i));
+        }
+        Assert.assertEquals(3000, JunctionRegistry.size());
+        Assert.assertEquals("before", new Junction("before").getJunctionId());
+        Assert.assertSame(JunctionRegistry.get(3000), JunctionRegistry
+                .intern("before"));
+
+        JunctionRegistry.reset();
+        Assert.assertEquals(0, JunctionRegistry.size());
+        Assert.assertEquals("j2999", JunctionRegistry.intern("j2999")
+                .getJunctionId());
+        Assert.assertSame(JunctionRegistry.get(0), JunctionRegistry
+                .intern("j2999"));
+    }
+
+}
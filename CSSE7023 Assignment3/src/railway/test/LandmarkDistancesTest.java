@@ -0,0 +1,102 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.oracle.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link LandmarkDistances} class, which check that its
+ * distances are never less than the exact distances (the lengths of the
+ * routes planned by a {@link RoutePlanner}), and are exact when either
+ * junction is a landmark.
+ */
+public class LandmarkDistancesTest {
+
+    /**
+     * Compares the distances between every pair of junctions of many small
+     * random tracks, with different numbers of landmarks.
+     */
+    @Test(timeout = 20000)
+    public void randomTracksTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 300; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(12), 1 + random.nextInt(18));
+            LandmarkDistances oracle = new LandmarkDistances(track,
+                    1 + random.nextInt(4));
+            compareDistances(oracle, oracle.getSnapshot().getJunctionCount());
+        }
+    }
+
+    /**
+     * Compares the distances from a sample of the junctions of a large grid
+     * to every other junction.
+     */
+    @Test(timeout = 20000)
+    public void gridTest() throws Exception {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID, 900,
+                7023).track();
+        LandmarkDistances oracle = new LandmarkDistances(track, 8);
+        Assert.assertEquals(8, oracle.getLandmarks().length);
+        compareDistances(oracle, 30);
+    }
+
+    /**
+     * Checks that every junction is a landmark, and every distance is exact,
+     * when there are more landmarks than junctions.
+     */
+    @Test(timeout = 5000)
+    public void allLandmarksTest() throws Exception {
+        Random random = new Random(7023);
+        Track track = TrackGenerator.randomTrack(random, 10, 15);
+        LandmarkDistances oracle = new LandmarkDistances(track, 100);
+        TrackSnapshot snapshot = oracle.getSnapshot();
+        Assert.assertEquals(snapshot.getJunctionCount(), oracle
+                .getLandmarks().length);
+        RoutePlanner planner = new RoutePlanner(snapshot);
+        for (int from = 0; from < snapshot.getJunctionCount(); from++) {
+            for (int to = 0; to < snapshot.getJunctionCount(); to++) {
+                Assert.assertEquals(RouteOracle.exactDistance(planner, from,
+                        to), oracle.distance(from, to));
+            }
+        }
+    }
+
+    /**
+     * Checks the distances from the first junctions of the oracle's
+     * snapshot (at most the given number of them) to every junction, and
+     * from every junction back to them.
+     */
+    private void compareDistances(LandmarkDistances oracle, int sources) {
+        TrackSnapshot snapshot = oracle.getSnapshot();
+        RoutePlanner planner = new RoutePlanner(snapshot);
+        int junctionCount = snapshot.getJunctionCount();
+        // whether each junction is a landmark
+        boolean[] landmark = new boolean[junctionCount];
+        for (int l : oracle.getLandmarks()) {
+            landmark[l] = true;
+        }
+        Assert.assertFalse(oracle.isExact());
+        for (int from = 0; from < Math.min(sources, junctionCount); from++) {
+            for (int to = 0; to < junctionCount; to++) {
+                long exact = RouteOracle.exactDistance(planner, from, to);
+                for (long approximate : new long[] {
+                        oracle.distance(from, to), oracle.distance(to, from),
+                        oracle.distance(snapshot.getJunction(from), snapshot
+                                .getJunction(to)) }) {
+                    if (landmark[from] || landmark[to] || from == to) {
+                        Assert.assertEquals(exact, approximate);
+                    } else if (exact == -1) {
+                        Assert.assertEquals(-1, approximate);
+                    } else if (approximate != -1) {
+                        Assert.assertTrue(approximate >= exact);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PartitionedSimulator} class, which check that a
+ * simulation is deterministic: that it has the same outcome whether its
+ * regions are simulated by one thread or by several.
+ */
+public class PartitionedSimulatorTest {
+
+    /**
+     * Runs the same trains on a grid with one thread and with four, and
+     * compares the allocations of the trains, the distance travelled and the
+     * number of events processed after each of several periods.
+     */
+    @Test(timeout = 30000)
+    public void poolSizeTest() throws Exception {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID, 400,
+                7023).track();
+        RouteGenerator generator = new RouteGenerator(track, 7023);
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        generator.trains(60, 1, 40, occupied, requested);
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            RailwayModel expectedModel = model(track, occupied, requested);
+            RailwayModel actualModel = model(track, occupied, requested);
+            PartitionedSimulator expected = new PartitionedSimulator(
+                    expectedModel, 20, 8, 50000, single);
+            PartitionedSimulator actual = new PartitionedSimulator(
+                    actualModel, 20, 8, 50000, parallel);
+            for (long time = 1000000; time <= 30000000; time += 1000000) {
+                expected.runUntil(time);
+                actual.runUntil(time);
+                expected.updateModel();
+                actual.updateModel();
+                Assert.assertEquals(expected.getTime(), actual.getTime());
+                Assert.assertEquals(expected.getDistance(), actual
+                        .getDistance());
+                Assert.assertEquals(expected.getEventCount(), actual
+                        .getEventCount());
+                Assert.assertEquals(expected.getArrivedCount(), actual
+                        .getArrivedCount());
+                compareTrains(expectedModel, actualModel);
+            }
+            // the trains must have moved for the comparison to mean much
+            Assert.assertTrue(expected.getDistance() > 0);
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * Checks that each train of the actual model has the same allocation as
+     * the train at the same position in the expected model.
+     */
+    private void compareTrains(RailwayModel expected, RailwayModel actual) {
+        List<RailwayModel.Train> expectedTrains = expected.getTrains();
+        List<RailwayModel.Train> actualTrains = actual.getTrains();
+        Assert.assertEquals(expectedTrains.size(), actualTrains.size());
+        for (int i = 0; i < expectedTrains.size(); i++) {
+            Assert.assertEquals(expectedTrains.get(i).getStartOffset(),
+                    actualTrains.get(i).getStartOffset());
+            Assert.assertEquals(expectedTrains.get(i).getEndOffset(),
+                    actualTrains.get(i).getEndOffset());
+        }
+    }
+
+    /**
+     * Returns a model of the given track with a train for each requested
+     * route, allocated the first section of the route.
+     */
+    private RailwayModel model(Track track, List<List<Segment>> occupied,
+            List<List<Segment>> requested) {
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        for (int i = 0; i < requested.size(); i++) {
+            model.addTrain(i, new Route(requested.get(i)), 0, occupied.get(i)
+                    .get(0).getLength());
+        }
+        return model;
+    }
+
+}
@@ -0,0 +1,292 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Randomised tests that check that the tracks and routes read by
+ * {@link TrackReader} and {@link RouteReader}, and the errors that they
+ * report, are the same as those of the {@link ReferenceReader}.
+ *
+ * The files are written in the default charset, so the line terminators and
+ * whitespace characters that it cannot encode are written as '?'.
+ */
+public class RandomReaderTest {
+
+    // the line terminators recognised by a Scanner
+    private static final String[] LINE_TERMINATORS = { "\n", "\r\n", "\r",
+            "\u2028", "\u2029", "\u0085" };
+    // whitespace characters (and some that are not whitespace) to separate
+    // the tokens of a line
+    private static final String[] SEPARATORS = { " ", " ", " ", "  ", "\t",
+            "\u000B", "\f", "\u001C", "\u1680", "\u2003", "\u3000", "\u00A0" };
+    // section lengths and offsets, including ones that are not valid
+    private static final String[] NUMBERS = { "1", "+3", "-2", "0", "007",
+            "1,000", "1,0", "\u0661\u0662", "\u0969", "2147483647",
+            "2147483648", "-2147483649", "99999999999", "1.5", "x", "" };
+    // branches, including ones that are not valid
+    private static final String[] BRANCHES = { "FACING", "NORMAL", "REVERSE",
+            "facing", "FACINGX", "" };
+
+    /**
+     * Compares the results of reading many small random track files.
+     */
+    @Test(timeout = 60000)
+    public void smallTrackFilesTest() throws Exception {
+        Random random = new Random(7023);
+        File file = File.createTempFile("track", ".txt");
+        try {
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder text = new StringBuilder();
+                int lines = random.nextInt(8);
+                for (int j = 0; j < lines; j++) {
+                    appendLine(random, text, randomSectionTokens(random,
+                            lines, i % 2 == 0), 0.8);
+                }
+                writeText(file, text);
+                compareTracks(file);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Compares the results of reading track files that are large enough to
+     * be split into chunks by readParallel, with an error (if any) at a
+     * random line.
+     */
+    @Test(timeout = 120000)
+    public void largeTrackFilesTest() throws Exception {
+        Random random = new Random(7023);
+        File file = File.createTempFile("track", ".txt");
+        try {
+            for (int i = 0; i < 4; i++) {
+                StringBuilder text = new StringBuilder();
+                int lines = 150000;
+                // the line with an error, or -1
+                int errorLine = i == 0 ? -1 : random.nextInt(lines);
+                for (int j = 0; j < lines; j++) {
+                    String[] tokens = { Integer.toString(1 + random.nextInt(
+                            1000)), "j" + j, "NORMAL", "j" + (j + 1),
+                            "FACING" };
+                    if (j == errorLine) {
+                        tokens = randomSectionTokens(random, 8, false);
+                    }
+                    appendLine(random, text, tokens, 1);
+                }
+                writeText(file, text);
+                compareTracks(file);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Compares the results of reading many small random route files.
+     */
+    @Test(timeout = 60000)
+    public void smallRouteFilesTest() throws Exception {
+        Random random = new Random(7023);
+        File file = File.createTempFile("route", ".txt");
+        try {
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder text = new StringBuilder();
+                if (i % 2 == 0) {
+                    // a valid route, written with random separators
+                    Track track = TrackGenerator.randomTrack(random,
+                            2 + random.nextInt(6), 1 + random.nextInt(10));
+                    for (Segment segment : RouteGenerator.randomRoute(
+                            random, track, TrackGenerator.sections(track),
+                            6)) {
+                        appendLine(random, text, segmentTokens(segment),
+                                0.95);
+                    }
+                } else {
+                    int lines = random.nextInt(6);
+                    for (int j = 0; j < lines; j++) {
+                        String[] tokens = Arrays.copyOf(randomSectionTokens(
+                                random, 4, true), 7);
+                        tokens[5] = randomNumber(random);
+                        tokens[6] = randomNumber(random);
+                        appendLine(random, text, tokens, 0.8);
+                    }
+                }
+                writeText(file, text);
+                compareRoutes(file);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks that read, readMapped and readParallel return the same track as
+     * the reference reader, or throw a FormatException with the same message.
+     */
+    private static void compareTracks(File file) throws Exception {
+        String fileName = file.getPath();
+        String expected;
+        try {
+            expected = describe(ReferenceReader.readTrack(fileName));
+        } catch (FormatException e) {
+            expected = e.getMessage();
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int reader = 0; reader < 3; reader++) {
+                String actual;
+                try {
+                    Track track = reader == 0 ? TrackReader.read(fileName)
+                            : reader == 1 ? TrackReader.readMapped(fileName)
+                                    : TrackReader.readParallel(fileName, pool);
+                    actual = describe(track);
+                } catch (FormatException e) {
+                    actual = e.getMessage();
+                }
+                Assert.assertEquals(expected, actual);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Checks that RouteReader.read returns the same route as the reference
+     * reader, or throws a FormatException with the same message.
+     */
+    private static void compareRoutes(File file) throws Exception {
+        String fileName = file.getPath();
+        Object expected;
+        try {
+            expected = ReferenceReader.readRoute(fileName);
+        } catch (FormatException e) {
+            expected = e.getMessage();
+        }
+        Object actual;
+        try {
+            actual = RouteReader.read(fileName);
+        } catch (FormatException e) {
+            actual = e.getMessage();
+        }
+        Assert.assertEquals(expected, actual);
+    }
+
+    /**
+     * Returns a description of the sections of a track that does not depend
+     * on the order in which they are iterated.
+     */
+    private static String describe(Track track) {
+        // the sections of the track
+        Set<String> sections = new TreeSet<String>();
+        for (Section section : track) {
+            sections.add(section.toString());
+        }
+        return sections.toString();
+    }
+
+    /**
+     * Returns the tokens of a random section line. If valid is true, each
+     * token is valid (although the section may still be a duplicate, or
+     * clash with another), otherwise about one in four tokens is not.
+     */
+    private static String[] randomSectionTokens(Random random,
+            int junctions, boolean valid) {
+        String[] tokens = new String[5];
+        tokens[0] = Integer.toString(1 + random.nextInt(20));
+        for (int i = 1; i < 5; i += 2) {
+            tokens[i] = "j" + random.nextInt(junctions + 1);
+            tokens[i + 1] = BRANCHES[random.nextInt(3)];
+        }
+        if (!valid) {
+            for (int i = 0; i < 5; i++) {
+                if (random.nextInt(4) == 0) {
+                    tokens[i] = i == 0 ? randomNumber(random)
+                            : i % 2 == 0 ? BRANCHES[random.nextInt(
+                                    BRANCHES.length)] : "";
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the tokens of a line of a route file describing the segment.
+     */
+    private static String[] segmentTokens(Segment segment) {
+        Section section = segment.getSection();
+        JunctionBranch departing = segment.getDepartingEndPoint();
+        JunctionBranch other = section.otherEndPoint(departing);
+        return new String[] { Integer.toString(section.getLength()),
+                departing.getJunction().toString(),
+                departing.getBranch().toString(),
+                other.getJunction().toString(),
+                other.getBranch().toString(),
+                Integer.toString(segment.getStartOffset()),
+                Integer.toString(segment.getEndOffset()) };
+    }
+
+    /**
+     * Returns a random number from NUMBERS.
+     */
+    private static String randomNumber(Random random) {
+        return NUMBERS[random.nextInt(NUMBERS.length)];
+    }
+
+    /**
+     * Appends a line with the given tokens, separated by random whitespace,
+     * and a random line terminator. With probability 1 - plain, the line
+     * starts and ends with whitespace, or is followed by a blank line.
+     */
+    private static void appendLine(Random random, StringBuilder text,
+            String[] tokens, double plain) {
+        boolean noisy = random.nextDouble() >= plain;
+        if (noisy && random.nextBoolean()) {
+            text.append(randomSeparator(random));
+        }
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                text.append(noisy ? randomSeparator(random) : " ");
+            }
+            text.append(tokens[i]);
+        }
+        if (noisy && random.nextBoolean()) {
+            text.append(randomSeparator(random));
+        }
+        text.append(LINE_TERMINATORS[random.nextInt(
+                LINE_TERMINATORS.length)]);
+        if (noisy && random.nextInt(4) == 0) {
+            text.append(LINE_TERMINATORS[random.nextInt(
+                    LINE_TERMINATORS.length)]);
+        }
+    }
+
+    /**
+     * Returns a random separator from SEPARATORS.
+     */
+    private static String randomSeparator(Random random) {
+        return SEPARATORS[random.nextInt(SEPARATORS.length)];
+    }
+
+    /**
+     * Writes the text to the file in the default charset.
+     */
+    private static void writeText(File file, CharSequence text)
+            throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                Charset.defaultCharset());
+        try {
+            out.append(text);
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Randomised tests that check that the results of {@link Route#intersects}
+ * and {@link Route#getSubroute} are the same as those of the
+ * {@link ReferenceRoute}.
+ */
+public class RandomRouteTest {
+
+    /**
+     * Compares the results on many small random tracks, where the routes
+     * often travel along the same sections, and the same section more than
+     * once.
+     */
+    @Test(timeout = 20000)
+    public void smallTracksTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 1000; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(6), 1 + random.nextInt(10));
+            List<Section> sections = TrackGenerator.sections(track);
+            // the routes on the track
+            List<Route> routes = new ArrayList<Route>();
+            for (int j = 0; j < 6; j++) {
+                routes.add(new Route(RouteGenerator.randomRoute(random,
+                        track, sections, 8)));
+            }
+            for (Route route : routes) {
+                compareSubroutes(route);
+                for (Route other : routes) {
+                    Assert.assertEquals(ReferenceRoute.intersects(route,
+                            other), route.intersects(other));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the results for long routes on a large track, including
+     * sub-routes of the same route, which always intersect with it.
+     */
+    @Test(timeout = 20000)
+    public void longRoutesTest() throws Exception {
+        Random random = new Random(2014);
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID, 2500,
+                1).track();
+        RouteGenerator generator = new RouteGenerator(track, 2);
+        for (int i = 0; i < 100; i++) {
+            Route route = new Route(generator.segments(200));
+            Route other = new Route(generator.segments(200));
+            int start = random.nextInt(route.getLength());
+            int end = start + 1 + random.nextInt(route.getLength() - start);
+            Route subroute = route.getSubroute(start, end);
+            Assert.assertEquals(ReferenceRoute.getSubroute(route, start, end),
+                    subroute);
+            for (Route[] pair : new Route[][] { { route, other },
+                    { other, route }, { route, subroute },
+                    { subroute, route }, { other, subroute } }) {
+                Assert.assertEquals(ReferenceRoute.intersects(pair[0],
+                        pair[1]), pair[0].intersects(pair[1]));
+            }
+        }
+    }
+
+    /**
+     * Checks that getSubroute agrees with the reference for every pair of
+     * offsets on the given route, and rejects the same offsets.
+     */
+    private void compareSubroutes(Route route) {
+        int length = route.getLength();
+        for (int start = -1; start <= length; start++) {
+            for (int end = start; end <= length + 1; end++) {
+                Route expected;
+                try {
+                    expected = ReferenceRoute.getSubroute(route, start, end);
+                } catch (IllegalArgumentException e) {
+                    expected = null;
+                }
+                try {
+                    Assert.assertEquals(expected, route.getSubroute(start,
+                            end));
+                } catch (IllegalArgumentException e) {
+                    Assert.assertNull(expected);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package railway.test;
+
+import railway.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * The original, Scanner based implementations of {@link TrackReader#read} and
+ * {@link RouteReader#read}. They are kept as a reference to check that the
+ * tracks and routes read (and the errors reported) by the faster readers are
+ * unchanged.
+ */
+public class ReferenceReader {
+
+    /**
+     * Reads a text file named fileName that describes the sections on a
+     * track, and returns a track containing each of the sections in the file,
+     * as described by TrackReader.read.
+     * 
+     * @require fileName != null
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if there is an error with the input format
+     */
+    public static Track readTrack(String fileName) throws IOException,
+            FormatException {
+        // scanner for reading the file a line at a time
+        Scanner in = new Scanner(new FileReader(fileName));
+        Track track = new Track(); // the track to be returned
+        int lineNumber = 1; // the number of the line being read
+        try {
+            while (in.hasNextLine()) {
+                // the section read from the line
+                Section section = readSection(lineNumber, in.nextLine());
+                // add section to the track unless it is a duplicate, or adding
+                // it would cause the track to become invalid
+                if (track.contains(section)) {
+                    throw new FormatException(errorMessage(lineNumber,
+                            "duplicate section detected: " + section));
+                }
+                try {
+                    track.addSection(section);
+                } catch (InvalidTrackException e) {
+                    throw new FormatException(errorMessage(lineNumber,
+                            "cannot add section " + section + " to the track: "
+                                    + e.getMessage()));
+                }
+                lineNumber++;
+            }
+        } finally {
+            in.close();
+        }
+        return track;
+    }
+
+    /**
+     * Reads a text file named fileName that describes the segments of a
+     * route, and returns the route, as described by RouteReader.read.
+     * 
+     * @require fileName != null
+     * @throws IOException
+     *             if there is an error reading from the input file
+     * @throws FormatException
+     *             if there is an error with the input format
+     */
+    public static Route readRoute(String fileName) throws IOException,
+            FormatException {
+        // scanner for reading the file a line at a time
+        Scanner in = new Scanner(new FileReader(fileName));
+        // segments on the route to be returned
+        List<Segment> segments = new ArrayList<>();
+        // the number of the line being read
+        int lineNumber = 1;
+        try {
+            while (in.hasNextLine()) {
+                segments.add(readSegment(lineNumber, in.nextLine()));
+                lineNumber++;
+            }
+            return new Route(segments);
+        } catch (InvalidRouteException e) {
+            throw new FormatException("Invalid Route: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the section from the given line.
+     * 
+     * @require line != null
+     * @throws FormatException
+     *             if the line is not of the form (e.g. "9 j1 FACING j2 NORMAL")
+     *             described by the TrackReader.read method
+     */
+    private static Section readSection(int lineNumber, String line)
+            throws FormatException {
+        // a scanner for the line
+        Scanner lineScanner = new Scanner(line);
+        try {
+            // the parameters of the section read from the line
+            int length = readSectionLength(lineNumber, lineScanner,
+                    "length is less than or equal to zero");
+            JunctionBranch[] endPoints = new JunctionBranch[2];
+            endPoints[0] = readEndPoint(lineNumber, lineScanner);
+            endPoints[1] = readEndPoint(lineNumber, lineScanner);
+
+            if (lineScanner.hasNext()) {
+                throw new FormatException(errorMessage(lineNumber,
+                        "additional information at end of line"));
+            }
+
+            if (endPoints[0].equals(endPoints[1])) {
+                throw new FormatException(errorMessage(lineNumber,
+                        "the end-points of a section must be distinct"));
+            }
+            return new Section(length, endPoints[0], endPoints[1]);
+        } finally {
+            lineScanner.close();
+        }
+    }
+
+    /**
+     * Reads the segment from the given line.
+     * 
+     * @require line != null
+     * @throws FormatException
+     *             if the line is not of the form (e.g.
+     *             "9 j1 FACING j2 NORMAL 0 9") described by the
+     *             RouteReader.read method
+     */
+    private static Segment readSegment(int lineNumber, String line)
+            throws FormatException {
+        // a scanner for the line
+        Scanner lineScanner = new Scanner(line);
+        try {
+            // the parameters of the section read from the line
+            int length = readSectionLength(lineNumber, lineScanner,
+                    "section length is less than or equal to zero");
+            JunctionBranch[] endPoints = new JunctionBranch[2];
+            endPoints[0] = readEndPoint(lineNumber, lineScanner);
+            endPoints[1] = readEndPoint(lineNumber, lineScanner);
+            // the start and end offset of the segment read
+            int startOffset = readOffset(lineNumber, lineScanner);
+            int endOffset = readOffset(lineNumber, lineScanner);
+
+            if (lineScanner.hasNext()) {
+                throw new FormatException(errorMessage(lineNumber,
+                        "additional information at end of line"));
+            }
+
+            if (endPoints[0].equals(endPoints[1])) {
+                throw new FormatException(errorMessage(lineNumber,
+                        "the end-points of a section must be distinct"));
+            }
+            if (!(0 <= startOffset && startOffset < endOffset
+                    && endOffset <= length)) {
+                throw new FormatException(errorMessage(lineNumber,
+                        "the segment start and end offsets are"
+                                + " not within bounds."));
+            }
+            return new Segment(new Section(length, endPoints[0], endPoints[1]),
+                    endPoints[0], startOffset, endOffset);
+        } finally {
+            lineScanner.close();
+        }
+    }
+
+    /**
+     * Reads the section length from the scanner, which must be a positive
+     * integer; if it is not, the exception has the given message.
+     * 
+     * @require lineScanner != null && message != null
+     */
+    private static int readSectionLength(int lineNumber, Scanner lineScanner,
+            String message) throws FormatException {
+        if (!lineScanner.hasNextInt()) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "invalid or missing section length"));
+        } else {
+            int length = lineScanner.nextInt(); // the read section length
+            if (length <= 0) {
+                throw new FormatException(errorMessage(lineNumber, message));
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Reads the next end-point, a junction followed by a branch, from the
+     * scanner.
+     * 
+     * @require lineScanner != null
+     */
+    private static JunctionBranch readEndPoint(int lineNumber,
+            Scanner lineScanner) throws FormatException {
+        try {
+            // the junction read from lineScanner
+            Junction junction = new Junction(lineScanner.next());
+            // the string representation of the branch read from lineScanner
+            String branchString = lineScanner.next();
+            // the corresponding enumerated type of the branch string
+            Branch branch;
+            try {
+                branch = Branch.valueOf(branchString);
+            } catch (IllegalArgumentException e) {
+                throw new FormatException(errorMessage(lineNumber,
+                        "invalid branch: " + branchString));
+            }
+            return new JunctionBranch(junction, branch);
+        } catch (NoSuchElementException e) {
+            // thrown if there are not two tokens on the scanner to consume
+            throw new FormatException(errorMessage(lineNumber,
+                    "missing or incomplete end-point"));
+        }
+    }
+
+    /**
+     * Reads the next offset, a non-negative integer, from the scanner.
+     * 
+     * @require lineScanner != null
+     */
+    private static int readOffset(int lineNumber, Scanner lineScanner)
+            throws FormatException {
+        if (!lineScanner.hasNextInt()) {
+            throw new FormatException(errorMessage(lineNumber,
+                    "invalid or missing offset"));
+        } else {
+            int offset = lineScanner.nextInt(); // the read offset
+            if (offset < 0) {
+                throw new FormatException(errorMessage(lineNumber, "offset "
+                        + offset + " is less than  zero"));
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Returns an error message for a FormatException that contains the given
+     * lineNumber and message.
+     */
+    private static String errorMessage(int lineNumber, String message) {
+        return "Error on line " + lineNumber + ": " + message;
+    }
+
+}
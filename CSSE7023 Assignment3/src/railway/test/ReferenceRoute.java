@@ -0,0 +1,170 @@
+package railway.test;
+
+import railway.*;
+import java.util.*;
+
+/**
+ * The original, linear implementations of {@link Route#getSubroute} and
+ * {@link Route#intersects}, which walk along the segments of the routes. They
+ * are kept as a reference to check that the results of the indexed versions
+ * are unchanged.
+ */
+public class ReferenceRoute {
+
+    /**
+     * Returns the sub-route of the given route that starts at startOffset
+     * meters into the route and ends endOffset meters into the route.
+     * 
+     * @require route != null
+     * @throws IllegalArgumentException
+     *             if !(0 <= startOffset < endOffset <= route.getLength())
+     */
+    public static Route getSubroute(Route route, int startOffset,
+            int endOffset) {
+        if (!(0 <= startOffset && startOffset < endOffset && endOffset <= route
+                .getLength())) {
+            throw new IllegalArgumentException("Subroute is out of bounds.");
+        }
+        // the sub-segments that will make up the sub-route
+        List<Segment> subsegments = new ArrayList<>();
+        // variable offset is the distance along the route to the start of the
+        // segment currently being examined
+        int offset = 0;
+        for (Segment segment : route) {
+            if (startOffset - offset < segment.getLength()
+                    && 0 < endOffset - offset) {
+                // part of the segment belongs on the sub-route
+                int subsegmentStartOffset =
+                        segment.getStartOffset()
+                                + Math.max(startOffset - offset, 0);
+                int subsegmentLength =
+                        (Math.min(endOffset - offset, segment.getLength()) -
+                                Math.max(startOffset - offset, 0));
+                subsegments.add(new Segment(segment.getSection(), segment
+                        .getDepartingEndPoint(), subsegmentStartOffset,
+                        subsegmentStartOffset + subsegmentLength));
+            }
+            offset += segment.getLength();
+        }
+        return new Route(subsegments);
+    }
+
+    /**
+     * Returns true if and only if the given routes intersect.
+     * 
+     * @require route != null && other != null
+     */
+    public static boolean intersects(Route route, Route other) {
+        return !route.equals(longestDisjointPrefix(route, other));
+    }
+
+    /**
+     * Returns the longest prefix of routeA that doesn't intersect with routeB.
+     * 
+     * @require routeA != null && routeB != null
+     */
+    private static Route longestDisjointPrefix(Route routeA, Route routeB) {
+        // the segments of the longest disjoint prefix of routeA
+        List<Segment> segments = new ArrayList<Segment>();
+
+        for (Segment segmentA : routeA) {
+            // calculate the longest disjoint prefix of segmentA and routeB
+            Segment prefix = segmentA;
+            for (Segment segmentB : routeB) {
+                prefix = longestDisjointPrefix(prefix, segmentB);
+                if (prefix == null) {
+                    // only the empty prefix of segmentA doesn't intersect: the
+                    // result calculated so far is the longest disjoint prefix
+                    return new Route(segments);
+                }
+            }
+            segments.add(prefix);
+            if (!segmentA.equals(prefix)) {
+                // segmentA does intersect with routeB: the
+                // result calculated so far is the longest disjoint prefix
+                return new Route(segments);
+            }
+        }
+        return new Route(segments);
+    }
+
+    /**
+     * Returns the longest prefix of segmentA that doesn't intersect with
+     * segmentB. The value null is returned if such a segment would be empty or
+     * have length 0.
+     * 
+     * @require segmentA != null && segmentB != null
+     */
+    private static Segment longestDisjointPrefix(Segment segmentA,
+            Segment segmentB) {
+        if (!segmentA.getSection().equals(segmentB.getSection())) {
+            // (i) They are not on the same section.
+            // Only the first or last locations might overlap in this case.
+
+            if (segmentB.contains(segmentA.getFirstLocation())) {
+                // the longest disjoint prefix is empty
+                return null;
+            } else if (segmentB.contains(segmentA.getLastLocation())) {
+                // the prefix has all but the last location of segmentA
+                if (segmentA.getLength() == 1) {
+                    return null; // the longest disjoint prefix has length 0
+                } else {
+                    return new Segment(segmentA.getSection(), segmentA
+                            .getDepartingEndPoint(), segmentA.getStartOffset(),
+                            segmentA.getEndOffset() - 1);
+                }
+            } else {
+                // segmentA and segmentB do not intersect
+                return segmentA;
+            }
+        } else {
+            // (ii) They are on the same section.
+            // We first invert segmentB's direction if necessary so that its
+            // interval on the section can be readily compared to segmentA's.
+            if (!segmentB.getDepartingEndPoint().equals(
+                    segmentA.getDepartingEndPoint())) {
+                segmentB = invertDirection(segmentB);
+            }
+
+            if (segmentA.getEndOffset() < segmentB.getStartOffset()
+                    || segmentB.getEndOffset() < segmentA.getStartOffset()) {
+                // the intervals do not overlap
+                return segmentA;
+            } else {
+                // the intervals do overlap
+                if (segmentB.getStartOffset() <= segmentA.getStartOffset()) {
+                    // the first location in segmentA is also in segmentB.
+                    return null; // the longest disjoint prefix is empty
+                } else {
+                    // the first location of segmentA is not in segmentB.
+                    if (segmentB.getStartOffset() - 1
+                            - segmentA.getStartOffset() < 1) {
+                        return null; // the longest disjoint prefix has length 0
+                    } else {
+                        return new Segment(segmentA.getSection(), segmentA
+                                .getDepartingEndPoint(), segmentA
+                                .getStartOffset(),
+                                segmentB.getStartOffset() - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a segment that occupies the same locations as the given segment,
+     * but whose direction of travel has been reversed.
+     * 
+     * @require segment != null
+     */
+    private static Segment invertDirection(Segment segment) {
+        // the parameters of the inverted section
+        Section section = segment.getSection();
+        JunctionBranch endPoint =
+                section.otherEndPoint(segment.getDepartingEndPoint());
+        int startOffset = section.getLength() - segment.getEndOffset();
+        int endOffset = section.getLength() - segment.getStartOffset();
+        return new Segment(section, endPoint, startOffset, endOffset);
+    }
+
+}
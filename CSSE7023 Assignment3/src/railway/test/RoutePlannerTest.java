@@ -0,0 +1,149 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.oracle.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link RoutePlanner} class, which check that its routes are
+ * as short as those found by the brute-force search of {@link RouteOracle}.
+ */
+public class RoutePlannerTest {
+
+    // no segments are occupied by other trains
+    private static final List<Segment> NO_SEGMENTS =
+            Collections.<Segment>emptyList();
+
+    /**
+     * Basic test: routes that can only reach their target by turning around
+     * on a loop that joins the FACING and REVERSE branches of a junction, and
+     * routes that start and end part-way along a section.
+     */
+    @Test(timeout = 5000)
+    public void basicTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Junction j2 = new Junction("j2");
+        Section section1 = new Section(10, new JunctionBranch(j0,
+                Branch.FACING), new JunctionBranch(j1, Branch.REVERSE));
+        Section section2 = new Section(20, new JunctionBranch(j1,
+                Branch.FACING), new JunctionBranch(j2, Branch.NORMAL));
+        // a loop at j2 that a train arriving along NORMAL can turn around on
+        Section loop = new Section(7, new JunctionBranch(j2, Branch.FACING),
+                new JunctionBranch(j2, Branch.REVERSE));
+        Track track = new Track();
+        track.addSection(section1);
+        track.addSection(section2);
+        track.addSection(loop);
+        RoutePlanner planner = new RoutePlanner(track);
+
+        // from j0 to j1, then straight on to j2
+        Route route = planner.plan(new Location(section1, section1
+                .getEndPoint(0), 0), j2);
+        Assert.assertEquals(30, route.getLength());
+        Assert.assertTrue(route.onTrack(track));
+
+        // a train part-way along section2 heading away from j1 must turn
+        // around at j2 to reach a location behind it on the same section
+        Location start = new Location(section2, section2.getEndPoint(0), 12);
+        Location behind = new Location(section2, section2.getEndPoint(0), 5);
+        Assert.assertEquals(7, planner.plan(start, behind).getLength());
+
+        // a train starting at j2 cannot reach j1 on a route that starts
+        // along the loop, but it may leave along the NORMAL branch
+        route = planner.plan(new Location(loop, loop.getEndPoint(0), 0), j1);
+        Assert.assertEquals(20, route.getLength());
+
+        // a train part-way along the loop must leave it along the FACING
+        // branch of j2, even if the REVERSE branch is nearer
+        route = planner.plan(new Location(loop, loop.getEndPoint(0), 3), j1);
+        Assert.assertEquals(3 + 20, route.getLength());
+        route = planner.plan(new Location(loop, loop.getEndPoint(1), 3), j1);
+        Assert.assertEquals(4 + 20, route.getLength());
+
+        // a route with no segments
+        Assert.assertEquals(0, planner.plan(new Location(section2, section2
+                .getEndPoint(1), 0), j2).getLength());
+        Assert.assertEquals(0, planner.plan(start, new Location(section2,
+                section2.getEndPoint(1), 8)).getLength());
+    }
+
+    /**
+     * Checks that null is returned for targets that cannot be reached: a
+     * junction that is not on the track, a junction on another part of the
+     * track, and a location that can only be reached by passing from the
+     * NORMAL to the REVERSE branch of a junction.
+     */
+    @Test(timeout = 5000)
+    public void unreachableTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Junction j2 = new Junction("j2");
+        Junction j3 = new Junction("j3");
+        Section section1 = new Section(10, new JunctionBranch(j0,
+                Branch.FACING), new JunctionBranch(j1, Branch.NORMAL));
+        Section section2 = new Section(20, new JunctionBranch(j1,
+                Branch.REVERSE), new JunctionBranch(j2, Branch.FACING));
+        Section section3 = new Section(5, new JunctionBranch(j3,
+                Branch.NORMAL), new JunctionBranch(j3, Branch.REVERSE));
+        Track track = new Track();
+        track.addSection(section1);
+        track.addSection(section2);
+        track.addSection(section3);
+        RoutePlanner planner = new RoutePlanner(track);
+        Location start = new Location(section1, section1.getEndPoint(0), 2);
+
+        Assert.assertNull(planner.plan(start, new Junction("j4")));
+        Assert.assertNull(planner.plan(start, j3));
+        Assert.assertNull(planner.plan(start, new Location(section3,
+                section3.getEndPoint(0), 1)));
+        Assert.assertNull(planner.plan(start, j2));
+        Assert.assertNull(planner.plan(start, new Location(section2,
+                section2.getEndPoint(1), 4)));
+        // but the start of section1 can be reached
+        Assert.assertEquals(2, planner.plan(start, j0).getLength());
+    }
+
+    /**
+     * Compares the routes on many small random tracks, which often have
+     * sections that join two branches of the same junction, and parts that
+     * cannot be reached from each other.
+     */
+    @Test(timeout = 30000)
+    public void randomTracksTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 1000; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(8), 1 + random.nextInt(14));
+            List<Section> sections = TrackGenerator.sections(track);
+            // the same planner is used for each query, to check that nothing
+            // is kept from one search to the next
+            RoutePlanner planner = new RoutePlanner(track);
+            for (int query = 0; query < 30; query++) {
+                Location start = RouteOracle.randomLocation(random, sections);
+                if (random.nextBoolean()) {
+                    Location target = RouteOracle.randomLocation(random,
+                            sections);
+                    RouteOracle.checkRoute(track, start, target, RouteOracle
+                            .shortestLength(sections, NO_SEGMENTS, start,
+                                    target), planner.plan(start, target));
+                } else {
+                    // a junction that may not be on the track
+                    Junction target = new Junction("j" + random.nextInt(10));
+                    Route route = planner.plan(start, target);
+                    RouteOracle.checkRoute(track, start, null, RouteOracle
+                            .shortestLength(sections, NO_SEGMENTS, start,
+                                    target), route);
+                    if (route != null && route.getLength() > 0) {
+                        Assert.assertEquals(target, RouteOracle.lastLocation(
+                                route).getEndPoint().getJunction());
+                    }
+                }
+            }
+        }
+    }
+
+}
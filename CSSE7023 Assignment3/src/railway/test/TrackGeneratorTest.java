@@ -0,0 +1,143 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.generator.TrackGenerator.Topology;
+import java.io.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TrackGenerator} and {@link RouteGenerator} classes.
+ */
+public class TrackGeneratorTest {
+
+    /**
+     * Checks that each topology generates valid tracks of the expected size,
+     * that the same generator always generates the same track, and that the
+     * track written to a file is the same as the one built in memory.
+     */
+    @Test(timeout = 30000)
+    public void tracksTest() throws Exception {
+        File file = File.createTempFile("generated", ".txt");
+        try {
+            for (Topology topology : Topology.values()) {
+                for (int junctions : new int[] { 0, 1, 2, 5, 100, 2000 }) {
+                    TrackGenerator generator = new TrackGenerator(topology,
+                            junctions, junctions);
+                    Track track = generator.track();
+                    Assert.assertTrue(track.checkInvariant());
+                    Set<Section> sections = new HashSet<Section>(TrackGenerator
+                            .sections(track));
+                    if (topology == Topology.RING) {
+                        Assert.assertEquals(junctions > 1 ? junctions : 0,
+                                sections.size());
+                    } else if (topology == Topology.TREE) {
+                        Assert.assertEquals(Math.max(junctions - 1, 0),
+                                sections.size());
+                    }
+                    Assert.assertEquals(sections, new HashSet<Section>(
+                            TrackGenerator.sections(generator.track())));
+
+                    Assert.assertEquals(sections.size(), generator
+                            .writeTrack(file.getPath()));
+                    Assert.assertEquals(sections, new HashSet<Section>(
+                            TrackGenerator.sections(TrackReader.read(file
+                                    .getPath()))));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks that the generated routes are valid routes on the track, of at
+     * most the requested number of segments, and that the same seed gives
+     * the same routes.
+     */
+    @Test(timeout = 30000)
+    public void routesTest() {
+        for (Topology topology : Topology.values()) {
+            Track track = new TrackGenerator(topology, 1000, 1).track();
+            RouteGenerator generator = new RouteGenerator(track, 2);
+            RouteGenerator same = new RouteGenerator(track, 2);
+            for (int i = 0; i < 200; i++) {
+                Route route = new Route(generator.segments(1 + i % 40));
+                Assert.assertTrue(route.onTrack(track));
+                // the number of segments of the route
+                int segments = 0;
+                for (Segment segment : route) {
+                    Assert.assertEquals(segment.getSection().getLength(),
+                            segment.getLength());
+                    segments++;
+                }
+                Assert.assertTrue(segments >= 1 && segments <= 1 + i % 40);
+                Assert.assertEquals(route, new Route(same.segments(1 + i % 40)));
+            }
+        }
+    }
+
+    /**
+     * Checks that the small random tracks and routes of the randomised tests
+     * are valid, and that the locations of a route are those it passes
+     * through.
+     */
+    @Test(timeout = 30000)
+    public void randomTest() {
+        Random random = new Random(7023);
+        for (int i = 0; i < 300; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(8), 1 + random.nextInt(12));
+            Assert.assertTrue(track.checkInvariant());
+            List<Section> sections = TrackGenerator.sections(track);
+            Assert.assertTrue(sections.size() >= 1 && sections.size() <= 12);
+            for (int j = 0; j < 20; j++) {
+                List<Segment> segments = RouteGenerator.randomRoute(random,
+                        track, sections, 6);
+                Assert.assertTrue(segments.size() >= 1
+                        && segments.size() <= 6);
+                Route route = new Route(segments);
+                Assert.assertTrue(route.onTrack(track));
+                // the locations of the route
+                List<Location> locations = RouteGenerator.locations(segments);
+                Assert.assertEquals(route.getLength() + segments.size(),
+                        locations.size());
+                Assert.assertEquals(segments.get(segments.size() - 1)
+                        .getLastLocation(), locations.get(locations.size()
+                                - 1));
+            }
+        }
+    }
+
+    /**
+     * Checks that the occupied routes of the generated trains do not
+     * intersect, and that each is a prefix of the train's requested route.
+     */
+    @Test(timeout = 30000)
+    public void trainsTest() {
+        for (Topology topology : Topology.values()) {
+            Track track = new TrackGenerator(topology, 5000, 3).track();
+            RouteGenerator generator = new RouteGenerator(track, 4);
+            List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+            List<List<Segment>> requested = new ArrayList<List<Segment>>();
+            int added = generator.trains(100, 3, 20, occupied, requested);
+            Assert.assertEquals(added, occupied.size());
+            Assert.assertEquals(added, requested.size());
+            Assert.assertTrue(added > 50);
+
+            for (int i = 0; i < added; i++) {
+                Route route = new Route(occupied.get(i));
+                Assert.assertTrue(new Route(requested.get(i)).onTrack(track));
+                Assert.assertEquals(occupied.get(i), requested.get(i).subList(
+                        0, occupied.get(i).size()));
+                for (int j = 0; j < i; j++) {
+                    Assert.assertFalse(route.intersects(new Route(occupied
+                            .get(j))));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TrackSnapshot} class, and for {@link Track#snapshot()}.
+ */
+public class TrackSnapshotTest {
+
+    /**
+     * Basic test: a snapshot of a track with two sections meeting at a
+     * junction.
+     */
+    @Test(timeout = 5000)
+    public void basicTest() throws Exception {
+        Junction j0 = new Junction("j0");
+        Junction j1 = new Junction("j1");
+        Junction j2 = new Junction("j2");
+        Section section1 = new Section(10, new JunctionBranch(j0,
+                Branch.NORMAL), new JunctionBranch(j1, Branch.FACING));
+        Section section2 = new Section(5, new JunctionBranch(j1,
+                Branch.REVERSE), new JunctionBranch(j2, Branch.FACING));
+        Track track = new Track();
+        track.addSection(section2);
+        track.addSection(section1);
+
+        TrackSnapshot snapshot = track.snapshot();
+        Assert.assertTrue(snapshot.checkInvariant());
+        Assert.assertEquals(3, snapshot.getJunctionCount());
+        Assert.assertEquals(2, snapshot.getSectionCount());
+        Assert.assertSame(snapshot, track.snapshot());
+
+        // the junction where the sections meet has two slots
+        int junction = snapshot.indexOf(j1);
+        Assert.assertEquals(j1, snapshot.getJunction(junction));
+        int first = snapshot.getFirstSlot(junction);
+        Assert.assertEquals(2, snapshot.getFirstSlot(junction + 1) - first);
+        Assert.assertEquals(Branch.FACING, snapshot.getEndPointBranch(snapshot
+                .getSlotEndPoint(first)));
+        Assert.assertEquals(Branch.REVERSE, snapshot
+                .getEndPointBranch(snapshot.getSlotEndPoint(first + 1)));
+
+        // the other end of the section on the FACING branch of j1 is at j0
+        int endPoint = snapshot.getEndPoint(junction, Branch.FACING);
+        Assert.assertEquals(section1, snapshot.getSection(endPoint / 2));
+        Assert.assertEquals(10, snapshot.getLength(endPoint / 2));
+        Assert.assertEquals(j0, snapshot.getJunction(snapshot
+                .getEndPointJunction(endPoint ^ 1)));
+        Assert.assertEquals(-1, snapshot.getEndPoint(junction, Branch.NORMAL));
+        Assert.assertNull(snapshot.getTrackSection(j1, Branch.NORMAL));
+        Assert.assertEquals(-1, snapshot.indexOf(new Junction("j3")));
+
+        // the snapshot is not affected by changes to the track
+        track.removeSection(section2);
+        Assert.assertTrue(snapshot.contains(section2));
+        Assert.assertFalse(track.snapshot().contains(section2));
+        Assert.assertNotSame(snapshot, track.snapshot());
+    }
+
+    /**
+     * Checks a snapshot of a track whose junctions were created far apart
+     * from each other (so they are looked up without a table).
+     */
+    @Test(timeout = 5000)
+    public void sparseJunctionsTest() throws Exception {
+        Junction first = new Junction("sparse-first");
+        // the junctions created between the junctions of the track
+        List<Junction> others = new ArrayList<Junction>();
+        for (int i = 0; i < 100; i++) {
+            others.add(new Junction("sparse-" + i));
+        }
+        Junction last = new Junction("sparse-last");
+        Section section = new Section(3, new JunctionBranch(first,
+                Branch.FACING), new JunctionBranch(last, Branch.NORMAL));
+        Track track = new Track();
+        track.addSection(section);
+
+        TrackSnapshot snapshot = track.snapshot();
+        Assert.assertTrue(snapshot.checkInvariant());
+        Assert.assertEquals(2, snapshot.getJunctionCount());
+        Assert.assertEquals(first, snapshot.getJunction(snapshot
+                .indexOf(first)));
+        Assert.assertEquals(last, snapshot.getJunction(snapshot
+                .indexOf(last)));
+        for (Junction other : others) {
+            Assert.assertEquals(-1, snapshot.indexOf(other));
+        }
+        Assert.assertEquals(section, snapshot.getTrackSection(last,
+                Branch.NORMAL));
+        Assert.assertTrue(new Track().snapshot().checkInvariant());
+    }
+
+    /**
+     * Checks that a snapshot of a random track agrees with the track.
+     */
+    @Test(timeout = 20000)
+    public void randomTracksTest() throws Exception {
+        Random random = new Random(7023);
+        for (int i = 0; i < 300; i++) {
+            Track track = TrackGenerator.randomTrack(random,
+                    2 + random.nextInt(20), 1 + random.nextInt(40));
+            TrackSnapshot snapshot = track.snapshot();
+            Assert.assertTrue(snapshot.checkInvariant());
+
+            Set<Section> sections = new HashSet<Section>();
+            for (Section section : snapshot) {
+                sections.add(section);
+                Assert.assertTrue(snapshot.contains(section));
+                Assert.assertEquals(section, snapshot.getSection(snapshot
+                        .indexOf(section)));
+            }
+            Assert.assertEquals(new HashSet<Section>(TrackGenerator
+                    .sections(track)), sections);
+            Assert.assertEquals(track.getJunctions().size(), snapshot
+                    .getJunctionCount());
+            for (Junction junction : track.getJunctions()) {
+                for (Branch branch : Branch.values()) {
+                    Assert.assertEquals(track.getTrackSection(junction,
+                            branch), snapshot.getTrackSection(junction,
+                            branch));
+                }
+            }
+
+            // a section with the same end-points, but a different length, is
+            // not on the track
+            if (snapshot.getSectionCount() == 0) {
+                continue;
+            }
+            Section section = snapshot.getSection(random.nextInt(snapshot
+                    .getSectionCount()));
+            Assert.assertFalse(snapshot.contains(new Section(section
+                    .getLength() + 1, section.getEndPoint(0), section
+                    .getEndPoint(1))));
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package railway.test;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TrainSimulator} class, which check that the
+ * allocations of the trains never intersect while the simulation runs, that
+ * the trains release the locations that they have passed, and that a
+ * {@link PartitionedSimulator} with a single region gives the same results.
+ */
+public class TrainSimulatorTest {
+
+    /**
+     * Runs trains on a grid, and checks their allocations after each of
+     * several periods.
+     */
+    @Test(timeout = 30000)
+    public void allocationsTest() throws Exception {
+        Track track = track();
+        RailwayModel model = model(track);
+        TrainSimulator simulator = new TrainSimulator(model, 20);
+        // the start offset of each train after the previous period
+        int[] starts = starts(model);
+        // the length of the allocation of each train when it was added
+        int[] lengths = lengths(model);
+        for (long time = 500000; time <= 60000000; time += 500000) {
+            simulator.runUntil(time);
+            simulator.updateModel();
+            checkAllocations(model, simulator.getLookahead(), starts,
+                    lengths);
+        }
+        Assert.assertTrue(simulator.getDistance() > 0);
+        Assert.assertTrue(simulator.getArrivedCount() > 0);
+    }
+
+    /**
+     * Checks that a train with nothing in its way travels the whole of its
+     * route, and keeps only the last meter of it once it has arrived.
+     */
+    @Test(timeout = 5000)
+    public void singleTrainTest() throws Exception {
+        Track track = track();
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(1, 1, 30, occupied,
+                requested);
+        Route route = new Route(requested.get(0));
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.addTrain(0, route, 0, 1);
+        TrainSimulator simulator = new TrainSimulator(model, 20);
+        simulator.setLookahead(25);
+        // at 20 meters per second, the route takes this many microseconds
+        long duration = (long) route.getLength() * 1000000 / 20;
+        simulator.runUntil(duration + 1000000);
+        simulator.updateModel();
+        Assert.assertTrue(simulator.isFinished());
+        Assert.assertEquals(1, simulator.getArrivedCount());
+        Assert.assertEquals(route.getLength() - 1, model.getTrain(0)
+                .getStartOffset());
+        Assert.assertEquals(route.getLength(), model.getTrain(0)
+                .getEndOffset());
+        Assert.assertEquals(route.getLength(), simulator.getDistance());
+    }
+
+    /**
+     * Runs the same trains with a TrainSimulator and with a
+     * PartitionedSimulator with one region, and checks that they process the
+     * same events, and leave the trains with the same allocations, after
+     * each window. Then checks that a PartitionedSimulator with several
+     * regions also keeps the allocations of the trains apart.
+     */
+    @Test(timeout = 30000)
+    public void partitionedTest() throws Exception {
+        Track track = track();
+        // the length of a window of the partitioned simulations
+        long window = 50000;
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            RailwayModel expectedModel = model(track);
+            RailwayModel actualModel = model(track);
+            TrainSimulator expected = new TrainSimulator(expectedModel, 20);
+            PartitionedSimulator actual = new PartitionedSimulator(
+                    actualModel, 20, 1, window, pool);
+            for (long time = window - 1; time < 30000000; time += 10
+                    * window) {
+                expected.runUntil(time);
+                actual.runUntil(time);
+                expected.updateModel();
+                actual.updateModel();
+                Assert.assertEquals(expected.getEventCount(), actual
+                        .getEventCount());
+                Assert.assertEquals(expected.getDistance(), actual
+                        .getDistance());
+                Assert.assertEquals(expected.getArrivedCount(), actual
+                        .getArrivedCount());
+                for (int i = 0; i < expectedModel.getTrains().size(); i++) {
+                    Assert.assertEquals(expectedModel.getTrain(i)
+                            .getStartOffset(), actualModel.getTrain(i)
+                            .getStartOffset());
+                    Assert.assertEquals(expectedModel.getTrain(i)
+                            .getEndOffset(), actualModel.getTrain(i)
+                            .getEndOffset());
+                }
+            }
+
+            RailwayModel model = model(track);
+            PartitionedSimulator partitioned = new PartitionedSimulator(
+                    model, 20, 8, window, pool);
+            int[] starts = starts(model);
+            int[] lengths = lengths(model);
+            for (long time = 500000; time <= 30000000; time += 500000) {
+                partitioned.runUntil(time);
+                partitioned.updateModel();
+                checkAllocations(model, partitioned.getLookahead(), starts,
+                        lengths);
+            }
+            Assert.assertTrue(partitioned.getDistance() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the allocations of the trains of the model do not
+     * intersect, that no train has moved backwards since its start offset
+     * was recorded in starts (which is then updated), and that no train
+     * holds more than the meter behind its head and the locations it has
+     * requested ahead of it (or, if it has not yet left it, the allocation
+     * that it was added with, whose length is in lengths).
+     */
+    private void checkAllocations(RailwayModel model, int lookahead,
+            int[] starts, int[] lengths) {
+        List<RailwayModel.Train> trains = model.getTrains();
+        for (int i = 0; i < trains.size(); i++) {
+            RailwayModel.Train train = trains.get(i);
+            Assert.assertTrue(0 <= train.getStartOffset());
+            Assert.assertTrue(train.getStartOffset() < train.getEndOffset());
+            Assert.assertTrue(train.getEndOffset() <= train.getRoute()
+                    .getLength());
+            Assert.assertTrue(train.getStartOffset() >= starts[i]);
+            starts[i] = train.getStartOffset();
+            // the passed locations, other than the one behind the head,
+            // have been released
+            Assert.assertTrue(train.getEndOffset() - train.getStartOffset()
+                    <= Math.max(lookahead + 1, lengths[i]));
+            Route allocation = train.getAllocation();
+            for (int j = 0; j < i; j++) {
+                Assert.assertFalse(allocation.intersects(trains.get(j)
+                        .getAllocation()));
+            }
+        }
+    }
+
+    /**
+     * Returns the start offsets of the trains of the model.
+     */
+    private int[] starts(RailwayModel model) {
+        int[] result = new int[model.getTrains().size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = model.getTrain(i).getStartOffset();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lengths of the allocations of the trains of the model.
+     */
+    private int[] lengths(RailwayModel model) {
+        int[] result = new int[model.getTrains().size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = model.getTrain(i).getEndOffset() - model.getTrain(i)
+                    .getStartOffset();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a model of the given track with trains whose routes cross
+     * each other, each allocated the first section of its route.
+     */
+    private RailwayModel model(Track track) {
+        List<List<Segment>> occupied = new ArrayList<List<Segment>>();
+        List<List<Segment>> requested = new ArrayList<List<Segment>>();
+        new RouteGenerator(track, 7023).trains(60, 1, 30, occupied,
+                requested);
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        for (int i = 0; i < requested.size(); i++) {
+            model.addTrain(i, new Route(requested.get(i)), 0, occupied.get(i)
+                    .get(0).getLength());
+        }
+        return model;
+    }
+
+    /**
+     * Returns the track that the trains run on.
+     */
+    private Track track() {
+        return new TrackGenerator(TrackGenerator.Topology.GRID, 100, 7023)
+                .track();
+    }
+
+}
@@ -0,0 +1,91 @@
+package railway.benchmark;
+
+import java.io.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Compares the size of the text and binary formats of track and route files,
+ * and the time taken to load each of them.
+ * </p>
+ * 
+ * <p>
+ * The number of sections on the track (and segments on the route) defaults to
+ * 1,000,000, and may be given as the first argument. Loading a million
+ * sections needs a heap of about 1GB.
+ * </p>
+ */
+public class BinaryFormatBenchmark {
+
+    /**
+     * Writes the files in each format, and prints their sizes and load times.
+     */
+    public static void main(String[] args) throws Exception {
+        // the number of sections on the track
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File trackText = tempFile(".txt");
+        File trackBinary = tempFile(".bin");
+        File routeText = tempFile(".txt");
+        File routeBinary = tempFile(".bin");
+
+        Track track = SyntheticTracks.line(size);
+        TrackWriter.write(track, trackText.getPath());
+        TrackWriter.writeBinary(track, trackBinary.getPath());
+        track = null; // allow the track to be garbage collected
+        Route route = SyntheticTracks.lineRoute(size);
+        RouteWriter.write(route, routeText.getPath());
+        RouteWriter.writeBinary(route, routeBinary.getPath());
+        route = null; // allow the route to be garbage collected
+
+        System.out.printf("%d sections: track text %.1f MB, binary %.1f MB;"
+                + " route text %.1f MB, binary %.1f MB%n", size,
+                megabytes(trackText), megabytes(trackBinary),
+                megabytes(routeText), megabytes(routeBinary));
+
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            TrackReader.read(trackText.getPath());
+            double trackTextSeconds = seconds(start);
+            start = System.nanoTime();
+            TrackReader.readBinary(trackBinary.getPath());
+            double trackBinarySeconds = seconds(start);
+            start = System.nanoTime();
+            RouteReader.read(routeText.getPath());
+            double routeTextSeconds = seconds(start);
+            start = System.nanoTime();
+            RouteReader.readBinary(routeBinary.getPath());
+            double routeBinarySeconds = seconds(start);
+
+            System.out.printf("track: text %6.2f s, binary %6.2f s;   "
+                    + "route: text %6.2f s, binary %6.2f s%n",
+                    trackTextSeconds, trackBinarySeconds, routeTextSeconds,
+                    routeBinarySeconds);
+        }
+    }
+
+    /**
+     * Returns a new temporary file with the given suffix, that is deleted
+     * when the benchmark exits.
+     */
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("railway", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Returns the size of the given file in megabytes.
+     */
+    private static double megabytes(File file) {
+        return file.length() / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Returns the number of seconds since the given System.nanoTime().
+     */
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+}
@@ -0,0 +1,119 @@
+package railway.benchmark;
+
+import java.util.*;
+
+import railway.*;
+import railway.gui.*;
+import railway.gui.ConflictFreePlanner.PlannedRoute;
+
+/**
+ * <p>
+ * Measures the time taken to plan conflict-free routes with a
+ * ConflictFreePlanner on a random track of 10,000 junctions (see
+ * SyntheticTracks.random) with thousands of trains loaded into a
+ * RailwayModel.
+ * </p>
+ * 
+ * <p>
+ * Each train follows a shortest route between two random locations, and is
+ * allocated the first 30 meters of it. For each number of trains, the
+ * benchmark reports the time taken to record the locations occupied by the
+ * trains, and the time taken per query to plan a route between random
+ * locations that avoids them. For comparison, it also reports the time
+ * taken per query to plan the shortest route ignoring the trains and check
+ * it for conflicts with a ConflictChecker, which is the first step of
+ * finding a route by trial and error.
+ * </p>
+ */
+public class ConflictFreePlannerBenchmark {
+
+    // the number of junctions of the track
+    private static final int JUNCTIONS = 10_000;
+    // the numbers of trains that are measured
+    private static final int[] TRAIN_COUNTS = { 1000, 5000 };
+    // the number of queries in each measured run
+    private static final int QUERIES = 200;
+
+    /**
+     * Loads the trains, and prints the time taken to plan routes.
+     */
+    public static void main(String[] args) {
+        Track track = SyntheticTracks.random(JUNCTIONS, JUNCTIONS);
+        RoutePlanner planner = new RoutePlanner(track);
+        TrackSnapshot snapshot = planner.getSnapshot();
+        ConflictFreePlanner conflictFreePlanner = new ConflictFreePlanner(
+                track);
+        ConflictChecker checker = new ConflictChecker();
+
+        for (int trainCount : TRAIN_COUNTS) {
+            RailwayModel model = new RailwayModel();
+            model.setTrack(track);
+            Random random = new Random(trainCount);
+            while (model.getTrains().size() < trainCount) {
+                Route route = planner.plan(randomLocation(snapshot, random),
+                        randomLocation(snapshot, random));
+                if (route != null && route.getLength() > 0) {
+                    model.addTrain(model.getTrains().size(), route, 0, Math
+                            .min(30, route.getLength()));
+                }
+            }
+
+            for (int run = 0; run < 5; run++) {
+                List<ConflictChecker.Allocation> allocations = ConflictChecker
+                        .snapshot(model.getTrains(), -1);
+                long start = System.nanoTime();
+                TrackOccupancy occupied = conflictFreePlanner
+                        .occupancy(allocations);
+                double occupancyMillis = (System.nanoTime() - start) / 1e6;
+
+                int complete = 0; // the number of routes that reach the target
+                start = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++) {
+                    PlannedRoute planned = conflictFreePlanner.plan(
+                            randomLocation(snapshot, random), randomLocation(
+                                    snapshot, random), occupied);
+                    if (planned != null && planned.isComplete()) {
+                        complete++;
+                    }
+                }
+                double planMillis = (System.nanoTime() - start) / 1e6
+                        / QUERIES;
+
+                int conflicts = 0; // the number of routes that conflict
+                start = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++) {
+                    Route route = planner.plan(randomLocation(snapshot,
+                            random), randomLocation(snapshot, random));
+                    if (route != null && route.getLength() > 0
+                            && checker.findConflict(route, allocations) != -1) {
+                        conflicts++;
+                    }
+                }
+                double checkMillis = (System.nanoTime() - start) / 1e6
+                        / QUERIES;
+
+                System.out.printf("%d trains: occupancy %.2f ms, "
+                        + "conflict-free plan %.3f ms per query (%d of %d "
+                        + "complete), plan and check %.3f ms per query "
+                        + "(%d of %d conflict)%n", trainCount,
+                        occupancyMillis, planMillis, complete, QUERIES,
+                        checkMillis, conflicts, QUERIES);
+            }
+        }
+    }
+
+    /**
+     * Returns a random location part-way along a random section of the given
+     * snapshot.
+     * 
+     * @require snapshot.getSectionCount() > 0
+     */
+    private static Location randomLocation(TrackSnapshot snapshot,
+            Random random) {
+        Section section = snapshot.getSection(random.nextInt(snapshot
+                .getSectionCount()));
+        return new Location(section, section.getEndPoint(random.nextInt(2)),
+                1 + random.nextInt(section.getLength() - 1));
+    }
+
+}
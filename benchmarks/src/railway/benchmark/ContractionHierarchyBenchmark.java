@@ -0,0 +1,113 @@
+package railway.benchmark;
+
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the time taken to build a ContractionHierarchy for random tracks
+ * (see SyntheticTracks.random) of 2,000 and 10,000 junctions, and the time
+ * taken by it to plan shortest routes between random locations, compared
+ * with the time taken by a RoutePlanner for the same queries.
+ * </p>
+ * 
+ * <p>
+ * Since the sections of a random track join junctions chosen at random, any
+ * two parts of the track are close together, and many shortcuts are needed:
+ * such a track is close to the worst case for building a hierarchy, and the
+ * time taken to build one grows much faster than the size of the track.
+ * </p>
+ * 
+ * <p>
+ * The queries are those of the RoutePlannerBenchmark: each starts at a
+ * random location part-way along a random section, and alternately targets
+ * a random junction and a random location part-way along a random section.
+ * </p>
+ */
+public class ContractionHierarchyBenchmark {
+
+    // the number of junctions of the tracks that are measured
+    private static final int[] JUNCTION_COUNTS = { 2000, 10_000 };
+    // the number of queries in each measured run
+    private static final int QUERIES = 200;
+
+    /**
+     * Builds each track and hierarchy, and prints the time taken per query.
+     */
+    public static void main(String[] args) {
+        for (int junctionCount : JUNCTION_COUNTS) {
+            Track track = SyntheticTracks.random(junctionCount, junctionCount);
+            TrackSnapshot snapshot = track.snapshot();
+            long start = System.nanoTime();
+            ContractionHierarchy hierarchy = new ContractionHierarchy(
+                    snapshot);
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%d junctions, %d sections: built in %.0f ms "
+                    + "with %d shortcuts%n", junctionCount, snapshot
+                    .getSectionCount(), buildMillis, hierarchy
+                    .getShortcutCount());
+            RoutePlanner planner = new RoutePlanner(snapshot);
+
+            for (int run = 0; run < 5; run++) {
+                // the queries of the run, which are the same for both
+                List<Location> starts = new ArrayList<Location>();
+                List<Object> targets = new ArrayList<Object>();
+                Random random = new Random(run);
+                for (int i = 0; i < QUERIES; i++) {
+                    starts.add(randomLocation(snapshot, random));
+                    targets.add(i % 2 == 0 ? snapshot.getJunction(random
+                            .nextInt(snapshot.getJunctionCount()))
+                            : randomLocation(snapshot, random));
+                }
+
+                long length = 0; // the total length of the routes found
+                start = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++) {
+                    Route route = targets.get(i) instanceof Junction
+                            ? hierarchy.plan(starts.get(i), (Junction) targets
+                                    .get(i)) : hierarchy.plan(starts.get(i),
+                                    (Location) targets.get(i));
+                    if (route != null) {
+                        length += route.getLength();
+                    }
+                }
+                double hierarchyMillis = (System.nanoTime() - start) / 1e6
+                        / QUERIES;
+
+                long expected = 0; // the total length of the planned routes
+                start = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++) {
+                    Route route = targets.get(i) instanceof Junction
+                            ? planner.plan(starts.get(i), (Junction) targets
+                                    .get(i)) : planner.plan(starts.get(i),
+                                    (Location) targets.get(i));
+                    if (route != null) {
+                        expected += route.getLength();
+                    }
+                }
+                double plannerMillis = (System.nanoTime() - start) / 1e6
+                        / QUERIES;
+                System.out.printf("%d junctions: hierarchy %.3f ms per query, "
+                        + "planner %.3f ms per query (total lengths %s)%n",
+                        junctionCount, hierarchyMillis, plannerMillis,
+                        length == expected ? "equal" : "DIFFER");
+            }
+        }
+    }
+
+    /**
+     * Returns a random location part-way along a random section of the given
+     * snapshot.
+     * 
+     * @require snapshot.getSectionCount() > 0
+     */
+    private static Location randomLocation(TrackSnapshot snapshot,
+            Random random) {
+        Section section = snapshot.getSection(random.nextInt(snapshot
+                .getSectionCount()));
+        return new Location(section, section.getEndPoint(random.nextInt(2)),
+                1 + random.nextInt(section.getLength() - 1));
+    }
+
+}
@@ -0,0 +1,180 @@
+package railway.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the distance oracles on random tracks (see
+ * SyntheticTracks.random): a DistanceTable for a track of 2,000 junctions,
+ * and LandmarkDistances with 16 landmarks for a track of 100,000 junctions.
+ * </p>
+ * 
+ * <p>
+ * For each oracle, the benchmark reports the time taken to build it, the
+ * heap memory that it uses, and the time taken per query to look up the
+ * distance between random junctions. For the table, it also reports the
+ * time taken to write it to a file and read it back. For the landmarks, it
+ * compares the approximate distances with the exact distances found by a
+ * RoutePlanner for a sample of the queries, and reports how far they are
+ * out.
+ * </p>
+ */
+public class DistanceOracleBenchmark {
+
+    // the number of junctions of the track measured with a table
+    private static final int TABLE_JUNCTIONS = 2000;
+    // the number of junctions of the track measured with landmarks
+    private static final int LANDMARK_JUNCTIONS = 100_000;
+    // the number of landmarks
+    private static final int LANDMARKS = 16;
+    // the number of queries in each measured run
+    private static final int QUERIES = 1_000_000;
+    // the number of queries whose approximate distance is checked
+    private static final int CHECKED_QUERIES = 200;
+
+    /**
+     * Builds each oracle, and prints its measurements.
+     */
+    public static void main(String[] args) throws Exception {
+        Track track = SyntheticTracks.random(TABLE_JUNCTIONS, TABLE_JUNCTIONS);
+        TrackSnapshot snapshot = track.snapshot();
+        long memory = usedMemory();
+        long start = System.nanoTime();
+        DistanceTable table = new DistanceTable(snapshot);
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        memory = usedMemory() - memory;
+        System.out.printf("table, %d junctions: built in %.0f ms, %.1f MB%n",
+                TABLE_JUNCTIONS, buildMillis, memory / 1e6);
+        measureQueries("table", table);
+
+        File file = File.createTempFile("distances", ".bin");
+        try {
+            for (int run = 0; run < 3; run++) {
+                start = System.nanoTime();
+                table.write(file.getPath());
+                double writeMillis = (System.nanoTime() - start) / 1e6;
+                start = System.nanoTime();
+                DistanceTable read = DistanceTable.read(file.getPath(), track);
+                double readMillis = (System.nanoTime() - start) / 1e6;
+                System.out.printf("table file of %.1f MB: written in %.0f ms, "
+                        + "read in %.0f ms (%s)%n", file.length() / 1e6,
+                        writeMillis, readMillis, read.distance(0, 1) == table
+                                .distance(0, 1) ? "same" : "different");
+            }
+        } finally {
+            file.delete();
+        }
+        table = null;
+
+        track = SyntheticTracks.random(LANDMARK_JUNCTIONS,
+                LANDMARK_JUNCTIONS);
+        snapshot = track.snapshot();
+        memory = usedMemory();
+        start = System.nanoTime();
+        LandmarkDistances landmarks = new LandmarkDistances(snapshot,
+                LANDMARKS);
+        buildMillis = (System.nanoTime() - start) / 1e6;
+        memory = usedMemory() - memory;
+        System.out.printf("%d landmarks, %d junctions: built in %.0f ms, "
+                + "%.1f MB%n", LANDMARKS, LANDMARK_JUNCTIONS, buildMillis,
+                memory / 1e6);
+        measureQueries("landmarks", landmarks);
+
+        // compare the approximate distances with the exact ones
+        RoutePlanner planner = new RoutePlanner(snapshot);
+        Random random = new Random(0);
+        int checked = 0; // the number of queries with a known exact distance
+        int exact = 0; // the number of approximate distances that are exact
+        int unknown = 0; // the number of distances that are not known
+        double totalError = 0; // the sum of the relative errors
+        double maxError = 0; // the largest relative error
+        while (checked < CHECKED_QUERIES) {
+            int from = random.nextInt(LANDMARK_JUNCTIONS);
+            int to = random.nextInt(LANDMARK_JUNCTIONS);
+            Location location = junctionLocation(snapshot, from);
+            if (from == to || location == null) {
+                continue;
+            }
+            Route route = planner.plan(location, snapshot.getJunction(to));
+            if (route == null) {
+                continue;
+            }
+            checked++;
+            long distance = landmarks.distance(from, to);
+            if (distance == -1) {
+                unknown++;
+            } else if (distance == route.getLength()) {
+                exact++;
+            } else {
+                // the error, relative to the exact distance
+                double error = (distance - route.getLength())
+                        / (double) route.getLength();
+                totalError += error;
+                maxError = Math.max(maxError, error);
+            }
+        }
+        System.out.printf("landmarks: %d of %d exact, %d unknown, mean error "
+                + "%.1f%%, largest error %.1f%%%n", exact, checked, unknown,
+                100 * totalError / Math.max(checked - unknown, 1),
+                100 * maxError);
+    }
+
+    /**
+     * Prints the time taken per query to look up the distances between
+     * random junctions in the given oracle.
+     * 
+     * @require oracle != null && oracle.getSnapshot().getJunctionCount() > 0
+     */
+    private static void measureQueries(String name, DistanceOracle oracle) {
+        // the number of junctions of the track
+        int junctionCount = oracle.getSnapshot().getJunctionCount();
+        for (int run = 0; run < 5; run++) {
+            Random random = new Random(run);
+            long found = 0; // the number of distances known
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (oracle.distance(random.nextInt(junctionCount), random
+                        .nextInt(junctionCount)) != -1) {
+                    found++;
+                }
+            }
+            double nanos = (System.nanoTime() - start) / (double) QUERIES;
+            System.out.printf("%s: %.0f ns per query (%d of %d known)%n",
+                    name, nanos, found, QUERIES);
+        }
+    }
+
+    /**
+     * Returns a location at the given junction of the given snapshot, or null
+     * if no section of the track meets the junction.
+     */
+    private static Location junctionLocation(TrackSnapshot snapshot,
+            int junction) {
+        for (Branch branch : Branch.values()) {
+            // the end-point of the junction along the branch
+            int endPoint = snapshot.getEndPoint(junction, branch);
+            if (endPoint != -1) {
+                Section section = snapshot.getSection(endPoint >> 1);
+                return new Location(section, section.getEndPoint(endPoint
+                        & 1), 0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes of heap in use, after a garbage collection.
+     */
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
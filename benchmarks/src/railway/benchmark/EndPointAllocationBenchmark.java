@@ -0,0 +1,145 @@
+package railway.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the number of bytes allocated per operation when checking whether
+ * a junction-branch pair is an end-point of a section, when constructing
+ * locations and segments, when obtaining a junction-branch pair, and when
+ * looking up the section of a track connected to a junction along a branch.
+ * </p>
+ * 
+ * <p>
+ * The old path checks membership using Section.getEndPoints(), which copies
+ * the end-points into a new set on every call. The new path uses
+ * Section.hasEndPoint, which is what the Location and Segment constructors now
+ * use. Similarly, new JunctionBranch allocates a new pair, whereas
+ * JunctionBranch.of returns a canonical one, which is what
+ * Track.getTrackSection and the readers now use.
+ * </p>
+ * 
+ * <p>
+ * Allocation is measured with the com.sun.management extension of the
+ * ThreadMXBean, which is available on HotSpot-based JVMs.
+ * </p>
+ */
+public class EndPointAllocationBenchmark {
+
+    // the number of operations performed in each measured run
+    private static final int OPERATIONS = 1_000_000;
+
+    // the thread bean used to measure the bytes allocated by this thread
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+
+    // consumed by each operation so that it is not optimised away
+    private static long sink;
+
+    /**
+     * Runs each operation, and prints the bytes allocated and time taken per
+     * operation.
+     */
+    public static void main(String[] args) {
+        Section[] sections = new Section[64];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = SyntheticTracks.lineSection(i);
+        }
+
+        Track track = SyntheticTracks.line(sections.length);
+
+        for (int warmUp = 0; warmUp < 3; warmUp++) {
+            runAll(sections, track, false);
+        }
+        runAll(sections, track, true);
+    }
+
+    /**
+     * Runs each of the operations being compared, printing the results if
+     * report is true.
+     */
+    private static void runAll(Section[] sections, Track track,
+            boolean report) {
+        measure("getEndPoints().contains (old)", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                if (section.getEndPoints().contains(
+                        section.getEndPoint(i & 1))) {
+                    sink++;
+                }
+            }
+        });
+        measure("hasEndPoint (new)", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                if (section.hasEndPoint(section.getEndPoint(i & 1))) {
+                    sink++;
+                }
+            }
+        });
+        measure("new Location", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                sink += new Location(section, section.getEndPoint(i & 1), 1)
+                        .getOffset();
+            }
+        });
+        measure("new Segment", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                sink += new Segment(section, section.getEndPoint(i & 1), 1, 2)
+                        .getLength();
+            }
+        });
+        measure("new JunctionBranch (old)", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Junction junction = sections[i % sections.length]
+                        .getEndPoint(0).getJunction();
+                sink += new JunctionBranch(junction, Branch.REVERSE)
+                        .hashCode();
+            }
+        });
+        measure("JunctionBranch.of (new)", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Junction junction = sections[i % sections.length]
+                        .getEndPoint(0).getJunction();
+                sink += JunctionBranch.of(junction, Branch.REVERSE)
+                        .hashCode();
+            }
+        });
+        measure("Track.getTrackSection", report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                JunctionBranch endPoint = sections[i % sections.length]
+                        .getEndPoint(i & 1);
+                if (track.getTrackSection(endPoint.getJunction(),
+                        endPoint.getBranch()) != null) {
+                    sink++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given operations, and prints the bytes allocated and time taken
+     * per operation if report is true.
+     */
+    private static void measure(String name, boolean report,
+            Runnable operations) {
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        operations.run();
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = THREAD_BEAN.getThreadAllocatedBytes(threadId)
+                - startBytes;
+        if (report) {
+            System.out.printf("%-32s %8.1f bytes/op %8.1f ns/op%n", name,
+                    (double) allocated / OPERATIONS,
+                    (double) elapsed / OPERATIONS);
+        }
+    }
+
+}
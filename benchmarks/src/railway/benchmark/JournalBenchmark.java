@@ -0,0 +1,126 @@
+package railway.benchmark;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+
+/**
+ * <p>
+ * Measures the time taken to record, decode and replay a journal of the
+ * changes made to a RailwayModel (see ModelJournal and JournalReplayer).
+ * </p>
+ *
+ * <p>
+ * The journal records 10,000 trains being added to a model of a grid track
+ * of 200,000 junctions (as in SimulationBenchmark), followed by the changes
+ * to their offsets made by a TrainSimulator that updates the model after
+ * every 10 seconds of simulated time, for 20 minutes. The benchmark reports
+ * the number of events recorded per second while the simulation runs, the
+ * size of the journal, and the number of events per second decoded and
+ * replayed, and checks that the replayed model has the same trains as the
+ * simulated one.
+ * </p>
+ */
+public class JournalBenchmark {
+
+    // the number of junctions of the track
+    private static final int JUNCTIONS = 200_000;
+    // the number of trains added to the model
+    private static final int TRAINS = 10_000;
+    // the largest number of sections of a route
+    private static final int ROUTE_SECTIONS = 200;
+    // the simulated time between updates of the model, and the total
+    // simulated time, in microseconds
+    private static final long UPDATE_INTERVAL = 10_000_000;
+    private static final long DURATION = 1_200_000_000;
+
+    /**
+     * Records the journal, and prints the time taken to decode and replay
+     * it.
+     */
+    public static void main(String[] args) throws IOException,
+            FormatException {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID,
+                JUNCTIONS, 1).track();
+        RouteGenerator generator = new RouteGenerator(track, 2);
+        List<List<Segment>> occupied = new ArrayList<>();
+        List<List<Segment>> requested = new ArrayList<>();
+        generator.trains(TRAINS, 1, ROUTE_SECTIONS, occupied, requested);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ModelJournal journal = new ModelJournal(bytes);
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        model.setJournal(journal);
+        long start = System.nanoTime();
+        for (int i = 0; i < requested.size(); i++) {
+            model.addTrain(i, new Route(requested.get(i)), 0, occupied.get(i)
+                    .get(0).getLength());
+        }
+        double addMillis = (System.nanoTime() - start) / 1e6;
+        TrainSimulator simulator = new TrainSimulator(model, 20);
+        long updateNanos = 0; // the time taken to update the model
+        for (long time = 0; time <= DURATION; time += UPDATE_INTERVAL) {
+            simulator.runUntil(time);
+            start = System.nanoTime();
+            simulator.updateModel();
+            updateNanos += System.nanoTime() - start;
+        }
+        journal.close();
+        long events = journal.getEventCount();
+        System.out.printf("recorded %d events (%d trains added in %.1f ms, "
+                + "%.2f million offsets set per second), %.1f MB, %.1f "
+                + "bytes per event%n", events, requested.size(), addMillis,
+                (events - requested.size()) / (updateNanos / 1e9) / 1e6, bytes
+                        .size() / 1e6, (double) bytes.size() / events);
+
+        byte[] contents = bytes.toByteArray();
+        for (int run = 0; run < 5; run++) {
+            start = System.nanoTime();
+            JournalReplayer replayer = new JournalReplayer(ByteBuffer.wrap(
+                    contents));
+            double decodeSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            int replays = 0; // the number of times the journal was replayed
+            RailwayModel replayed;
+            do {
+                replayed = replayer.replay(track);
+                replays++;
+            } while (System.nanoTime() - start < 1_000_000_000L);
+            double replaySeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("decode %.2f million events/s, replay %.2f "
+                    + "million events/s, replayed model matches: %b%n",
+                    replayer.getEventCount() / decodeSeconds / 1e6,
+                    (double) replayer.getEventCount() * replays
+                            / replaySeconds / 1e6, matches(model, replayed));
+        }
+    }
+
+    /**
+     * Returns true if the given models have the same trains, with the same
+     * identifiers, routes and offsets, in the same order.
+     */
+    private static boolean matches(RailwayModel model, RailwayModel other) {
+        if (model.getTrains().size() != other.getTrains().size()) {
+            return false;
+        }
+        for (int i = 0; i < model.getTrains().size(); i++) {
+            RailwayModel.Train train = model.getTrain(i);
+            RailwayModel.Train otherTrain = other.getTrain(i);
+            if (train.getIdentifier() != otherTrain.getIdentifier()
+                    || !train.getRoute().equals(otherTrain.getRoute())
+                    || train.getStartOffset() != otherTrain.getStartOffset()
+                    || train.getEndOffset() != otherTrain.getEndOffset()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,112 @@
+package railway.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the memory used by a large track read from a file, and the
+ * throughput of hash-based lookups of junctions, end-points and sections,
+ * where the keys looked up are equal to (but not the same instances as) the
+ * keys stored.
+ * </p>
+ * 
+ * <p>
+ * The number of sections on the track defaults to 1,000,000, and may be given
+ * as the first argument. Loading a million sections needs a heap of about
+ * 1GB.
+ * </p>
+ */
+public class JunctionInterningBenchmark {
+
+    // the number of lookups performed in each timed run
+    private static final int LOOKUPS = 5_000_000;
+
+    /**
+     * Reads the track, and prints the memory it uses and the lookup times.
+     */
+    public static void main(String[] args) throws Exception {
+        // the number of sections on the track
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = File.createTempFile("track", ".txt");
+        file.deleteOnExit();
+        TrackReaderBenchmark.writeLineTrack(file, size);
+
+        long before = usedMemory();
+        Track track = TrackReader.read(file.getPath());
+        long after = usedMemory();
+        System.out.printf("%d sections: %.1f MB retained by the track "
+                + "(%.0f bytes per section)%n", size,
+                (after - before) / (1024.0 * 1024.0), (after - before)
+                        / (double) size);
+
+        // the keys stored in the collections, as read from the file
+        Set<Junction> junctions = track.getJunctions();
+        Set<Section> sections = new HashSet<>();
+        Map<JunctionBranch, Section> endPoints = new HashMap<>();
+        for (Section section : track) {
+            sections.add(section);
+            endPoints.put(section.getEndPoint(0), section);
+        }
+
+        // equal keys to look up, which are new instances
+        Random random = new Random(size);
+        Junction[] junctionQueries = new Junction[4096];
+        JunctionBranch[] endPointQueries = new JunctionBranch[4096];
+        Section[] sectionQueries = new Section[4096];
+        for (int i = 0; i < sectionQueries.length; i++) {
+            Section section = SyntheticTracks.lineSection(random
+                    .nextInt(size));
+            junctionQueries[i] = new Junction(section.getEndPoint(0)
+                    .getJunction().getJunctionId());
+            endPointQueries[i] = section.getEndPoint(0);
+            sectionQueries[i] = section;
+        }
+
+        for (int run = 0; run < 5; run++) {
+            int found = 0; // consumed so that lookups are not optimised away
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (junctions.contains(junctionQueries[i & 4095])) {
+                    found++;
+                }
+            }
+            double junctionNanos = (System.nanoTime() - start)
+                    / (double) LOOKUPS;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (endPoints.get(endPointQueries[i & 4095]) != null) {
+                    found++;
+                }
+            }
+            double endPointNanos = (System.nanoTime() - start)
+                    / (double) LOOKUPS;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (sections.contains(sectionQueries[i & 4095])) {
+                    found++;
+                }
+            }
+            double sectionNanos = (System.nanoTime() - start)
+                    / (double) LOOKUPS;
+            System.out.printf("lookups: junction %6.1f ns, end-point %6.1f "
+                    + "ns, section %6.1f ns (%d found)%n", junctionNanos,
+                    endPointNanos, sectionNanos, found);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of heap in use, after a garbage collection.
+     */
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,166 @@
+package railway.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the time taken and bytes allocated per operation when comparing
+ * locations as objects and as packed long values, and when constructing and
+ * querying whether routes intersect (both of which now compare packed
+ * locations).
+ * </p>
+ * 
+ * <p>
+ * The old path describes each location as a Location object and compares it
+ * with Location.equals, or looks it up in a HashSet of locations. The new
+ * path packs the location into a long (see Location.pack), which needs no
+ * allocation and compares equivalent locations with a single comparison.
+ * </p>
+ * 
+ * <p>
+ * Allocation is measured with the com.sun.management extension of the
+ * ThreadMXBean, which is available on HotSpot-based JVMs.
+ * </p>
+ */
+public class LocationPackingBenchmark {
+
+    // the number of operations performed in each measured run
+    private static final int OPERATIONS = 1_000_000;
+    // the number of segments of the routes that are constructed
+    private static final int ROUTE_SEGMENTS = 1000;
+
+    // the thread bean used to measure the bytes allocated by this thread
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+
+    // consumed by each operation so that it is not optimised away
+    private static long sink;
+
+    /**
+     * Runs each operation, and prints the bytes allocated and time taken per
+     * operation.
+     */
+    public static void main(String[] args) {
+        Section[] sections = new Section[64];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = SyntheticTracks.lineSection(i);
+        }
+        // the segments of a route along the sections
+        List<Segment> segments = lineSegments(0, ROUTE_SEGMENTS);
+
+        for (int warmUp = 0; warmUp < 3; warmUp++) {
+            runAll(sections, segments, false);
+        }
+        runAll(sections, segments, true);
+    }
+
+    /**
+     * Runs each of the operations being compared, printing the results if
+     * report is true.
+     */
+    private static void runAll(Section[] sections, List<Segment> segments,
+            boolean report) {
+        // the locations on the sections (other than at their junctions)
+        Set<Location> locations = new HashSet<>();
+        for (Section section : sections) {
+            for (int offset = 1; offset < section.getLength(); offset++) {
+                locations.add(new Location(section, section.getEndPoint(0),
+                        offset));
+            }
+        }
+
+        measure("Location.equals (old)", OPERATIONS, report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                int length = section.getLength();
+                if (new Location(section, section.getEndPoint(0), 3).equals(
+                        new Location(section, section.getEndPoint(1),
+                                length - 3))) {
+                    sink++;
+                }
+            }
+        });
+        measure("Location.pack == (new)", OPERATIONS, report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                int length = section.getLength();
+                if (Location.pack(section, section.getEndPoint(0), 3)
+                        == Location.pack(section, section.getEndPoint(1),
+                                length - 3)) {
+                    sink++;
+                }
+            }
+        });
+        measure("HashSet<Location>.contains", OPERATIONS, report, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                Section section = sections[i % sections.length];
+                if (locations.contains(new Location(section, section
+                        .getEndPoint(1), 1 + i % (section.getLength() - 1)))) {
+                    sink++;
+                }
+            }
+        });
+        measure("new Route (per segment)", ROUTE_SEGMENTS * 100, report,
+                () -> {
+                    for (int i = 0; i < 100; i++) {
+                        sink += new Route(segments).getLength();
+                    }
+                });
+        // a route along the sections that follow those of the segments
+        Route route = new Route(segments);
+        Route disjoint = new Route(lineSegments(ROUTE_SEGMENTS + 1,
+                2 * ROUTE_SEGMENTS + 1));
+        route.intersects(disjoint);
+        measure("Route.intersects (per segment)", ROUTE_SEGMENTS * 1000,
+                report, () -> {
+                    for (int i = 0; i < 1000; i++) {
+                        if (route.intersects(disjoint)) {
+                            sink++;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns the segments along the full length of the sections of the
+     * track SyntheticTracks.line(n) from section start (inclusive) to section
+     * end (exclusive).
+     * 
+     * @require 0 <= start <= end
+     */
+    private static List<Segment> lineSegments(int start, int end) {
+        // the segments to be returned
+        List<Segment> result = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            Section section = SyntheticTracks.lineSection(i);
+            result.add(new Segment(section, section.getEndPoint(0), 0,
+                    section.getLength()));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the given operations, and prints the bytes allocated and time taken
+     * per operation if report is true.
+     */
+    private static void measure(String name, int operationCount,
+            boolean report, Runnable operations) {
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        operations.run();
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = THREAD_BEAN.getThreadAllocatedBytes(threadId)
+                - startBytes;
+        if (report) {
+            System.out.printf("%-32s %8.1f bytes/op %8.1f ns/op%n", name,
+                    (double) allocated / operationCount,
+                    (double) elapsed / operationCount);
+        }
+    }
+
+}
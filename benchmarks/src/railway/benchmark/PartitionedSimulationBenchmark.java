@@ -0,0 +1,110 @@
+package railway.benchmark;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+
+/**
+ * <p>
+ * Measures how the throughput of a PartitionedSimulator scales with the
+ * number of threads, on the trains and track of SimulationBenchmark.
+ * </p>
+ *
+ * <p>
+ * The track is divided into 64 regions, and the simulation is run with
+ * windows of 100 ms in a ForkJoinPool of 1, 2, 4, ... threads, up to the
+ * number of available processors (or the number given as the first
+ * argument). Since the result of a simulation does not depend on the number
+ * of threads, each run also prints the distance travelled and the number of
+ * trains that arrived, which should be the same for every number of
+ * threads. For comparison, the benchmark first reports the throughput of a
+ * TrainSimulator, which does not divide the track.
+ * </p>
+ */
+public class PartitionedSimulationBenchmark {
+
+    // the number of junctions of the track
+    private static final int JUNCTIONS = 200_000;
+    // the number of trains simulated
+    private static final int TRAINS = 10_000;
+    // the largest number of sections of a route
+    private static final int ROUTE_SECTIONS = 200;
+    // the number of regions that the track is divided into
+    private static final int REGIONS = 64;
+    // the length of each window, in microseconds
+    private static final long WINDOW = 100_000;
+    // the simulated time of each run, in microseconds
+    private static final long DURATION = 3_600_000_000L;
+
+    /**
+     * Loads the trains, and prints the throughput of the simulation for each
+     * number of threads.
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID,
+                JUNCTIONS, 1).track();
+        RouteGenerator generator = new RouteGenerator(track, 2);
+        List<List<Segment>> occupied = new ArrayList<>();
+        List<List<Segment>> requested = new ArrayList<>();
+        generator.trains(TRAINS, 1, ROUTE_SECTIONS, occupied, requested);
+
+        for (int run = 0; run < 3; run++) {
+            TrainSimulator simulator = new TrainSimulator(model(track,
+                    occupied, requested), 20);
+            long start = System.nanoTime();
+            simulator.runUntil(DURATION);
+            report("unpartitioned", System.nanoTime() - start, simulator
+                    .getDistance(), simulator.getArrivedCount());
+        }
+
+        for (int threads = 1; threads <= maxThreads; threads = threads
+                < maxThreads ? Math.min(2 * threads, maxThreads)
+                        : threads + 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (int run = 0; run < 3; run++) {
+                PartitionedSimulator simulator = new PartitionedSimulator(
+                        model(track, occupied, requested), 20, REGIONS,
+                        WINDOW, pool);
+                long start = System.nanoTime();
+                simulator.runUntil(DURATION - 1);
+                report(threads + " threads", System.nanoTime() - start,
+                        simulator.getDistance(), simulator.getArrivedCount());
+            }
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns a model of the given track with a train for each requested
+     * route, allocated the first section of the route.
+     */
+    private static RailwayModel model(Track track,
+            List<List<Segment>> occupied, List<List<Segment>> requested) {
+        RailwayModel model = new RailwayModel();
+        model.setTrack(track);
+        for (int i = 0; i < requested.size(); i++) {
+            model.addTrain(i, new Route(requested.get(i)), 0, occupied.get(i)
+                    .get(0).getLength());
+        }
+        return model;
+    }
+
+    /**
+     * Prints the throughput of a run that took the given number of
+     * nanoseconds.
+     */
+    private static void report(String name, long nanoseconds, long distance,
+            int arrived) {
+        double seconds = nanoseconds / 1e9;
+        System.out.printf("%s: %.0f train-km/s, %.0fx real time (%d m "
+                + "travelled, %d arrived)%n", name, distance / 1000.0
+                        / seconds, DURATION / 1e6 / seconds, distance,
+                arrived);
+    }
+
+}
@@ -0,0 +1,75 @@
+package railway.benchmark;
+
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the time taken by RoutePlanner to plan shortest routes between
+ * random locations on random tracks (see SyntheticTracks.random) of 10,000
+ * and 100,000 junctions.
+ * </p>
+ * 
+ * <p>
+ * Each query starts at a random location part-way along a random section,
+ * and alternately targets a random junction and a random location part-way
+ * along a random section. Since the queries are random, most of them search
+ * a large part of the track, so the times are close to the worst case.
+ * </p>
+ */
+public class RoutePlannerBenchmark {
+
+    // the number of junctions of the tracks that are measured
+    private static final int[] JUNCTION_COUNTS = { 10_000, 100_000 };
+    // the number of queries in each measured run
+    private static final int QUERIES = 200;
+
+    /**
+     * Builds each track, and prints the time taken per query.
+     */
+    public static void main(String[] args) {
+        for (int junctionCount : JUNCTION_COUNTS) {
+            Track track = SyntheticTracks.random(junctionCount, junctionCount);
+            RoutePlanner planner = new RoutePlanner(track);
+            TrackSnapshot snapshot = planner.getSnapshot();
+            for (int run = 0; run < 5; run++) {
+                Random random = new Random(run);
+                long found = 0; // the number of routes found
+                long length = 0; // the total length of the routes found
+                long start = System.nanoTime();
+                for (int i = 0; i < QUERIES; i++) {
+                    Location from = randomLocation(snapshot, random);
+                    Route route = i % 2 == 0 ? planner.plan(from, snapshot
+                            .getJunction(random.nextInt(snapshot
+                                    .getJunctionCount()))) : planner.plan(
+                            from, randomLocation(snapshot, random));
+                    if (route != null) {
+                        found++;
+                        length += route.getLength();
+                    }
+                }
+                double millis = (System.nanoTime() - start) / 1e6 / QUERIES;
+                System.out.printf("%d junctions, %d sections: %.3f ms per "
+                        + "query (%d of %d found, mean length %.0f)%n",
+                        junctionCount, snapshot.getSectionCount(), millis,
+                        found, QUERIES, length / (double) Math.max(found, 1));
+            }
+        }
+    }
+
+    /**
+     * Returns a random location part-way along a random section of the given
+     * snapshot.
+     * 
+     * @require snapshot.getSectionCount() > 0
+     */
+    private static Location randomLocation(TrackSnapshot snapshot,
+            Random random) {
+        Section section = snapshot.getSection(random.nextInt(snapshot
+                .getSectionCount()));
+        return new Location(section, section.getEndPoint(random.nextInt(2)),
+                1 + random.nextInt(section.getLength() - 1));
+    }
+
+}
@@ -0,0 +1,73 @@
+package railway.benchmark;
+
+import java.util.*;
+
+import railway.*;
+import railway.generator.*;
+import railway.gui.*;
+
+/**
+ * <p>
+ * Measures the throughput of a TrainSimulator with 10,000 trains on a grid
+ * track of 200,000 junctions (see TrackGenerator).
+ * </p>
+ *
+ * <p>
+ * The trains follow random routes of up to 200 sections (see
+ * RouteGenerator.trains), each allocated the first section of its route,
+ * and travel at random speeds of 10 to 40 meters per second. For each run,
+ * the benchmark simulates an hour of the trains' movement, and reports the
+ * distance travelled per second of real time (in train-km per second), the
+ * number of events processed per second, and how many times faster than
+ * real time the simulation ran.
+ * </p>
+ */
+public class SimulationBenchmark {
+
+    // the number of junctions of the track
+    private static final int JUNCTIONS = 200_000;
+    // the number of trains simulated
+    private static final int TRAINS = 10_000;
+    // the largest number of sections of a route
+    private static final int ROUTE_SECTIONS = 200;
+    // the simulated time of each run, in microseconds
+    private static final long DURATION = 3_600_000_000L;
+
+    /**
+     * Loads the trains, and prints the throughput of the simulation.
+     */
+    public static void main(String[] args) {
+        Track track = new TrackGenerator(TrackGenerator.Topology.GRID,
+                JUNCTIONS, 1).track();
+        RouteGenerator generator = new RouteGenerator(track, 2);
+        List<List<Segment>> occupied = new ArrayList<>();
+        List<List<Segment>> requested = new ArrayList<>();
+        generator.trains(TRAINS, 1, ROUTE_SECTIONS, occupied, requested);
+
+        for (int run = 0; run < 5; run++) {
+            RailwayModel model = new RailwayModel();
+            model.setTrack(track);
+            for (int i = 0; i < requested.size(); i++) {
+                model.addTrain(i, new Route(requested.get(i)), 0, occupied
+                        .get(i).get(0).getLength());
+            }
+            long start = System.nanoTime();
+            TrainSimulator simulator = new TrainSimulator(model, 10);
+            Random random = new Random(run);
+            for (int i = 0; i < requested.size(); i++) {
+                simulator.setSpeed(i, 10 + 30 * random.nextDouble());
+            }
+            double setupMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            long events = simulator.runUntil(DURATION);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d trains: setup %.1f ms, %.0f train-km/s, "
+                    + "%.2f million events/s, %.0fx real time (%d arrived)%n",
+                    requested.size(), setupMillis, simulator.getDistance()
+                            / 1000.0 / seconds, events / seconds / 1e6,
+                    DURATION / 1e6 / seconds, simulator.getArrivedCount());
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package railway.benchmark;
+
+import java.util.*;
+
+import railway.*;
+import railway.generator.*;
+
+/**
+ * Builds synthetic tracks of a given size for use in the benchmarks.
+ */
+public class SyntheticTracks {
+
+    /**
+     * <p>
+     * Returns a track that forms a single line of the given number of
+     * sections.
+     * </p>
+     * 
+     * <p>
+     * Section i of the track (for 0 <= i < sectionCount) connects junction
+     * "j{i}" along its NORMAL branch to junction "j{i+1}" along its FACING
+     * branch, and has a length of between 10 and 19 meters.
+     * </p>
+     * 
+     * @require sectionCount >= 0
+     * @ensure Returns a valid track that contains exactly sectionCount
+     *         sections, laid out as described above.
+     */
+    public static Track line(int sectionCount) {
+        Track track = new Track(); // the track under construction
+        for (int i = 0; i < sectionCount; i++) {
+            track.addSection(lineSection(i));
+        }
+        return track;
+    }
+
+    /**
+     * Returns the section with the given index on a track constructed using
+     * the line method.
+     * 
+     * @require index >= 0
+     * @ensure Returns section index of the track line(n), for any n > index.
+     */
+    public static Section lineSection(int index) {
+        // the end-points of the section
+        JunctionBranch endPoint1 = JunctionBranch.of(
+                JunctionRegistry.intern("j" + index), Branch.NORMAL);
+        JunctionBranch endPoint2 = JunctionBranch.of(
+                JunctionRegistry.intern("j" + (index + 1)), Branch.FACING);
+        return new Section(10 + index % 10, endPoint1, endPoint2);
+    }
+
+    /**
+     * <p>
+     * Returns a random track on the given number of junctions, generated
+     * from the given seed.
+     * </p>
+     * 
+     * <p>
+     * The junctions of the track are named "r{i}" (for 0 <= i <
+     * junctionCount). The end-points of the junctions (one on each branch of
+     * each junction) are shuffled and paired off, and each pair (other than a
+     * pair of end-points of the same junction) is joined by a section with a
+     * length of between 10 and 109 meters. So most junctions have a section
+     * on each of their three branches, and the track usually has a large
+     * connected part. (This is the RANDOM topology of TrackGenerator.)
+     * </p>
+     * 
+     * @require junctionCount >= 0
+     * @ensure Returns a valid track, which is the same for the same
+     *         parameters.
+     */
+    public static Track random(int junctionCount, long seed) {
+        return new TrackGenerator(TrackGenerator.Topology.RANDOM,
+                junctionCount, seed).track();
+    }
+
+    /**
+     * Returns a route along the track line(n), for any n >= segmentCount,
+     * that starts at junction "j0" and travels the full length of each of the
+     * first segmentCount sections of the track.
+     * 
+     * @require segmentCount >= 0
+     */
+    public static Route lineRoute(int segmentCount) {
+        // the segments of the route
+        List<Segment> segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            Section section = lineSection(i);
+            segments.add(new Segment(section, section.getEndPoint(0), 0,
+                    section.getLength()));
+        }
+        return new Route(segments);
+    }
+
+}
@@ -0,0 +1,117 @@
+package railway.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures the time taken by TrackReader.read, TrackReader.readMapped and
+ * TrackReader.readParallel to load a large track file.
+ * </p>
+ * 
+ * <p>
+ * For comparison, it also measures the time taken to only tokenize the same
+ * file the way that TrackReader.read used to: with a java.util.Scanner for the
+ * file, and another for each line. (This is a lower bound on the time that
+ * the old reader took, since it does not include building the track.)
+ * </p>
+ * 
+ * <p>
+ * The number of lines in the file defaults to 1,000,000, and may be given as
+ * the first argument. Loading a million sections needs a heap of about 1GB.
+ * </p>
+ */
+public class TrackReaderBenchmark {
+
+    /**
+     * Writes the track file, and prints the time taken to read it each way.
+     */
+    public static void main(String[] args) throws Exception {
+        // the number of lines in the file
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = File.createTempFile("track", ".txt");
+        file.deleteOnExit();
+        writeLineTrack(file, lines);
+        // the size of the file in megabytes
+        double megabytes = file.length() / (1024.0 * 1024.0);
+        System.out.printf("%d lines, %.1f MB%n", lines, megabytes);
+
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            Track track = TrackReader.read(file.getPath());
+            double readSeconds = (System.nanoTime() - start) / 1e9;
+            track = null; // allow the track to be garbage collected
+
+            start = System.nanoTime();
+            track = TrackReader.readMapped(file.getPath());
+            double mappedSeconds = (System.nanoTime() - start) / 1e9;
+            track = null;
+
+            start = System.nanoTime();
+            track = TrackReader.readParallel(file.getPath());
+            double parallelSeconds = (System.nanoTime() - start) / 1e9;
+            track = null;
+
+            start = System.nanoTime();
+            int tokens = tokenizeWithScanner(file);
+            double scanSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("TrackReader.read: %6.2f s (%6.1f MB/s)   "
+                    + "TrackReader.readMapped: %6.2f s (%6.1f MB/s)%n"
+                    + "TrackReader.readParallel: %6.2f s (%6.1f MB/s)   "
+                    + "Scanner tokenizing only: %6.2f s (%6.1f MB/s, "
+                    + "%d tokens)%n", readSeconds, megabytes / readSeconds,
+                    mappedSeconds, megabytes / mappedSeconds,
+                    parallelSeconds, megabytes / parallelSeconds,
+                    scanSeconds, megabytes / scanSeconds, tokens);
+        }
+    }
+
+    /**
+     * Writes a track file to the given file, describing the track
+     * SyntheticTracks.line(lines).
+     * 
+     * @require file != null && lines >= 0
+     */
+    static void writeLineTrack(File file, int lines) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(
+                new FileWriter(file)))) {
+            for (int i = 0; i < lines; i++) {
+                Section section = SyntheticTracks.lineSection(i);
+                JunctionBranch endPoint1 = section.getEndPoint(0);
+                JunctionBranch endPoint2 = section.getEndPoint(1);
+                out.println(section.getLength() + " "
+                        + endPoint1.getJunction() + " "
+                        + endPoint1.getBranch() + " "
+                        + endPoint2.getJunction() + " "
+                        + endPoint2.getBranch());
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the given track file in the same way that TrackReader.read
+     * used to, and returns the number of tokens read.
+     */
+    private static int tokenizeWithScanner(File file) throws IOException {
+        int tokens = 0; // the number of tokens read
+        try (Scanner in = new Scanner(new FileReader(file))) {
+            while (in.hasNextLine()) {
+                try (Scanner lineScanner = new Scanner(in.nextLine())) {
+                    if (lineScanner.hasNextInt()) {
+                        lineScanner.nextInt();
+                        tokens++;
+                    }
+                    while (lineScanner.hasNext()) {
+                        lineScanner.next();
+                        tokens++;
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,97 @@
+package railway.benchmark;
+
+import java.util.*;
+
+import railway.*;
+
+/**
+ * Compares the cost of looking up the section connected to a junction along a
+ * branch using Track.getTrackSection, against a scan over the sections of the
+ * track (the way that the lookup used to be performed).
+ */
+public class TrackSectionLookupBenchmark {
+
+    // the number of lookups performed in each timed run
+    private static final int LOOKUPS = 200_000;
+
+    /**
+     * Runs the benchmark on tracks of increasing size, and prints the average
+     * time per lookup for each approach.
+     */
+    public static void main(String[] args) {
+        for (int sectionCount : new int[] { 1_000, 10_000, 40_000 }) {
+            Track track = SyntheticTracks.line(sectionCount);
+            // the end-points to look up, chosen uniformly across the track
+            JunctionBranch[] queries = new JunctionBranch[1024];
+            Random random = new Random(sectionCount);
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = new JunctionBranch(new Junction("j"
+                        + random.nextInt(sectionCount)), Branch.NORMAL);
+            }
+
+            // the scan is much slower, so it is timed on fewer lookups
+            int scanLookups = Math.max(1, LOOKUPS / sectionCount);
+            for (int warmUp = 0; warmUp < 3; warmUp++) {
+                timeIndexed(track, queries, LOOKUPS);
+                timeScan(track, queries, scanLookups);
+            }
+            System.out.printf("%7d sections: indexed %10.1f ns/lookup, "
+                    + "scan %12.1f ns/lookup%n", sectionCount,
+                    timeIndexed(track, queries, LOOKUPS),
+                    timeScan(track, queries, scanLookups));
+        }
+    }
+
+    /**
+     * Returns the average time in nanoseconds of a lookup using
+     * Track.getTrackSection.
+     */
+    private static double timeIndexed(Track track, JunctionBranch[] queries,
+            int lookups) {
+        int found = 0; // consumed so that the lookups are not optimised away
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            JunctionBranch query = queries[i % queries.length];
+            if (track.getTrackSection(query.getJunction(),
+                    query.getBranch()) != null) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        check(found, lookups);
+        return (double) elapsed / lookups;
+    }
+
+    /**
+     * Returns the average time in nanoseconds of a lookup performed by
+     * scanning the end-points of every section on the track.
+     */
+    private static double timeScan(Track track, JunctionBranch[] queries,
+            int lookups) {
+        int found = 0; // consumed so that the lookups are not optimised away
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            JunctionBranch query = queries[i % queries.length];
+            for (Section section : track) {
+                if (section.getEndPoints().contains(query)) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        check(found, lookups);
+        return (double) elapsed / lookups;
+    }
+
+    /**
+     * Checks that every lookup found a section.
+     */
+    private static void check(int found, int lookups) {
+        if (found != lookups) {
+            throw new IllegalStateException("Only " + found + " of "
+                    + lookups + " lookups found a section.");
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package railway.benchmark;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Compares the memory used by a large track and by a snapshot of it, the time
+ * taken to build the snapshot, and the throughput of looking up the section
+ * on a branch of a junction using the track, the snapshot (by junction), and
+ * the snapshot (by junction number). The snapshot lookups are also run from
+ * several threads at once, since a snapshot needs no locking.
+ * </p>
+ *
+ * <p>
+ * The number of sections on the track defaults to 1,000,000, and may be given
+ * as the first argument. A million sections needs a heap of about 1GB.
+ * </p>
+ */
+public class TrackSnapshotBenchmark {
+
+    // the number of lookups performed in each timed run
+    private static final int LOOKUPS = 5_000_000;
+
+    /**
+     * Builds the track and its snapshot, and prints the memory they use and
+     * the lookup times.
+     */
+    public static void main(String[] args) throws Exception {
+        // the number of sections on the track
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long before = usedMemory();
+        Track track = SyntheticTracks.line(size);
+        long afterTrack = usedMemory();
+        long start = System.nanoTime();
+        TrackSnapshot snapshot = track.snapshot();
+        long elapsed = System.nanoTime() - start;
+        long afterSnapshot = usedMemory();
+        System.out.printf("%d sections: track %.0f bytes per section, "
+                + "snapshot %.0f bytes per section, built in %.0f ms%n", size,
+                (afterTrack - before) / (double) size,
+                (afterSnapshot - afterTrack) / (double) size, elapsed / 1e6);
+
+        // the junctions and junction numbers to look up
+        Random random = new Random(size);
+        Junction[] junctions = new Junction[4096];
+        int[] numbers = new int[junctions.length];
+        for (int i = 0; i < junctions.length; i++) {
+            junctions[i] = SyntheticTracks.lineSection(random.nextInt(size))
+                    .getEndPoint(0).getJunction();
+            numbers[i] = snapshot.indexOf(junctions[i]);
+        }
+
+        for (int run = 0; run < 5; run++) {
+            int found = 0; // consumed so that lookups are not optimised away
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (track.getTrackSection(junctions[i & 4095],
+                        Branch.NORMAL) != null) {
+                    found++;
+                }
+            }
+            double trackNanos = (System.nanoTime() - start)
+                    / (double) LOOKUPS;
+            start = System.nanoTime();
+            found += lookUpJunctions(snapshot, junctions);
+            double snapshotNanos = (System.nanoTime() - start)
+                    / (double) LOOKUPS;
+            start = System.nanoTime();
+            found += lookUpNumbers(snapshot, numbers);
+            double numberNanos = (System.nanoTime() - start)
+                    / (double) LOOKUPS;
+            System.out.printf("lookups: track %6.1f ns, snapshot %6.1f ns, "
+                    + "snapshot by number %6.1f ns (%d found)%n", trackNanos,
+                    snapshotNanos, numberNanos, found);
+        }
+
+        // the number of threads to look up sections from concurrently
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int run = 0; run < 3; run++) {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(() -> lookUpJunctions(snapshot, junctions));
+            }
+            start = System.nanoTime();
+            int found = 0; // consumed so that lookups are not optimised away
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                found += result.get();
+            }
+            elapsed = System.nanoTime() - start;
+            System.out.printf("%d threads: %.1f million snapshot lookups per "
+                    + "second (%d found)%n", threads, threads * LOOKUPS
+                    / (elapsed / 1e3), found);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Looks up the section on the NORMAL branch of each of the given junctions
+     * in turn, LOOKUPS times in all, and returns the number found.
+     */
+    private static int lookUpJunctions(TrackSnapshot snapshot,
+            Junction[] junctions) {
+        int found = 0; // the number of sections found
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (snapshot.getTrackSection(junctions[i & 4095],
+                    Branch.NORMAL) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Looks up the end-point on the NORMAL branch of each of the junctions
+     * with the given numbers in turn, LOOKUPS times in all, and returns the
+     * number found.
+     */
+    private static int lookUpNumbers(TrackSnapshot snapshot, int[] numbers) {
+        int found = 0; // the number of end-points found
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (snapshot.getEndPoint(numbers[i & 4095], Branch.NORMAL) != -1) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the number of bytes of heap in use, after a garbage collection.
+     */
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,62 @@
+package railway.jmh;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures Allocator.allocate (from Assignment 2) for trains spread along a
+ * line track (see SyntheticTracks.line) of each size.
+ * </p>
+ * 
+ * <p>
+ * There is a train for every 100 sections of the track. Train i occupies
+ * the 5 sections starting with section 100 * i, and requests the 150
+ * sections starting there (or as many of them as there are), so each
+ * request runs into the train ahead, and is cut short.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class AllocatorBenchmark {
+
+    // the number of sections of the track
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int sectionCount;
+
+    // the routes occupied and requested by the trains
+    private List<List<Segment>> occupied;
+    private List<List<Segment>> requested;
+
+    /**
+     * Builds the routes of the trains.
+     */
+    @Setup(Level.Trial)
+    public void buildTrains() {
+        occupied = new ArrayList<>();
+        requested = new ArrayList<>();
+        for (int first = 0; first < sectionCount; first += 100) {
+            occupied.add(LineRoutes.segments(first, Math.min(5, sectionCount
+                    - first)));
+            requested.add(LineRoutes.segments(first, Math.min(150,
+                    sectionCount - first)));
+        }
+    }
+
+    /**
+     * Allocates routes to the trains.
+     */
+    @Benchmark
+    public List<List<Segment>> allocate() {
+        return Allocator.allocate(occupied, requested);
+    }
+
+}
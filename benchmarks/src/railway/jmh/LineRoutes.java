@@ -0,0 +1,38 @@
+package railway.jmh;
+
+import java.util.*;
+
+import railway.*;
+import railway.benchmark.SyntheticTracks;
+
+/**
+ * Builds routes along the synthetic line tracks (see SyntheticTracks.line)
+ * that the benchmarks run on.
+ */
+final class LineRoutes {
+
+    /**
+     * This class only has static methods.
+     */
+    private LineRoutes() {
+    }
+
+    /**
+     * Returns the segments of a route along a line track that travels the
+     * full length of each of the given number of sections, starting with the
+     * given section.
+     * 
+     * @require first >= 0 && count >= 0
+     */
+    static List<Segment> segments(int first, int count) {
+        // the segments of the route
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            Section section = SyntheticTracks.lineSection(i);
+            segments.add(new Segment(section, section.getEndPoint(0), 0,
+                    section.getLength()));
+        }
+        return segments;
+    }
+
+}
@@ -0,0 +1,96 @@
+package railway.jmh;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import railway.*;
+import railway.benchmark.SyntheticTracks;
+
+/**
+ * <p>
+ * Measures Location.equals and Location.hashCode for locations on random
+ * sections of a line track (see SyntheticTracks.line) of each size.
+ * </p>
+ * 
+ * <p>
+ * Each location is compared with an equivalent location that is measured
+ * from the other end-point of its section, and with the next location,
+ * which is on a different section.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LocationBenchmark {
+
+    // the number of locations that are cycled through (a power of two)
+    private static final int LOCATIONS = 4096;
+
+    // the number of sections of the track
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int sectionCount;
+
+    // the locations, and the equivalent locations measured from the other
+    // end-points of their sections
+    private Location[] locations;
+    private Location[] equivalents;
+    // the position of the next location to use
+    private int next;
+
+    /**
+     * Chooses the locations.
+     */
+    @Setup(Level.Trial)
+    public void chooseLocations() {
+        Random random = new Random(sectionCount);
+        locations = new Location[LOCATIONS];
+        equivalents = new Location[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            Section section = SyntheticTracks.lineSection(random
+                    .nextInt(sectionCount));
+            // the end-point the location is measured from, and its offset
+            // (which is not 0, so that the equivalent location is measured
+            // from the other end-point)
+            int endPoint = random.nextInt(2);
+            int offset = 1 + random.nextInt(section.getLength() - 1);
+            locations[i] = new Location(section, section
+                    .getEndPoint(endPoint), offset);
+            equivalents[i] = new Location(section, section
+                    .getEndPoint(1 - endPoint), section.getLength() - offset);
+        }
+    }
+
+    /**
+     * Returns the hash code of the next location.
+     */
+    @Benchmark
+    public int hashCodeOf() {
+        return locations[next++ & (LOCATIONS - 1)].hashCode();
+    }
+
+    /**
+     * Compares the next location with its equivalent location.
+     */
+    @Benchmark
+    public boolean equalsEquivalent() {
+        // the position of the location
+        int i = next++ & (LOCATIONS - 1);
+        return locations[i].equals(equivalents[i]);
+    }
+
+    /**
+     * Compares the next location with the one after it.
+     */
+    @Benchmark
+    public boolean equalsDifferent() {
+        // the position of the location
+        int i = next++ & (LOCATIONS - 1);
+        return locations[i].equals(locations[(i + 1) & (LOCATIONS - 1)]);
+    }
+
+}
@@ -0,0 +1,77 @@
+package railway.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import railway.*;
+import railway.benchmark.SyntheticTracks;
+
+/**
+ * <p>
+ * Measures the time taken by TrackReader.read to read a line track (see
+ * SyntheticTracks.line) of each size from a text file, and by
+ * RouteReader.read to read a route along the whole of the track.
+ * </p>
+ * 
+ * <p>
+ * The files are written to temporary files once for each size, before the
+ * measurements start.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ReaderBenchmark {
+
+    // the number of sections of the track
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int sectionCount;
+
+    // the files that the track and the route are read from
+    private File trackFile;
+    private File routeFile;
+
+    /**
+     * Writes the track and route files.
+     */
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        trackFile = File.createTempFile("track", ".txt");
+        routeFile = File.createTempFile("route", ".txt");
+        TrackWriter.write(SyntheticTracks.line(sectionCount), trackFile
+                .getPath());
+        RouteWriter.write(SyntheticTracks.lineRoute(sectionCount), routeFile
+                .getPath());
+    }
+
+    /**
+     * Deletes the track and route files.
+     */
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        trackFile.delete();
+        routeFile.delete();
+    }
+
+    /**
+     * Reads the track file.
+     */
+    @Benchmark
+    public Track readTrack() throws IOException, FormatException {
+        return TrackReader.read(trackFile.getPath());
+    }
+
+    /**
+     * Reads the route file.
+     */
+    @Benchmark
+    public Route readRoute() throws IOException, FormatException {
+        return RouteReader.read(routeFile.getPath());
+    }
+
+}
@@ -0,0 +1,83 @@
+package railway.jmh;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Measures Route.intersects and Route.getSubroute on routes along a line
+ * track (see SyntheticTracks.line) of each size.
+ * </p>
+ * 
+ * <p>
+ * The intersects benchmarks check a route along the first half of the track
+ * against one along the second half (which do not intersect, so that every
+ * segment must be checked), and against one along the middle of the track
+ * (which do). The getSubroute benchmark takes the middle half of a route
+ * along the whole track.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class RouteBenchmark {
+
+    // the number of sections of the track
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int sectionCount;
+
+    // a route along the whole track
+    private Route route;
+    // routes along the first half, the second half (leaving a section
+    // between them) and the middle of the track
+    private Route firstHalf;
+    private Route secondHalf;
+    private Route middle;
+
+    /**
+     * Builds the routes.
+     */
+    @Setup(Level.Trial)
+    public void buildRoutes() {
+        // the number of sections in half of the track
+        int half = sectionCount / 2;
+        route = new Route(LineRoutes.segments(0, sectionCount));
+        firstHalf = new Route(LineRoutes.segments(0, half));
+        secondHalf = new Route(LineRoutes.segments(half + 1, sectionCount
+                - half - 1));
+        middle = new Route(LineRoutes.segments(half / 2, half));
+    }
+
+    /**
+     * Checks two routes that do not intersect.
+     */
+    @Benchmark
+    public boolean intersectsDisjoint() {
+        return firstHalf.intersects(secondHalf);
+    }
+
+    /**
+     * Checks two routes that intersect.
+     */
+    @Benchmark
+    public boolean intersectsOverlapping() {
+        return firstHalf.intersects(middle);
+    }
+
+    /**
+     * Takes the middle half of the route along the whole track.
+     */
+    @Benchmark
+    public Route getSubroute() {
+        // the length of the route
+        int length = route.getLength();
+        return route.getSubroute(length / 4, 3 * (length / 4));
+    }
+
+}
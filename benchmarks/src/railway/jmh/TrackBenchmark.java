@@ -0,0 +1,65 @@
+package railway.jmh;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import railway.*;
+import railway.benchmark.SyntheticTracks;
+
+/**
+ * Measures Track.getTrackSection on a line track (see SyntheticTracks.line)
+ * of each size, for random junctions of the track and random branches, so
+ * that about two thirds of the lookups find a section.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class TrackBenchmark {
+
+    // the number of lookups that are cycled through (a power of two)
+    private static final int LOOKUPS = 4096;
+
+    // the number of sections of the track
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int sectionCount;
+
+    // the track
+    private Track track;
+    // the junctions and branches that are looked up
+    private Junction[] junctions;
+    private Branch[] branches;
+    // the position of the next lookup
+    private int next;
+
+    /**
+     * Builds the track and chooses the lookups.
+     */
+    @Setup(Level.Trial)
+    public void buildTrack() {
+        track = SyntheticTracks.line(sectionCount);
+        Random random = new Random(sectionCount);
+        junctions = new Junction[LOOKUPS];
+        branches = new Branch[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            junctions[i] = new Junction("j" + random.nextInt(sectionCount
+                    + 1));
+            branches[i] = Branch.values()[random.nextInt(3)];
+        }
+    }
+
+    /**
+     * Looks up the next junction and branch.
+     */
+    @Benchmark
+    public Section getTrackSection() {
+        // the position of the lookup
+        int i = next++ & (LOOKUPS - 1);
+        return track.getTrackSection(junctions[i], branches[i]);
+    }
+
+}
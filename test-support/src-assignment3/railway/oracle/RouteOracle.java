@@ -0,0 +1,287 @@
+package railway.oracle;
+
+import java.util.*;
+
+import org.junit.Assert;
+
+import railway.*;
+
+/**
+ * <p>
+ * Brute-force answers and checks shared by the tests of the route planners
+ * of Assignment 3: random locations on a track, the length of a shortest
+ * route found by moving a train one meter at a time, and the checks that a
+ * planned route is on the track, starts and ends in the right places and is
+ * as short as expected.
+ * </p>
+ *
+ * <p>
+ * The search treats the locations on a given list of occupied segments as
+ * blocked, so the same search checks both the planners that ignore other
+ * trains (with no occupied segments) and those that plan around them. It is
+ * only fast enough for small tracks, such as those built by
+ * TrackGenerator.randomTrack.
+ * </p>
+ */
+public final class RouteOracle {
+
+    /**
+     * This class only has static methods.
+     */
+    private RouteOracle() {
+    }
+
+    /**
+     * Returns a random location on one of the given sections, which is at a
+     * junction one time in four.
+     *
+     * @require random != null && sections is a non-empty list of sections
+     */
+    public static Location randomLocation(Random random,
+            List<Section> sections) {
+        Section section = sections.get(random.nextInt(sections.size()));
+        return new Location(section, section.getEndPoint(random.nextInt(2)),
+                random.nextInt(4) == 0 ? 0 : random.nextInt(section
+                        .getLength()));
+    }
+
+    /**
+     * Returns the last location of the given route.
+     *
+     * @require route != null && the route has at least one segment
+     */
+    public static Location lastLocation(Route route) {
+        Segment last = null;
+        for (Segment segment : route) {
+            last = segment;
+        }
+        return last.getLastLocation();
+    }
+
+    /**
+     * Returns the length of a shortest route from the junction numbered from
+     * to the junction numbered to in the snapshot of the planner, or -1 if
+     * there is none.
+     *
+     * @require planner != null && 0 <= from, to < the number of junctions of
+     *          the snapshot of the planner
+     */
+    public static long exactDistance(RoutePlanner planner, int from,
+            int to) {
+        TrackSnapshot snapshot = planner.getSnapshot();
+        // an end-point at the junction that the route starts from
+        int endPoint = snapshot.getSlotEndPoint(snapshot.getFirstSlot(from));
+        Section section = snapshot.getSection(endPoint >> 1);
+        Route route = planner.plan(new Location(section, section.getEndPoint(
+                endPoint & 1), 0), snapshot.getJunction(to));
+        return route == null ? -1 : route.getLength();
+    }
+
+    /**
+     * Checks that the actual route is on the track, starts at the start
+     * location and ends at the target location (if it is not null), and has
+     * the expected length (or is null if the expected length is -1).
+     *
+     * @require track != null && start != null
+     */
+    public static void checkRoute(Track track, Location start,
+            Location target, long expected, Route actual) {
+        if (expected == -1) {
+            Assert.assertNull(actual);
+            return;
+        }
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected, actual.getLength());
+        Assert.assertTrue(actual.onTrack(track));
+        if (actual.getLength() > 0) {
+            Assert.assertEquals(start, actual.iterator().next()
+                    .getFirstLocation());
+            if (target != null) {
+                Assert.assertEquals(target, lastLocation(actual));
+            }
+        }
+    }
+
+    /**
+     * Returns the length of a shortest route on the given sections from the
+     * start location to the target location that passes through none of the
+     * locations on the occupied segments, or -1 if there is none.
+     *
+     * @require sections != null && occupied != null && start != null &&
+     *          target != null
+     */
+    public static long shortestLength(List<Section> sections,
+            List<Segment> occupied, Location start, Location target) {
+        return search(sections, occupied, start, target, null);
+    }
+
+    /**
+     * Returns the length of a shortest route on the given sections from the
+     * start location to the target junction that passes through none of the
+     * locations on the occupied segments, or -1 if there is none.
+     *
+     * @require sections != null && occupied != null && start != null &&
+     *          target != null
+     */
+    public static long shortestLength(List<Section> sections,
+            List<Segment> occupied, Location start, Junction target) {
+        return search(sections, occupied, start, null, target);
+    }
+
+    /**
+     * Returns the distance along the route to the last location before the
+     * first of its locations that lies on one of the occupied segments, or
+     * the length of the route if none of them do.
+     *
+     * @require occupied != null && route != null && the first location of
+     *          the route is not occupied
+     */
+    public static int freePrefixLength(List<Segment> occupied, Route route) {
+        // the distance along the route to the start of the current segment
+        int offset = 0;
+        for (Segment segment : route) {
+            // the end-point of the section that the segment departs from
+            int e = segment.getSection().getEndPoint(0).equals(segment
+                    .getDepartingEndPoint()) ? 0 : 1;
+            for (int i = 0; i <= segment.getLength(); i++) {
+                if (isOccupied(occupied, location(segment.getSection(), e,
+                        segment.getStartOffset() + i))) {
+                    return offset + i - 1;
+                }
+            }
+            offset += segment.getLength();
+        }
+        return offset;
+    }
+
+    /**
+     * Returns true if the location lies on any of the occupied segments.
+     *
+     * @require occupied != null && location != null
+     */
+    public static boolean isOccupied(List<Segment> occupied,
+            Location location) {
+        for (Segment segment : occupied) {
+            if (segment.contains(location)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length of a shortest free route from the start location to
+     * the target location (or junction, if target is null), or -1 if there
+     * is none.
+     *
+     * The search moves the train one meter at a time. Its state is a
+     * section, the end-point of the section that the train is travelling
+     * away from, and the train's distance from that end-point. A train that
+     * reaches the end of a section may leave the junction there along any
+     * branch that it is allowed to, without travelling any further, so the
+     * states are searched with a 0-1 breadth-first search.
+     */
+    private static long search(List<Section> sections,
+            List<Segment> occupied, Location start, Location target,
+            Junction targetJunction) {
+        if (isOccupied(occupied, start)) {
+            return -1;
+        }
+        // the states to be searched, and the distance to each state found
+        Deque<int[]> queue = new ArrayDeque<int[]>();
+        Map<List<Integer>, Long> distances = new HashMap<List<Integer>,
+                Long>();
+        for (int s = 0; s < sections.size(); s++) {
+            Section section = sections.get(s);
+            for (int e = 0; e < 2; e++) {
+                JunctionBranch endPoint = section.getEndPoint(e);
+                if (start.getOffset() == 0) {
+                    if (endPoint.getJunction().equals(start.getEndPoint()
+                            .getJunction())) {
+                        visit(queue, distances, new int[] { s, e, 0 }, 0,
+                                true);
+                    }
+                } else if (section.equals(start.getSection())) {
+                    int offset = start.getEndPoint().equals(endPoint) ? start
+                            .getOffset() : section.getLength() - start
+                            .getOffset();
+                    visit(queue, distances, new int[] { s, e, offset }, 0,
+                            true);
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            int[] state = queue.pollFirst();
+            long distance = distances.get(key(state));
+            Section section = sections.get(state[0]);
+            Location location = location(section, state[1], state[2]);
+            if (target != null ? location.equals(target) : location
+                    .getOffset() == 0 && location.getEndPoint().getJunction()
+                    .equals(targetJunction)) {
+                return distance;
+            }
+            if (state[2] < section.getLength()) {
+                int[] next = { state[0], state[1], state[2] + 1 };
+                if (!isOccupied(occupied, location(section, next[1],
+                        next[2]))) {
+                    visit(queue, distances, next, distance + 1, false);
+                }
+            } else {
+                // the end-point that the train arrived along
+                JunctionBranch arrival = section.getEndPoint(1 - state[1]);
+                for (int s = 0; s < sections.size(); s++) {
+                    for (int e = 0; e < 2; e++) {
+                        JunctionBranch departure = sections.get(s)
+                                .getEndPoint(e);
+                        if (departure.getJunction().equals(arrival
+                                .getJunction()) && (arrival.getBranch()
+                                == Branch.FACING) != (departure.getBranch()
+                                == Branch.FACING)) {
+                            visit(queue, distances, new int[] { s, e, 0 },
+                                    distance, true);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records the distance to the state, and adds it to the front (if it is
+     * no further than the state being searched) or back of the queue, if it
+     * has not already been found at that distance or less.
+     */
+    private static void visit(Deque<int[]> queue,
+            Map<List<Integer>, Long> distances, int[] state, long distance,
+            boolean front) {
+        Long current = distances.get(key(state));
+        if (current == null || distance < current) {
+            distances.put(key(state), distance);
+            if (front) {
+                queue.addFirst(state);
+            } else {
+                queue.addLast(state);
+            }
+        }
+    }
+
+    /**
+     * Returns a key for the given state.
+     */
+    private static List<Integer> key(int[] state) {
+        return Arrays.asList(state[0], state[1], state[2]);
+    }
+
+    /**
+     * Returns the location at the given distance from end-point e of the
+     * section, towards its other end-point.
+     */
+    private static Location location(Section section, int e, int offset) {
+        if (offset == section.getLength()) {
+            return new Location(section, section.getEndPoint(1 - e), 0);
+        }
+        return new Location(section, section.getEndPoint(e), offset);
+    }
+
+}
@@ -0,0 +1,277 @@
+package railway.generator;
+
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Generates random valid routes on a track from a seed, for load testing,
+ * and sets of routes occupied and requested by trains in the form taken by
+ * the Allocator.allocate method of Assignment 2. A generator created with
+ * the same track and seed always generates the same sequence of routes.
+ * </p>
+ * 
+ * <p>
+ * A route starts at a junction at the end of a random section of the track
+ * and travels the full length of each of its sections. At each junction it
+ * leaves along a random branch that a train may leave along after arriving
+ * along the branch it arrived along (i.e. exactly one of the two branches is
+ * FACING), and it ends when it reaches the requested number of segments, or
+ * when it cannot go on without leaving along a branch with no section, or
+ * travelling along a section that it has already travelled along.
+ * </p>
+ */
+public class RouteGenerator {
+
+    // the track that the routes are on
+    private final Track track;
+    // the sections of the track, in the order they were first iterated over
+    private final List<Section> sections;
+    // the source of the routes
+    private final Random random;
+
+    /*
+     * invariant:
+     * 
+     * track != null && random != null && sections contains exactly the
+     * sections of track
+     */
+
+    /**
+     * Creates a generator of routes on the given track, from the given seed.
+     * The track must not be changed while the generator is in use.
+     * 
+     * @throws NullPointerException
+     *             if track is null
+     */
+    public RouteGenerator(Track track, long seed) {
+        if (track == null) {
+            throw new NullPointerException("Parameter cannot be null.");
+        }
+        this.track = track;
+        sections = new ArrayList<>();
+        for (Section section : track) {
+            sections.add(section);
+        }
+        random = new Random(seed);
+    }
+
+    /**
+     * Returns the segments of the next random route, with at least one and
+     * at most the given number of segments.
+     * 
+     * @throws IllegalArgumentException
+     *             if maxSegments is less than one, or the track has no
+     *             sections
+     * @ensure Returns the segments of a valid route on the track.
+     */
+    public List<Segment> segments(int maxSegments) {
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("A route must have at least "
+                    + "one segment.");
+        }
+        if (sections.isEmpty()) {
+            throw new IllegalArgumentException("The track has no sections.");
+        }
+        Section section = sections.get(random.nextInt(sections.size()));
+        return walk(random, track, section, section.getEndPoint(random
+                .nextInt(2)), maxSegments, new HashSet<>());
+    }
+
+    /**
+     * <p>
+     * Returns a random valid route for the randomised tests, on the given
+     * track with the given sections, with at most maxSegments segments.
+     * </p>
+     * 
+     * <p>
+     * Unlike the routes returned by segments, the number of segments of the
+     * route is chosen at random (but the route ends early if it reaches a
+     * branch with no section), the route may travel along a section more than
+     * once, and its first and last segments may start and end part-way along
+     * their sections.
+     * </p>
+     * 
+     * @require random != null && track != null && sections is a non-empty
+     *          list of the sections of track && maxSegments >= 1
+     * @ensure Returns the segments of a valid route on the track.
+     */
+    public static List<Segment> randomRoute(Random random, Track track,
+            List<Section> sections, int maxSegments) {
+        Section section = sections.get(random.nextInt(sections.size()));
+        JunctionBranch departing = section.getEndPoint(random.nextInt(2));
+        List<Segment> route = walk(random, track, section, departing,
+                1 + random.nextInt(maxSegments), null);
+
+        // shorten the first and last segments
+        Segment first = route.get(0);
+        route.set(0, new Segment(first.getSection(), first
+                .getDepartingEndPoint(), random.nextInt(first.getEndOffset()),
+                first.getEndOffset()));
+        Segment last = route.get(route.size() - 1);
+        route.set(route.size() - 1, new Segment(last.getSection(), last
+                .getDepartingEndPoint(), last.getStartOffset(), last
+                .getStartOffset() + 1 + random.nextInt(last.getLength())));
+        return route;
+    }
+
+    /**
+     * Returns the locations on the given route, in order: each location
+     * from the start offset of each segment up to (but not including) its end
+     * offset, followed by its last location.
+     * 
+     * @require route != null
+     */
+    public static List<Location> locations(List<Segment> route) {
+        List<Location> result = new ArrayList<>(); // the locations
+        for (Segment segment : route) {
+            for (int offset = segment.getStartOffset(); offset < segment
+                    .getEndOffset(); offset++) {
+                result.add(new Location(segment.getSection(), segment
+                        .getDepartingEndPoint(), offset));
+            }
+            result.add(segment.getLastLocation());
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Adds random trains to the given lists of occupied and requested routes,
+     * in the form taken by Allocator.allocate, and returns the number of
+     * trains added.
+     * </p>
+     * 
+     * <p>
+     * For each train, a requested route of at most requestedSegments segments
+     * is generated, and the train occupies the first occupiedSegments
+     * segments of it (or the whole of it, if it is shorter). A train is only
+     * added if the route it occupies meets no junction that is met by a route
+     * occupied by a train added before it (in this or an earlier call), so
+     * the occupied routes do not intersect. Up to 4 * trainCount attempts are
+     * made to add trainCount trains, so fewer are added if the track is
+     * crowded.
+     * </p>
+     * 
+     * @param trainCount
+     *            the number of trains to add
+     * @param occupiedSegments
+     *            the number of segments occupied by each train
+     * @param requestedSegments
+     *            the largest number of segments requested by each train
+     * @param occupied
+     *            the list to add the occupied routes to
+     * @param requested
+     *            the list to add the requested routes to
+     * @return the number of trains added
+     * @throws NullPointerException
+     *             if occupied or requested is null
+     * @throws IllegalArgumentException
+     *             if trainCount is negative, occupiedSegments or
+     *             requestedSegments is less than one, occupied.size() !=
+     *             requested.size(), or trainCount > 0 and the track has no
+     *             sections
+     */
+    public int trains(int trainCount, int occupiedSegments,
+            int requestedSegments, List<List<Segment>> occupied,
+            List<List<Segment>> requested) {
+        if (occupied == null || requested == null) {
+            throw new NullPointerException("Parameters cannot be null.");
+        }
+        if (trainCount < 0 || occupiedSegments < 1 || requestedSegments < 1) {
+            throw new IllegalArgumentException("The number of trains cannot "
+                    + "be negative, and routes must have at least one "
+                    + "segment.");
+        }
+        if (occupied.size() != requested.size()) {
+            throw new IllegalArgumentException("There must be a requested "
+                    + "route for each occupied route.");
+        }
+        // the junctions met by the routes already occupied
+        Set<Junction> junctions = new HashSet<>();
+        for (List<Segment> route : occupied) {
+            for (Segment segment : route) {
+                addJunctions(segment, junctions);
+            }
+        }
+
+        int added = 0; // the number of trains added
+        for (int attempt = 0; attempt < 4 * trainCount && added < trainCount;
+                attempt++) {
+            List<Segment> request = segments(requestedSegments);
+            List<Segment> occupies = new ArrayList<>(request.subList(0, Math
+                    .min(occupiedSegments, request.size())));
+            // the junctions met by the route the train would occupy
+            Set<Junction> met = new HashSet<>();
+            for (Segment segment : occupies) {
+                addJunctions(segment, met);
+            }
+            if (!Collections.disjoint(met, junctions)) {
+                continue;
+            }
+            junctions.addAll(met);
+            occupied.add(occupies);
+            requested.add(request);
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Returns the segments of a random walk along the given track that starts
+     * with the whole of the given section, departing from the given
+     * end-point, and travels the full length of each section until it has
+     * segmentCount segments or cannot go on. If travelled is not null, it
+     * holds the sections travelled along, and the walk does not travel along
+     * a section twice.
+     */
+    private static List<Segment> walk(Random random, Track track,
+            Section section, JunctionBranch departing, int segmentCount,
+            Set<Section> travelled) {
+        List<Segment> route = new ArrayList<>(); // the segments of the walk
+        // the branches that the walk can leave the next junction along
+        Branch[] branches = new Branch[2];
+        while (true) {
+            route.add(new Segment(section, departing, 0, section.getLength()));
+            if (travelled != null) {
+                travelled.add(section);
+            }
+            if (route.size() == segmentCount) {
+                break;
+            }
+            JunctionBranch approaching = section.otherEndPoint(departing);
+            int count = 0; // the number of branches to choose from
+            for (Branch branch : Branch.values()) {
+                if ((approaching.getBranch() == Branch.FACING)
+                        != (branch == Branch.FACING)) {
+                    Section next = track.getTrackSection(approaching
+                            .getJunction(), branch);
+                    if (next != null && (travelled == null || !travelled
+                            .contains(next))) {
+                        branches[count++] = branch;
+                    }
+                }
+            }
+            if (count == 0) {
+                break;
+            }
+            // the branch to leave the junction along
+            Branch branch = branches[random.nextInt(count)];
+            section = track.getTrackSection(approaching.getJunction(), branch);
+            departing = JunctionBranch.of(approaching.getJunction(), branch);
+        }
+        return route;
+    }
+
+    /**
+     * Adds the junctions at the end-points of the section of the given
+     * segment to the given set.
+     */
+    private static void addJunctions(Segment segment, Set<Junction> junctions) {
+        for (JunctionBranch endPoint : segment.getSection().getEndPoints()) {
+            junctions.add(endPoint.getJunction());
+        }
+    }
+
+}
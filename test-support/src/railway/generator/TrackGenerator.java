@@ -0,0 +1,358 @@
+package railway.generator;
+
+import java.io.*;
+import java.util.*;
+
+import railway.*;
+
+/**
+ * <p>
+ * Generates synthetic tracks of a given topology and number of junctions
+ * from a seed, for load testing. The same generator always generates the
+ * same track. The small random tracks of the randomised tests are built by
+ * the static randomTrack method.
+ * </p>
+ * 
+ * <p>
+ * The junctions of a generated track are numbered from 0, and named with a
+ * prefix that depends on the topology followed by their number (e.g. "g12"
+ * for junction 12 of a grid). The sections have random lengths of between
+ * 10 and 109 meters. Each topology uses at most one section on each branch
+ * of each junction, so every generated track is valid:
+ * </p>
+ * 
+ * <ul>
+ * <li>GRID: the junctions are laid out in rows of (about) the square root of
+ * their number. Each junction is joined along its NORMAL branch to the
+ * FACING branch of the next junction in its row, and, in a brick-wall
+ * pattern, along its REVERSE branch to the REVERSE branch of the junction
+ * above or below it.</li>
+ * <li>RING: each junction is joined along its NORMAL branch to the FACING
+ * branch of the next junction, and the last junction to the first.</li>
+ * <li>TREE: the junctions form a binary tree with junction 0 as its root.
+ * Junction i (for i > 0) is joined along its FACING branch to the NORMAL
+ * (for odd i) or REVERSE (for even i) branch of its parent, junction (i - 1)
+ * / 2.</li>
+ * <li>RANDOM: the end-points of the junctions (one on each branch of each
+ * junction) are shuffled and paired off, and each pair (other than a pair of
+ * end-points of the same junction) is joined by a section.</li>
+ * </ul>
+ * 
+ * <p>
+ * The track can either be built in memory, or streamed straight to a text
+ * file in the format read by TrackReader.read, which needs very little
+ * memory (other than for the RANDOM topology, which needs an int for each
+ * end-point), and so can be used for tracks of many millions of sections.
+ * </p>
+ */
+public class TrackGenerator {
+
+    /**
+     * The topologies of the tracks that can be generated.
+     */
+    public enum Topology {
+        GRID("g"), RING("o"), TREE("t"), RANDOM("r");
+
+        // the prefix of the names of the junctions
+        private final String prefix;
+
+        /**
+         * Creates a topology whose junction names have the given prefix.
+         */
+        private Topology(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Receives the sections of a track as they are generated.
+     */
+    private interface SectionSink {
+
+        /**
+         * Receives a section of the given length, joining the given branch of
+         * the first junction to the given branch of the second.
+         */
+        void add(int length, int junction1, Branch branch1, int junction2,
+                Branch branch2) throws IOException;
+    }
+
+    // the topology of the track
+    private final Topology topology;
+    // the number of junctions of the track
+    private final int junctionCount;
+    // the seed of the random lengths (and layout) of the track
+    private final long seed;
+
+    /*
+     * invariant:
+     * 
+     * topology != null && junctionCount >= 0
+     */
+
+    /**
+     * Creates a generator of tracks of the given topology on the given
+     * number of junctions, generated from the given seed.
+     * 
+     * @throws NullPointerException
+     *             if topology is null
+     * @throws IllegalArgumentException
+     *             if junctionCount is negative
+     */
+    public TrackGenerator(Topology topology, int junctionCount, long seed) {
+        if (topology == null) {
+            throw new NullPointerException("Parameter cannot be null.");
+        }
+        if (junctionCount < 0) {
+            throw new IllegalArgumentException("The number of junctions "
+                    + "cannot be negative.");
+        }
+        this.topology = topology;
+        this.junctionCount = junctionCount;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes a generated track to a text file. The arguments are the
+     * topology (GRID, RING, TREE or RANDOM), the number of junctions, the
+     * seed and the name of the file.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("usage: TrackGenerator topology junctions "
+                    + "seed file");
+            System.exit(1);
+        }
+        TrackGenerator generator = new TrackGenerator(Topology
+                .valueOf(args[0]), Integer.parseInt(args[1]), Long
+                .parseLong(args[2]));
+        long start = System.nanoTime();
+        long sections = generator.writeTrack(args[3]);
+        System.out.printf("wrote %d sections to %s in %.0f ms%n", sections,
+                args[3], (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Returns the topology of the generated track.
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Returns the number of junctions of the generated track (not all of
+     * which need have a section).
+     */
+    public int getJunctionCount() {
+        return junctionCount;
+    }
+
+    /**
+     * Returns the seed that the track is generated from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the junction with the given number on the generated track.
+     * 
+     * @require 0 <= number < getJunctionCount()
+     */
+    public Junction getJunction(int number) {
+        return JunctionRegistry.intern(topology.prefix + number);
+    }
+
+    /**
+     * Builds the generated track.
+     * 
+     * @ensure Returns a valid track, which is the same each time.
+     */
+    public Track track() {
+        Track track = new Track(); // the track under construction
+        // the junctions of the track, by number
+        Junction[] junctions = new Junction[junctionCount];
+        for (int i = 0; i < junctionCount; i++) {
+            junctions[i] = getJunction(i);
+        }
+        try {
+            generate((length, junction1, branch1, junction2, branch2) -> track
+                    .addSection(new Section(length, JunctionBranch.of(
+                            junctions[junction1], branch1), JunctionBranch.of(
+                            junctions[junction2], branch2))));
+        } catch (IOException e) {
+            // the sink does no input or output
+            throw new AssertionError(e);
+        }
+        return track;
+    }
+
+    /**
+     * Writes the sections of the generated track to a text file named
+     * fileName, in the format read by the TrackReader.read method, with one
+     * line for each section, without building the track in memory. The file
+     * read back is equal to track().
+     * 
+     * @param fileName
+     *            the file to write to
+     * @return the number of sections written
+     * @throws NullPointerException
+     *             if fileName is null
+     * @throws IOException
+     *             if there is an error writing to the file
+     */
+    public long writeTrack(String fileName) throws IOException {
+        if (fileName == null) {
+            throw new NullPointerException("Parameter cannot be null.");
+        }
+        // the number of sections written
+        long[] count = new long[1];
+        try (Writer out = new BufferedWriter(new FileWriter(fileName),
+                1 << 16)) {
+            // the line being written
+            StringBuilder line = new StringBuilder();
+            generate((length, junction1, branch1, junction2, branch2) -> {
+                line.setLength(0);
+                line.append(length).append(' ').append(topology.prefix)
+                        .append(junction1).append(' ').append(branch1)
+                        .append(' ').append(topology.prefix).append(
+                                junction2).append(' ').append(branch2)
+                        .append(System.lineSeparator());
+                out.append(line);
+                count[0]++;
+            });
+        }
+        return count[0];
+    }
+
+    /**
+     * <p>
+     * Returns a small random track for the randomised tests, with the given
+     * number of junctions and at most the given number of sections.
+     * </p>
+     * 
+     * <p>
+     * The junctions of the track are named "j{i}" (for 0 <= i <
+     * junctionCount). Up to 4 * maxSections times, two random end-points
+     * (see randomEndPoint) are chosen, and if they differ and neither has a
+     * section yet, they are joined by a section with a length of between 1
+     * and 8 meters. Unlike the generated topologies, a section may join two
+     * branches of the same junction.
+     * </p>
+     * 
+     * @require random != null && junctionCount > 0 && maxSections >= 0
+     * @ensure Returns a valid track with at most maxSections sections.
+     */
+    public static Track randomTrack(Random random, int junctionCount,
+            int maxSections) {
+        Track track = new Track(); // the track under construction
+        int added = 0; // the number of sections added
+        for (int attempt = 0; attempt < 4 * maxSections
+                && added < maxSections; attempt++) {
+            JunctionBranch endPoint1 = randomEndPoint(random, junctionCount);
+            JunctionBranch endPoint2 = randomEndPoint(random, junctionCount);
+            if (!endPoint1.equals(endPoint2)
+                    && track.getTrackSection(endPoint1.getJunction(),
+                            endPoint1.getBranch()) == null
+                    && track.getTrackSection(endPoint2.getJunction(),
+                            endPoint2.getBranch()) == null) {
+                track.addSection(new Section(1 + random.nextInt(8),
+                        endPoint1, endPoint2));
+                added++;
+            }
+        }
+        return track;
+    }
+
+    /**
+     * Returns a random end-point on a random branch of one of the junctions
+     * "j0" to "j{junctionCount - 1}" of the tracks built by randomTrack.
+     * 
+     * @require random != null && junctionCount > 0
+     */
+    public static JunctionBranch randomEndPoint(Random random,
+            int junctionCount) {
+        return new JunctionBranch(new Junction("j"
+                + random.nextInt(junctionCount)), Branch.values()[random
+                .nextInt(Branch.values().length)]);
+    }
+
+    /**
+     * Returns a list of the sections of the given track, in the order that
+     * they are iterated over.
+     * 
+     * @require track != null
+     */
+    public static List<Section> sections(Track track) {
+        List<Section> result = new ArrayList<>(); // the sections of the track
+        for (Section section : track) {
+            result.add(section);
+        }
+        return result;
+    }
+
+    /**
+     * Passes the sections of the generated track to the given sink, in the
+     * same order each time.
+     */
+    private void generate(SectionSink sink) throws IOException {
+        Random random = new Random(seed); // the source of the track
+        switch (topology) {
+        case GRID:
+            // the number of junctions in each row
+            int width = Math.max(1, (int) Math.sqrt(junctionCount));
+            for (int i = 0; i < junctionCount; i++) {
+                // the column of the junction
+                int column = i % width;
+                if (column + 1 < width && i + 1 < junctionCount) {
+                    sink.add(10 + random.nextInt(100), i, Branch.NORMAL,
+                            i + 1, Branch.FACING);
+                }
+                if ((i / width + column) % 2 == 0
+                        && i + width < junctionCount) {
+                    sink.add(10 + random.nextInt(100), i, Branch.REVERSE,
+                            i + width, Branch.REVERSE);
+                }
+            }
+            break;
+        case RING:
+            for (int i = 0; i < junctionCount && junctionCount > 1; i++) {
+                sink.add(10 + random.nextInt(100), i, Branch.NORMAL,
+                        (i + 1) % junctionCount, Branch.FACING);
+            }
+            break;
+        case TREE:
+            for (int i = 1; i < junctionCount; i++) {
+                sink.add(10 + random.nextInt(100), (i - 1) / 2,
+                        i % 2 == 1 ? Branch.NORMAL : Branch.REVERSE, i,
+                        Branch.FACING);
+            }
+            break;
+        case RANDOM:
+            // the end-points of the junctions, in a random order: end-point
+            // 3 * j + b is on junction j, along the branch with ordinal b
+            int[] endPoints = new int[3 * junctionCount];
+            for (int i = 0; i < endPoints.length; i++) {
+                endPoints[i] = i;
+            }
+            for (int i = endPoints.length - 1; i > 0; i--) {
+                // the end-point to swap into position i
+                int j = random.nextInt(i + 1);
+                int swap = endPoints[i];
+                endPoints[i] = endPoints[j];
+                endPoints[j] = swap;
+            }
+            // the branches, indexed by their ordinal
+            Branch[] branches = Branch.values();
+            for (int i = 0; i + 1 < endPoints.length; i += 2) {
+                if (endPoints[i] / 3 != endPoints[i + 1] / 3) {
+                    sink.add(10 + random.nextInt(100), endPoints[i] / 3,
+                            branches[endPoints[i] % 3], endPoints[i + 1] / 3,
+                            branches[endPoints[i + 1] % 3]);
+                }
+            }
+            break;
+        }
+    }
+
+}